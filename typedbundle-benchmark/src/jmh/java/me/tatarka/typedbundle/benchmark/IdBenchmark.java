@@ -0,0 +1,51 @@
+package me.tatarka.typedbundle.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import me.tatarka.typedbundle.Id;
+
+/**
+ * Measures getting an {@link Id} for a loader callback, by constructing it against looking up the
+ * canonical instance.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IdBenchmark {
+    public int smallId = 1;
+    public int largeId = 100000;
+    private final Id<Object> id = Id.of(1);
+    private final Id<Object> equalId = new Id<>(1);
+
+    @Benchmark
+    public Id<Object> newId() {
+        return new Id<>(smallId);
+    }
+
+    @Benchmark
+    public Id<Object> smallIdOf() {
+        return Id.of(smallId);
+    }
+
+    @Benchmark
+    public Id<Object> largeIdOf() {
+        return Id.of(largeId);
+    }
+
+    @Benchmark
+    public boolean idEqualsSame() {
+        return id.equals(Id.of(smallId));
+    }
+
+    @Benchmark
+    public boolean idEqualsEqual() {
+        return id.equals(equalId);
+    }
+}
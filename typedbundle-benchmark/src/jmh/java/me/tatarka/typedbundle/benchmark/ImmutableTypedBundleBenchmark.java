@@ -0,0 +1,67 @@
+package me.tatarka.typedbundle.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import me.tatarka.typedbundle.ImmutableTypedBundle;
+import me.tatarka.typedbundle.Key;
+import me.tatarka.typedbundle.TypedBundle;
+
+/**
+ * Measures using {@link ImmutableTypedBundle}s as cache keys, where the hash is cached but equality
+ * has to compare contents.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ImmutableTypedBundleBenchmark {
+    private static final Key<String> STRING_KEY = new Key<>("string");
+    private static final Key<int[]> INTARRAY_KEY = new Key<>("intArray");
+    private static final Key<Long> LONG_KEY = new Key<>("long");
+
+    private TypedBundle typedBundle;
+    private ImmutableTypedBundle immutableBundle;
+    private ImmutableTypedBundle equalBundle;
+    private Map<ImmutableTypedBundle, Object> cache;
+
+    @Setup
+    public void setup() {
+        typedBundle = new TypedBundle()
+                .put(STRING_KEY, "some string value")
+                .put(INTARRAY_KEY, new int[]{1, 2, 3, 4, 5, 6, 7, 8})
+                .put(LONG_KEY, 42L);
+        immutableBundle = typedBundle.toImmutable();
+        equalBundle = typedBundle.toImmutable();
+        cache = new HashMap<>();
+        cache.put(immutableBundle, new Object());
+    }
+
+    @Benchmark
+    public ImmutableTypedBundle toImmutable() {
+        return typedBundle.toImmutable();
+    }
+
+    @Benchmark
+    public int cachedHashCode() {
+        return immutableBundle.hashCode();
+    }
+
+    @Benchmark
+    public boolean structuralEquals() {
+        return immutableBundle.equals(equalBundle);
+    }
+
+    @Benchmark
+    public Object cacheLookup() {
+        return cache.get(equalBundle);
+    }
+}
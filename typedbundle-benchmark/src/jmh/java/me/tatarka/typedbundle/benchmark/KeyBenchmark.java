@@ -0,0 +1,87 @@
+package me.tatarka.typedbundle.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import me.tatarka.typedbundle.Key;
+
+/**
+ * Measures the cost of creating, hashing and comparing {@link Key}s, which happens for every
+ * entry returned from {@code keySet()} and {@code getAll()}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KeyBenchmark {
+    private Key<String> key;
+    private Key<String> equalKey;
+    private Key<String> otherKey;
+    private String name;
+    private Map<Key<?>, Object> keyMap;
+    private Map<String, Object> stringMap;
+
+    @Setup
+    public void setup() {
+        name = "some_reasonably_long_key_name";
+        key = new Key<>(name);
+        equalKey = new Key<>(new String(name));
+        otherKey = new Key<>("other");
+        keyMap = new HashMap<>();
+        stringMap = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            keyMap.put(new Key<>("filler" + i), i);
+            stringMap.put("filler" + i, i);
+        }
+        keyMap.put(key, "value");
+        stringMap.put(name, "value");
+    }
+
+    @Benchmark
+    public Key<Object> newKey() {
+        return new Key<>(name);
+    }
+
+    @Benchmark
+    public Key<Object> internedKey() {
+        return Key.of(name);
+    }
+
+    @Benchmark
+    public int keyHashCode() {
+        return key.hashCode();
+    }
+
+    @Benchmark
+    public boolean keyEqualsSame() {
+        return key.equals(key);
+    }
+
+    @Benchmark
+    public boolean keyEqualsEqual() {
+        return key.equals(equalKey);
+    }
+
+    @Benchmark
+    public boolean keyEqualsOther() {
+        return key.equals(otherKey);
+    }
+
+    @Benchmark
+    public Object keyMapLookup() {
+        return keyMap.get(equalKey);
+    }
+
+    @Benchmark
+    public Object stringMapLookup() {
+        return stringMap.get(name);
+    }
+}
@@ -0,0 +1,118 @@
+package me.tatarka.typedbundle.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import me.tatarka.typedbundle.Key;
+import me.tatarka.typedbundle.LogPreferenceStorage;
+import me.tatarka.typedbundle.PreferenceStorage;
+import me.tatarka.typedbundle.ShardedPreferenceStorage;
+import me.tatarka.typedbundle.TypedPreferences;
+
+/**
+ * Measures the cold start cost of reading a single value, from preferences kept in one file
+ * against preferences split into groups that are each loaded on first use.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ShardedPreferencesBenchmark {
+    private static final int GROUPS = 10;
+    private static final Key<Integer> STARTUP_KEY = new Key<>("group0_0");
+
+    @Param({"10", "1000"})
+    public int size;
+
+    private File dir;
+    private File singleFile;
+    private ShardedPreferenceStorage.Builder builder;
+    private ExecutorService executor;
+    private final List<LogPreferenceStorage> opened = new ArrayList<>();
+
+    @Setup
+    public void setup() throws IOException {
+        executor = Executors.newSingleThreadExecutor();
+        dir = File.createTempFile("prefs", "");
+        dir.delete();
+        dir.mkdir();
+        singleFile = new File(dir, "single.log");
+        final Key<?>[][] keys = new Key<?>[GROUPS][size];
+        LogPreferenceStorage single = LogPreferenceStorage.open(singleFile, executor);
+        PreferenceStorage.Editor singleEditor = single.edit();
+        for (int group = 0; group < GROUPS; group++) {
+            LogPreferenceStorage shard = LogPreferenceStorage.open(new File(dir, "group" + group + ".log"), executor);
+            PreferenceStorage.Editor shardEditor = shard.edit();
+            for (int i = 0; i < size; i++) {
+                String name = "group" + group + "_" + i;
+                keys[group][i] = new Key<Integer>(name);
+                singleEditor.putInt(name, i);
+                shardEditor.putInt(name, i);
+            }
+            shardEditor.commit();
+            shard.close();
+        }
+        singleEditor.commit();
+        single.close();
+
+        builder = new ShardedPreferenceStorage.Builder(new ShardedPreferenceStorage.Loader() {
+            @Override
+            public PreferenceStorage load(String group) {
+                try {
+                    LogPreferenceStorage storage = LogPreferenceStorage.open(new File(dir, group + ".log"), executor);
+                    opened.add(storage);
+                    return storage;
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        for (int group = 0; group < GROUPS; group++) {
+            builder.group("group" + group, keys[group]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public int singleColdRead() throws IOException {
+        LogPreferenceStorage storage = LogPreferenceStorage.open(singleFile, executor);
+        int result = new TypedPreferences(storage).get(STARTUP_KEY, 0);
+        storage.close();
+        return result;
+    }
+
+    /**
+     * Only loads the group holding the key.
+     */
+    @Benchmark
+    public int shardedColdRead() throws IOException {
+        int result = new TypedPreferences(builder.build()).get(STARTUP_KEY, 0);
+        for (LogPreferenceStorage storage : opened) {
+            storage.close();
+        }
+        opened.clear();
+        return result;
+    }
+}
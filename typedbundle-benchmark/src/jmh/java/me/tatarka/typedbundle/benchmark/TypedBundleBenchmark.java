@@ -0,0 +1,676 @@
+package me.tatarka.typedbundle.benchmark;
+
+import android.os.Bundle;
+import android.os.Parcel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import me.tatarka.typedbundle.Key;
+import me.tatarka.typedbundle.KeyVisitor;
+import me.tatarka.typedbundle.TypedBundle;
+
+/**
+ * Compares {@link TypedBundle} against a raw {@link Bundle} for every supported value type, as
+ * well as for bulk operations and parcel round-trips. Each {@code typedXxx} benchmark has a
+ * matching {@code rawXxx} baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TypedBundleBenchmark {
+    private static final Key<Boolean> BOOLEAN_KEY = new Key<>("boolean");
+    private final boolean booleanValue = true;
+    private static final Key<Byte> BYTE_KEY = new Key<>("byte");
+    private final byte byteValue = (byte) 1;
+    private static final Key<Character> CHAR_KEY = new Key<>("char");
+    private final char charValue = 'a';
+    private static final Key<Short> SHORT_KEY = new Key<>("short");
+    private final short shortValue = (short) 1;
+    private static final Key<Integer> INT_KEY = new Key<>("int");
+    private final int intValue = 100000;
+    private static final Key<Long> LONG_KEY = new Key<>("long");
+    private final long longValue = 100000L;
+    private static final Key<Float> FLOAT_KEY = new Key<>("float");
+    private final float floatValue = 1.5f;
+    private static final Key<Double> DOUBLE_KEY = new Key<>("double");
+    private final double doubleValue = 1.5d;
+    private static final Key<String> STRING_KEY = new Key<>("string");
+    private final String stringValue = "value";
+    private static final Key<CharSequence> CHARSEQUENCE_KEY = new Key<>("charSequence");
+    private final CharSequence charSequenceValue = "value";
+    private static final Key<int[]> INTARRAY_KEY = new Key<>("intArray");
+    private final int[] intArrayValue = new int[]{1, 2, 3, 4};
+    private static final Key<long[]> LONGARRAY_KEY = new Key<>("longArray");
+    private final long[] longArrayValue = new long[]{1, 2, 3, 4};
+    private static final Key<byte[]> BYTEARRAY_KEY = new Key<>("byteArray");
+    private final byte[] byteArrayValue = new byte[]{1, 2, 3, 4};
+    private static final Key<String[]> STRINGARRAY_KEY = new Key<>("stringArray");
+    private final String[] stringArrayValue = new String[]{"a", "b"};
+    private static final Key<BenchmarkParcelable> PARCELABLE_KEY = new Key<>("parcelable");
+    private final BenchmarkParcelable parcelableValue = new BenchmarkParcelable(1, "name");
+    private static final Key<java.util.Date> SERIALIZABLE_KEY = new Key<>("serializable");
+    private final java.util.Date serializableValue = new java.util.Date(0);
+    private static final Key<ArrayList<Integer>> INTEGERARRAYLIST_KEY = new Key<>("integerArrayList");
+    private final ArrayList<Integer> integerArrayListValue = new ArrayList<>(Arrays.asList(1, 2, 3));
+    private static final Key<ArrayList<String>> STRINGARRAYLIST_KEY = new Key<>("stringArrayList");
+    private final ArrayList<String> stringArrayListValue = new ArrayList<>(Arrays.asList("a", "b"));
+    private static final Key<Bundle> BUNDLE_KEY = new Key<>("bundle");
+    private final Bundle bundleValue = new Bundle();
+
+    private TypedBundle typedBundle;
+    private Bundle rawBundle;
+    private TypedBundle encodableBundle;
+    private TypedBundle emptyTypedBundle;
+    private Bundle emptyRawBundle;
+    private final CountingVisitor counter = new CountingVisitor();
+
+    @Setup
+    public void setup() {
+        typedBundle = new TypedBundle();
+        rawBundle = new Bundle();
+        typedBundle.put(BOOLEAN_KEY, booleanValue);
+        rawBundle.putBoolean("boolean", booleanValue);
+        typedBundle.put(BYTE_KEY, byteValue);
+        rawBundle.putByte("byte", byteValue);
+        typedBundle.put(CHAR_KEY, charValue);
+        rawBundle.putChar("char", charValue);
+        typedBundle.put(SHORT_KEY, shortValue);
+        rawBundle.putShort("short", shortValue);
+        typedBundle.put(INT_KEY, intValue);
+        rawBundle.putInt("int", intValue);
+        typedBundle.put(LONG_KEY, longValue);
+        rawBundle.putLong("long", longValue);
+        typedBundle.put(FLOAT_KEY, floatValue);
+        rawBundle.putFloat("float", floatValue);
+        typedBundle.put(DOUBLE_KEY, doubleValue);
+        rawBundle.putDouble("double", doubleValue);
+        typedBundle.put(STRING_KEY, stringValue);
+        rawBundle.putString("string", stringValue);
+        typedBundle.put(CHARSEQUENCE_KEY, charSequenceValue);
+        rawBundle.putCharSequence("charSequence", charSequenceValue);
+        typedBundle.put(INTARRAY_KEY, intArrayValue);
+        rawBundle.putIntArray("intArray", intArrayValue);
+        typedBundle.put(LONGARRAY_KEY, longArrayValue);
+        rawBundle.putLongArray("longArray", longArrayValue);
+        typedBundle.put(BYTEARRAY_KEY, byteArrayValue);
+        rawBundle.putByteArray("byteArray", byteArrayValue);
+        typedBundle.put(STRINGARRAY_KEY, stringArrayValue);
+        rawBundle.putStringArray("stringArray", stringArrayValue);
+        typedBundle.put(PARCELABLE_KEY, parcelableValue);
+        rawBundle.putParcelable("parcelable", parcelableValue);
+        typedBundle.put(SERIALIZABLE_KEY, serializableValue);
+        rawBundle.putSerializable("serializable", serializableValue);
+        typedBundle.putIntegerArrayList(INTEGERARRAYLIST_KEY, integerArrayListValue);
+        rawBundle.putIntegerArrayList("integerArrayList", integerArrayListValue);
+        typedBundle.putStringArrayList(STRINGARRAYLIST_KEY, stringArrayListValue);
+        rawBundle.putStringArrayList("stringArrayList", stringArrayListValue);
+        typedBundle.put(BUNDLE_KEY, bundleValue);
+        rawBundle.putBundle("bundle", bundleValue);
+        // The codec doesn't support parcelables or serializables, so compare it against
+        // parceling a bundle without them.
+        encodableBundle = new TypedBundle(typedBundle);
+        encodableBundle.remove(PARCELABLE_KEY);
+        encodableBundle.remove(SERIALIZABLE_KEY);
+        emptyTypedBundle = new TypedBundle();
+        emptyRawBundle = new Bundle();
+    }
+
+    @Benchmark
+    public Object typedPutBoolean() {
+        return emptyTypedBundle.put(BOOLEAN_KEY, booleanValue);
+    }
+
+    @Benchmark
+    public Object rawPutBoolean() {
+        emptyRawBundle.putBoolean("boolean", booleanValue);
+        return emptyRawBundle;
+    }
+
+    @Benchmark
+    public Object typedGetBoolean() {
+        return typedBundle.get(BOOLEAN_KEY);
+    }
+
+    @Benchmark
+    public boolean typedGetBooleanPrimitive() {
+        return typedBundle.getBoolean(BOOLEAN_KEY, true);
+    }
+
+    @Benchmark
+    public boolean rawGetBoolean() {
+        return rawBundle.getBoolean("boolean");
+    }
+
+    @Benchmark
+    public Object typedPutByte() {
+        return emptyTypedBundle.put(BYTE_KEY, byteValue);
+    }
+
+    @Benchmark
+    public Object rawPutByte() {
+        emptyRawBundle.putByte("byte", byteValue);
+        return emptyRawBundle;
+    }
+
+    @Benchmark
+    public Object typedGetByte() {
+        return typedBundle.get(BYTE_KEY);
+    }
+
+    @Benchmark
+    public byte typedGetBytePrimitive() {
+        return typedBundle.getByte(BYTE_KEY, (byte) 1);
+    }
+
+    @Benchmark
+    public byte rawGetByte() {
+        return rawBundle.getByte("byte");
+    }
+
+    @Benchmark
+    public Object typedPutChar() {
+        return emptyTypedBundle.put(CHAR_KEY, charValue);
+    }
+
+    @Benchmark
+    public Object rawPutChar() {
+        emptyRawBundle.putChar("char", charValue);
+        return emptyRawBundle;
+    }
+
+    @Benchmark
+    public Object typedGetChar() {
+        return typedBundle.get(CHAR_KEY);
+    }
+
+    @Benchmark
+    public char typedGetCharPrimitive() {
+        return typedBundle.getChar(CHAR_KEY, 'a');
+    }
+
+    @Benchmark
+    public char rawGetChar() {
+        return rawBundle.getChar("char");
+    }
+
+    @Benchmark
+    public Object typedPutShort() {
+        return emptyTypedBundle.put(SHORT_KEY, shortValue);
+    }
+
+    @Benchmark
+    public Object rawPutShort() {
+        emptyRawBundle.putShort("short", shortValue);
+        return emptyRawBundle;
+    }
+
+    @Benchmark
+    public Object typedGetShort() {
+        return typedBundle.get(SHORT_KEY);
+    }
+
+    @Benchmark
+    public short typedGetShortPrimitive() {
+        return typedBundle.getShort(SHORT_KEY, (short) 1);
+    }
+
+    @Benchmark
+    public short rawGetShort() {
+        return rawBundle.getShort("short");
+    }
+
+    @Benchmark
+    public Object typedPutInt() {
+        return emptyTypedBundle.put(INT_KEY, intValue);
+    }
+
+    @Benchmark
+    public Object rawPutInt() {
+        emptyRawBundle.putInt("int", intValue);
+        return emptyRawBundle;
+    }
+
+    @Benchmark
+    public Object typedGetInt() {
+        return typedBundle.get(INT_KEY);
+    }
+
+    @Benchmark
+    public int typedGetIntPrimitive() {
+        return typedBundle.getInt(INT_KEY, 100000);
+    }
+
+    @Benchmark
+    public int rawGetInt() {
+        return rawBundle.getInt("int");
+    }
+
+    @Benchmark
+    public Object typedPutLong() {
+        return emptyTypedBundle.put(LONG_KEY, longValue);
+    }
+
+    @Benchmark
+    public Object rawPutLong() {
+        emptyRawBundle.putLong("long", longValue);
+        return emptyRawBundle;
+    }
+
+    @Benchmark
+    public Object typedGetLong() {
+        return typedBundle.get(LONG_KEY);
+    }
+
+    @Benchmark
+    public long typedGetLongPrimitive() {
+        return typedBundle.getLong(LONG_KEY, 100000L);
+    }
+
+    @Benchmark
+    public long rawGetLong() {
+        return rawBundle.getLong("long");
+    }
+
+    @Benchmark
+    public Object typedPutFloat() {
+        return emptyTypedBundle.put(FLOAT_KEY, floatValue);
+    }
+
+    @Benchmark
+    public Object rawPutFloat() {
+        emptyRawBundle.putFloat("float", floatValue);
+        return emptyRawBundle;
+    }
+
+    @Benchmark
+    public Object typedGetFloat() {
+        return typedBundle.get(FLOAT_KEY);
+    }
+
+    @Benchmark
+    public float typedGetFloatPrimitive() {
+        return typedBundle.getFloat(FLOAT_KEY, 1.5f);
+    }
+
+    @Benchmark
+    public float rawGetFloat() {
+        return rawBundle.getFloat("float");
+    }
+
+    @Benchmark
+    public Object typedPutDouble() {
+        return emptyTypedBundle.put(DOUBLE_KEY, doubleValue);
+    }
+
+    @Benchmark
+    public Object rawPutDouble() {
+        emptyRawBundle.putDouble("double", doubleValue);
+        return emptyRawBundle;
+    }
+
+    @Benchmark
+    public Object typedGetDouble() {
+        return typedBundle.get(DOUBLE_KEY);
+    }
+
+    @Benchmark
+    public double typedGetDoublePrimitive() {
+        return typedBundle.getDouble(DOUBLE_KEY, 1.5d);
+    }
+
+    @Benchmark
+    public double rawGetDouble() {
+        return rawBundle.getDouble("double");
+    }
+
+    @Benchmark
+    public Object typedPutString() {
+        return emptyTypedBundle.put(STRING_KEY, stringValue);
+    }
+
+    @Benchmark
+    public Object rawPutString() {
+        emptyRawBundle.putString("string", stringValue);
+        return emptyRawBundle;
+    }
+
+    @Benchmark
+    public Object typedGetString() {
+        return typedBundle.get(STRING_KEY);
+    }
+
+    @Benchmark
+    public Object rawGetString() {
+        return rawBundle.getString("string");
+    }
+
+    @Benchmark
+    public Object typedPutCharSequence() {
+        return emptyTypedBundle.put(CHARSEQUENCE_KEY, charSequenceValue);
+    }
+
+    @Benchmark
+    public Object rawPutCharSequence() {
+        emptyRawBundle.putCharSequence("charSequence", charSequenceValue);
+        return emptyRawBundle;
+    }
+
+    @Benchmark
+    public Object typedGetCharSequence() {
+        return typedBundle.get(CHARSEQUENCE_KEY);
+    }
+
+    @Benchmark
+    public Object rawGetCharSequence() {
+        return rawBundle.getCharSequence("charSequence");
+    }
+
+    @Benchmark
+    public Object typedPutIntArray() {
+        return emptyTypedBundle.put(INTARRAY_KEY, intArrayValue);
+    }
+
+    @Benchmark
+    public Object rawPutIntArray() {
+        emptyRawBundle.putIntArray("intArray", intArrayValue);
+        return emptyRawBundle;
+    }
+
+    @Benchmark
+    public Object typedGetIntArray() {
+        return typedBundle.get(INTARRAY_KEY);
+    }
+
+    @Benchmark
+    public int[] rawGetIntArray() {
+        return rawBundle.getIntArray("intArray");
+    }
+
+    @Benchmark
+    public Object typedPutLongArray() {
+        return emptyTypedBundle.put(LONGARRAY_KEY, longArrayValue);
+    }
+
+    @Benchmark
+    public Object rawPutLongArray() {
+        emptyRawBundle.putLongArray("longArray", longArrayValue);
+        return emptyRawBundle;
+    }
+
+    @Benchmark
+    public Object typedGetLongArray() {
+        return typedBundle.get(LONGARRAY_KEY);
+    }
+
+    @Benchmark
+    public long[] rawGetLongArray() {
+        return rawBundle.getLongArray("longArray");
+    }
+
+    @Benchmark
+    public Object typedPutByteArray() {
+        return emptyTypedBundle.put(BYTEARRAY_KEY, byteArrayValue);
+    }
+
+    @Benchmark
+    public Object rawPutByteArray() {
+        emptyRawBundle.putByteArray("byteArray", byteArrayValue);
+        return emptyRawBundle;
+    }
+
+    @Benchmark
+    public Object typedGetByteArray() {
+        return typedBundle.get(BYTEARRAY_KEY);
+    }
+
+    @Benchmark
+    public byte[] rawGetByteArray() {
+        return rawBundle.getByteArray("byteArray");
+    }
+
+    @Benchmark
+    public Object typedPutStringArray() {
+        return emptyTypedBundle.put(STRINGARRAY_KEY, stringArrayValue);
+    }
+
+    @Benchmark
+    public Object rawPutStringArray() {
+        emptyRawBundle.putStringArray("stringArray", stringArrayValue);
+        return emptyRawBundle;
+    }
+
+    @Benchmark
+    public Object typedGetStringArray() {
+        return typedBundle.get(STRINGARRAY_KEY);
+    }
+
+    @Benchmark
+    public Object rawGetStringArray() {
+        return rawBundle.getStringArray("stringArray");
+    }
+
+    @Benchmark
+    public Object typedPutParcelable() {
+        return emptyTypedBundle.put(PARCELABLE_KEY, parcelableValue);
+    }
+
+    @Benchmark
+    public Object rawPutParcelable() {
+        emptyRawBundle.putParcelable("parcelable", parcelableValue);
+        return emptyRawBundle;
+    }
+
+    @Benchmark
+    public Object typedGetParcelable() {
+        return typedBundle.get(PARCELABLE_KEY);
+    }
+
+    @Benchmark
+    public Object rawGetParcelable() {
+        return rawBundle.getParcelable("parcelable");
+    }
+
+    @Benchmark
+    public Object typedPutSerializable() {
+        return emptyTypedBundle.put(SERIALIZABLE_KEY, serializableValue);
+    }
+
+    @Benchmark
+    public Object rawPutSerializable() {
+        emptyRawBundle.putSerializable("serializable", serializableValue);
+        return emptyRawBundle;
+    }
+
+    @Benchmark
+    public Object typedGetSerializable() {
+        return typedBundle.get(SERIALIZABLE_KEY);
+    }
+
+    @Benchmark
+    public Object rawGetSerializable() {
+        return rawBundle.getSerializable("serializable");
+    }
+
+    @Benchmark
+    public Object typedPutIntegerArrayList() {
+        return emptyTypedBundle.putIntegerArrayList(INTEGERARRAYLIST_KEY, integerArrayListValue);
+    }
+
+    @Benchmark
+    public Object rawPutIntegerArrayList() {
+        emptyRawBundle.putIntegerArrayList("integerArrayList", integerArrayListValue);
+        return emptyRawBundle;
+    }
+
+    @Benchmark
+    public Object typedGetIntegerArrayList() {
+        return typedBundle.get(INTEGERARRAYLIST_KEY);
+    }
+
+    @Benchmark
+    public Object rawGetIntegerArrayList() {
+        return rawBundle.getIntegerArrayList("integerArrayList");
+    }
+
+    @Benchmark
+    public Object typedPutStringArrayList() {
+        return emptyTypedBundle.putStringArrayList(STRINGARRAYLIST_KEY, stringArrayListValue);
+    }
+
+    @Benchmark
+    public Object rawPutStringArrayList() {
+        emptyRawBundle.putStringArrayList("stringArrayList", stringArrayListValue);
+        return emptyRawBundle;
+    }
+
+    @Benchmark
+    public Object typedGetStringArrayList() {
+        return typedBundle.get(STRINGARRAYLIST_KEY);
+    }
+
+    @Benchmark
+    public Object rawGetStringArrayList() {
+        return rawBundle.getStringArrayList("stringArrayList");
+    }
+
+    @Benchmark
+    public Object typedPutBundle() {
+        return emptyTypedBundle.put(BUNDLE_KEY, bundleValue);
+    }
+
+    @Benchmark
+    public Object rawPutBundle() {
+        emptyRawBundle.putBundle("bundle", bundleValue);
+        return emptyRawBundle;
+    }
+
+    @Benchmark
+    public Object typedGetBundle() {
+        return typedBundle.get(BUNDLE_KEY);
+    }
+
+    @Benchmark
+    public Object rawGetBundle() {
+        return rawBundle.getBundle("bundle");
+    }
+
+    @Benchmark
+    public Set<Key<Object>> typedKeySet() {
+        return typedBundle.keySet();
+    }
+
+    @Benchmark
+    public int typedForEachKey() {
+        counter.count = 0;
+        typedBundle.forEachKey(counter);
+        return counter.count;
+    }
+
+    @Benchmark
+    public Set<String> rawKeySet() {
+        // Match the typed version, which has to copy the keys.
+        return new java.util.HashSet<>(rawBundle.keySet());
+    }
+
+    @Benchmark
+    public TypedBundle typedPutAll() {
+        TypedBundle result = new TypedBundle();
+        result.putAll(typedBundle);
+        return result;
+    }
+
+    @Benchmark
+    public Bundle rawPutAll() {
+        Bundle result = new Bundle();
+        result.putAll(rawBundle);
+        return result;
+    }
+
+    @Benchmark
+    public TypedBundle typedParcelRoundTrip() {
+        Parcel parcel = Parcel.obtain();
+        try {
+            typedBundle.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return TypedBundle.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    @Benchmark
+    public TypedBundle typedCopy() {
+        return new TypedBundle(typedBundle);
+    }
+
+    @Benchmark
+    public TypedBundle typedCopyOnWrite() {
+        return typedBundle.copyOnWrite();
+    }
+
+    @Benchmark
+    public int typedEstimateSize() {
+        return typedBundle.estimateSize();
+    }
+
+    @Benchmark
+    public int rawParcelSize() {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(rawBundle);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    @Benchmark
+    public TypedBundle typedCodecRoundTrip() {
+        return TypedBundle.decode(encodableBundle.encode());
+    }
+
+    @Benchmark
+    public TypedBundle typedEncodableParcelRoundTrip() {
+        Parcel parcel = Parcel.obtain();
+        try {
+            encodableBundle.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return TypedBundle.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    @Benchmark
+    public Bundle rawParcelRoundTrip() {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(rawBundle);
+            parcel.setDataPosition(0);
+            return parcel.readBundle(getClass().getClassLoader());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static class CountingVisitor implements KeyVisitor {
+        int count;
+
+        @Override
+        public boolean visit(Key<Object> key) {
+            count++;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package me.tatarka.typedbundle.benchmark;
+
+import android.content.SharedPreferences;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import me.tatarka.typedbundle.CoalescingEditor;
+import me.tatarka.typedbundle.EntryVisitor;
+import me.tatarka.typedbundle.Key;
+import me.tatarka.typedbundle.LogPreferenceStorage;
+import me.tatarka.typedbundle.MappedPreferenceStorage;
+import me.tatarka.typedbundle.MemoryPreferenceStorage;
+import me.tatarka.typedbundle.MultiProcessPreferenceStorage;
+import me.tatarka.typedbundle.PreferenceStorage;
+import me.tatarka.typedbundle.TypedPreferences;
+
+/**
+ * Compares {@link TypedPreferences} against raw {@link SharedPreferences} for reads,
+ * {@link TypedPreferences#getAll()} and batched edits.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TypedPreferencesBenchmark {
+    private static final Key<Integer> INT_KEY = new Key<>("int");
+    private static final Key<Boolean> BOOLEAN_KEY = new Key<>("boolean");
+    private static final Key<String> STRING_KEY = new Key<>("string");
+    private static final Key<Integer> OBSERVED_KEY = new Key<>("filler0");
+
+    @Param({"10", "1000"})
+    public int size;
+
+    private SharedPreferences prefs;
+    private TypedPreferences typedPreferences;
+    private TypedPreferences cachedPreferences;
+    private TypedPreferences memoryPreferences;
+    private LogPreferenceStorage logStorage;
+    private TypedPreferences logPreferences;
+    private MappedPreferenceStorage mappedStorage;
+    private TypedPreferences mappedPreferences;
+    private MultiProcessPreferenceStorage multiProcessStorage;
+    private TypedPreferences multiProcessPreferences;
+    private Key<Integer>[] batchKeys;
+    private String[] batchNames;
+    private final CountingVisitor counter = new CountingVisitor();
+    private TypedPreferences observedPreferences;
+    private SharedPreferences rawObservedPrefs;
+    private final CountingListener observed = new CountingListener();
+    private int nextValue;
+    private ScheduledExecutorService executor;
+    private CoalescingEditor coalescingEditor;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws IOException {
+        prefs = new InMemorySharedPreferences();
+        executor = Executors.newSingleThreadScheduledExecutor();
+        typedPreferences = new TypedPreferences(prefs);
+        cachedPreferences = TypedPreferences.cached(prefs);
+        coalescingEditor = typedPreferences.coalescingEditor(executor, 1, TimeUnit.SECONDS, 1000);
+        SharedPreferences.Editor editor = prefs.edit();
+        for (int i = 0; i < size; i++) {
+            editor.putInt("filler" + i, i);
+        }
+        editor.putInt("int", 100000);
+        editor.putBoolean("boolean", true);
+        editor.putString("string", "value");
+        editor.commit();
+        memoryPreferences = new TypedPreferences(new MemoryPreferenceStorage(prefs.getAll()));
+        File logFile = File.createTempFile("prefs", ".log");
+        logFile.delete();
+        logFile.deleteOnExit();
+        logStorage = LogPreferenceStorage.open(logFile, executor);
+        logPreferences = new TypedPreferences(logStorage);
+        TypedPreferences.Editor logEditor = logPreferences.edit();
+        for (int i = 0; i < size; i++) {
+            logEditor.put(new Key<Integer>("filler" + i), i);
+        }
+        logEditor.commit();
+        File mappedFile = File.createTempFile("prefs", ".map");
+        mappedFile.delete();
+        mappedFile.deleteOnExit();
+        mappedStorage = MappedPreferenceStorage.open(mappedFile);
+        PreferenceStorage.Editor mappedEditor = mappedStorage.edit();
+        for (int i = 0; i < size; i++) {
+            mappedEditor.putInt("filler" + i, i);
+        }
+        mappedEditor.putInt("int", 100000);
+        mappedEditor.putBoolean("boolean", true);
+        mappedEditor.putString("string", "value");
+        mappedEditor.commit();
+        mappedPreferences = new TypedPreferences(mappedStorage);
+        File multiProcessFile = File.createTempFile("prefs", ".log");
+        multiProcessFile.delete();
+        multiProcessStorage = MultiProcessPreferenceStorage.open(multiProcessFile);
+        PreferenceStorage.Editor multiProcessEditor = multiProcessStorage.edit();
+        for (int i = 0; i < size; i++) {
+            multiProcessEditor.putInt("filler" + i, i);
+        }
+        multiProcessEditor.putInt("int", 100000);
+        multiProcessEditor.commit();
+        multiProcessPreferences = new TypedPreferences(multiProcessStorage);
+
+        // One observer per key, a change should only wake the one for its key.
+        observedPreferences = new TypedPreferences(new MemoryPreferenceStorage());
+        rawObservedPrefs = new InMemorySharedPreferences();
+        for (int i = 0; i < size; i++) {
+            final String name = "filler" + i;
+            observedPreferences.observe(new Key<Integer>(name), observed);
+            rawObservedPrefs.registerOnSharedPreferenceChangeListener(new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                    if (name.equals(key)) {
+                        observed.count++;
+                    }
+                }
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        Key<Integer>[] keys = (Key<Integer>[]) new Key<?>[10];
+        batchKeys = keys;
+        batchNames = new String[10];
+        for (int i = 0; i < batchKeys.length; i++) {
+            batchNames[i] = "batch" + i;
+            batchKeys[i] = new Key<>(batchNames[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        logStorage.close();
+        logStorage.getFile().delete();
+        mappedStorage.getFile().delete();
+        multiProcessStorage.close();
+        multiProcessStorage.getFile().delete();
+        new File(multiProcessStorage.getFile().getPath() + ".version").delete();
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public int typedGetInt() {
+        return typedPreferences.get(INT_KEY, 0);
+    }
+
+    @Benchmark
+    public int cachedGetInt() {
+        return cachedPreferences.get(INT_KEY, 0);
+    }
+
+    @Benchmark
+    public int memoryGetInt() {
+        return memoryPreferences.get(INT_KEY, 0);
+    }
+
+    /**
+     * Read straight from the mapped file, without parsing or boxing.
+     */
+    @Benchmark
+    public int mappedGetInt() {
+        return mappedPreferences.get(INT_KEY, 0);
+    }
+
+    @Benchmark
+    public String mappedGetString() {
+        return mappedPreferences.get(STRING_KEY, null);
+    }
+
+    /**
+     * A read that first checks the mapped version for commits from other processes.
+     */
+    @Benchmark
+    public int multiProcessGetInt() {
+        return multiProcessPreferences.get(INT_KEY, 0);
+    }
+
+    @Benchmark
+    public int rawGetInt() {
+        return prefs.getInt("int", 0);
+    }
+
+    @Benchmark
+    public boolean typedGetBoolean() {
+        return typedPreferences.get(BOOLEAN_KEY, false);
+    }
+
+    @Benchmark
+    public boolean rawGetBoolean() {
+        return prefs.getBoolean("boolean", false);
+    }
+
+    @Benchmark
+    public String typedGetString() {
+        return typedPreferences.get(STRING_KEY, null);
+    }
+
+    @Benchmark
+    public String cachedGetString() {
+        return cachedPreferences.get(STRING_KEY, null);
+    }
+
+    @Benchmark
+    public String rawGetString() {
+        return prefs.getString("string", null);
+    }
+
+    @Benchmark
+    public Map<Key<Object>, Object> typedGetAll() {
+        return typedPreferences.getAll();
+    }
+
+    @Benchmark
+    public Map<Key<Object>, Object> cachedGetAll() {
+        return cachedPreferences.getAll();
+    }
+
+    @Benchmark
+    public int cachedForEachEntry() {
+        counter.count = 0;
+        cachedPreferences.forEachEntry(counter);
+        return counter.count;
+    }
+
+    @Benchmark
+    public Map<String, ?> rawGetAll() {
+        return prefs.getAll();
+    }
+
+    @Benchmark
+    public boolean typedEditorBatch() {
+        TypedPreferences.Editor editor = typedPreferences.edit();
+        for (int i = 0; i < batchKeys.length; i++) {
+            editor.put(batchKeys[i], i);
+        }
+        return editor.commit();
+    }
+
+    /**
+     * A burst of changes from separate call sites, each applied on its own.
+     */
+    @Benchmark
+    public void typedEditorBurst() {
+        for (int i = 0; i < batchKeys.length; i++) {
+            typedPreferences.edit().put(batchKeys[i], i).apply();
+        }
+    }
+
+    /**
+     * The same burst through a coalescing editor, committed once.
+     */
+    @Benchmark
+    public boolean coalescingEditorBurst() throws Exception {
+        for (int i = 0; i < batchKeys.length; i++) {
+            coalescingEditor.put(batchKeys[i], i);
+        }
+        return coalescingEditor.flush().get();
+    }
+
+    @Benchmark
+    public boolean memoryEditorBatch() {
+        TypedPreferences.Editor editor = memoryPreferences.edit();
+        for (int i = 0; i < batchKeys.length; i++) {
+            editor.put(batchKeys[i], i);
+        }
+        return editor.commit();
+    }
+
+    /**
+     * A single change applied to a log, which appends it instead of rewriting every value.
+     */
+    @Benchmark
+    public void logEditorApply() {
+        logPreferences.edit().put(INT_KEY, 1).apply();
+    }
+
+    @Benchmark
+    public void typedEditorApply() {
+        typedPreferences.edit().put(INT_KEY, 1).apply();
+    }
+
+    /**
+     * A commit to one of many observed keys, dispatched through the per-key table.
+     */
+    @Benchmark
+    public boolean observedCommit() {
+        return observedPreferences.edit().put(OBSERVED_KEY, nextValue++).commit();
+    }
+
+    /**
+     * The same commit with a raw listener per key, each comparing the changed name.
+     */
+    @Benchmark
+    public boolean rawObservedCommit() {
+        return rawObservedPrefs.edit().putInt("filler0", nextValue++).commit();
+    }
+
+    @Benchmark
+    public boolean rawEditorBatch() {
+        SharedPreferences.Editor editor = prefs.edit();
+        for (int i = 0; i < batchNames.length; i++) {
+            editor.putInt(batchNames[i], i);
+        }
+        return editor.commit();
+    }
+
+    private static class CountingVisitor implements EntryVisitor {
+        int count;
+
+        @Override
+        public boolean visit(Key<Object> key, Object value) {
+            count++;
+            return true;
+        }
+    }
+
+    private static class CountingListener implements TypedPreferences.Listener<Integer> {
+        int count;
+
+        @Override
+        public void onChanged(Key<Integer> key, Integer value) {
+            count++;
+        }
+    }
+}
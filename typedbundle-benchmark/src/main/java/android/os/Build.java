@@ -0,0 +1,17 @@
+package android.os;
+
+/**
+ * JVM stand-in for {@code android.os.Build}. Reports the newest api level the library targets so
+ * every code path is available.
+ */
+public final class Build {
+    private Build() {
+    }
+
+    public static final class VERSION {
+        public static final int SDK_INT = 22;
+
+        private VERSION() {
+        }
+    }
+}
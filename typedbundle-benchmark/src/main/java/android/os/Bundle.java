@@ -0,0 +1,614 @@
+package android.os;
+
+import android.util.Size;
+import android.util.SizeF;
+import android.util.SparseArray;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JVM stand-in for {@code android.os.Bundle}. Values are kept boxed in a map exactly like the
+ * framework class, so the relative cost of the typed wrapper over a raw bundle is preserved even
+ * though absolute numbers will differ from a device.
+ */
+public final class Bundle implements Parcelable, Cloneable {
+    public static final Bundle EMPTY = new Bundle(0);
+
+    final Map<String, Object> map;
+    private ClassLoader classLoader;
+
+    public Bundle() {
+        this(16);
+    }
+
+    public Bundle(ClassLoader loader) {
+        this();
+        this.classLoader = loader;
+    }
+
+    public Bundle(int capacity) {
+        map = new HashMap<>(capacity);
+        classLoader = getClass().getClassLoader();
+    }
+
+    public Bundle(Bundle b) {
+        map = new HashMap<>(b.map);
+        classLoader = b.classLoader;
+    }
+
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    public void setClassLoader(ClassLoader loader) {
+        classLoader = loader;
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    public void clear() {
+        map.clear();
+    }
+
+    public boolean containsKey(String key) {
+        return map.containsKey(key);
+    }
+
+    public Object get(String key) {
+        return map.get(key);
+    }
+
+    public void remove(String key) {
+        map.remove(key);
+    }
+
+    public void putAll(Bundle bundle) {
+        map.putAll(bundle.map);
+    }
+
+    public Set<String> keySet() {
+        return map.keySet();
+    }
+
+    @Override
+    public Object clone() {
+        return new Bundle(this);
+    }
+
+    public void putBinder(String key, IBinder value) {
+        map.put(key, value);
+    }
+
+    public void putBoolean(String key, boolean value) {
+        map.put(key, value);
+    }
+
+    public void putBooleanArray(String key, boolean[] value) {
+        map.put(key, value);
+    }
+
+    public void putBundle(String key, Bundle value) {
+        map.put(key, value);
+    }
+
+    public void putByte(String key, byte value) {
+        map.put(key, value);
+    }
+
+    public void putByteArray(String key, byte[] value) {
+        map.put(key, value);
+    }
+
+    public void putChar(String key, char value) {
+        map.put(key, value);
+    }
+
+    public void putCharArray(String key, char[] value) {
+        map.put(key, value);
+    }
+
+    public void putCharSequence(String key, CharSequence value) {
+        map.put(key, value);
+    }
+
+    public void putCharSequenceArray(String key, CharSequence[] value) {
+        map.put(key, value);
+    }
+
+    public void putCharSequenceArrayList(String key, ArrayList<CharSequence> value) {
+        map.put(key, value);
+    }
+
+    public void putDouble(String key, double value) {
+        map.put(key, value);
+    }
+
+    public void putDoubleArray(String key, double[] value) {
+        map.put(key, value);
+    }
+
+    public void putFloat(String key, float value) {
+        map.put(key, value);
+    }
+
+    public void putFloatArray(String key, float[] value) {
+        map.put(key, value);
+    }
+
+    public void putInt(String key, int value) {
+        map.put(key, value);
+    }
+
+    public void putIntArray(String key, int[] value) {
+        map.put(key, value);
+    }
+
+    public void putIntegerArrayList(String key, ArrayList<Integer> value) {
+        map.put(key, value);
+    }
+
+    public void putLong(String key, long value) {
+        map.put(key, value);
+    }
+
+    public void putLongArray(String key, long[] value) {
+        map.put(key, value);
+    }
+
+    public void putParcelable(String key, Parcelable value) {
+        map.put(key, value);
+    }
+
+    public void putParcelableArray(String key, Parcelable[] value) {
+        map.put(key, value);
+    }
+
+    public void putParcelableArrayList(String key, ArrayList<? extends Parcelable> value) {
+        map.put(key, value);
+    }
+
+    public void putSerializable(String key, Serializable value) {
+        map.put(key, value);
+    }
+
+    public void putShort(String key, short value) {
+        map.put(key, value);
+    }
+
+    public void putShortArray(String key, short[] value) {
+        map.put(key, value);
+    }
+
+    public void putSize(String key, Size value) {
+        map.put(key, value);
+    }
+
+    public void putSizeF(String key, SizeF value) {
+        map.put(key, value);
+    }
+
+    public void putSparseParcelableArray(String key, SparseArray<? extends Parcelable> value) {
+        map.put(key, value);
+    }
+
+    public void putString(String key, String value) {
+        map.put(key, value);
+    }
+
+    public void putStringArray(String key, String[] value) {
+        map.put(key, value);
+    }
+
+    public void putStringArrayList(String key, ArrayList<String> value) {
+        map.put(key, value);
+    }
+
+    public boolean getBoolean(String key) {
+        return getBoolean(key, false);
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Object o = map.get(key);
+        if (o == null) {
+            return defaultValue;
+        }
+        try {
+            return (Boolean) o;
+        } catch (ClassCastException e) {
+            return defaultValue;
+        }
+    }
+
+    public byte getByte(String key) {
+        return getByte(key, (byte) 0);
+    }
+
+    public Byte getByte(String key, byte defaultValue) {
+        Object o = map.get(key);
+        if (o == null) {
+            return defaultValue;
+        }
+        try {
+            return (Byte) o;
+        } catch (ClassCastException e) {
+            return defaultValue;
+        }
+    }
+
+    public char getChar(String key) {
+        return getChar(key, (char) 0);
+    }
+
+    public char getChar(String key, char defaultValue) {
+        Object o = map.get(key);
+        if (o == null) {
+            return defaultValue;
+        }
+        try {
+            return (Character) o;
+        } catch (ClassCastException e) {
+            return defaultValue;
+        }
+    }
+
+    public short getShort(String key) {
+        return getShort(key, (short) 0);
+    }
+
+    public short getShort(String key, short defaultValue) {
+        Object o = map.get(key);
+        if (o == null) {
+            return defaultValue;
+        }
+        try {
+            return (Short) o;
+        } catch (ClassCastException e) {
+            return defaultValue;
+        }
+    }
+
+    public int getInt(String key) {
+        return getInt(key, 0);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        Object o = map.get(key);
+        if (o == null) {
+            return defaultValue;
+        }
+        try {
+            return (Integer) o;
+        } catch (ClassCastException e) {
+            return defaultValue;
+        }
+    }
+
+    public long getLong(String key) {
+        return getLong(key, 0L);
+    }
+
+    public long getLong(String key, long defaultValue) {
+        Object o = map.get(key);
+        if (o == null) {
+            return defaultValue;
+        }
+        try {
+            return (Long) o;
+        } catch (ClassCastException e) {
+            return defaultValue;
+        }
+    }
+
+    public float getFloat(String key) {
+        return getFloat(key, 0f);
+    }
+
+    public float getFloat(String key, float defaultValue) {
+        Object o = map.get(key);
+        if (o == null) {
+            return defaultValue;
+        }
+        try {
+            return (Float) o;
+        } catch (ClassCastException e) {
+            return defaultValue;
+        }
+    }
+
+    public double getDouble(String key) {
+        return getDouble(key, 0d);
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        Object o = map.get(key);
+        if (o == null) {
+            return defaultValue;
+        }
+        try {
+            return (Double) o;
+        } catch (ClassCastException e) {
+            return defaultValue;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public IBinder getBinder(String key) {
+        Object o = map.get(key);
+        try {
+            return (IBinder) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public boolean[] getBooleanArray(String key) {
+        Object o = map.get(key);
+        try {
+            return (boolean[]) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public Bundle getBundle(String key) {
+        Object o = map.get(key);
+        try {
+            return (Bundle) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public byte[] getByteArray(String key) {
+        Object o = map.get(key);
+        try {
+            return (byte[]) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public char[] getCharArray(String key) {
+        Object o = map.get(key);
+        try {
+            return (char[]) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public CharSequence getCharSequence(String key) {
+        Object o = map.get(key);
+        try {
+            return (CharSequence) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public CharSequence[] getCharSequenceArray(String key) {
+        Object o = map.get(key);
+        try {
+            return (CharSequence[]) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public ArrayList<CharSequence> getCharSequenceArrayList(String key) {
+        Object o = map.get(key);
+        try {
+            return (ArrayList<CharSequence>) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public double[] getDoubleArray(String key) {
+        Object o = map.get(key);
+        try {
+            return (double[]) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public float[] getFloatArray(String key) {
+        Object o = map.get(key);
+        try {
+            return (float[]) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public int[] getIntArray(String key) {
+        Object o = map.get(key);
+        try {
+            return (int[]) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public ArrayList<Integer> getIntegerArrayList(String key) {
+        Object o = map.get(key);
+        try {
+            return (ArrayList<Integer>) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public long[] getLongArray(String key) {
+        Object o = map.get(key);
+        try {
+            return (long[]) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public Serializable getSerializable(String key) {
+        Object o = map.get(key);
+        try {
+            return (Serializable) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public short[] getShortArray(String key) {
+        Object o = map.get(key);
+        try {
+            return (short[]) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public Size getSize(String key) {
+        Object o = map.get(key);
+        try {
+            return (Size) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public SizeF getSizeF(String key) {
+        Object o = map.get(key);
+        try {
+            return (SizeF) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public String getString(String key) {
+        Object o = map.get(key);
+        try {
+            return (String) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public String[] getStringArray(String key) {
+        Object o = map.get(key);
+        try {
+            return (String[]) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public ArrayList<String> getStringArrayList(String key) {
+        Object o = map.get(key);
+        try {
+            return (ArrayList<String>) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    public String getString(String key, String defaultValue) {
+        String s = getString(key);
+        return s == null ? defaultValue : s;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends Parcelable> T getParcelable(String key) {
+        Object o = map.get(key);
+        try {
+            return (T) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    public Parcelable[] getParcelableArray(String key) {
+        Object o = map.get(key);
+        try {
+            return (Parcelable[]) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends Parcelable> ArrayList<T> getParcelableArrayList(String key) {
+        Object o = map.get(key);
+        try {
+            return (ArrayList<T>) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends Parcelable> SparseArray<T> getSparseParcelableArray(String key) {
+        Object o = map.get(key);
+        try {
+            return (SparseArray<T>) o;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeBundle(this);
+    }
+
+    public static final Parcelable.Creator<Bundle> CREATOR = new Parcelable.Creator<Bundle>() {
+        @Override
+        public Bundle createFromParcel(Parcel source) {
+            return source.readBundle();
+        }
+
+        @Override
+        public Bundle[] newArray(int size) {
+            return new Bundle[size];
+        }
+    };
+
+    @Override
+    public String toString() {
+        return "Bundle[" + map + "]";
+    }
+}
@@ -0,0 +1,8 @@
+package android.os;
+
+/**
+ * JVM stand-in for {@code android.os.IBinder}. Binders are passed by reference through
+ * {@link Parcel}.
+ */
+public interface IBinder {
+}
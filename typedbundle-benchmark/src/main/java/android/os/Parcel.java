@@ -0,0 +1,554 @@
+package android.os;
+
+import android.util.Size;
+import android.util.SizeF;
+import android.util.SparseArray;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JVM stand-in for {@code android.os.Parcel}. Data is written into a growable byte array with
+ * the same 4-byte alignment, type tags and string layout that the framework uses, so marshalling
+ * costs scale the same way they do on a device. Binders are kept by reference.
+ */
+public final class Parcel {
+    private static final int VAL_NULL = -1;
+    private static final int VAL_STRING = 0;
+    private static final int VAL_INTEGER = 1;
+    private static final int VAL_BUNDLE = 3;
+    private static final int VAL_PARCELABLE = 4;
+    private static final int VAL_SHORT = 5;
+    private static final int VAL_LONG = 6;
+    private static final int VAL_FLOAT = 7;
+    private static final int VAL_DOUBLE = 8;
+    private static final int VAL_BOOLEAN = 9;
+    private static final int VAL_CHARSEQUENCE = 10;
+    private static final int VAL_LIST = 11;
+    private static final int VAL_SPARSEARRAY = 12;
+    private static final int VAL_BYTEARRAY = 13;
+    private static final int VAL_STRINGARRAY = 14;
+    private static final int VAL_IBINDER = 15;
+    private static final int VAL_PARCELABLEARRAY = 16;
+    private static final int VAL_INTARRAY = 18;
+    private static final int VAL_LONGARRAY = 19;
+    private static final int VAL_BYTE = 20;
+    private static final int VAL_SERIALIZABLE = 21;
+    private static final int VAL_BOOLEANARRAY = 23;
+    private static final int VAL_CHARSEQUENCEARRAY = 24;
+    private static final int VAL_SIZE = 25;
+    private static final int VAL_SIZEF = 26;
+    private static final int VAL_DOUBLEARRAY = 28;
+
+    private static final Map<ClassLoader, Map<String, Parcelable.Creator<?>>> CREATORS = new HashMap<>();
+
+    private byte[] data = new byte[256];
+    private int position;
+    private int size;
+    private final List<IBinder> binders = new ArrayList<>();
+
+    private Parcel() {
+    }
+
+    public static Parcel obtain() {
+        return new Parcel();
+    }
+
+    public void recycle() {
+        position = 0;
+        size = 0;
+        binders.clear();
+    }
+
+    public int dataSize() {
+        return size;
+    }
+
+    public int dataPosition() {
+        return position;
+    }
+
+    public void setDataPosition(int pos) {
+        position = pos;
+    }
+
+    public byte[] marshall() {
+        return Arrays.copyOf(data, size);
+    }
+
+    public void unmarshall(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, data, 0, length);
+        size = length;
+        position = 0;
+    }
+
+    private void ensureCapacity(int extra) {
+        int required = position + extra;
+        if (required > data.length) {
+            data = Arrays.copyOf(data, Math.max(required, data.length * 2));
+        }
+    }
+
+    private void advance(int n) {
+        position += n;
+        if (position > size) {
+            size = position;
+        }
+    }
+
+    public void writeInt(int val) {
+        ensureCapacity(4);
+        data[position] = (byte) val;
+        data[position + 1] = (byte) (val >> 8);
+        data[position + 2] = (byte) (val >> 16);
+        data[position + 3] = (byte) (val >> 24);
+        advance(4);
+    }
+
+    public int readInt() {
+        int val = (data[position] & 0xFF)
+                | (data[position + 1] & 0xFF) << 8
+                | (data[position + 2] & 0xFF) << 16
+                | (data[position + 3] & 0xFF) << 24;
+        position += 4;
+        return val;
+    }
+
+    public void writeLong(long val) {
+        writeInt((int) val);
+        writeInt((int) (val >>> 32));
+    }
+
+    public long readLong() {
+        long low = readInt() & 0xFFFFFFFFL;
+        long high = readInt() & 0xFFFFFFFFL;
+        return low | (high << 32);
+    }
+
+    public void writeFloat(float val) {
+        writeInt(Float.floatToRawIntBits(val));
+    }
+
+    public float readFloat() {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    public void writeDouble(double val) {
+        writeLong(Double.doubleToRawLongBits(val));
+    }
+
+    public double readDouble() {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    public void writeByte(byte val) {
+        writeInt(val);
+    }
+
+    public byte readByte() {
+        return (byte) readInt();
+    }
+
+    public void writeString(String val) {
+        if (val == null) {
+            writeInt(-1);
+            return;
+        }
+        int length = val.length();
+        writeInt(length);
+        int bytes = ((length + 1) * 2 + 3) & ~3;
+        ensureCapacity(bytes);
+        for (int i = 0; i < length; i++) {
+            char c = val.charAt(i);
+            data[position + i * 2] = (byte) c;
+            data[position + i * 2 + 1] = (byte) (c >> 8);
+        }
+        Arrays.fill(data, position + length * 2, position + bytes, (byte) 0);
+        advance(bytes);
+    }
+
+    public String readString() {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ((data[position + i * 2] & 0xFF) | (data[position + i * 2 + 1] & 0xFF) << 8);
+        }
+        position += ((length + 1) * 2 + 3) & ~3;
+        return new String(chars);
+    }
+
+    public void writeByteArray(byte[] b) {
+        if (b == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(b.length);
+        int bytes = (b.length + 3) & ~3;
+        ensureCapacity(bytes);
+        System.arraycopy(b, 0, data, position, b.length);
+        advance(bytes);
+    }
+
+    public byte[] createByteArray() {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] b = Arrays.copyOfRange(data, position, position + length);
+        position += (length + 3) & ~3;
+        return b;
+    }
+
+    public void writeStrongBinder(IBinder val) {
+        writeInt(binders.size());
+        binders.add(val);
+    }
+
+    public IBinder readStrongBinder() {
+        return binders.get(readInt());
+    }
+
+    public void writeBundle(Bundle val) {
+        if (val == null) {
+            writeInt(-1);
+            return;
+        }
+        int lengthPos = position;
+        writeInt(0);
+        int startPos = position;
+        writeInt(val.map.size());
+        for (Map.Entry<String, Object> entry : val.map.entrySet()) {
+            writeString(entry.getKey());
+            writeValue(entry.getValue());
+        }
+        int endPos = position;
+        position = lengthPos;
+        writeInt(endPos - startPos);
+        position = endPos;
+    }
+
+    public Bundle readBundle() {
+        return readBundle(null);
+    }
+
+    public Bundle readBundle(ClassLoader loader) {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        int count = readInt();
+        Bundle bundle = new Bundle(count);
+        if (loader != null) {
+            bundle.setClassLoader(loader);
+        }
+        for (int i = 0; i < count; i++) {
+            String key = readString();
+            bundle.map.put(key, readValue(bundle.getClassLoader()));
+        }
+        return bundle;
+    }
+
+    public void writeParcelable(Parcelable p, int flags) {
+        if (p == null) {
+            writeString(null);
+            return;
+        }
+        writeString(p.getClass().getName());
+        p.writeToParcel(this, flags);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends Parcelable> T readParcelable(ClassLoader loader) {
+        String name = readString();
+        if (name == null) {
+            return null;
+        }
+        return (T) findCreator(name, loader).createFromParcel(this);
+    }
+
+    private static Parcelable.Creator<?> findCreator(String name, ClassLoader loader) {
+        if (loader == null) {
+            loader = Parcel.class.getClassLoader();
+        }
+        synchronized (CREATORS) {
+            Map<String, Parcelable.Creator<?>> map = CREATORS.get(loader);
+            if (map == null) {
+                map = new HashMap<>();
+                CREATORS.put(loader, map);
+            }
+            Parcelable.Creator<?> creator = map.get(name);
+            if (creator == null) {
+                try {
+                    Class<?> c = Class.forName(name, true, loader);
+                    Field f = c.getField("CREATOR");
+                    creator = (Parcelable.Creator<?>) f.get(null);
+                } catch (ReflectiveOperationException e) {
+                    throw new RuntimeException("Unmarshalling unknown type " + name, e);
+                }
+                map.put(name, creator);
+            }
+            return creator;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void writeValue(Object v) {
+        if (v == null) {
+            writeInt(VAL_NULL);
+        } else if (v instanceof String) {
+            writeInt(VAL_STRING);
+            writeString((String) v);
+        } else if (v instanceof Integer) {
+            writeInt(VAL_INTEGER);
+            writeInt((Integer) v);
+        } else if (v instanceof Bundle) {
+            writeInt(VAL_BUNDLE);
+            writeBundle((Bundle) v);
+        } else if (v instanceof Parcelable) {
+            writeInt(VAL_PARCELABLE);
+            writeParcelable((Parcelable) v, 0);
+        } else if (v instanceof Short) {
+            writeInt(VAL_SHORT);
+            writeInt(((Short) v).intValue());
+        } else if (v instanceof Long) {
+            writeInt(VAL_LONG);
+            writeLong((Long) v);
+        } else if (v instanceof Float) {
+            writeInt(VAL_FLOAT);
+            writeFloat((Float) v);
+        } else if (v instanceof Double) {
+            writeInt(VAL_DOUBLE);
+            writeDouble((Double) v);
+        } else if (v instanceof Boolean) {
+            writeInt(VAL_BOOLEAN);
+            writeInt((Boolean) v ? 1 : 0);
+        } else if (v instanceof CharSequence) {
+            writeInt(VAL_CHARSEQUENCE);
+            writeString(v.toString());
+        } else if (v instanceof List) {
+            writeInt(VAL_LIST);
+            List<Object> list = (List<Object>) v;
+            writeInt(list.size());
+            for (Object item : list) {
+                writeValue(item);
+            }
+        } else if (v instanceof SparseArray) {
+            writeInt(VAL_SPARSEARRAY);
+            SparseArray<Object> array = (SparseArray<Object>) v;
+            writeInt(array.size());
+            for (int i = 0; i < array.size(); i++) {
+                writeInt(array.keyAt(i));
+                writeValue(array.valueAt(i));
+            }
+        } else if (v instanceof boolean[]) {
+            writeInt(VAL_BOOLEANARRAY);
+            boolean[] array = (boolean[]) v;
+            writeInt(array.length);
+            for (boolean b : array) {
+                writeInt(b ? 1 : 0);
+            }
+        } else if (v instanceof byte[]) {
+            writeInt(VAL_BYTEARRAY);
+            writeByteArray((byte[]) v);
+        } else if (v instanceof String[]) {
+            writeInt(VAL_STRINGARRAY);
+            String[] array = (String[]) v;
+            writeInt(array.length);
+            for (String s : array) {
+                writeString(s);
+            }
+        } else if (v instanceof CharSequence[]) {
+            writeInt(VAL_CHARSEQUENCEARRAY);
+            CharSequence[] array = (CharSequence[]) v;
+            writeInt(array.length);
+            for (CharSequence s : array) {
+                writeString(s == null ? null : s.toString());
+            }
+        } else if (v instanceof IBinder) {
+            writeInt(VAL_IBINDER);
+            writeStrongBinder((IBinder) v);
+        } else if (v instanceof Parcelable[]) {
+            writeInt(VAL_PARCELABLEARRAY);
+            Parcelable[] array = (Parcelable[]) v;
+            writeInt(array.length);
+            for (Parcelable p : array) {
+                writeParcelable(p, 0);
+            }
+        } else if (v instanceof int[]) {
+            writeInt(VAL_INTARRAY);
+            int[] array = (int[]) v;
+            writeInt(array.length);
+            for (int i : array) {
+                writeInt(i);
+            }
+        } else if (v instanceof long[]) {
+            writeInt(VAL_LONGARRAY);
+            long[] array = (long[]) v;
+            writeInt(array.length);
+            for (long l : array) {
+                writeLong(l);
+            }
+        } else if (v instanceof Byte) {
+            writeInt(VAL_BYTE);
+            writeInt((Byte) v);
+        } else if (v instanceof Size) {
+            writeInt(VAL_SIZE);
+            writeInt(((Size) v).getWidth());
+            writeInt(((Size) v).getHeight());
+        } else if (v instanceof SizeF) {
+            writeInt(VAL_SIZEF);
+            writeFloat(((SizeF) v).getWidth());
+            writeFloat(((SizeF) v).getHeight());
+        } else if (v instanceof double[]) {
+            writeInt(VAL_DOUBLEARRAY);
+            double[] array = (double[]) v;
+            writeInt(array.length);
+            for (double d : array) {
+                writeDouble(d);
+            }
+        } else if (v instanceof Serializable) {
+            writeInt(VAL_SERIALIZABLE);
+            writeString(v.getClass().getName());
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                ObjectOutputStream out = new ObjectOutputStream(bytes);
+                out.writeObject(v);
+                out.close();
+            } catch (IOException e) {
+                throw new RuntimeException("Parcelable encountered IOException writing serializable object", e);
+            }
+            writeByteArray(bytes.toByteArray());
+        } else {
+            throw new RuntimeException("Parcel: unable to marshal value " + v);
+        }
+    }
+
+    public Object readValue(ClassLoader loader) {
+        int type = readInt();
+        switch (type) {
+            case VAL_NULL:
+                return null;
+            case VAL_STRING:
+            case VAL_CHARSEQUENCE:
+                return readString();
+            case VAL_INTEGER:
+                return readInt();
+            case VAL_BUNDLE:
+                return readBundle(loader);
+            case VAL_PARCELABLE:
+                return readParcelable(loader);
+            case VAL_SHORT:
+                return (short) readInt();
+            case VAL_LONG:
+                return readLong();
+            case VAL_FLOAT:
+                return readFloat();
+            case VAL_DOUBLE:
+                return readDouble();
+            case VAL_BOOLEAN:
+                return readInt() != 0;
+            case VAL_LIST: {
+                int n = readInt();
+                ArrayList<Object> list = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    list.add(readValue(loader));
+                }
+                return list;
+            }
+            case VAL_SPARSEARRAY: {
+                int n = readInt();
+                SparseArray<Object> array = new SparseArray<>(n);
+                for (int i = 0; i < n; i++) {
+                    int key = readInt();
+                    array.append(key, readValue(loader));
+                }
+                return array;
+            }
+            case VAL_BOOLEANARRAY: {
+                boolean[] array = new boolean[readInt()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = readInt() != 0;
+                }
+                return array;
+            }
+            case VAL_BYTEARRAY:
+                return createByteArray();
+            case VAL_STRINGARRAY: {
+                String[] array = new String[readInt()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = readString();
+                }
+                return array;
+            }
+            case VAL_CHARSEQUENCEARRAY: {
+                CharSequence[] array = new CharSequence[readInt()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = readString();
+                }
+                return array;
+            }
+            case VAL_IBINDER:
+                return readStrongBinder();
+            case VAL_PARCELABLEARRAY: {
+                Parcelable[] array = new Parcelable[readInt()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = readParcelable(loader);
+                }
+                return array;
+            }
+            case VAL_INTARRAY: {
+                int[] array = new int[readInt()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = readInt();
+                }
+                return array;
+            }
+            case VAL_LONGARRAY: {
+                long[] array = new long[readInt()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = readLong();
+                }
+                return array;
+            }
+            case VAL_BYTE:
+                return (byte) readInt();
+            case VAL_SIZE:
+                return new Size(readInt(), readInt());
+            case VAL_SIZEF:
+                return new SizeF(readFloat(), readFloat());
+            case VAL_DOUBLEARRAY: {
+                double[] array = new double[readInt()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = readDouble();
+                }
+                return array;
+            }
+            case VAL_SERIALIZABLE: {
+                readString();
+                byte[] bytes = createByteArray();
+                try {
+                    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+                    return in.readObject();
+                } catch (IOException | ClassNotFoundException e) {
+                    throw new RuntimeException("Parcelable encountered exception reading serializable object", e);
+                }
+            }
+            default:
+                throw new RuntimeException("Parcel: unmarshalling unknown type code " + type + " at offset " + (position - 4));
+        }
+    }
+}
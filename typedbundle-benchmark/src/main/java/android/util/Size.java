@@ -0,0 +1,40 @@
+package android.util;
+
+/**
+ * JVM stand-in for {@code android.util.Size}.
+ */
+public final class Size {
+    private final int width;
+    private final int height;
+
+    public Size(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Size)) return false;
+        Size size = (Size) o;
+        return width == size.width && height == size.height;
+    }
+
+    @Override
+    public int hashCode() {
+        return height ^ ((width << (Integer.SIZE / 2)) | (width >>> (Integer.SIZE / 2)));
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height;
+    }
+}
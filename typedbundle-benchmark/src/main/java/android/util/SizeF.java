@@ -0,0 +1,40 @@
+package android.util;
+
+/**
+ * JVM stand-in for {@code android.util.SizeF}.
+ */
+public final class SizeF {
+    private final float width;
+    private final float height;
+
+    public SizeF(float width, float height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SizeF)) return false;
+        SizeF size = (SizeF) o;
+        return width == size.width && height == size.height;
+    }
+
+    @Override
+    public int hashCode() {
+        return Float.floatToIntBits(width) ^ Float.floatToIntBits(height);
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height;
+    }
+}
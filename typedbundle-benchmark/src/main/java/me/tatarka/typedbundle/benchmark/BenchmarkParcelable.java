@@ -0,0 +1,45 @@
+package me.tatarka.typedbundle.benchmark;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * A small {@link Parcelable} used as a representative value in benchmarks.
+ */
+public class BenchmarkParcelable implements Parcelable {
+    private final int id;
+    private final String name;
+
+    public BenchmarkParcelable(int id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    private BenchmarkParcelable(Parcel in) {
+        this.id = in.readInt();
+        this.name = in.readString();
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(id);
+        dest.writeString(name);
+    }
+
+    public static final Creator<BenchmarkParcelable> CREATOR = new Creator<BenchmarkParcelable>() {
+        @Override
+        public BenchmarkParcelable createFromParcel(Parcel source) {
+            return new BenchmarkParcelable(source);
+        }
+
+        @Override
+        public BenchmarkParcelable[] newArray(int size) {
+            return new BenchmarkParcelable[size];
+        }
+    };
+}
@@ -0,0 +1,188 @@
+package me.tatarka.typedbundle.benchmark;
+
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An in-memory {@link SharedPreferences} that mirrors the locking and copying behavior of the
+ * framework implementation (every read takes the instance lock, {@link #getAll()} copies the map
+ * and commits merge a batch of changes under the lock) without touching the disk.
+ */
+public class InMemorySharedPreferences implements SharedPreferences {
+    private static final Object REMOVE = new Object();
+
+    private final Map<String, Object> map = new HashMap<>();
+    private final List<OnSharedPreferenceChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public Map<String, ?> getAll() {
+        synchronized (this) {
+            return new HashMap<>(map);
+        }
+    }
+
+    @Override
+    public String getString(String key, String defValue) {
+        synchronized (this) {
+            String v = (String) map.get(key);
+            return v != null ? v : defValue;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<String> getStringSet(String key, Set<String> defValues) {
+        synchronized (this) {
+            Set<String> v = (Set<String>) map.get(key);
+            return v != null ? v : defValues;
+        }
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        synchronized (this) {
+            Integer v = (Integer) map.get(key);
+            return v != null ? v : defValue;
+        }
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        synchronized (this) {
+            Long v = (Long) map.get(key);
+            return v != null ? v : defValue;
+        }
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        synchronized (this) {
+            Float v = (Float) map.get(key);
+            return v != null ? v : defValue;
+        }
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        synchronized (this) {
+            Boolean v = (Boolean) map.get(key);
+            return v != null ? v : defValue;
+        }
+    }
+
+    @Override
+    public boolean contains(String key) {
+        synchronized (this) {
+            return map.containsKey(key);
+        }
+    }
+
+    @Override
+    public Editor edit() {
+        return new EditorImpl();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    private class EditorImpl implements Editor {
+        private final Map<String, Object> modified = new HashMap<>();
+        private boolean clear;
+
+        @Override
+        public synchronized Editor putString(String key, String value) {
+            modified.put(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor putStringSet(String key, Set<String> values) {
+            modified.put(key, values == null ? null : new HashSet<>(values));
+            return this;
+        }
+
+        @Override
+        public synchronized Editor putInt(String key, int value) {
+            modified.put(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor putLong(String key, long value) {
+            modified.put(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor putFloat(String key, float value) {
+            modified.put(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor putBoolean(String key, boolean value) {
+            modified.put(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor remove(String key) {
+            modified.put(key, REMOVE);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor clear() {
+            clear = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            List<String> changed = new ArrayList<>();
+            synchronized (InMemorySharedPreferences.this) {
+                synchronized (this) {
+                    if (clear) {
+                        map.clear();
+                        clear = false;
+                    }
+                    for (Map.Entry<String, Object> entry : modified.entrySet()) {
+                        Object v = entry.getValue();
+                        if (v == REMOVE || v == null) {
+                            map.remove(entry.getKey());
+                        } else {
+                            map.put(entry.getKey(), v);
+                        }
+                        changed.add(entry.getKey());
+                    }
+                    modified.clear();
+                }
+            }
+            for (String key : changed) {
+                for (OnSharedPreferenceChangeListener listener : listeners) {
+                    listener.onSharedPreferenceChanged(InMemorySharedPreferences.this, key);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void apply() {
+            commit();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package me.tatarka.typedbundle;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the encodings written by {@link BinaryWriter} from a {@link ByteBuffer}. Truncated input
+ * throws {@link BufferUnderflowException}.
+ */
+final class BinaryReader {
+    private final ByteBuffer buf;
+
+    BinaryReader(ByteBuffer buf) {
+        this.buf = buf;
+    }
+
+    boolean hasRemaining() {
+        return buf.hasRemaining();
+    }
+
+    int position() {
+        return buf.position();
+    }
+
+    int readByte() {
+        return buf.get();
+    }
+
+    int readVarInt() {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = buf.get();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    long readVarLong() {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = buf.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    int readZigZagInt() {
+        int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    long readZigZagLong() {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    int readFixedInt() {
+        return buf.getInt();
+    }
+
+    long readFixedLong() {
+        return buf.getLong();
+    }
+
+    float readFloat() {
+        return buf.getFloat();
+    }
+
+    double readDouble() {
+        return buf.getDouble();
+    }
+
+    String readString() {
+        int length = readVarInt() - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > buf.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value;
+        if (buf.hasArray()) {
+            value = BinaryWriter.decodeUtf8(buf.array(), buf.arrayOffset() + buf.position(), length);
+            buf.position(buf.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buf.get(bytes);
+            value = BinaryWriter.decodeUtf8(bytes, 0, length);
+        }
+        return value;
+    }
+
+    /**
+     * Reads an element count, checking it against the remaining input assuming every element takes
+     * at least one byte.
+     */
+    int readCount() {
+        return readLength(1);
+    }
+
+    private int readLength(int elementSize) {
+        int length = readVarInt();
+        if (length < 0 || (long) length * elementSize > buf.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return length;
+    }
+
+    private ByteBuffer block(int bytes) {
+        ByteBuffer block = buf.slice();
+        block.limit(bytes);
+        buf.position(buf.position() + bytes);
+        return block;
+    }
+
+    boolean[] readBooleanArray() {
+        boolean[] value = new boolean[readLength(1)];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = buf.get() != 0;
+        }
+        return value;
+    }
+
+    byte[] readByteArray() {
+        byte[] value = new byte[readLength(1)];
+        buf.get(value);
+        return value;
+    }
+
+    char[] readCharArray() {
+        char[] value = new char[readLength(2)];
+        block(value.length * 2).asCharBuffer().get(value);
+        return value;
+    }
+
+    short[] readShortArray() {
+        short[] value = new short[readLength(2)];
+        block(value.length * 2).asShortBuffer().get(value);
+        return value;
+    }
+
+    int[] readIntArray() {
+        int[] value = new int[readLength(4)];
+        block(value.length * 4).asIntBuffer().get(value);
+        return value;
+    }
+
+    long[] readLongArray() {
+        long[] value = new long[readLength(8)];
+        block(value.length * 8).asLongBuffer().get(value);
+        return value;
+    }
+
+    float[] readFloatArray() {
+        float[] value = new float[readLength(4)];
+        block(value.length * 4).asFloatBuffer().get(value);
+        return value;
+    }
+
+    double[] readDoubleArray() {
+        double[] value = new double[readLength(8)];
+        block(value.length * 8).asDoubleBuffer().get(value);
+        return value;
+    }
+}
@@ -0,0 +1,205 @@
+package me.tatarka.typedbundle;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes varints, raw primitive blocks and strings into a growable byte array.
+ * <p/>
+ * This runs on Android API 8, so it sticks to {@link String#getBytes(String)} and
+ * {@link System#arraycopy(Object, int, Object, int, int)} instead of the {@code Charset} and
+ * {@code Arrays.copyOf} methods added in API 9.
+ */
+final class BinaryWriter {
+    static final String UTF_8 = "UTF-8";
+
+    private byte[] buf;
+    private int pos;
+
+    BinaryWriter(int initialCapacity) {
+        buf = new byte[Math.max(initialCapacity, 16)];
+    }
+
+    int size() {
+        return pos;
+    }
+
+    void reset() {
+        pos = 0;
+    }
+
+    byte[] toByteArray() {
+        return copyOf(buf, pos);
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, pos);
+    }
+
+    void writeTo(ByteBuffer out) {
+        out.put(buf, 0, pos);
+    }
+
+    private void ensureCapacity(int extra) {
+        int required = pos + extra;
+        if (required > buf.length) {
+            buf = copyOf(buf, Math.max(required, buf.length * 2));
+        }
+    }
+
+    private ByteBuffer block(int bytes) {
+        ensureCapacity(bytes);
+        ByteBuffer block = ByteBuffer.wrap(buf, pos, bytes);
+        pos += bytes;
+        return block;
+    }
+
+    void writeByte(int value) {
+        ensureCapacity(1);
+        buf[pos++] = (byte) value;
+    }
+
+    void writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte) value;
+    }
+
+    void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte) value;
+    }
+
+    void writeZigZagInt(int value) {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    void writeZigZagLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    void writeFixedInt(int value) {
+        ensureCapacity(4);
+        buf[pos++] = (byte) (value >> 24);
+        buf[pos++] = (byte) (value >> 16);
+        buf[pos++] = (byte) (value >> 8);
+        buf[pos++] = (byte) value;
+    }
+
+    void writeFixedLong(long value) {
+        writeFixedInt((int) (value >> 32));
+        writeFixedInt((int) value);
+    }
+
+    void writeFloat(float value) {
+        writeFixedInt(Float.floatToIntBits(value));
+    }
+
+    void writeDouble(double value) {
+        writeFixedLong(Double.doubleToLongBits(value));
+    }
+
+    /**
+     * Writes a string as its utf-8 length plus one followed by the bytes, so that a length of 0
+     * can represent null.
+     */
+    void writeString(String value) {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        byte[] bytes = encodeUtf8(value);
+        writeVarInt(bytes.length + 1);
+        writeRaw(bytes);
+    }
+
+    void writeRaw(byte[] value) {
+        ensureCapacity(value.length);
+        System.arraycopy(value, 0, buf, pos, value.length);
+        pos += value.length;
+    }
+
+    void writeBooleanArray(boolean[] value) {
+        writeVarInt(value.length);
+        ensureCapacity(value.length);
+        for (boolean b : value) {
+            buf[pos++] = (byte) (b ? 1 : 0);
+        }
+    }
+
+    void writeByteArray(byte[] value) {
+        writeVarInt(value.length);
+        writeRaw(value);
+    }
+
+    void writeCharArray(char[] value) {
+        writeVarInt(value.length);
+        block(value.length * 2).asCharBuffer().put(value);
+    }
+
+    void writeShortArray(short[] value) {
+        writeVarInt(value.length);
+        block(value.length * 2).asShortBuffer().put(value);
+    }
+
+    void writeIntArray(int[] value) {
+        writeVarInt(value.length);
+        block(value.length * 4).asIntBuffer().put(value);
+    }
+
+    void writeLongArray(long[] value) {
+        writeVarInt(value.length);
+        block(value.length * 8).asLongBuffer().put(value);
+    }
+
+    void writeFloatArray(float[] value) {
+        writeVarInt(value.length);
+        block(value.length * 4).asFloatBuffer().put(value);
+    }
+
+    void writeDoubleArray(double[] value) {
+        writeVarInt(value.length);
+        block(value.length * 8).asDoubleBuffer().put(value);
+    }
+
+    /**
+     * Returns the utf-8 bytes of the string.
+     */
+    static byte[] encodeUtf8(String value) {
+        try {
+            return value.getBytes(UTF_8);
+        } catch (UnsupportedEncodingException e) {
+            // Every platform supports utf-8.
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Decodes utf-8 bytes into a string.
+     */
+    static String decodeUtf8(byte[] bytes, int offset, int length) {
+        try {
+            return new String(bytes, offset, length, UTF_8);
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Copies the array into a new one of the given length, truncating or padding with zeros.
+     */
+    static byte[] copyOf(byte[] array, int length) {
+        byte[] copy = new byte[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+}
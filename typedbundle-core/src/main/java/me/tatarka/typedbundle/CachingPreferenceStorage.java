@@ -0,0 +1,304 @@
+package me.tatarka.typedbundle;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Wraps a {@link PreferenceStorage}, serving reads from an in-memory snapshot of its values. Reads
+ * don't take any lock. Whenever the wrapped storage reports a change or an editor from this
+ * storage writes, the changed values are read again into a copy of the snapshot, the rest of it is
+ * kept.
+ * <p/>
+ * This only sees changes the wrapped storage reports to its listeners.
+ */
+public class CachingPreferenceStorage implements PreferenceStorage {
+    private final PreferenceStorage storage;
+    /**
+     * Holds the current snapshot. Every change swaps in a new one so that a rebuild or update that
+     * raced with it doesn't get installed.
+     */
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(new Snapshot(null));
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Listener invalidator = new Listener() {
+        @Override
+        public void onChanged(PreferenceStorage storage, String name) {
+            update(name);
+            for (Listener listener : listeners) {
+                listener.onChanged(CachingPreferenceStorage.this, name);
+            }
+        }
+    };
+
+    /**
+     * Constructs a {@code CachingPreferenceStorage} wrapping the given storage. It registers a
+     * listener on the storage, which may only hold it weakly, so keep this instance alive while
+     * it's in use.
+     *
+     * @param storage the storage to wrap
+     */
+    public CachingPreferenceStorage(PreferenceStorage storage) {
+        if (storage == null) {
+            throw new NullPointerException("storage cannot be null");
+        }
+        this.storage = storage;
+        storage.registerListener(invalidator);
+    }
+
+    /**
+     * Returns the wrapped storage.
+     *
+     * @return the storage
+     */
+    public PreferenceStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Throws away the snapshot, the next read rebuilds it. Call this if the wrapped storage was
+     * changed in a way it doesn't report.
+     */
+    public void invalidate() {
+        snapshot.set(new Snapshot(null));
+    }
+
+    /**
+     * Reads the value for the given name again into a copy of the snapshot. A null name means
+     * anything may have changed, so the snapshot is thrown away instead.
+     */
+    private void update(String name) {
+        if (name == null) {
+            invalidate();
+            return;
+        }
+        while (true) {
+            Snapshot current = snapshot.get();
+            Snapshot next;
+            if (current.values == null) {
+                next = new Snapshot(null);
+            } else {
+                // Read inside the loop, a failed swap means the value may have changed again.
+                Object value = storage.get(name);
+                Map<String, Object> values = new HashMap<>(current.values);
+                if (value == null) {
+                    values.remove(name);
+                } else {
+                    values.put(name, value);
+                }
+                next = new Snapshot(Collections.unmodifiableMap(values));
+            }
+            if (snapshot.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the current values, rebuilding the snapshot if it was invalidated.
+     */
+    private Map<String, ?> values() {
+        Snapshot current = snapshot.get();
+        if (current.values != null) {
+            return current.values;
+        }
+        Map<String, ?> values = Collections.unmodifiableMap(storage.getAll());
+        // If this fails the storage changed while reading it, the values are still good for this
+        // read but must not be cached.
+        snapshot.compareAndSet(current, new Snapshot(values));
+        return values;
+    }
+
+    @Override
+    public boolean contains(String name) {
+        return values().containsKey(name);
+    }
+
+    @Override
+    public Object get(String name) {
+        return values().get(name);
+    }
+
+    @Override
+    public String getString(String name, String defValue) {
+        Object value = values().get(name);
+        return value instanceof String ? (String) value : defValue;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<String> getStringSet(String name, Set<String> defValue) {
+        Object value = values().get(name);
+        return value instanceof Set ? (Set<String>) value : defValue;
+    }
+
+    @Override
+    public boolean getBoolean(String name, boolean defValue) {
+        Object value = values().get(name);
+        return value instanceof Boolean ? (Boolean) value : defValue;
+    }
+
+    @Override
+    public int getInt(String name, int defValue) {
+        Object value = values().get(name);
+        return value instanceof Integer ? (Integer) value : defValue;
+    }
+
+    @Override
+    public long getLong(String name, long defValue) {
+        Object value = values().get(name);
+        return value instanceof Long ? (Long) value : defValue;
+    }
+
+    @Override
+    public float getFloat(String name, float defValue) {
+        Object value = values().get(name);
+        return value instanceof Float ? (Float) value : defValue;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * This returns the cached snapshot without copying it, the same instance is returned until
+     * the values change.
+     */
+    @Override
+    public Map<String, ?> getAll() {
+        return values();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return values().keySet();
+    }
+
+    @Override
+    public int size() {
+        return values().size();
+    }
+
+    @Override
+    public Editor edit() {
+        return new CachingEditor(storage.edit());
+    }
+
+    @Override
+    public void registerListener(Listener listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener cannot be null");
+        }
+        listeners.add(listener);
+    }
+
+    @Override
+    public void unregisterListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private static final class Snapshot {
+        final Map<String, ?> values;
+
+        Snapshot(Map<String, ?> values) {
+            this.values = values;
+        }
+    }
+
+    /**
+     * Updates the snapshot as soon as it writes, instead of waiting for the wrapped storage to
+     * report the change, which may happen later on another thread.
+     */
+    private class CachingEditor implements Editor {
+        private final Editor editor;
+        private final Set<String> names = new HashSet<>();
+        private boolean cleared;
+
+        CachingEditor(Editor editor) {
+            this.editor = editor;
+        }
+
+        @Override
+        public Editor putBoolean(String name, boolean value) {
+            editor.putBoolean(name, value);
+            names.add(name);
+            return this;
+        }
+
+        @Override
+        public Editor putFloat(String name, float value) {
+            editor.putFloat(name, value);
+            names.add(name);
+            return this;
+        }
+
+        @Override
+        public Editor putInt(String name, int value) {
+            editor.putInt(name, value);
+            names.add(name);
+            return this;
+        }
+
+        @Override
+        public Editor putLong(String name, long value) {
+            editor.putLong(name, value);
+            names.add(name);
+            return this;
+        }
+
+        @Override
+        public Editor putString(String name, String value) {
+            editor.putString(name, value);
+            names.add(name);
+            return this;
+        }
+
+        @Override
+        public Editor putStringSet(String name, Set<String> value) {
+            editor.putStringSet(name, value);
+            names.add(name);
+            return this;
+        }
+
+        @Override
+        public Editor remove(String name) {
+            editor.remove(name);
+            names.add(name);
+            return this;
+        }
+
+        @Override
+        public Editor clear() {
+            editor.clear();
+            cleared = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            boolean result = editor.commit();
+            written();
+            return result;
+        }
+
+        @Override
+        public void apply() {
+            editor.apply();
+            written();
+        }
+
+        private void written() {
+            if (cleared) {
+                invalidate();
+            } else {
+                for (String name : names) {
+                    update(name);
+                }
+            }
+            names.clear();
+            cleared = false;
+        }
+    }
+}
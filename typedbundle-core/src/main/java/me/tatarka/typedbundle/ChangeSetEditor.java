@@ -0,0 +1,126 @@
+package me.tatarka.typedbundle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link PreferenceStorage.Editor} that collects changes into a map, where a removed value is
+ * null, and hands them to {@link #write(boolean, Map, boolean)} all at once.
+ */
+abstract class ChangeSetEditor implements PreferenceStorage.Editor {
+    private final Map<String, Object> changes = new HashMap<>();
+    private boolean clear;
+
+    /**
+     * Writes the changes.
+     *
+     * @param clear   true if all values should be removed before making the changes
+     * @param changes the changed values by name, a removed value is null
+     * @param durable true for {@link #commit()}, false for {@link #apply()}
+     * @return true if the changes were written
+     */
+    abstract boolean write(boolean clear, Map<String, Object> changes, boolean durable);
+
+    /**
+     * Returns the names whose values the changes actually change. Only the changed names are
+     * compared, unless clear is set, which removes every name that isn't put back.
+     *
+     * @param oldValues the values before the changes
+     * @param clear     true if all values are removed before making the changes
+     * @param changes   the changed values by name, a removed value is null
+     * @return the changed names
+     */
+    static List<String> changedNames(Map<String, ?> oldValues, boolean clear, Map<String, Object> changes) {
+        List<String> changed = new ArrayList<>();
+        if (clear) {
+            for (String name : oldValues.keySet()) {
+                if (!changes.containsKey(name)) {
+                    changed.add(name);
+                }
+            }
+        }
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            Object oldValue = oldValues.get(change.getKey());
+            Object newValue = change.getValue();
+            if (oldValue == null ? newValue != null : !oldValue.equals(newValue)) {
+                changed.add(change.getKey());
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public synchronized PreferenceStorage.Editor putBoolean(String name, boolean value) {
+        changes.put(name, value);
+        return this;
+    }
+
+    @Override
+    public synchronized PreferenceStorage.Editor putFloat(String name, float value) {
+        changes.put(name, value);
+        return this;
+    }
+
+    @Override
+    public synchronized PreferenceStorage.Editor putInt(String name, int value) {
+        changes.put(name, value);
+        return this;
+    }
+
+    @Override
+    public synchronized PreferenceStorage.Editor putLong(String name, long value) {
+        changes.put(name, value);
+        return this;
+    }
+
+    @Override
+    public synchronized PreferenceStorage.Editor putString(String name, String value) {
+        changes.put(name, value);
+        return this;
+    }
+
+    @Override
+    public synchronized PreferenceStorage.Editor putStringSet(String name, Set<String> value) {
+        changes.put(name, value != null ? Collections.unmodifiableSet(new HashSet<>(value)) : null);
+        return this;
+    }
+
+    @Override
+    public synchronized PreferenceStorage.Editor remove(String name) {
+        changes.put(name, null);
+        return this;
+    }
+
+    @Override
+    public synchronized PreferenceStorage.Editor clear() {
+        clear = true;
+        return this;
+    }
+
+    @Override
+    public boolean commit() {
+        return write(true);
+    }
+
+    @Override
+    public void apply() {
+        write(false);
+    }
+
+    private boolean write(boolean durable) {
+        Map<String, Object> changes;
+        boolean clear;
+        synchronized (this) {
+            changes = new HashMap<>(this.changes);
+            clear = this.clear;
+            this.changes.clear();
+            this.clear = false;
+        }
+        return write(clear, changes, durable);
+    }
+}
@@ -0,0 +1,18 @@
+package me.tatarka.typedbundle;
+
+/**
+ * Visits the entries of a container without copying them into a map. Note that due to type
+ * erasure, the type is lost, so you will only get keys of type {@code Key<Object>}.
+ */
+public interface EntryVisitor {
+    /**
+     * Called once for each entry.
+     *
+     * @param key   the key, as returned by {@code Key.forName(String)}: the canonical key
+     *              if its name was interned with {@link Key#of(String)}, otherwise a new key.
+     *              Visiting never interns names.
+     * @param value the value
+     * @return true to continue visiting, false to stop
+     */
+    boolean visit(Key<Object> key, Object value);
+}
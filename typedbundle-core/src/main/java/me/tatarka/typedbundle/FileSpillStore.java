@@ -0,0 +1,113 @@
+package me.tatarka.typedbundle;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * A {@link SpillStore} that writes each value to its own file in a directory. Files are kept
+ * until they are deleted, so callers should periodically call {@link #deleteOlderThan(long)}.
+ */
+public class FileSpillStore implements SpillStore {
+    private final String id;
+    private final File dir;
+
+    /**
+     * Constructs a new {@code FileSpillStore}.
+     *
+     * @param id  the store's id
+     * @param dir the directory to write files to, it is created if it doesn't exist
+     */
+    public FileSpillStore(String id, File dir) {
+        if (id == null) {
+            throw new NullPointerException("id cannot be null");
+        }
+        if (dir == null) {
+            throw new NullPointerException("dir cannot be null");
+        }
+        this.id = id;
+        this.dir = dir;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String write(byte[] data) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        String token = UUID.randomUUID().toString();
+        File tmp = new File(dir, token + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(data);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(new File(dir, token))) {
+            tmp.delete();
+            throw new IOException("Unable to write " + token);
+        }
+        return token;
+    }
+
+    @Override
+    public byte[] read(String token) throws IOException {
+        File file = file(token);
+        FileInputStream in = new FileInputStream(file);
+        try {
+            long length = file.length();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large");
+            }
+            byte[] data = new byte[(int) length];
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read == -1) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+                offset += read;
+            }
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public void delete(String token) {
+        file(token).delete();
+    }
+
+    /**
+     * Deletes all files last written before the given time.
+     *
+     * @param timeMillis the time, in milliseconds since the epoch
+     */
+    public void deleteOlderThan(long timeMillis) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.lastModified() < timeMillis) {
+                file.delete();
+            }
+        }
+    }
+
+    private File file(String token) {
+        // Tokens are only ever the names we generate, don't let one escape the directory.
+        if (token.indexOf(File.separatorChar) >= 0 || token.indexOf('/') >= 0 || token.startsWith(".")) {
+            throw new IllegalArgumentException("Invalid token: " + token);
+        }
+        return new File(dir, token);
+    }
+}
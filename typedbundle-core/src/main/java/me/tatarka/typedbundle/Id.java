@@ -0,0 +1,79 @@
+package me.tatarka.typedbundle;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A TypedBundle id. This is a typesafe version of int id's used in TypedLoaderManager.
+ *
+ * @param <T> The id's type.
+ */
+public final class Id<T> {
+    /**
+     * Ids from 0 up to this are created up front, since loader ids are usually small.
+     */
+    private static final int SMALL_IDS = 256;
+    private static final Id<?>[] SMALL = new Id<?>[SMALL_IDS];
+    private static final ConcurrentMap<Integer, Id<?>> INTERNED = new ConcurrentHashMap<>();
+
+    static {
+        for (int i = 0; i < SMALL_IDS; i++) {
+            SMALL[i] = new Id<>(i);
+        }
+    }
+
+    public final int id;
+
+    /**
+     * Construct a new id of the given int id.
+     *
+     * @param id the id's int id.
+     */
+    public Id(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Returns the canonical id of the given int id. Repeated calls with the same int id return the
+     * same instance, so comparing them is an identity check. Small, non-negative ids are looked up
+     * in a table, others are interned and never released, so only use this for a bounded set of
+     * ids.
+     *
+     * @param id the id's int id.
+     * @param <T> the id's type
+     * @return the canonical id
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Id<T> of(int id) {
+        if (id >= 0 && id < SMALL_IDS) {
+            return (Id<T>) SMALL[id];
+        }
+        Id<?> result = INTERNED.get(id);
+        if (result == null) {
+            Id<?> newId = new Id<>(id);
+            result = INTERNED.putIfAbsent(id, newId);
+            if (result == null) {
+                result = newId;
+            }
+        }
+        return (Id<T>) result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Id<?> id1 = (Id<?>) o;
+        return id == id1.id;
+    }
+
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return "Key[" + id + "]";
+    }
+}
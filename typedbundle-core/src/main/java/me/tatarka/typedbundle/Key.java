@@ -0,0 +1,90 @@
+package me.tatarka.typedbundle;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A TypedBundle key. This is a typesafe version of the string keys used for Bundles and Prefs.
+ *
+ * @param <T> The key's type. This <em>must</em> be a type that either bundle or shared preferences
+ *            supports, depending on usage.
+ * @see Storage
+ */
+public final class Key<T> {
+    private static final ConcurrentMap<String, Key<?>> INTERNED = new ConcurrentHashMap<>();
+
+    public final String name;
+    private final int hash;
+
+    /**
+     * Construct a new key of the given name.
+     *
+     * @param name the key's name.
+     */
+    public Key(String name) {
+        if (name == null) {
+            throw new NullPointerException("name cannot be null");
+        }
+        this.name = name;
+        this.hash = name.hashCode();
+    }
+
+    /**
+     * Returns the canonical key of the given name. Repeated calls with the same name return the
+     * same instance, so comparing them is an identity check. Interned keys are never released, so
+     * only use this for a bounded set of names.
+     *
+     * @param name the key's name.
+     * @param <T>  the key's type
+     * @return the canonical key
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Key<T> of(String name) {
+        Key<?> key = INTERNED.get(name);
+        if (key == null) {
+            Key<?> newKey = new Key<>(name);
+            key = INTERNED.putIfAbsent(name, newKey);
+            if (key == null) {
+                key = newKey;
+            }
+        }
+        return (Key<T>) key;
+    }
+
+    /**
+     * Returns the canonical key of the given name if it was already interned with
+     * {@link #of(String)}, otherwise a new key. Unlike {@link #of(String)} this never interns, so
+     * it's safe to use for names read out of arbitrary bundles and preferences.
+     *
+     * @param name the key's name.
+     * @param <T>  the key's type
+     * @return the key
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Key<T> forName(String name) {
+        Key<?> key = INTERNED.get(name);
+        return key != null ? (Key<T>) key : new Key<T>(name);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Key)) {
+            return false;
+        }
+        Key<?> other = (Key<?>) o;
+        return hash == other.hash && name.equals(other.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "Key[" + name + "]";
+    }
+}
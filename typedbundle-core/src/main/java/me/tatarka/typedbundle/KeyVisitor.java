@@ -0,0 +1,17 @@
+package me.tatarka.typedbundle;
+
+/**
+ * Visits the keys of a container without allocating a collection to hold them. Note that due to
+ * type erasure, the type is lost, so you will only get keys of type {@code Key<Object>}.
+ */
+public interface KeyVisitor {
+    /**
+     * Called once for each key.
+     *
+     * @param key the key, as returned by {@code Key.forName(String)}: the canonical key
+     *            if its name was interned with {@link Key#of(String)}, otherwise a new key.
+     *            Visiting never interns names.
+     * @return true to continue visiting, false to stop
+     */
+    boolean visit(Key<Object> key);
+}
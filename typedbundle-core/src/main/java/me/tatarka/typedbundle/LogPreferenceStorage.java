@@ -0,0 +1,478 @@
+package me.tatarka.typedbundle;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link PreferenceStorage} that appends each commit to a log file instead of rewriting all
+ * values, so a write costs as much as what changed. Values are read from memory, the log is only
+ * read when it's opened.
+ * <p/>
+ * Since old values stay in the log until they are dropped, the log is compacted in the background
+ * once enough of it is made up of replaced or removed values. {@link Editor#commit()} appends to
+ * the log and syncs it to disk on the caller's thread before returning. {@link Editor#apply()}
+ * makes the changes visible right away and appends them on the executor without syncing, which
+ * survives the process dying but not the device losing power. A commit first appends any applied
+ * changes still waiting, so the log keeps the order they were made in.
+ * <p/>
+ * Each record is written as its length, a CRC32 and the changes encoded with
+ * {@link StorageCodec}. A torn or corrupt record at the end of the log, left by a crash while
+ * writing it, is dropped when the log is opened. A corrupt record with valid records after it is
+ * skipped, the values it changed keep what the records before it set.
+ */
+public class LogPreferenceStorage extends MemoryPreferenceStorage implements Closeable {
+    private static final int MAGIC = 0x54424c47; // "TBLG"
+    private static final int VERSION = 1;
+    static final int HEADER_SIZE = 5;
+    private static final int RECORD_HEADER_SIZE = 8;
+    static final int FLAG_CLEAR = 1;
+    /**
+     * Logs smaller than this aren't worth compacting.
+     */
+    static final long MIN_COMPACT_SIZE = 16 * 1024;
+    private static final StorageCodec CODEC = new StorageCodec();
+    /**
+     * Returned by {@link #readRecord(ByteBuffer, Map)} for a record that doesn't fit in what's
+     * left, so it can only be the end of the log.
+     */
+    static final int RECORD_TORN = -1;
+    /**
+     * Returned by {@link #readRecord(ByteBuffer, Map)} for a complete record that fails its CRC or
+     * doesn't decode.
+     */
+    static final int RECORD_CORRUPT = -2;
+
+    private final File file;
+    private final Executor executor;
+    private final float garbageRatio;
+    /**
+     * Held while compacting, so only one compaction writes the compacted file at a time.
+     */
+    private final Object compactLock = new Object();
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (LogPreferenceStorage.this) {
+                flushScheduled = false;
+                if (closed) {
+                    return;
+                }
+                try {
+                    writePending();
+                } catch (IOException e) {
+                    // Kept pending, the next write tries again.
+                    return;
+                }
+                maybeCompact();
+            }
+        }
+    };
+    private final Runnable compactTask = new Runnable() {
+        @Override
+        public void run() {
+            if (Thread.holdsLock(LogPreferenceStorage.this)) {
+                // Run directly from a commit, which hasn't made its values visible yet, so the
+                // snapshot would miss them.
+                synchronized (LogPreferenceStorage.this) {
+                    compacting = false;
+                }
+                return;
+            }
+            try {
+                compact();
+            } catch (IOException e) {
+                // The log is still intact, try again after the next write.
+            }
+        }
+    };
+
+    // All guarded by this.
+    private RandomAccessFile log;
+    private long length;
+    /**
+     * The number of entries in the log that have been replaced or removed.
+     */
+    private int garbage;
+    private boolean compacting;
+    private boolean closed;
+    /**
+     * Records from {@link Editor#apply()} waiting to be appended on the executor.
+     */
+    private final List<byte[]> pending = new ArrayList<>();
+    private boolean flushScheduled;
+
+    private LogPreferenceStorage(File file, Executor executor, float garbageRatio, Map<String, ?> values, RandomAccessFile log, long length, int garbage) {
+        super(values);
+        this.file = file;
+        this.executor = executor;
+        this.garbageRatio = garbageRatio;
+        this.log = log;
+        this.length = length;
+        this.garbage = garbage;
+    }
+
+    /**
+     * Opens the log at the given file, creating it if it doesn't exist. The log is compacted once
+     * half of it is garbage.
+     *
+     * @param file     the log file
+     * @param executor the executor to write applied changes and compact the log on, it must not
+     *                 run tasks on the calling thread
+     * @return the storage
+     * @throws IOException if the file can't be read or isn't a log
+     */
+    public static LogPreferenceStorage open(File file, Executor executor) throws IOException {
+        return open(file, executor, 0.5f);
+    }
+
+    /**
+     * Opens the log at the given file, creating it if it doesn't exist.
+     *
+     * @param file         the log file
+     * @param executor     the executor to write applied changes and compact the log on, it must
+     *                     not run tasks on the calling thread
+     * @param garbageRatio the fraction of entries in the log that have to be replaced or removed
+     *                     before it is compacted, between 0 and 1
+     * @return the storage
+     * @throws IOException if the file can't be read or isn't a log
+     */
+    public static LogPreferenceStorage open(File file, Executor executor, float garbageRatio) throws IOException {
+        if (file == null) {
+            throw new NullPointerException("file cannot be null");
+        }
+        if (executor == null) {
+            throw new NullPointerException("executor cannot be null");
+        }
+        if (garbageRatio <= 0 || garbageRatio > 1) {
+            throw new IllegalArgumentException("garbageRatio must be between 0 and 1");
+        }
+        RandomAccessFile log = new RandomAccessFile(file, "rw");
+        try {
+            Map<String, Object> values = new HashMap<>();
+            long fileLength = log.length();
+            if (fileLength == 0) {
+                log.write(header());
+                log.getFD().sync();
+                return new LogPreferenceStorage(file, executor, garbageRatio, values, log, HEADER_SIZE, 0);
+            }
+            if (fileLength > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large");
+            }
+            byte[] bytes = new byte[(int) fileLength];
+            log.readFully(bytes);
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            readHeader(in, file);
+            int garbage = 0;
+            while (true) {
+                int start = in.position();
+                Map<String, Object> changes = new HashMap<>();
+                int flags = readRecord(in, changes);
+                if (flags == RECORD_CORRUPT && in.hasRemaining()) {
+                    // Not a torn write since more follows, skip it. Compacting drops it.
+                    garbage++;
+                    continue;
+                }
+                if (flags < 0) {
+                    in.position(start);
+                    break;
+                }
+                garbage += apply(values, (flags & FLAG_CLEAR) != 0, changes);
+            }
+            long length = in.position();
+            if (length < fileLength) {
+                // Drop a torn write so the next record is appended after the last good one.
+                log.setLength(length);
+            }
+            return new LogPreferenceStorage(file, executor, garbageRatio, values, log, length, garbage);
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the log file.
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    protected boolean persist(boolean clear, Map<String, Object> changes, boolean durable) {
+        // Holding the lock on this.
+        if (closed) {
+            return false;
+        }
+        byte[] record = record(clear, changes);
+        if (durable) {
+            try {
+                writePending();
+                append(record);
+                log.getFD().sync();
+            } catch (IOException e) {
+                // Anything partially written is overwritten by the next record.
+                return false;
+            }
+        } else {
+            pending.add(record);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                try {
+                    executor.execute(flushTask);
+                } catch (RejectedExecutionException e) {
+                    // Nowhere to write it in the background, do it now instead.
+                    flushScheduled = false;
+                    try {
+                        writePending();
+                    } catch (IOException ignored) {
+                        // Kept pending, the next write tries again.
+                    }
+                }
+            }
+        }
+        // The values before this commit, read without copying them like getAll() would.
+        int size = size();
+        if (clear) {
+            garbage += size;
+        }
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            if (!clear && contains(change.getKey())) {
+                garbage++;
+            }
+            if (change.getValue() == null) {
+                // The removal itself is garbage once compacted.
+                garbage++;
+            }
+        }
+        if (durable) {
+            maybeCompact(size + changes.size());
+        }
+        return true;
+    }
+
+    /**
+     * Appends the records waiting from {@link Editor#apply()}, holding the lock on this. Records
+     * that fail to write stay pending.
+     */
+    private void writePending() throws IOException {
+        while (!pending.isEmpty()) {
+            append(pending.get(0));
+            pending.remove(0);
+        }
+    }
+
+    private void append(byte[] record) throws IOException {
+        log.seek(length);
+        log.write(record);
+        length += record.length;
+    }
+
+    private void maybeCompact() {
+        maybeCompact(size());
+    }
+
+    /**
+     * Starts compacting in the background if enough of the log is garbage, holding the lock on
+     * this.
+     *
+     * @param live the number of values once the current write is visible
+     */
+    private void maybeCompact(int live) {
+        if (!compacting && length >= MIN_COMPACT_SIZE && garbage >= (garbage + live) * garbageRatio) {
+            compacting = true;
+            try {
+                executor.execute(compactTask);
+            } catch (RejectedExecutionException e) {
+                // Try again after the next write.
+                compacting = false;
+            }
+        }
+    }
+
+    /**
+     * Rewrites the log with only the current values. This happens automatically in the background,
+     * but can be called directly, for example before backing up the file. Writes can continue
+     * while compacting.
+     *
+     * @throws IOException if the compacted log couldn't be written, the current log is kept
+     */
+    public void compact() throws IOException {
+        synchronized (compactLock) {
+            compactLocked();
+        }
+    }
+
+    private void compactLocked() throws IOException {
+        Map<String, ?> snapshot;
+        long snapshotLength;
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Log is closed");
+            }
+            compacting = true;
+            snapshot = getAll();
+            snapshotLength = length;
+        }
+        File tmp = new File(file.getPath() + ".compact");
+        RandomAccessFile compacted = new RandomAccessFile(tmp, "rw");
+        boolean replaced = false;
+        try {
+            compacted.setLength(0);
+            compacted.write(header());
+            compacted.write(record(true, snapshot));
+            synchronized (this) {
+                if (closed) {
+                    throw new IOException("Log is closed");
+                }
+                // Copy over anything committed while writing the snapshot.
+                byte[] tail = new byte[(int) (length - snapshotLength)];
+                log.seek(snapshotLength);
+                log.readFully(tail);
+                compacted.write(tail);
+                compacted.getFD().sync();
+                long compactedLength = compacted.length();
+                compacted.close();
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Unable to replace " + file);
+                }
+                replaced = true;
+                log.close();
+                log = new RandomAccessFile(file, "rw");
+                length = compactedLength;
+                garbage = 0;
+            }
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+            if (!replaced) {
+                compacted.close();
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Closes the log, first appending any applied changes still waiting. Values can still be read,
+     * but any further commit fails.
+     *
+     * @throws IOException if the applied changes can't be written or closing the file fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            try {
+                writePending();
+            } finally {
+                pending.clear();
+                log.close();
+            }
+        }
+    }
+
+    /**
+     * Reads and checks the header at the start of a log.
+     */
+    static void readHeader(ByteBuffer in, File file) throws IOException {
+        if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC) {
+            throw new IOException(file + " is not a preference log");
+        }
+        int version = in.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported log version: " + version);
+        }
+    }
+
+    static byte[] header() {
+        BinaryWriter writer = new BinaryWriter(HEADER_SIZE);
+        writer.writeFixedInt(MAGIC);
+        writer.writeByte(VERSION);
+        return writer.toByteArray();
+    }
+
+    static byte[] record(boolean clear, Map<String, ?> changes) {
+        byte[] payload = CODEC.encode(new MapStorage(changes));
+        int flags = clear ? FLAG_CLEAR : 0;
+        CRC32 crc = new CRC32();
+        crc.update(flags);
+        crc.update(payload);
+        BinaryWriter writer = new BinaryWriter(RECORD_HEADER_SIZE + 1 + payload.length);
+        writer.writeFixedInt(payload.length + 1);
+        writer.writeFixedInt((int) crc.getValue());
+        writer.writeByte(flags);
+        writer.writeRaw(payload);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Reads the next record into changes, returning its flags. Returns {@link #RECORD_TORN} if
+     * there isn't a complete record left, or {@link #RECORD_CORRUPT} after skipping over a complete
+     * record that isn't valid.
+     */
+    static int readRecord(ByteBuffer in, Map<String, Object> changes) {
+        if (in.remaining() < RECORD_HEADER_SIZE) {
+            return RECORD_TORN;
+        }
+        int size = in.getInt();
+        int expectedCrc = in.getInt();
+        if (size < 1 || size > in.remaining()) {
+            return RECORD_TORN;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(in.array(), in.arrayOffset() + in.position(), size);
+        if ((int) crc.getValue() != expectedCrc) {
+            in.position(in.position() + size);
+            return RECORD_CORRUPT;
+        }
+        int flags = in.get();
+        ByteBuffer payload = in.slice();
+        payload.limit(size - 1);
+        in.position(in.position() + size - 1);
+        MapStorage storage = new MapStorage();
+        try {
+            CODEC.decode(payload, storage);
+        } catch (IllegalArgumentException e) {
+            return RECORD_CORRUPT;
+        }
+        for (String name : storage.keySet()) {
+            changes.put(name, storage.get(name));
+        }
+        return flags;
+    }
+
+    /**
+     * Applies a record's changes to values, returning how many entries it made garbage.
+     */
+    static int apply(Map<String, Object> values, boolean clear, Map<String, Object> changes) {
+        int garbage = 0;
+        if (clear) {
+            garbage += values.size();
+            values.clear();
+        }
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            if (values.containsKey(change.getKey())) {
+                garbage++;
+            }
+            if (change.getValue() == null) {
+                values.remove(change.getKey());
+                garbage++;
+            } else {
+                values.put(change.getKey(), change.getValue());
+            }
+        }
+        return garbage;
+    }
+}
@@ -0,0 +1,123 @@
+package me.tatarka.typedbundle;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link MutableStorage} backed by a {@link HashMap}. Values are stored boxed, the same way the
+ * platform containers store them. This is not thread-safe.
+ */
+public class MapStorage implements MutableStorage {
+    private final Map<String, Object> map;
+
+    /**
+     * Constructs a new, empty {@code MapStorage}.
+     */
+    public MapStorage() {
+        map = new HashMap<>();
+    }
+
+    /**
+     * Constructs a new {@code MapStorage} containing a copy of the given mappings.
+     *
+     * @param map the mappings to copy
+     */
+    public MapStorage(Map<String, ?> map) {
+        this.map = new HashMap<>(map);
+    }
+
+    @Override
+    public boolean contains(String name) {
+        return map.containsKey(name);
+    }
+
+    @Override
+    public Object get(String name) {
+        return map.get(name);
+    }
+
+    @Override
+    public String getString(String name, String defValue) {
+        Object value = map.get(name);
+        return value instanceof String ? (String) value : defValue;
+    }
+
+    @Override
+    public boolean getBoolean(String name, boolean defValue) {
+        Object value = map.get(name);
+        return value instanceof Boolean ? (Boolean) value : defValue;
+    }
+
+    @Override
+    public byte getByte(String name, byte defValue) {
+        Object value = map.get(name);
+        return value instanceof Byte ? (Byte) value : defValue;
+    }
+
+    @Override
+    public char getChar(String name, char defValue) {
+        Object value = map.get(name);
+        return value instanceof Character ? (Character) value : defValue;
+    }
+
+    @Override
+    public short getShort(String name, short defValue) {
+        Object value = map.get(name);
+        return value instanceof Short ? (Short) value : defValue;
+    }
+
+    @Override
+    public int getInt(String name, int defValue) {
+        Object value = map.get(name);
+        return value instanceof Integer ? (Integer) value : defValue;
+    }
+
+    @Override
+    public long getLong(String name, long defValue) {
+        Object value = map.get(name);
+        return value instanceof Long ? (Long) value : defValue;
+    }
+
+    @Override
+    public float getFloat(String name, float defValue) {
+        Object value = map.get(name);
+        return value instanceof Float ? (Float) value : defValue;
+    }
+
+    @Override
+    public double getDouble(String name, double defValue) {
+        Object value = map.get(name);
+        return value instanceof Double ? (Double) value : defValue;
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return map.keySet();
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public void put(String name, Object value) {
+        map.put(name, value);
+    }
+
+    @Override
+    public void remove(String name) {
+        map.remove(name);
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "MapStorage" + map;
+    }
+}
@@ -0,0 +1,582 @@
+package me.tatarka.typedbundle;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A {@link PreferenceStorage} for large, read-mostly preferences that reads values straight out of
+ * a memory-mapped file. Opening it only maps the file and checks that the index points inside it,
+ * no value is decoded up front, and
+ * {@link #getInt(String, int)}, {@link #getLong(String, long)}, {@link #getFloat(String, float)}
+ * and {@link #getBoolean(String, boolean)} neither parse nor box.
+ * <p/>
+ * The file holds an index of fixed-size slots sorted by the hash of the name, followed by the
+ * names and the values that don't fit in a slot. A lookup is a binary search over the index.
+ * Every commit rewrites the whole file and swaps in the new mapping, so use this for values that
+ * are written rarely and in bulk, like a downloaded config. The new file is synced to disk before
+ * it replaces the old one, for {@link Editor#apply()} too, so a crash or power loss leaves either
+ * the old or the new file, never a torn one.
+ */
+public class MappedPreferenceStorage implements PreferenceStorage {
+    private static final int MAGIC = 0x54424d50; // "TBMP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int SLOT_SIZE = 16;
+    // Slot layout: name hash, name offset, type, then the value or its offset.
+    private static final int SLOT_HASH = 0;
+    private static final int SLOT_NAME = 4;
+    private static final int SLOT_TYPE = 8;
+    private static final int SLOT_VALUE = 12;
+
+    private final File file;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile Image image;
+
+    private MappedPreferenceStorage(File file, Image image) {
+        this.file = file;
+        this.image = image;
+    }
+
+    /**
+     * Maps the given file. If it doesn't exist or is empty the storage starts out empty, the file
+     * is written on the first commit.
+     *
+     * @param file the file
+     * @return the storage
+     * @throws IOException if the file can't be mapped or isn't a preference file
+     */
+    public static MappedPreferenceStorage open(File file) throws IOException {
+        if (file == null) {
+            throw new NullPointerException("file cannot be null");
+        }
+        return new MappedPreferenceStorage(file, file.exists() ? map(file) : Image.EMPTY);
+    }
+
+    /**
+     * Returns the mapped file.
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    private static Image map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long length = raf.length();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large");
+            }
+            if (length == 0) {
+                return Image.EMPTY;
+            }
+            // The mapping stays valid after the channel is closed.
+            ByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (length < HEADER_SIZE || buf.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not a preference file");
+            }
+            int version = buf.getInt(4);
+            if (version != VERSION) {
+                throw new IOException("Unsupported version: " + version);
+            }
+            int count = buf.getInt(8);
+            if (count < 0 || HEADER_SIZE + (long) count * SLOT_SIZE > length) {
+                throw new IOException(file + " is corrupt");
+            }
+            int dataStart = HEADER_SIZE + count * SLOT_SIZE;
+            for (int i = 0; i < count; i++) {
+                if (!isValidSlot(buf, HEADER_SIZE + i * SLOT_SIZE, dataStart)) {
+                    throw new IOException(file + " is corrupt");
+                }
+            }
+            return new Image(buf, count);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Checks that a slot's type is known and that its name and value lie within the data section,
+     * so reads never go past the end of the file.
+     */
+    private static boolean isValidSlot(ByteBuffer buf, int slot, int dataStart) {
+        if (!isValidString(buf, buf.getInt(slot + SLOT_NAME), dataStart)) {
+            return false;
+        }
+        int value = buf.getInt(slot + SLOT_VALUE);
+        switch (buf.getInt(slot + SLOT_TYPE)) {
+            case StorageCodec.TYPE_INT:
+            case StorageCodec.TYPE_FLOAT:
+            case StorageCodec.TYPE_TRUE:
+            case StorageCodec.TYPE_FALSE:
+                return true;
+            case StorageCodec.TYPE_LONG:
+                return value >= dataStart && value <= buf.limit() - 8;
+            case StorageCodec.TYPE_STRING:
+                return isValidString(buf, value, dataStart);
+            case StorageCodec.TYPE_STRING_SET:
+                if (value < dataStart || value > buf.limit() - 4) {
+                    return false;
+                }
+                int size = buf.getInt(value);
+                if (size < 0) {
+                    return false;
+                }
+                // Each string takes at least 4 bytes, so this ends at the end of the file.
+                int position = value + 4;
+                for (int i = 0; i < size; i++) {
+                    if (!isValidString(buf, position, dataStart)) {
+                        return false;
+                    }
+                    position += 4 + buf.getInt(position);
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isValidString(ByteBuffer buf, int offset, int dataStart) {
+        if (offset < dataStart || offset > buf.limit() - 4) {
+            return false;
+        }
+        int length = buf.getInt(offset);
+        return length >= 0 && length <= buf.limit() - offset - 4;
+    }
+
+    @Override
+    public boolean contains(String name) {
+        return image.find(name) >= 0;
+    }
+
+    @Override
+    public Object get(String name) {
+        Image image = this.image;
+        int slot = image.find(name);
+        return slot >= 0 ? image.value(slot) : null;
+    }
+
+    @Override
+    public String getString(String name, String defValue) {
+        Image image = this.image;
+        int slot = image.find(name);
+        if (slot < 0 || image.type(slot) != StorageCodec.TYPE_STRING) {
+            return defValue;
+        }
+        return image.string(image.buf.getInt(slot + SLOT_VALUE));
+    }
+
+    @Override
+    public Set<String> getStringSet(String name, Set<String> defValue) {
+        Image image = this.image;
+        int slot = image.find(name);
+        if (slot < 0 || image.type(slot) != StorageCodec.TYPE_STRING_SET) {
+            return defValue;
+        }
+        return image.stringSet(image.buf.getInt(slot + SLOT_VALUE));
+    }
+
+    @Override
+    public boolean getBoolean(String name, boolean defValue) {
+        Image image = this.image;
+        int slot = image.find(name);
+        if (slot < 0) {
+            return defValue;
+        }
+        int type = image.type(slot);
+        return type == StorageCodec.TYPE_TRUE || (type != StorageCodec.TYPE_FALSE && defValue);
+    }
+
+    @Override
+    public int getInt(String name, int defValue) {
+        Image image = this.image;
+        int slot = image.find(name);
+        if (slot < 0 || image.type(slot) != StorageCodec.TYPE_INT) {
+            return defValue;
+        }
+        return image.buf.getInt(slot + SLOT_VALUE);
+    }
+
+    @Override
+    public long getLong(String name, long defValue) {
+        Image image = this.image;
+        int slot = image.find(name);
+        if (slot < 0 || image.type(slot) != StorageCodec.TYPE_LONG) {
+            return defValue;
+        }
+        return image.buf.getLong(image.buf.getInt(slot + SLOT_VALUE));
+    }
+
+    @Override
+    public float getFloat(String name, float defValue) {
+        Image image = this.image;
+        int slot = image.find(name);
+        if (slot < 0 || image.type(slot) != StorageCodec.TYPE_FLOAT) {
+            return defValue;
+        }
+        return image.buf.getFloat(slot + SLOT_VALUE);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * This decodes every value the first time it's called after a commit.
+     */
+    @Override
+    public Map<String, ?> getAll() {
+        return image.all();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return image.all().keySet();
+    }
+
+    @Override
+    public int size() {
+        return image.count;
+    }
+
+    @Override
+    public Editor edit() {
+        return new ChangeSetEditor() {
+            /**
+             * {@inheritDoc}
+             *
+             * @throws IllegalArgumentException if the set contains null, which can't be stored
+             */
+            @Override
+            public Editor putStringSet(String name, Set<String> value) {
+                if (value != null) {
+                    for (String item : value) {
+                        if (item == null) {
+                            throw new IllegalArgumentException("The set for " + name + " cannot contain null");
+                        }
+                    }
+                }
+                return super.putStringSet(name, value);
+            }
+
+            @Override
+            boolean write(boolean clear, Map<String, Object> changes, boolean durable) {
+                return MappedPreferenceStorage.this.write(clear, changes);
+            }
+        };
+    }
+
+    @Override
+    public void registerListener(Listener listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener cannot be null");
+        }
+        listeners.add(listener);
+    }
+
+    @Override
+    public void unregisterListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private boolean write(boolean clear, Map<String, Object> changes) {
+        List<String> changed;
+        synchronized (this) {
+            Map<String, ?> oldValues = image.all();
+            changed = ChangeSetEditor.changedNames(oldValues, clear, changes);
+            if (changed.isEmpty()) {
+                return true;
+            }
+            Map<String, Object> newValues = new HashMap<>(oldValues);
+            for (String name : changed) {
+                Object value = changes.get(name);
+                if (value == null) {
+                    newValues.remove(name);
+                } else {
+                    newValues.put(name, value);
+                }
+            }
+            try {
+                File tmp = new File(file.getPath() + ".tmp");
+                FileOutputStream out = new FileOutputStream(tmp);
+                try {
+                    out.write(build(newValues));
+                    // For apply() too, renaming a file that isn't on disk yet could leave a torn
+                    // file in its place after a power loss, which would never open again.
+                    out.getFD().sync();
+                } finally {
+                    out.close();
+                }
+                if (!tmp.renameTo(file)) {
+                    tmp.delete();
+                    return false;
+                }
+                // Readers holding on to the old image keep reading the old, unlinked file.
+                image = map(file);
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        for (String name : changed) {
+            for (Listener listener : listeners) {
+                listener.onChanged(this, name);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Lays out the values as a file image.
+     *
+     * @throws IllegalArgumentException if a value isn't a preference type
+     */
+    static byte[] build(Map<String, ?> values) {
+        List<String> names = new ArrayList<>(values.keySet());
+        Collections.sort(names, new Comparator<String>() {
+            @Override
+            public int compare(String lhs, String rhs) {
+                int lhsHash = lhs.hashCode();
+                int rhsHash = rhs.hashCode();
+                return lhsHash < rhsHash ? -1 : (lhsHash == rhsHash ? lhs.compareTo(rhs) : 1);
+            }
+        });
+        int count = names.size();
+        int dataStart = HEADER_SIZE + count * SLOT_SIZE;
+        ByteBuffer slots = ByteBuffer.allocate(dataStart);
+        slots.putInt(MAGIC);
+        slots.putInt(VERSION);
+        slots.putInt(count);
+        ByteArrayWriter data = new ByteArrayWriter();
+        for (String name : names) {
+            Object value = values.get(name);
+            slots.putInt(name.hashCode());
+            slots.putInt(dataStart + data.size());
+            data.writeString(name);
+            if (value instanceof Integer) {
+                slots.putInt(StorageCodec.TYPE_INT);
+                slots.putInt((Integer) value);
+            } else if (value instanceof Float) {
+                slots.putInt(StorageCodec.TYPE_FLOAT);
+                slots.putFloat((Float) value);
+            } else if (value instanceof Boolean) {
+                slots.putInt((Boolean) value ? StorageCodec.TYPE_TRUE : StorageCodec.TYPE_FALSE);
+                slots.putInt(0);
+            } else if (value instanceof Long) {
+                slots.putInt(StorageCodec.TYPE_LONG);
+                slots.putInt(dataStart + data.size());
+                data.writeLong((Long) value);
+            } else if (value instanceof String) {
+                slots.putInt(StorageCodec.TYPE_STRING);
+                slots.putInt(dataStart + data.size());
+                data.writeString((String) value);
+            } else if (value instanceof Set) {
+                slots.putInt(StorageCodec.TYPE_STRING_SET);
+                slots.putInt(dataStart + data.size());
+                Set<?> set = (Set<?>) value;
+                data.writeInt(set.size());
+                for (Object item : set) {
+                    data.writeString((String) item);
+                }
+            } else {
+                throw new IllegalArgumentException("Unsupported preference type for " + name + ": " + value);
+            }
+        }
+        byte[] result = BinaryWriter.copyOf(slots.array(), dataStart + data.size());
+        data.copyTo(result, dataStart);
+        return result;
+    }
+
+    /**
+     * A mapped file, immutable once created.
+     */
+    private static final class Image {
+        static final Image EMPTY = new Image(null, 0);
+
+        final ByteBuffer buf;
+        final int count;
+        private volatile Map<String, ?> all;
+
+        Image(ByteBuffer buf, int count) {
+            this.buf = buf;
+            this.count = count;
+        }
+
+        int type(int slot) {
+            return buf.getInt(slot + SLOT_TYPE);
+        }
+
+        /**
+         * Returns the position of the slot for the given name, or -1 if there isn't one.
+         */
+        int find(String name) {
+            int hash = name.hashCode();
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int midHash = buf.getInt(HEADER_SIZE + mid * SLOT_SIZE + SLOT_HASH);
+                if (midHash < hash) {
+                    low = mid + 1;
+                } else if (midHash > hash) {
+                    high = mid - 1;
+                } else {
+                    // Check every slot with the same hash.
+                    int first = mid;
+                    while (first > 0 && buf.getInt(HEADER_SIZE + (first - 1) * SLOT_SIZE + SLOT_HASH) == hash) {
+                        first--;
+                    }
+                    for (int i = first; i < count; i++) {
+                        int slot = HEADER_SIZE + i * SLOT_SIZE;
+                        if (buf.getInt(slot + SLOT_HASH) != hash) {
+                            break;
+                        }
+                        if (nameEquals(buf.getInt(slot + SLOT_NAME), name)) {
+                            return slot;
+                        }
+                    }
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Compares a stored name without decoding it.
+         */
+        private boolean nameEquals(int offset, String name) {
+            int length = buf.getInt(offset);
+            int chars = name.length();
+            int start = offset + 4;
+            for (int i = 0; i < chars; i++) {
+                char c = name.charAt(i);
+                if (c >= 0x80) {
+                    // Not ascii, compare the encoded bytes instead.
+                    byte[] bytes = BinaryWriter.encodeUtf8(name);
+                    if (bytes.length != length) {
+                        return false;
+                    }
+                    for (int j = 0; j < length; j++) {
+                        if (buf.get(start + j) != bytes[j]) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+                if (i >= length || buf.get(start + i) != c) {
+                    return false;
+                }
+            }
+            return length == chars;
+        }
+
+        String string(int offset) {
+            int length = buf.getInt(offset);
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buf.get(offset + 4 + i);
+            }
+            return BinaryWriter.decodeUtf8(bytes, 0, length);
+        }
+
+        Set<String> stringSet(int offset) {
+            int size = buf.getInt(offset);
+            Set<String> set = new HashSet<>(size * 2);
+            int position = offset + 4;
+            for (int i = 0; i < size; i++) {
+                set.add(string(position));
+                position += 4 + buf.getInt(position);
+            }
+            return Collections.unmodifiableSet(set);
+        }
+
+        Object value(int slot) {
+            int value = buf.getInt(slot + SLOT_VALUE);
+            switch (type(slot)) {
+                case StorageCodec.TYPE_INT:
+                    return value;
+                case StorageCodec.TYPE_FLOAT:
+                    return Float.intBitsToFloat(value);
+                case StorageCodec.TYPE_TRUE:
+                    return true;
+                case StorageCodec.TYPE_FALSE:
+                    return false;
+                case StorageCodec.TYPE_LONG:
+                    return buf.getLong(value);
+                case StorageCodec.TYPE_STRING:
+                    return string(value);
+                case StorageCodec.TYPE_STRING_SET:
+                    return stringSet(value);
+                default:
+                    throw new IllegalStateException("Corrupt slot type: " + type(slot));
+            }
+        }
+
+        Map<String, ?> all() {
+            Map<String, ?> result = all;
+            if (result == null) {
+                Map<String, Object> map = new HashMap<>(count * 2);
+                for (int i = 0; i < count; i++) {
+                    int slot = HEADER_SIZE + i * SLOT_SIZE;
+                    map.put(string(buf.getInt(slot + SLOT_NAME)), value(slot));
+                }
+                result = Collections.unmodifiableMap(map);
+                all = result;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Builds the data section, strings are written as their utf-8 length followed by the bytes.
+     */
+    private static final class ByteArrayWriter {
+        private byte[] buf = new byte[256];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > buf.length) {
+                buf = BinaryWriter.copyOf(buf, Math.max(buf.length * 2, size + extra));
+            }
+        }
+
+        void writeInt(int value) {
+            ensureCapacity(4);
+            ByteBuffer.wrap(buf, size, 4).putInt(value);
+            size += 4;
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(8);
+            ByteBuffer.wrap(buf, size, 8).putLong(value);
+            size += 8;
+        }
+
+        void writeString(String value) {
+            byte[] bytes = BinaryWriter.encodeUtf8(value);
+            writeInt(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buf, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void copyTo(byte[] dest, int offset) {
+            System.arraycopy(buf, 0, dest, offset, size);
+        }
+    }
+}
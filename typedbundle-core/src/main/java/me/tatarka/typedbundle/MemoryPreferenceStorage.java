@@ -0,0 +1,185 @@
+package me.tatarka.typedbundle;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A {@link PreferenceStorage} that only keeps values in memory. Reads never take a lock, a commit
+ * only touches the values it changes, so a reader may see some of a commit's values before the
+ * rest. {@link #getAll()} is a consistent copy, made the first time it's called after a commit.
+ * Useful in tests and for preferences that don't need to outlive the process, subclasses can
+ * persist commits by overriding {@link #persist(boolean, Map, boolean)}.
+ */
+public class MemoryPreferenceStorage implements PreferenceStorage {
+    private final Map<String, Object> values = new ConcurrentHashMap<>();
+    /**
+     * The values as of the last commit, or null if they changed since {@link #getAll()} was last
+     * called.
+     */
+    private volatile Map<String, Object> snapshot;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructs a new, empty {@code MemoryPreferenceStorage}.
+     */
+    public MemoryPreferenceStorage() {
+    }
+
+    /**
+     * Constructs a new {@code MemoryPreferenceStorage} containing a copy of the given values.
+     *
+     * @param values the values to copy
+     */
+    public MemoryPreferenceStorage(Map<String, ?> values) {
+        this.values.putAll(values);
+    }
+
+    @Override
+    public boolean contains(String name) {
+        return values.containsKey(name);
+    }
+
+    @Override
+    public Object get(String name) {
+        return values.get(name);
+    }
+
+    @Override
+    public String getString(String name, String defValue) {
+        Object value = values.get(name);
+        return value instanceof String ? (String) value : defValue;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<String> getStringSet(String name, Set<String> defValue) {
+        Object value = values.get(name);
+        return value instanceof Set ? (Set<String>) value : defValue;
+    }
+
+    @Override
+    public boolean getBoolean(String name, boolean defValue) {
+        Object value = values.get(name);
+        return value instanceof Boolean ? (Boolean) value : defValue;
+    }
+
+    @Override
+    public int getInt(String name, int defValue) {
+        Object value = values.get(name);
+        return value instanceof Integer ? (Integer) value : defValue;
+    }
+
+    @Override
+    public long getLong(String name, long defValue) {
+        Object value = values.get(name);
+        return value instanceof Long ? (Long) value : defValue;
+    }
+
+    @Override
+    public float getFloat(String name, float defValue) {
+        Object value = values.get(name);
+        return value instanceof Float ? (Float) value : defValue;
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        Map<String, Object> result = snapshot;
+        if (result == null) {
+            synchronized (this) {
+                result = snapshot;
+                if (result == null) {
+                    result = Collections.unmodifiableMap(new HashMap<>(values));
+                    snapshot = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * This is a live, read-only view that doesn't copy, iterating it while committing sees some of
+     * the changes.
+     */
+    @Override
+    public Set<String> keySet() {
+        return Collections.unmodifiableSet(values.keySet());
+    }
+
+    @Override
+    public int size() {
+        return values.size();
+    }
+
+    @Override
+    public Editor edit() {
+        return new ChangeSetEditor() {
+            @Override
+            boolean write(boolean clear, Map<String, Object> changes, boolean durable) {
+                return MemoryPreferenceStorage.this.write(clear, changes, durable);
+            }
+        };
+    }
+
+    @Override
+    public void registerListener(Listener listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener cannot be null");
+        }
+        listeners.add(listener);
+    }
+
+    @Override
+    public void unregisterListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Called with each commit, holding the lock on this storage, before the changes are made
+     * visible. Override to persist them somewhere. This runs on the thread that commits, for both
+     * {@link Editor#commit()} and {@link Editor#apply()}.
+     *
+     * @param clear   true if the editor cleared all values before making its changes
+     * @param changes the changed values by name, a removed value is null
+     * @param durable true if this is a {@link Editor#commit()} that must be durable when it
+     *                returns, false if this is an {@link Editor#apply()}
+     * @return true if the commit should go ahead, false to fail it and leave the values unchanged
+     */
+    protected boolean persist(boolean clear, Map<String, Object> changes, boolean durable) {
+        return true;
+    }
+
+    private boolean write(boolean clear, Map<String, Object> changes, boolean durable) {
+        List<String> changed;
+        synchronized (this) {
+            changed = ChangeSetEditor.changedNames(values, clear, changes);
+            if (!persist(clear, changes, durable)) {
+                return false;
+            }
+            // Values that didn't change are left alone, even when clearing.
+            for (String name : changed) {
+                Object value = changes.get(name);
+                if (value == null) {
+                    values.remove(name);
+                } else {
+                    values.put(name, value);
+                }
+            }
+            if (!changed.isEmpty()) {
+                snapshot = null;
+            }
+        }
+        for (String name : changed) {
+            for (Listener listener : listeners) {
+                listener.onChanged(this, name);
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,57 @@
+package me.tatarka.typedbundle;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link SpillStore} that keeps data in memory. Spilled values will not survive the process
+ * being killed, so use a {@link FileSpillStore} for saved instance state. Data is copied in and
+ * out, so the arrays passed to and returned from the store can be modified freely.
+ */
+public class MemorySpillStore implements SpillStore {
+    private final String id;
+    private final ConcurrentMap<String, byte[]> data = new ConcurrentHashMap<>();
+    private final AtomicLong nextToken = new AtomicLong();
+
+    public MemorySpillStore(String id) {
+        if (id == null) {
+            throw new NullPointerException("id cannot be null");
+        }
+        this.id = id;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String write(byte[] data) {
+        String token = Long.toString(nextToken.getAndIncrement());
+        this.data.put(token, data.clone());
+        return token;
+    }
+
+    @Override
+    public byte[] read(String token) throws IOException {
+        byte[] result = data.get(token);
+        if (result == null) {
+            throw new IOException("No data for token " + token);
+        }
+        return result.clone();
+    }
+
+    @Override
+    public void delete(String token) {
+        data.remove(token);
+    }
+
+    /**
+     * Deletes all stored data.
+     */
+    public void clear() {
+        data.clear();
+    }
+}
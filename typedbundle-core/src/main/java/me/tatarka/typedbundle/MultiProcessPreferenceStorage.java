@@ -0,0 +1,540 @@
+package me.tatarka.typedbundle;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A {@link PreferenceStorage} that can be opened by several processes at once, each seeing the
+ * others' commits. Values are kept in a log in the same format as {@link LogPreferenceStorage},
+ * next to a small memory-mapped version file that every commit bumps.
+ * <p/>
+ * Each process keeps its own copy of the values in memory. A read only checks the mapped version,
+ * and if another process committed since the last read, reads just the records it appended and
+ * updates the keys they changed in place, reporting them to {@link Listener}s. Like
+ * {@link MemoryPreferenceStorage}, reads don't take a lock, so a reader may see some of a commit's
+ * values before the rest, and {@link #getAll()} is a copy made the first time it's called after a
+ * change. The log is only read in full when it's opened or after another process compacted it.
+ * <p/>
+ * Commits take a lock on the version file, so they are ordered across processes. Since the lock
+ * has to be held while writing, there is no background writer: {@link Editor#apply()} writes the
+ * log on the caller's thread before returning too, it only skips syncing it to disk. Open a file
+ * only once per process, and close it when done.
+ */
+public class MultiProcessPreferenceStorage implements PreferenceStorage, Closeable {
+    private static final int VERSION_SIZE = 8;
+    private static final float GARBAGE_RATIO = 0.5f;
+    /**
+     * File locks are held by the whole process, so the lock on a version file is also guarded by
+     * an object shared by every instance in this process.
+     */
+    private static final ConcurrentMap<String, Object> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final RandomAccessFile versionFile;
+    /**
+     * The generation of the log in the high int, bumped whenever it's replaced, and the length of
+     * its committed records in the low int.
+     */
+    private final MappedByteBuffer version;
+    private final Object processLock;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    /**
+     * Only changed holding the lock on this, a change only touches the names it changes.
+     */
+    private final Map<String, Object> values = new ConcurrentHashMap<>();
+    /**
+     * The values as of the last change, or null if they changed since {@link #getAll()} was last
+     * called.
+     */
+    private volatile Map<String, Object> snapshot;
+    private volatile long seenVersion;
+
+    // All guarded by this.
+    private RandomAccessFile log;
+    private int garbage;
+    private boolean closed;
+
+    private MultiProcessPreferenceStorage(File file, RandomAccessFile versionFile, Object processLock) throws IOException {
+        this.file = file;
+        this.versionFile = versionFile;
+        this.processLock = processLock;
+        // Mapping past the end grows the file, so a new version file starts at zero.
+        this.version = versionFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, VERSION_SIZE);
+    }
+
+    /**
+     * Opens the log at the given file, creating it if it doesn't exist. The version file is kept
+     * next to it, with {@code .version} appended to the name.
+     *
+     * @param file the log file
+     * @return the storage
+     * @throws IOException if the file can't be read or isn't a log
+     */
+    public static MultiProcessPreferenceStorage open(File file) throws IOException {
+        if (file == null) {
+            throw new NullPointerException("file cannot be null");
+        }
+        Object processLock = processLock(file);
+        RandomAccessFile versionFile = new RandomAccessFile(file.getPath() + ".version", "rw");
+        try {
+            MultiProcessPreferenceStorage storage = new MultiProcessPreferenceStorage(file, versionFile, processLock);
+            storage.load();
+            return storage;
+        } catch (IOException | RuntimeException e) {
+            versionFile.close();
+            throw e;
+        }
+    }
+
+    private static Object processLock(File file) throws IOException {
+        String path = file.getCanonicalPath();
+        Object lock = PROCESS_LOCKS.get(path);
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = PROCESS_LOCKS.putIfAbsent(path, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * Returns the log file.
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    private void load() throws IOException {
+        synchronized (this) {
+            synchronized (processLock) {
+                FileLock lock = lock(false);
+                try {
+                    log = new RandomAccessFile(file, "rw");
+                    long fileLength = log.length();
+                    if (fileLength == 0) {
+                        log.write(LogPreferenceStorage.header());
+                        log.getFD().sync();
+                        fileLength = LogPreferenceStorage.HEADER_SIZE;
+                    }
+                    long length = readAll(values, fileLength);
+                    if (length < fileLength) {
+                        // Drop a torn write so the next record is appended after the last good one.
+                        log.setLength(length);
+                    }
+                    long current = version.getLong(0);
+                    if (length == length(current)) {
+                        // Other processes already see this log, opening it doesn't change it.
+                        seenVersion = current;
+                    } else if (length > length(current)) {
+                        // A crash left a record that was never published, other processes can
+                        // catch up with it like with any commit.
+                        publish(generation(current), length);
+                    } else {
+                        // The log is shorter than they think, they must read it again.
+                        publish(generation(current) + 1, length);
+                    }
+                } finally {
+                    release(lock);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the current values, first catching up with commits from other processes.
+     */
+    private Map<String, Object> values() {
+        if (version.getLong(0) != seenVersion) {
+            refresh();
+        }
+        return values;
+    }
+
+    /**
+     * Applies a record's changes to the values, adding the names whose values it changes to
+     * changed and returning how many entries it made garbage. Must hold the lock on this.
+     */
+    private int apply(boolean clear, Map<String, Object> changes, Collection<String> changed) {
+        int newGarbage = clear ? values.size() : 0;
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            if (!clear && values.containsKey(change.getKey())) {
+                newGarbage++;
+            }
+            if (change.getValue() == null) {
+                // The removal itself is garbage once compacted.
+                newGarbage++;
+            }
+        }
+        // Values that didn't change are left alone, even when clearing.
+        List<String> names = ChangeSetEditor.changedNames(values, clear, changes);
+        for (String name : names) {
+            Object value = changes.get(name);
+            if (value == null) {
+                values.remove(name);
+            } else {
+                values.put(name, value);
+            }
+        }
+        if (!names.isEmpty()) {
+            snapshot = null;
+            changed.addAll(names);
+        }
+        return newGarbage;
+    }
+
+    private void refresh() {
+        Collection<String> changed = Collections.emptySet();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            synchronized (processLock) {
+                FileLock lock = null;
+                try {
+                    lock = lock(true);
+                    changed = refreshLocked();
+                } catch (IOException e) {
+                    // Keep the values read so far, the next read tries again.
+                } finally {
+                    release(lock);
+                }
+            }
+        }
+        notifyChanged(changed);
+    }
+
+    /**
+     * Reads what was committed since the last read, returning the names of the values that
+     * changed. Must hold the lock on this and the version file.
+     */
+    private Collection<String> refreshLocked() throws IOException {
+        long current = version.getLong(0);
+        if (current == seenVersion) {
+            return Collections.emptySet();
+        }
+        Set<String> changed = new LinkedHashSet<>();
+        if (generation(current) != generation(seenVersion)) {
+            // The log was replaced, read it again from the start.
+            log.close();
+            log = new RandomAccessFile(file, "rw");
+            Map<String, Object> newValues = new HashMap<>();
+            readAll(newValues, length(current));
+            int newGarbage = garbage;
+            apply(true, newValues, changed);
+            garbage = newGarbage;
+        } else {
+            ByteBuffer in = read(length(seenVersion), length(current));
+            while (in.hasRemaining()) {
+                Map<String, Object> changes = new HashMap<>();
+                int flags = LogPreferenceStorage.readRecord(in, changes);
+                if (flags < 0) {
+                    throw new IOException(file + " is corrupt");
+                }
+                garbage += apply((flags & LogPreferenceStorage.FLAG_CLEAR) != 0, changes, changed);
+            }
+        }
+        seenVersion = current;
+        return changed;
+    }
+
+    @Override
+    public boolean contains(String name) {
+        return values().containsKey(name);
+    }
+
+    @Override
+    public Object get(String name) {
+        return values().get(name);
+    }
+
+    @Override
+    public String getString(String name, String defValue) {
+        Object value = values().get(name);
+        return value instanceof String ? (String) value : defValue;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<String> getStringSet(String name, Set<String> defValue) {
+        Object value = values().get(name);
+        return value instanceof Set ? (Set<String>) value : defValue;
+    }
+
+    @Override
+    public boolean getBoolean(String name, boolean defValue) {
+        Object value = values().get(name);
+        return value instanceof Boolean ? (Boolean) value : defValue;
+    }
+
+    @Override
+    public int getInt(String name, int defValue) {
+        Object value = values().get(name);
+        return value instanceof Integer ? (Integer) value : defValue;
+    }
+
+    @Override
+    public long getLong(String name, long defValue) {
+        Object value = values().get(name);
+        return value instanceof Long ? (Long) value : defValue;
+    }
+
+    @Override
+    public float getFloat(String name, float defValue) {
+        Object value = values().get(name);
+        return value instanceof Float ? (Float) value : defValue;
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        values();
+        Map<String, Object> result = snapshot;
+        if (result == null) {
+            synchronized (this) {
+                result = snapshot;
+                if (result == null) {
+                    result = Collections.unmodifiableMap(new HashMap<>(values));
+                    snapshot = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * This is a live, read-only view that doesn't copy, iterating it while committing sees some of
+     * the changes.
+     */
+    @Override
+    public Set<String> keySet() {
+        return Collections.unmodifiableSet(values().keySet());
+    }
+
+    @Override
+    public int size() {
+        return values().size();
+    }
+
+    @Override
+    public Editor edit() {
+        return new ChangeSetEditor() {
+            @Override
+            boolean write(boolean clear, Map<String, Object> changes, boolean durable) {
+                return MultiProcessPreferenceStorage.this.write(clear, changes, durable);
+            }
+        };
+    }
+
+    @Override
+    public void registerListener(Listener listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener cannot be null");
+        }
+        listeners.add(listener);
+    }
+
+    @Override
+    public void unregisterListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private boolean write(boolean clear, Map<String, Object> changes, boolean durable) {
+        Set<String> changed = new LinkedHashSet<>();
+        boolean result = false;
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            synchronized (processLock) {
+                FileLock lock = null;
+                try {
+                    lock = lock(false);
+                    // Apply on top of whatever other processes committed.
+                    changed.addAll(refreshLocked());
+                    byte[] record = LogPreferenceStorage.record(clear, changes);
+                    long length = length(seenVersion);
+                    log.seek(length);
+                    log.write(record);
+                    if (durable) {
+                        log.getFD().sync();
+                    }
+                    garbage += apply(clear, changes, changed);
+                    // Only now is the record visible to other processes, anything partially
+                    // written before a failure is overwritten by the next record.
+                    publish(generation(seenVersion), length + record.length);
+                    result = true;
+                    if (length + record.length >= LogPreferenceStorage.MIN_COMPACT_SIZE
+                            && garbage >= (garbage + values.size()) * GARBAGE_RATIO) {
+                        compactLocked();
+                    }
+                } catch (IOException e) {
+                    // The log is still intact, the commit failed if it didn't get published.
+                } finally {
+                    release(lock);
+                }
+            }
+        }
+        notifyChanged(changed);
+        return result;
+    }
+
+    /**
+     * Rewrites the log with only the current values. This happens automatically as commits make
+     * old values garbage, but can be called directly, for example before backing up the file.
+     *
+     * @throws IOException if the compacted log couldn't be written, the current log is kept
+     */
+    public void compact() throws IOException {
+        Collection<String> changed;
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Log is closed");
+            }
+            synchronized (processLock) {
+                FileLock lock = lock(false);
+                try {
+                    changed = refreshLocked();
+                    compactLocked();
+                } finally {
+                    release(lock);
+                }
+            }
+        }
+        notifyChanged(changed);
+    }
+
+    /**
+     * Must hold the lock on this and an exclusive lock on the version file.
+     */
+    private void compactLocked() throws IOException {
+        File tmp = new File(file.getPath() + ".compact");
+        RandomAccessFile compacted = new RandomAccessFile(tmp, "rw");
+        long length;
+        try {
+            compacted.setLength(0);
+            compacted.write(LogPreferenceStorage.header());
+            compacted.write(LogPreferenceStorage.record(true, values));
+            compacted.getFD().sync();
+            length = compacted.length();
+        } finally {
+            compacted.close();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Unable to replace " + file);
+        }
+        log.close();
+        log = new RandomAccessFile(file, "rw");
+        garbage = 0;
+        // Tells other processes to read the new log from the start.
+        publish(generation(seenVersion) + 1, length);
+    }
+
+    /**
+     * Closes the log. Values can still be read, but they stop picking up changes from other
+     * processes and any further commit fails.
+     *
+     * @throws IOException if closing the files fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            try {
+                log.close();
+            } finally {
+                versionFile.close();
+            }
+        }
+    }
+
+    private FileLock lock(boolean shared) throws IOException {
+        return versionFile.getChannel().lock(0, VERSION_SIZE, shared);
+    }
+
+    private static void release(FileLock lock) {
+        if (lock == null) {
+            return;
+        }
+        try {
+            lock.release();
+        } catch (IOException e) {
+            // It's released when the channel is closed at the latest.
+        }
+    }
+
+    private void publish(int generation, long length) {
+        long newVersion = ((long) generation << 32) | length;
+        version.putLong(0, newVersion);
+        seenVersion = newVersion;
+    }
+
+    private static int generation(long version) {
+        return (int) (version >>> 32);
+    }
+
+    private static long length(long version) {
+        return version & 0xffffffffL;
+    }
+
+    /**
+     * Reads the log's records up to the given length into values, returning the length of the
+     * valid records.
+     */
+    private long readAll(Map<String, Object> values, long length) throws IOException {
+        ByteBuffer in = read(0, length);
+        LogPreferenceStorage.readHeader(in, file);
+        int newGarbage = 0;
+        while (true) {
+            int start = in.position();
+            Map<String, Object> changes = new HashMap<>();
+            int flags = LogPreferenceStorage.readRecord(in, changes);
+            if (flags < 0) {
+                in.position(start);
+                break;
+            }
+            newGarbage += LogPreferenceStorage.apply(values, (flags & LogPreferenceStorage.FLAG_CLEAR) != 0, changes);
+        }
+        garbage = newGarbage;
+        return in.position();
+    }
+
+    private ByteBuffer read(long from, long to) throws IOException {
+        if (to > log.length() || to - from > Integer.MAX_VALUE) {
+            throw new IOException(file + " is shorter than its version");
+        }
+        byte[] bytes = new byte[(int) (to - from)];
+        log.seek(from);
+        log.readFully(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private void notifyChanged(Collection<String> names) {
+        for (String name : names) {
+            for (Listener listener : listeners) {
+                listener.onChanged(this, name);
+            }
+        }
+    }
+}
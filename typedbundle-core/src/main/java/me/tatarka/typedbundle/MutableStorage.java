@@ -0,0 +1,36 @@
+package me.tatarka.typedbundle;
+
+/**
+ * A {@link Storage} that can be written to directly, like a bundle. It also holds the primitive
+ * types preferences can't.
+ */
+public interface MutableStorage extends Storage {
+    byte getByte(String name, byte defValue);
+
+    char getChar(String name, char defValue);
+
+    short getShort(String name, short defValue);
+
+    double getDouble(String name, double defValue);
+
+    /**
+     * Stores a value under the given name, replacing any existing value.
+     *
+     * @param name  the name
+     * @param value the value
+     * @throws IllegalArgumentException if the storage cannot hold values of the given type
+     */
+    void put(String name, Object value);
+
+    /**
+     * Removes the value stored under the given name, if any.
+     *
+     * @param name the name
+     */
+    void remove(String name);
+
+    /**
+     * Removes all values.
+     */
+    void clear();
+}
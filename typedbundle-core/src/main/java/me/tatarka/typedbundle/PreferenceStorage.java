@@ -0,0 +1,107 @@
+package me.tatarka.typedbundle;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link Storage} holding preferences. In addition to the regular accessors, preferences can
+ * hold string sets, can be read in bulk, are changed through an {@link Editor} and report changes
+ * to {@link Listener}s.
+ * <p/>
+ * This is the engine behind {@code TypedPreferences}, implement it to keep preferences somewhere
+ * other than {@code SharedPreferences}. Implementations must be thread-safe.
+ */
+public interface PreferenceStorage extends Storage {
+    /**
+     * Returns the string set stored under the given name, or defValue if there isn't one.
+     *
+     * @param name     the name
+     * @param defValue the default value
+     * @return the value or defValue
+     */
+    Set<String> getStringSet(String name, Set<String> defValue);
+
+    /**
+     * Returns all stored values. The returned map must not be modified.
+     *
+     * @return the values
+     */
+    Map<String, ?> getAll();
+
+    /**
+     * Returns a new editor for changing values. Changes are only visible once committed or
+     * applied.
+     *
+     * @return the editor
+     */
+    Editor edit();
+
+    /**
+     * Registers a listener to be called when a value changes. It may be called on any thread.
+     *
+     * @param listener the listener
+     */
+    void registerListener(Listener listener);
+
+    /**
+     * Unregisters a listener registered with {@link #registerListener(Listener)}.
+     *
+     * @param listener the listener
+     */
+    void unregisterListener(Listener listener);
+
+    /**
+     * Collects changes to a {@link PreferenceStorage} and writes them all at once. Removes and a
+     * clear are done before any puts, regardless of the order they were called in.
+     */
+    interface Editor {
+        Editor putBoolean(String name, boolean value);
+
+        Editor putFloat(String name, float value);
+
+        Editor putInt(String name, int value);
+
+        Editor putLong(String name, long value);
+
+        /**
+         * Puts a string, a null value removes it.
+         */
+        Editor putString(String name, String value);
+
+        /**
+         * Puts a string set, a null value removes it.
+         */
+        Editor putStringSet(String name, Set<String> value);
+
+        Editor remove(String name);
+
+        Editor clear();
+
+        /**
+         * Writes the changes, blocking until they are durable.
+         *
+         * @return true if the changes were written successfully
+         */
+        boolean commit();
+
+        /**
+         * Makes the changes visible right away without waiting for them to be durable. They should
+         * be written in the background, a storage that has to write them on the calling thread,
+         * like {@link MultiProcessPreferenceStorage}, says so.
+         */
+        void apply();
+    }
+
+    /**
+     * Called when a value in a {@link PreferenceStorage} changes.
+     */
+    interface Listener {
+        /**
+         * Called after a value was added, changed or removed.
+         *
+         * @param storage the storage that changed
+         * @param name    the name of the value that changed
+         */
+        void onChanged(PreferenceStorage storage, String name);
+    }
+}
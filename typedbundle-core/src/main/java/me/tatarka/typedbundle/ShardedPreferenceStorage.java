@@ -0,0 +1,371 @@
+package me.tatarka.typedbundle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A {@link PreferenceStorage} split into named groups, each kept in its own storage that is only
+ * loaded the first time one of its values is read or written. When values are spread over a few
+ * groups, reading the ones needed at startup doesn't pay for loading all the others.
+ * <p/>
+ * Names are assigned to groups up front with a {@link Builder}, names that aren't assigned to any
+ * group go to the default group. {@link #getAll()}, {@link #keySet()}, {@link #size()} and
+ * {@link Editor#clear()} need every group, so they load all of them.
+ * <p/>
+ * An editor that changes values in several groups commits each group separately, so a crash in
+ * between may leave only some of the groups written.
+ */
+public class ShardedPreferenceStorage implements PreferenceStorage {
+    /**
+     * Loads the storage for a group.
+     */
+    public interface Loader {
+        /**
+         * Returns the storage for the given group. This is called at most once per group, the first
+         * time it's needed, on whatever thread needs it.
+         *
+         * @param group the group name
+         * @return the storage
+         */
+        PreferenceStorage load(String group);
+    }
+
+    private final Loader loader;
+    private final Map<String, Shard> shardsByName;
+    private final Map<String, Shard> shards;
+    private final Shard defaultShard;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Listener forwarder = new Listener() {
+        @Override
+        public void onChanged(PreferenceStorage storage, String name) {
+            for (Listener listener : listeners) {
+                listener.onChanged(ShardedPreferenceStorage.this, name);
+            }
+        }
+    };
+
+    private ShardedPreferenceStorage(Builder builder) {
+        loader = builder.loader;
+        shards = new LinkedHashMap<>();
+        defaultShard = new Shard(builder.defaultGroup);
+        shards.put(builder.defaultGroup, defaultShard);
+        shardsByName = new HashMap<>();
+        for (Map.Entry<String, String> entry : builder.groups.entrySet()) {
+            String group = entry.getValue();
+            Shard shard = shards.get(group);
+            if (shard == null) {
+                shard = new Shard(group);
+                shards.put(group, shard);
+            }
+            shardsByName.put(entry.getKey(), shard);
+        }
+    }
+
+    /**
+     * Returns the names of the groups.
+     *
+     * @return the group names, the default group first, then the others in the order they were
+     * added to the builder
+     */
+    public Set<String> getGroups() {
+        return Collections.unmodifiableSet(shards.keySet());
+    }
+
+    /**
+     * Returns true if the given group has been loaded.
+     *
+     * @param group the group name
+     * @return true if it's loaded, false if it hasn't been or there is no such group
+     */
+    public boolean isLoaded(String group) {
+        Shard shard = shards.get(group);
+        return shard != null && shard.storage != null;
+    }
+
+    private Shard shardFor(String name) {
+        Shard shard = shardsByName.get(name);
+        return shard != null ? shard : defaultShard;
+    }
+
+    private PreferenceStorage storageFor(String name) {
+        return shardFor(name).get();
+    }
+
+    @Override
+    public boolean contains(String name) {
+        return storageFor(name).contains(name);
+    }
+
+    @Override
+    public Object get(String name) {
+        return storageFor(name).get(name);
+    }
+
+    @Override
+    public String getString(String name, String defValue) {
+        return storageFor(name).getString(name, defValue);
+    }
+
+    @Override
+    public Set<String> getStringSet(String name, Set<String> defValue) {
+        return storageFor(name).getStringSet(name, defValue);
+    }
+
+    @Override
+    public boolean getBoolean(String name, boolean defValue) {
+        return storageFor(name).getBoolean(name, defValue);
+    }
+
+    @Override
+    public int getInt(String name, int defValue) {
+        return storageFor(name).getInt(name, defValue);
+    }
+
+    @Override
+    public long getLong(String name, long defValue) {
+        return storageFor(name).getLong(name, defValue);
+    }
+
+    @Override
+    public float getFloat(String name, float defValue) {
+        return storageFor(name).getFloat(name, defValue);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * This loads every group. A value stored in a group it isn't assigned to, for example before
+     * the groups were changed, is left out.
+     */
+    @Override
+    public Map<String, ?> getAll() {
+        Map<String, Object> all = new HashMap<>();
+        for (Shard shard : shards.values()) {
+            for (Map.Entry<String, ?> entry : shard.get().getAll().entrySet()) {
+                if (shardFor(entry.getKey()) == shard) {
+                    all.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return Collections.unmodifiableMap(all);
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return getAll().keySet();
+    }
+
+    @Override
+    public int size() {
+        return getAll().size();
+    }
+
+    @Override
+    public Editor edit() {
+        return new ShardedEditor();
+    }
+
+    @Override
+    public void registerListener(Listener listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener cannot be null");
+        }
+        listeners.add(listener);
+    }
+
+    @Override
+    public void unregisterListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * A group, loaded on first use.
+     */
+    private final class Shard {
+        final String group;
+        volatile PreferenceStorage storage;
+
+        Shard(String group) {
+            this.group = group;
+        }
+
+        PreferenceStorage get() {
+            PreferenceStorage result = storage;
+            if (result == null) {
+                synchronized (this) {
+                    result = storage;
+                    if (result == null) {
+                        result = loader.load(group);
+                        if (result == null) {
+                            throw new IllegalStateException("Loader returned null for group: " + group);
+                        }
+                        result.registerListener(forwarder);
+                        storage = result;
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Hands each change to an editor for its group, only loading the groups that are changed.
+     */
+    private final class ShardedEditor implements Editor {
+        private final Map<Shard, Editor> editors = new LinkedHashMap<>();
+
+        private synchronized Editor editorFor(String name) {
+            return editorFor(shardFor(name));
+        }
+
+        private synchronized Editor editorFor(Shard shard) {
+            Editor editor = editors.get(shard);
+            if (editor == null) {
+                editor = shard.get().edit();
+                editors.put(shard, editor);
+            }
+            return editor;
+        }
+
+        @Override
+        public Editor putBoolean(String name, boolean value) {
+            editorFor(name).putBoolean(name, value);
+            return this;
+        }
+
+        @Override
+        public Editor putFloat(String name, float value) {
+            editorFor(name).putFloat(name, value);
+            return this;
+        }
+
+        @Override
+        public Editor putInt(String name, int value) {
+            editorFor(name).putInt(name, value);
+            return this;
+        }
+
+        @Override
+        public Editor putLong(String name, long value) {
+            editorFor(name).putLong(name, value);
+            return this;
+        }
+
+        @Override
+        public Editor putString(String name, String value) {
+            editorFor(name).putString(name, value);
+            return this;
+        }
+
+        @Override
+        public Editor putStringSet(String name, Set<String> value) {
+            editorFor(name).putStringSet(name, value);
+            return this;
+        }
+
+        @Override
+        public Editor remove(String name) {
+            editorFor(name).remove(name);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor clear() {
+            for (Shard shard : shards.values()) {
+                editorFor(shard).clear();
+            }
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            boolean result = true;
+            for (Editor editor : editors()) {
+                result &= editor.commit();
+            }
+            return result;
+        }
+
+        @Override
+        public void apply() {
+            for (Editor editor : editors()) {
+                editor.apply();
+            }
+        }
+
+        private synchronized List<Editor> editors() {
+            return new ArrayList<>(editors.values());
+        }
+    }
+
+    /**
+     * Builds a {@link ShardedPreferenceStorage}.
+     */
+    public static class Builder {
+        private final Loader loader;
+        private final Map<String, String> groups = new LinkedHashMap<>();
+        private String defaultGroup = "default";
+
+        /**
+         * Constructs a new builder.
+         *
+         * @param loader the loader for the storage of each group
+         */
+        public Builder(Loader loader) {
+            if (loader == null) {
+                throw new NullPointerException("loader cannot be null");
+            }
+            this.loader = loader;
+        }
+
+        /**
+         * Assigns the given keys to a group, they are read from and written to its storage.
+         *
+         * @param group the group name
+         * @param keys  the keys
+         * @return the builder for chaining
+         * @throws IllegalArgumentException if a key is already assigned to another group
+         */
+        public Builder group(String group, Key<?>... keys) {
+            if (group == null) {
+                throw new NullPointerException("group cannot be null");
+            }
+            for (Key<?> key : keys) {
+                String previous = groups.put(key.name, group);
+                if (previous != null && !previous.equals(group)) {
+                    throw new IllegalArgumentException("Key " + key.name + " is already in group " + previous);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Sets the group for keys that aren't assigned to one, defaults to {@code "default"}.
+         *
+         * @param group the group name
+         * @return the builder for chaining
+         */
+        public Builder defaultGroup(String group) {
+            if (group == null) {
+                throw new NullPointerException("group cannot be null");
+            }
+            this.defaultGroup = group;
+            return this;
+        }
+
+        /**
+         * Builds the storage. No group is loaded until it's needed.
+         *
+         * @return the storage
+         */
+        public ShardedPreferenceStorage build() {
+            return new ShardedPreferenceStorage(this);
+        }
+    }
+}
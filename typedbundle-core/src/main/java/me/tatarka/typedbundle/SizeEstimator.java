@@ -0,0 +1,208 @@
+package me.tatarka.typedbundle;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates how many bytes values take up when written to an Android {@code Parcel}, without
+ * actually writing them. This follows the parcel layout: every value is preceded by a 4-byte type
+ * tag, everything is padded to 4 bytes and strings are written as utf-16.
+ * <p/>
+ * Types the parcel has no special case for (like {@code char[]} or {@code Character}) are written
+ * with java serialization, so their size is measured by serializing them to a counting stream.
+ * Subclasses handle platform types by overriding {@link #estimateOther(Object)}.
+ */
+public class SizeEstimator {
+    /**
+     * The size of a type tag.
+     */
+    protected static final int TAG_SIZE = 4;
+
+    /**
+     * Returns the estimated size of the storage when written as a bundle, including the length,
+     * magic and count header.
+     *
+     * @param storage the storage
+     * @return the estimated size in bytes
+     */
+    public int estimate(Storage storage) {
+        int size = 12;
+        for (String name : storage.keySet()) {
+            size += estimateEntry(name, storage.get(name));
+        }
+        return size;
+    }
+
+    /**
+     * Returns the estimated size of each entry in the storage, the key's name and its value,
+     * ordered from largest to smallest.
+     *
+     * @param storage the storage
+     * @return the estimated size in bytes of each entry, by name
+     */
+    public Map<String, Integer> estimateEntries(Storage storage) {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(storage.size());
+        for (String name : storage.keySet()) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(name, estimateEntry(name, storage.get(name))));
+        }
+        Collections.sort(entries, new Comparator<Map.Entry<String, Integer>>() {
+            @Override
+            public int compare(Map.Entry<String, Integer> lhs, Map.Entry<String, Integer> rhs) {
+                return rhs.getValue().compareTo(lhs.getValue());
+            }
+        });
+        Map<String, Integer> result = new LinkedHashMap<>(entries.size() * 2);
+        for (Map.Entry<String, Integer> entry : entries) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the estimated size of a single entry, the key's name and its value.
+     *
+     * @param name  the key's name
+     * @param value the value
+     * @return the estimated size in bytes
+     */
+    public int estimateEntry(String name, Object value) {
+        return stringSize(name) + estimateValue(value);
+    }
+
+    /**
+     * Returns the estimated size of the value, including its type tag.
+     *
+     * @param value the value
+     * @return the estimated size in bytes
+     */
+    public int estimateValue(Object value) {
+        if (value == null) {
+            return TAG_SIZE;
+        } else if (value instanceof String) {
+            return TAG_SIZE + stringSize((String) value);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte
+                || value instanceof Boolean || value instanceof Float) {
+            return TAG_SIZE + 4;
+        } else if (value instanceof Long || value instanceof Double) {
+            return TAG_SIZE + 8;
+        } else if (value instanceof CharSequence) {
+            // Written as a kind, the string and a span terminator. We can't see any spans from
+            // here, so they are ignored.
+            return TAG_SIZE + 8 + stringSize(value.toString());
+        } else if (value instanceof boolean[]) {
+            return TAG_SIZE + 4 + ((boolean[]) value).length * 4;
+        } else if (value instanceof byte[]) {
+            return TAG_SIZE + 4 + pad(((byte[]) value).length);
+        } else if (value instanceof int[]) {
+            return TAG_SIZE + 4 + ((int[]) value).length * 4;
+        } else if (value instanceof long[]) {
+            return TAG_SIZE + 4 + ((long[]) value).length * 8;
+        } else if (value instanceof double[]) {
+            return TAG_SIZE + 4 + ((double[]) value).length * 8;
+        } else if (value instanceof String[]) {
+            int size = TAG_SIZE + 4;
+            for (String s : (String[]) value) {
+                size += stringSize(s);
+            }
+            return size;
+        } else if (value instanceof CharSequence[]) {
+            int size = TAG_SIZE + 4;
+            for (CharSequence s : (CharSequence[]) value) {
+                size += 8 + stringSize(s != null ? s.toString() : null);
+            }
+            return size;
+        } else if (value instanceof List) {
+            int size = TAG_SIZE + 4;
+            for (Object item : (List<?>) value) {
+                size += estimateValue(item);
+            }
+            return size;
+        } else if (value instanceof Map) {
+            int size = TAG_SIZE + 4;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += estimateValue(entry.getKey()) + estimateValue(entry.getValue());
+            }
+            return size;
+        } else if (value instanceof Storage) {
+            return TAG_SIZE + estimate((Storage) value);
+        }
+        int size = estimateOther(value);
+        if (size >= 0) {
+            return size;
+        }
+        if (value instanceof Serializable) {
+            return TAG_SIZE + stringSize(value.getClass().getName()) + 4 + pad(serializedSize((Serializable) value));
+        }
+        throw new IllegalArgumentException("Can't estimate the size of " + value);
+    }
+
+    /**
+     * Returns the estimated size of a value not handled by this class, including its type tag, or
+     * -1 to fall back to treating it as {@link Serializable}.
+     *
+     * @param value the value
+     * @return the estimated size in bytes or -1
+     */
+    protected int estimateOther(Object value) {
+        return -1;
+    }
+
+    /**
+     * Returns the size of a string written to a parcel: a 4-byte length, followed by the null
+     * terminated utf-16 chars padded to 4 bytes.
+     *
+     * @param s the string, may be null
+     * @return the size in bytes
+     */
+    protected static int stringSize(String s) {
+        if (s == null) {
+            return 4;
+        }
+        return 4 + pad((s.length() + 1) * 2);
+    }
+
+    /**
+     * Pads the size to a multiple of 4.
+     *
+     * @param size the size
+     * @return the padded size
+     */
+    protected static int pad(int size) {
+        return (size + 3) & ~3;
+    }
+
+    private static int serializedSize(Serializable value) {
+        CountingOutputStream counter = new CountingOutputStream();
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(counter);
+            out.writeObject(value);
+            out.close();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Can't serialize " + value, e);
+        }
+        return counter.count;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        int count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
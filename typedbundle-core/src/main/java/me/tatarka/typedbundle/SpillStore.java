@@ -0,0 +1,43 @@
+package me.tatarka.typedbundle;
+
+import java.io.IOException;
+
+/**
+ * A side store that large values are moved into to keep a bundle small. Stores must be
+ * registered with {@link SpillStores#register(SpillStore)} so that the values can be found again
+ * from a bundle that has been parceled and recreated.
+ */
+public interface SpillStore {
+    /**
+     * Returns the id the store is registered under. This is written into the bundle, so it must
+     * be the same across process restarts.
+     *
+     * @return the id
+     */
+    String getId();
+
+    /**
+     * Stores the data.
+     *
+     * @param data the data
+     * @return a token that can be used to read the data back
+     * @throws IOException if the data can't be stored
+     */
+    String write(byte[] data) throws IOException;
+
+    /**
+     * Reads back data stored with {@link #write(byte[])}.
+     *
+     * @param token the token returned from {@link #write(byte[])}
+     * @return the data
+     * @throws IOException if the data can't be read, including if it was deleted
+     */
+    byte[] read(String token) throws IOException;
+
+    /**
+     * Deletes the data for the given token. Does nothing if it doesn't exist.
+     *
+     * @param token the token returned from {@link #write(byte[])}
+     */
+    void delete(String token);
+}
@@ -0,0 +1,44 @@
+package me.tatarka.typedbundle;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The registry of {@link SpillStore}s, so that spilled values can be found by store id.
+ */
+public final class SpillStores {
+    private static final ConcurrentMap<String, SpillStore> STORES = new ConcurrentHashMap<>();
+
+    private SpillStores() {
+    }
+
+    /**
+     * Registers the store under its id, replacing any store with the same id.
+     *
+     * @param store the store
+     * @return the store, for chaining
+     */
+    public static <S extends SpillStore> S register(S store) {
+        STORES.put(store.getId(), store);
+        return store;
+    }
+
+    /**
+     * Unregisters the store with the given id.
+     *
+     * @param id the store's id
+     */
+    public static void unregister(String id) {
+        STORES.remove(id);
+    }
+
+    /**
+     * Returns the store registered under the given id, or null if there isn't one.
+     *
+     * @param id the store's id
+     * @return the store or null
+     */
+    public static SpillStore get(String id) {
+        return STORES.get(id);
+    }
+}
@@ -0,0 +1,62 @@
+package me.tatarka.typedbundle;
+
+import java.util.Set;
+
+/**
+ * A read-only view of string-keyed values. This is what the typed wrappers delegate to, so that
+ * their logic does not depend on any particular platform container. Primitive accessors must not
+ * box, since they are used on hot paths.
+ * <p/>
+ * This only has accessors for the types every storage can hold, see {@link MutableStorage} for the
+ * other primitives a bundle holds.
+ */
+public interface Storage {
+    /**
+     * Returns true if a value is stored under the given name.
+     *
+     * @param name the name
+     * @return true if the storage contains the name, false otherwise
+     */
+    boolean contains(String name);
+
+    /**
+     * Returns the value stored under the given name, or null if there isn't one.
+     *
+     * @param name the name
+     * @return the value
+     */
+    Object get(String name);
+
+    /**
+     * Returns the value stored under the given name, or defValue if there isn't one or it isn't a
+     * string.
+     *
+     * @param name     the name
+     * @param defValue the default value
+     * @return the value or defValue
+     */
+    String getString(String name, String defValue);
+
+    boolean getBoolean(String name, boolean defValue);
+
+    int getInt(String name, int defValue);
+
+    long getLong(String name, long defValue);
+
+    float getFloat(String name, float defValue);
+
+    /**
+     * Returns the names of all stored values. This may be a live view of the storage and should
+     * not be modified.
+     *
+     * @return the names
+     */
+    Set<String> keySet();
+
+    /**
+     * Returns the number of stored values.
+     *
+     * @return the size
+     */
+    int size();
+}
@@ -0,0 +1,490 @@
+package me.tatarka.typedbundle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compact binary encoding of a {@link Storage}. Unlike parceling, the format is stable, so it can
+ * be persisted to disk or sent over the network.
+ * <p/>
+ * Each entry is written as a key followed by a one-byte type tag and the value. Key names are
+ * deduplicated through a string table shared with any nested storage, so a name is only written
+ * out once. Integral values are written as zig-zag varints and primitive arrays as raw big-endian
+ * blocks.
+ * <p/>
+ * Supported values are the boxed primitives, primitive arrays, {@code String},
+ * {@code CharSequence} and {@code CharSequence[]} (decoded as strings), {@code String[]},
+ * {@code ArrayList}s of {@code Integer}, {@code String} or {@code CharSequence}, string
+ * {@code Set}s and nested storage. Anything else throws an {@link IllegalArgumentException}.
+ * Subclasses can map platform containers to nested storage by overriding
+ * {@link #asNested(Object)}, {@link #newNested()} and {@link #fromNested(MutableStorage)}.
+ */
+public class StorageCodec {
+    static final int VERSION = 1;
+
+    static final int TYPE_NULL = 0;
+    static final int TYPE_FALSE = 1;
+    static final int TYPE_TRUE = 2;
+    static final int TYPE_BYTE = 3;
+    static final int TYPE_CHAR = 4;
+    static final int TYPE_SHORT = 5;
+    static final int TYPE_INT = 6;
+    static final int TYPE_LONG = 7;
+    static final int TYPE_FLOAT = 8;
+    static final int TYPE_DOUBLE = 9;
+    static final int TYPE_STRING = 10;
+    static final int TYPE_CHAR_SEQUENCE = 11;
+    static final int TYPE_BOOLEAN_ARRAY = 12;
+    static final int TYPE_BYTE_ARRAY = 13;
+    static final int TYPE_CHAR_ARRAY = 14;
+    static final int TYPE_SHORT_ARRAY = 15;
+    static final int TYPE_INT_ARRAY = 16;
+    static final int TYPE_LONG_ARRAY = 17;
+    static final int TYPE_FLOAT_ARRAY = 18;
+    static final int TYPE_DOUBLE_ARRAY = 19;
+    static final int TYPE_STRING_ARRAY = 20;
+    static final int TYPE_CHAR_SEQUENCE_ARRAY = 21;
+    static final int TYPE_INTEGER_LIST = 22;
+    static final int TYPE_STRING_LIST = 23;
+    static final int TYPE_CHAR_SEQUENCE_LIST = 24;
+    static final int TYPE_STRING_SET = 25;
+    static final int TYPE_NESTED = 26;
+
+    /**
+     * Encodes the storage into a new byte array.
+     *
+     * @param storage the storage to encode
+     * @return the encoded bytes
+     * @throws IllegalArgumentException if the storage contains a value that can't be encoded
+     */
+    public byte[] encode(Storage storage) {
+        BinaryWriter writer = new BinaryWriter(storage.size() * 16);
+        encode(storage, writer);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Encodes the storage into the given buffer, starting at its current position.
+     *
+     * @param storage the storage to encode
+     * @param out     the buffer to write to
+     * @throws java.nio.BufferOverflowException if the buffer doesn't have enough room
+     * @throws IllegalArgumentException         if the storage contains a value that can't be
+     *                                          encoded
+     */
+    public void encode(Storage storage, ByteBuffer out) {
+        BinaryWriter writer = new BinaryWriter(storage.size() * 16);
+        encode(storage, writer);
+        writer.writeTo(out);
+    }
+
+    /**
+     * Encodes the storage into the given stream. The stream is not closed.
+     *
+     * @param storage the storage to encode
+     * @param out     the stream to write to
+     * @throws IOException              if the stream throws
+     * @throws IllegalArgumentException if the storage contains a value that can't be encoded
+     */
+    public void encode(Storage storage, OutputStream out) throws IOException {
+        BinaryWriter writer = new BinaryWriter(storage.size() * 16);
+        encode(storage, writer);
+        writer.writeTo(out);
+    }
+
+    private void encode(Storage storage, BinaryWriter writer) {
+        writer.writeByte(VERSION);
+        writeStorage(writer, storage, new HashMap<String, Integer>());
+    }
+
+    /**
+     * Decodes the given bytes, putting each entry into the given storage.
+     *
+     * @param in   the encoded bytes
+     * @param into the storage to decode into
+     * @throws IllegalArgumentException if the input is malformed
+     */
+    public void decode(byte[] in, MutableStorage into) {
+        decode(ByteBuffer.wrap(in), into);
+    }
+
+    /**
+     * Decodes from the buffer's current position, putting each entry into the given storage. On
+     * return the buffer is positioned after the encoded storage.
+     *
+     * @param in   the buffer to read from
+     * @param into the storage to decode into
+     * @throws IllegalArgumentException if the input is malformed
+     */
+    public void decode(ByteBuffer in, MutableStorage into) {
+        BinaryReader reader = new BinaryReader(in);
+        try {
+            int version = reader.readByte();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported version: " + version);
+            }
+            readStorage(reader, into, new ArrayList<String>());
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated input", e);
+        }
+    }
+
+    /**
+     * Reads the stream to its end and decodes it, putting each entry into the given storage. The
+     * stream is not closed.
+     *
+     * @param in   the stream to read from
+     * @param into the storage to decode into
+     * @throws IOException              if the stream throws
+     * @throws IllegalArgumentException if the input is malformed
+     */
+    public void decode(InputStream in, MutableStorage into) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        decode(bytes.toByteArray(), into);
+    }
+
+    /**
+     * Returns the given value as storage if it should be encoded as a nested container, or null
+     * otherwise. By default, any {@link Storage} is nested.
+     *
+     * @param value the value
+     * @return the nested storage or null
+     */
+    protected Storage asNested(Object value) {
+        return value instanceof Storage ? (Storage) value : null;
+    }
+
+    /**
+     * Returns a new, empty storage to decode a nested container into.
+     *
+     * @return the storage
+     */
+    protected MutableStorage newNested() {
+        return new MapStorage();
+    }
+
+    /**
+     * Converts a decoded nested container into the value that is put into its parent.
+     *
+     * @param nested the decoded storage, as returned from {@link #newNested()}
+     * @return the value
+     */
+    protected Object fromNested(MutableStorage nested) {
+        return nested;
+    }
+
+    private void writeStorage(BinaryWriter writer, Storage storage, Map<String, Integer> strings) {
+        writer.writeVarInt(storage.size());
+        for (String name : storage.keySet()) {
+            writeName(writer, name, strings);
+            writeValue(writer, name, storage.get(name), strings);
+        }
+    }
+
+    /**
+     * Writes the index + 1 of a name already in the string table, or 0 followed by the name
+     * itself, adding it to the table.
+     */
+    private static void writeName(BinaryWriter writer, String name, Map<String, Integer> strings) {
+        Integer index = strings.get(name);
+        if (index != null) {
+            writer.writeVarInt(index + 1);
+        } else {
+            strings.put(name, strings.size());
+            writer.writeVarInt(0);
+            writer.writeString(name);
+        }
+    }
+
+    private void writeValue(BinaryWriter writer, String name, Object value, Map<String, Integer> strings) {
+        if (value == null) {
+            writer.writeByte(TYPE_NULL);
+        } else if (value instanceof String) {
+            writer.writeByte(TYPE_STRING);
+            writer.writeString((String) value);
+        } else if (value instanceof Integer) {
+            writer.writeByte(TYPE_INT);
+            writer.writeZigZagInt((Integer) value);
+        } else if (value instanceof Long) {
+            writer.writeByte(TYPE_LONG);
+            writer.writeZigZagLong((Long) value);
+        } else if (value instanceof Boolean) {
+            writer.writeByte((Boolean) value ? TYPE_TRUE : TYPE_FALSE);
+        } else if (value instanceof Double) {
+            writer.writeByte(TYPE_DOUBLE);
+            writer.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            writer.writeByte(TYPE_FLOAT);
+            writer.writeFloat((Float) value);
+        } else if (value instanceof Short) {
+            writer.writeByte(TYPE_SHORT);
+            writer.writeZigZagInt((Short) value);
+        } else if (value instanceof Byte) {
+            writer.writeByte(TYPE_BYTE);
+            writer.writeByte((Byte) value);
+        } else if (value instanceof Character) {
+            writer.writeByte(TYPE_CHAR);
+            writer.writeVarInt((Character) value);
+        } else if (value instanceof CharSequence) {
+            writer.writeByte(TYPE_CHAR_SEQUENCE);
+            writer.writeString(value.toString());
+        } else if (value instanceof int[]) {
+            writer.writeByte(TYPE_INT_ARRAY);
+            writer.writeIntArray((int[]) value);
+        } else if (value instanceof long[]) {
+            writer.writeByte(TYPE_LONG_ARRAY);
+            writer.writeLongArray((long[]) value);
+        } else if (value instanceof byte[]) {
+            writer.writeByte(TYPE_BYTE_ARRAY);
+            writer.writeByteArray((byte[]) value);
+        } else if (value instanceof boolean[]) {
+            writer.writeByte(TYPE_BOOLEAN_ARRAY);
+            writer.writeBooleanArray((boolean[]) value);
+        } else if (value instanceof char[]) {
+            writer.writeByte(TYPE_CHAR_ARRAY);
+            writer.writeCharArray((char[]) value);
+        } else if (value instanceof short[]) {
+            writer.writeByte(TYPE_SHORT_ARRAY);
+            writer.writeShortArray((short[]) value);
+        } else if (value instanceof float[]) {
+            writer.writeByte(TYPE_FLOAT_ARRAY);
+            writer.writeFloatArray((float[]) value);
+        } else if (value instanceof double[]) {
+            writer.writeByte(TYPE_DOUBLE_ARRAY);
+            writer.writeDoubleArray((double[]) value);
+        } else if (value instanceof String[]) {
+            writer.writeByte(TYPE_STRING_ARRAY);
+            String[] array = (String[]) value;
+            writer.writeVarInt(array.length);
+            for (String s : array) {
+                writer.writeString(s);
+            }
+        } else if (value instanceof CharSequence[]) {
+            writer.writeByte(TYPE_CHAR_SEQUENCE_ARRAY);
+            CharSequence[] array = (CharSequence[]) value;
+            writer.writeVarInt(array.length);
+            for (CharSequence s : array) {
+                writer.writeString(s != null ? s.toString() : null);
+            }
+        } else if (value instanceof ArrayList) {
+            writeList(writer, name, (ArrayList<?>) value);
+        } else if (value instanceof Set && isStringSet((Set<?>) value)) {
+            writer.writeByte(TYPE_STRING_SET);
+            Set<?> set = (Set<?>) value;
+            writer.writeVarInt(set.size());
+            for (Object s : set) {
+                writer.writeString((String) s);
+            }
+        } else {
+            Storage nested = asNested(value);
+            if (nested == null) {
+                throw new IllegalArgumentException("Can't encode value for " + name + ": " + value);
+            }
+            writer.writeByte(TYPE_NESTED);
+            writeStorage(writer, nested, strings);
+        }
+    }
+
+    private static void writeList(BinaryWriter writer, String name, ArrayList<?> list) {
+        int type = listType(list);
+        if (type == TYPE_NULL) {
+            throw new IllegalArgumentException("Can't encode value for " + name + ": " + list);
+        }
+        writer.writeByte(type);
+        writer.writeVarInt(list.size());
+        for (Object item : list) {
+            if (type == TYPE_INTEGER_LIST) {
+                // Integer lists may contain nulls, so write a presence flag before each item.
+                if (item == null) {
+                    writer.writeByte(0);
+                } else {
+                    writer.writeByte(1);
+                    writer.writeZigZagInt((Integer) item);
+                }
+            } else {
+                writer.writeString(item != null ? item.toString() : null);
+            }
+        }
+    }
+
+    /**
+     * Returns the list's type tag, or {@link #TYPE_NULL} if it can't be encoded. Like a bundle,
+     * an empty or all-null list is written as an integer list.
+     */
+    private static int listType(ArrayList<?> list) {
+        int type = TYPE_INTEGER_LIST;
+        boolean typed = false;
+        for (Object item : list) {
+            if (item == null) {
+                continue;
+            }
+            int itemType;
+            if (item instanceof Integer) {
+                itemType = TYPE_INTEGER_LIST;
+            } else if (item instanceof String) {
+                itemType = TYPE_STRING_LIST;
+            } else if (item instanceof CharSequence) {
+                itemType = TYPE_CHAR_SEQUENCE_LIST;
+            } else {
+                return TYPE_NULL;
+            }
+            if (!typed) {
+                type = itemType;
+                typed = true;
+            } else if (type != itemType) {
+                if (type == TYPE_INTEGER_LIST || itemType == TYPE_INTEGER_LIST) {
+                    return TYPE_NULL;
+                }
+                // A mix of strings and other char sequences.
+                type = TYPE_CHAR_SEQUENCE_LIST;
+            }
+        }
+        return type;
+    }
+
+    private static boolean isStringSet(Set<?> set) {
+        for (Object item : set) {
+            if (item != null && !(item instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void readStorage(BinaryReader reader, MutableStorage into, List<String> strings) {
+        int size = reader.readCount();
+        for (int i = 0; i < size; i++) {
+            String name = readName(reader, strings);
+            into.put(name, readValue(reader, strings));
+        }
+    }
+
+    private static String readName(BinaryReader reader, List<String> strings) {
+        int index = reader.readVarInt();
+        if (index == 0) {
+            String name = reader.readString();
+            if (name == null) {
+                throw new IllegalArgumentException("Null key name");
+            }
+            strings.add(name);
+            return name;
+        }
+        if (index > strings.size()) {
+            throw new IllegalArgumentException("Invalid string table index: " + index);
+        }
+        return strings.get(index - 1);
+    }
+
+    private Object readValue(BinaryReader reader, List<String> strings) {
+        int type = reader.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_FALSE:
+                return false;
+            case TYPE_TRUE:
+                return true;
+            case TYPE_BYTE:
+                return (byte) reader.readByte();
+            case TYPE_CHAR:
+                return (char) reader.readVarInt();
+            case TYPE_SHORT:
+                return (short) reader.readZigZagInt();
+            case TYPE_INT:
+                return reader.readZigZagInt();
+            case TYPE_LONG:
+                return reader.readZigZagLong();
+            case TYPE_FLOAT:
+                return reader.readFloat();
+            case TYPE_DOUBLE:
+                return reader.readDouble();
+            case TYPE_STRING:
+            case TYPE_CHAR_SEQUENCE:
+                return reader.readString();
+            case TYPE_BOOLEAN_ARRAY:
+                return reader.readBooleanArray();
+            case TYPE_BYTE_ARRAY:
+                return reader.readByteArray();
+            case TYPE_CHAR_ARRAY:
+                return reader.readCharArray();
+            case TYPE_SHORT_ARRAY:
+                return reader.readShortArray();
+            case TYPE_INT_ARRAY:
+                return reader.readIntArray();
+            case TYPE_LONG_ARRAY:
+                return reader.readLongArray();
+            case TYPE_FLOAT_ARRAY:
+                return reader.readFloatArray();
+            case TYPE_DOUBLE_ARRAY:
+                return reader.readDoubleArray();
+            case TYPE_STRING_ARRAY: {
+                String[] array = new String[reader.readCount()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = reader.readString();
+                }
+                return array;
+            }
+            case TYPE_CHAR_SEQUENCE_ARRAY: {
+                CharSequence[] array = new CharSequence[reader.readCount()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = reader.readString();
+                }
+                return array;
+            }
+            case TYPE_INTEGER_LIST: {
+                int size = reader.readCount();
+                ArrayList<Integer> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(reader.readByte() != 0 ? reader.readZigZagInt() : null);
+                }
+                return list;
+            }
+            case TYPE_STRING_LIST: {
+                int size = reader.readCount();
+                ArrayList<String> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(reader.readString());
+                }
+                return list;
+            }
+            case TYPE_CHAR_SEQUENCE_LIST: {
+                int size = reader.readCount();
+                ArrayList<CharSequence> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(reader.readString());
+                }
+                return list;
+            }
+            case TYPE_STRING_SET: {
+                int size = reader.readCount();
+                Set<String> set = new HashSet<>(size * 2);
+                for (int i = 0; i < size; i++) {
+                    set.add(reader.readString());
+                }
+                return set;
+            }
+            case TYPE_NESTED: {
+                MutableStorage nested = newNested();
+                readStorage(reader, nested, strings);
+                return fromNested(nested);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown type: " + type);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package me.tatarka.typedbundle;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compares {@link Storage}s by their contents. Unlike {@link Object#equals(Object)}, arrays are
+ * compared element by element and nested containers are compared recursively, so two storages
+ * built up the same way are equal and hash the same.
+ * <p/>
+ * Values are otherwise compared with their own {@code equals()} and {@code hashCode()}, so a value
+ * type that doesn't override them is compared by identity. Subclasses handle platform containers
+ * by overriding {@link #asNested(Object)}, {@link #hashOther(Object)} and
+ * {@link #equalsOther(Object, Object)}.
+ */
+public class StorageEquivalence {
+
+    /**
+     * Returns a hash of the storage's contents. It doesn't depend on iteration order.
+     *
+     * @param storage the storage
+     * @return the hash
+     */
+    public int hash(Storage storage) {
+        int hash = 0;
+        for (String name : storage.keySet()) {
+            hash += name.hashCode() ^ hashValue(storage.get(name));
+        }
+        return hash;
+    }
+
+    /**
+     * Returns true if both storages have the same names mapped to equivalent values.
+     *
+     * @param a the first storage
+     * @param b the second storage
+     * @return true if they are equivalent, false otherwise
+     */
+    public boolean equals(Storage a, Storage b) {
+        if (a == b) {
+            return true;
+        }
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (String name : a.keySet()) {
+            if (!b.contains(name) || !equalsValue(a.get(name), b.get(name))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a hash of the value's contents.
+     *
+     * @param value the value, may be null
+     * @return the hash
+     */
+    public int hashValue(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Object[]) {
+            Object[] array = (Object[]) value;
+            int hash = 1;
+            for (Object item : array) {
+                hash = 31 * hash + hashValue(item);
+            }
+            return hash;
+        }
+        if (value instanceof boolean[]) {
+            return Arrays.hashCode((boolean[]) value);
+        }
+        if (value instanceof byte[]) {
+            return Arrays.hashCode((byte[]) value);
+        }
+        if (value instanceof char[]) {
+            return Arrays.hashCode((char[]) value);
+        }
+        if (value instanceof short[]) {
+            return Arrays.hashCode((short[]) value);
+        }
+        if (value instanceof int[]) {
+            return Arrays.hashCode((int[]) value);
+        }
+        if (value instanceof long[]) {
+            return Arrays.hashCode((long[]) value);
+        }
+        if (value instanceof float[]) {
+            return Arrays.hashCode((float[]) value);
+        }
+        if (value instanceof double[]) {
+            return Arrays.hashCode((double[]) value);
+        }
+        if (value instanceof List) {
+            int hash = 1;
+            for (Object item : (List<?>) value) {
+                hash = 31 * hash + hashValue(item);
+            }
+            return hash;
+        }
+        if (value instanceof Set || value instanceof Map) {
+            // Elements are hashed unordered by the collection itself.
+            return value.hashCode();
+        }
+        if (value instanceof CharSequence && !(value instanceof String)) {
+            // Spans and builders don't implement equals, compare them by their text.
+            return value.toString().hashCode();
+        }
+        Storage nested = asNested(value);
+        if (nested != null) {
+            return hash(nested);
+        }
+        return hashOther(value);
+    }
+
+    /**
+     * Returns true if the values have equivalent contents.
+     *
+     * @param a the first value, may be null
+     * @param b the second value, may be null
+     * @return true if they are equivalent, false otherwise
+     */
+    public boolean equalsValue(Object a, Object b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null) {
+            return false;
+        }
+        if (a instanceof Object[]) {
+            // Like Arrays.deepEquals(), the array types don't matter. A Parcelable subclass array
+            // comes back from a parcel as a plain Parcelable[].
+            if (!(b instanceof Object[])) {
+                return false;
+            }
+            Object[] arrayA = (Object[]) a;
+            Object[] arrayB = (Object[]) b;
+            if (arrayA.length != arrayB.length) {
+                return false;
+            }
+            for (int i = 0; i < arrayA.length; i++) {
+                if (!equalsValue(arrayA[i], arrayB[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (a instanceof boolean[]) {
+            return b instanceof boolean[] && Arrays.equals((boolean[]) a, (boolean[]) b);
+        }
+        if (a instanceof byte[]) {
+            return b instanceof byte[] && Arrays.equals((byte[]) a, (byte[]) b);
+        }
+        if (a instanceof char[]) {
+            return b instanceof char[] && Arrays.equals((char[]) a, (char[]) b);
+        }
+        if (a instanceof short[]) {
+            return b instanceof short[] && Arrays.equals((short[]) a, (short[]) b);
+        }
+        if (a instanceof int[]) {
+            return b instanceof int[] && Arrays.equals((int[]) a, (int[]) b);
+        }
+        if (a instanceof long[]) {
+            return b instanceof long[] && Arrays.equals((long[]) a, (long[]) b);
+        }
+        if (a instanceof float[]) {
+            return b instanceof float[] && Arrays.equals((float[]) a, (float[]) b);
+        }
+        if (a instanceof double[]) {
+            return b instanceof double[] && Arrays.equals((double[]) a, (double[]) b);
+        }
+        if (a instanceof List) {
+            if (!(b instanceof List)) {
+                return false;
+            }
+            List<?> listA = (List<?>) a;
+            List<?> listB = (List<?>) b;
+            if (listA.size() != listB.size()) {
+                return false;
+            }
+            Iterator<?> iterB = listB.iterator();
+            for (Object item : listA) {
+                if (!equalsValue(item, iterB.next())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (a instanceof Set || a instanceof Map) {
+            return a.equals(b);
+        }
+        if (a instanceof CharSequence && !(a instanceof String)) {
+            return b instanceof CharSequence && !(b instanceof String) && a.toString().equals(b.toString());
+        }
+        Storage nestedA = asNested(a);
+        if (nestedA != null) {
+            Storage nestedB = asNested(b);
+            return nestedB != null && equals(nestedA, nestedB);
+        }
+        return equalsOther(a, b);
+    }
+
+    /**
+     * Returns a nested container value as a storage so it's compared recursively, or null if the
+     * value isn't one. The default returns the value if it's a {@link Storage}.
+     *
+     * @param value the value
+     * @return the storage or null
+     */
+    protected Storage asNested(Object value) {
+        return value instanceof Storage ? (Storage) value : null;
+    }
+
+    /**
+     * Returns a hash of a value that isn't an array, collection or nested container. The default
+     * returns {@code value.hashCode()}.
+     *
+     * @param value the value, never null
+     * @return the hash
+     */
+    protected int hashOther(Object value) {
+        return value.hashCode();
+    }
+
+    /**
+     * Returns true if two values that aren't arrays, collections or nested containers are equal.
+     * The default returns {@code a.equals(b)}.
+     *
+     * @param a the first value, never null
+     * @param b the second value, never null
+     * @return true if they are equal, false otherwise
+     */
+    protected boolean equalsOther(Object a, Object b) {
+        return a.equals(b);
+    }
+}
@@ -0,0 +1,139 @@
+package me.tatarka.typedbundle.internal;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link Executor} backed by a fixed number of threads that runs queued tasks in order of
+ * priority, higher first, and tasks of the same priority in the order they were submitted. This
+ * lets independent work, like the loads for each of a screen's data sources, run in parallel
+ * while the most important of them doesn't wait behind the rest.
+ * <p/>
+ * The priority only orders tasks that are waiting for a thread, a running task is never
+ * interrupted. Idle threads are stopped after a while and started again when needed.
+ * <p/>
+ * This is used by the {@code TypedExecutorLoader}s and isn't part of the public API, it may change
+ * at any time.
+ */
+public class PriorityExecutor implements Executor {
+    /**
+     * The priority of tasks submitted with {@link #execute(Runnable)}.
+     */
+    public static final int DEFAULT_PRIORITY = 0;
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final ThreadPoolExecutor pool;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Constructs a new executor.
+     *
+     * @param threads the number of tasks to run at the same time
+     * @throws IllegalArgumentException if threads isn't positive
+     */
+    public PriorityExecutor(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        pool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new DaemonThreadFactory());
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns an executor shared by everything that doesn't supply its own. It runs as many tasks
+     * at the same time as there are processors, but at least 2 and at most 4.
+     *
+     * @return the shared executor
+     */
+    public static PriorityExecutor shared() {
+        return SharedHolder.INSTANCE;
+    }
+
+    /**
+     * Returns the number of tasks this runs at the same time.
+     *
+     * @return the number of threads
+     */
+    public int getThreadCount() {
+        return pool.getMaximumPoolSize();
+    }
+
+    /**
+     * Runs the given task with the {@link #DEFAULT_PRIORITY}.
+     *
+     * @param command the task
+     */
+    @Override
+    public void execute(Runnable command) {
+        execute(command, DEFAULT_PRIORITY);
+    }
+
+    /**
+     * Runs the given task once a thread is free and no task with a higher priority is waiting.
+     *
+     * @param command  the task
+     * @param priority the priority, higher runs first
+     * @throws java.util.concurrent.RejectedExecutionException if this executor was shut down
+     */
+    public void execute(Runnable command, int priority) {
+        if (command == null) {
+            throw new NullPointerException("command cannot be null");
+        }
+        pool.execute(new PriorityTask(command, priority, sequence.getAndIncrement()));
+    }
+
+    /**
+     * Stops accepting tasks. Tasks already submitted still run.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private static final class SharedHolder {
+        static final PriorityExecutor INSTANCE = new PriorityExecutor(
+                Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())));
+    }
+
+    private static final class PriorityTask implements Runnable, Comparable<PriorityTask> {
+        private final Runnable command;
+        private final int priority;
+        private final long sequence;
+
+        PriorityTask(Runnable command, int priority, long sequence) {
+            this.command = command;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            command.run();
+        }
+
+        @Override
+        public int compareTo(PriorityTask other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private static final AtomicInteger COUNT = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "PriorityExecutor #" + COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
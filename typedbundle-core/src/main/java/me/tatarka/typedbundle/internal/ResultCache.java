@@ -0,0 +1,140 @@
+package me.tatarka.typedbundle.internal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cache of results, such as loader results keyed by their id and args. It holds at most a
+ * maximum number of entries, evicting the least recently used one to make room, and an entry
+ * expires a fixed time after it was put.
+ * <p/>
+ * Expired entries are dropped when they are looked up or evicted to make room, they aren't
+ * cleaned up in the background. This class is thread-safe.
+ * <p/>
+ * This is used by the {@code TypedLoaderManager}s and isn't part of the public API, it may change
+ * at any time.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class ResultCache<K, V> {
+    private final int maxSize;
+    private final long maxAgeNanos;
+    private final LinkedHashMap<K, Timed<V>> entries;
+
+    /**
+     * Constructs a new cache.
+     *
+     * @param maxSize the maximum number of entries
+     * @param maxAge  how long an entry is kept after it was put
+     * @param unit    the unit of maxAge
+     * @throws IllegalArgumentException if maxSize isn't positive or maxAge is negative
+     */
+    public ResultCache(final int maxSize, long maxAge, TimeUnit unit) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        if (maxAge < 0) {
+            throw new IllegalArgumentException("maxAge cannot be negative");
+        }
+        this.maxSize = maxSize;
+        this.maxAgeNanos = unit.toNanos(maxAge);
+        this.entries = new LinkedHashMap<K, Timed<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Timed<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the maximum number of entries.
+     *
+     * @return the maximum size
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the value for the given key, or null if there isn't one or it expired.
+     *
+     * @param key the key
+     * @return the value or null
+     */
+    public synchronized V get(K key) {
+        Timed<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (now() - entry.time > maxAgeNanos) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Puts a value, replacing any value already there and restarting its expiry.
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    public synchronized void put(K key, V value) {
+        if (key == null) {
+            throw new NullPointerException("key cannot be null");
+        }
+        if (value == null) {
+            throw new NullPointerException("value cannot be null");
+        }
+        entries.put(key, new Timed<>(value, now()));
+    }
+
+    /**
+     * Removes the value for the given key.
+     *
+     * @param key the key
+     * @return the removed value, or null if there wasn't one
+     */
+    public synchronized V remove(K key) {
+        Timed<V> entry = entries.remove(key);
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * Removes all values.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of entries, including ones that expired but haven't been dropped yet.
+     *
+     * @return the size
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the current time in nanoseconds, used to expire entries. The default returns
+     * {@link System#nanoTime()}.
+     *
+     * @return the time
+     */
+    protected long now() {
+        return System.nanoTime();
+    }
+
+    private static final class Timed<V> {
+        final V value;
+        final long time;
+
+        Timed(V value, long time) {
+            this.value = value;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package me.tatarka.typedbundle;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CachingPreferenceStorageTest {
+    @Test
+    public void testReadsThrough() {
+        MemoryPreferenceStorage storage = new MemoryPreferenceStorage(Collections.singletonMap("int", 1));
+        CachingPreferenceStorage cache = new CachingPreferenceStorage(storage);
+
+        assertThat(cache.getInt("int", 0)).isEqualTo(1);
+    }
+
+    @Test
+    public void testSeesChangesToWrappedStorage() {
+        MemoryPreferenceStorage storage = new MemoryPreferenceStorage();
+        CachingPreferenceStorage cache = new CachingPreferenceStorage(storage);
+        cache.getInt("int", 0);
+        storage.edit().putInt("int", 2).commit();
+
+        assertThat(cache.getInt("int", 0)).isEqualTo(2);
+    }
+
+    @Test
+    public void testSeesOwnWrites() {
+        MemoryPreferenceStorage storage = new MemoryPreferenceStorage();
+        CachingPreferenceStorage cache = new CachingPreferenceStorage(storage);
+        cache.getInt("int", 0);
+        cache.edit().putInt("int", 3).apply();
+
+        assertThat(cache.getInt("int", 0)).isEqualTo(3);
+    }
+
+    @Test
+    public void testGetAllReturnsSameSnapshotUntilChanged() {
+        MemoryPreferenceStorage storage = new MemoryPreferenceStorage(Collections.singletonMap("int", 1));
+        CachingPreferenceStorage cache = new CachingPreferenceStorage(storage);
+
+        assertThat(cache.getAll()).isSameAs(cache.getAll());
+        Object before = cache.getAll();
+        storage.edit().putInt("int", 2).commit();
+        assertThat(cache.getAll()).isNotSameAs(before);
+    }
+
+    @Test
+    public void testListenerGetsCachingStorage() {
+        MemoryPreferenceStorage storage = new MemoryPreferenceStorage();
+        final CachingPreferenceStorage cache = new CachingPreferenceStorage(storage);
+        final PreferenceStorage[] notified = new PreferenceStorage[1];
+        cache.registerListener(new PreferenceStorage.Listener() {
+            @Override
+            public void onChanged(PreferenceStorage storage, String name) {
+                notified[0] = storage;
+                // The snapshot must already be updated.
+                assertThat(storage.getInt("int", 0)).isEqualTo(1);
+            }
+        });
+        storage.edit().putInt("int", 1).commit();
+
+        assertThat(notified[0]).isSameAs(cache);
+    }
+
+    @Test
+    public void testChangeUpdatesOnlyChangedEntry() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("a", 1);
+        values.put("b", 2);
+        CountingStorage storage = new CountingStorage(values);
+        CachingPreferenceStorage cache = new CachingPreferenceStorage(storage);
+        cache.getAll();
+        storage.edit().putInt("a", 3).remove("b").commit();
+        cache.edit().putInt("c", 4).apply();
+
+        assertThat(cache.getInt("a", 0)).isEqualTo(3);
+        assertThat(cache.contains("b")).isFalse();
+        assertThat(cache.getInt("c", 0)).isEqualTo(4);
+        assertThat(storage.getAllCalls).isEqualTo(1);
+    }
+
+    @Test
+    public void testClearRebuildsSnapshot() {
+        CountingStorage storage = new CountingStorage(Collections.<String, Object>singletonMap("a", 1));
+        CachingPreferenceStorage cache = new CachingPreferenceStorage(storage);
+        cache.getAll();
+        cache.edit().clear().commit();
+
+        assertThat(cache.contains("a")).isFalse();
+    }
+
+    private static class CountingStorage extends MemoryPreferenceStorage {
+        int getAllCalls;
+
+        CountingStorage(Map<String, ?> values) {
+            super(values);
+        }
+
+        @Override
+        public Map<String, ?> getAll() {
+            getAllCalls++;
+            return super.getAll();
+        }
+    }
+}
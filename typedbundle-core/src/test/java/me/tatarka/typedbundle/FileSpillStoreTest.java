@@ -0,0 +1,49 @@
+package me.tatarka.typedbundle;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class FileSpillStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteRead() throws IOException {
+        FileSpillStore store = new FileSpillStore("test", folder.newFolder());
+        String token = store.write(new byte[]{1, 2, 3});
+
+        assertThat(store.read(token)).isEqualTo(new byte[]{1, 2, 3});
+    }
+
+    @Test
+    public void testDelete() throws IOException {
+        FileSpillStore store = new FileSpillStore("test", folder.newFolder());
+        String token = store.write(new byte[]{1, 2, 3});
+        store.delete(token);
+
+        try {
+            store.read(token);
+            fail("Should throw for deleted data");
+        } catch (IOException e) {
+            // Success
+        }
+    }
+
+    @Test
+    public void testInvalidToken() throws IOException {
+        FileSpillStore store = new FileSpillStore("test", folder.newFolder());
+
+        try {
+            store.read("../escape");
+            fail("Should throw for a token outside the directory");
+        } catch (IllegalArgumentException e) {
+            // Success
+        }
+    }
+}
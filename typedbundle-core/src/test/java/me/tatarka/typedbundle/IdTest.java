@@ -0,0 +1,41 @@
+package me.tatarka.typedbundle;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IdTest {
+    @Test
+    public void testOfSmallIdReturnsSameInstance() {
+        Id<String> id1 = Id.of(1);
+        Id<String> id2 = Id.of(1);
+
+        assertThat(id1).isSameAs(id2);
+    }
+
+    @Test
+    public void testOfLargeIdReturnsSameInstance() {
+        Id<String> id1 = Id.of(100000);
+        Id<String> id2 = Id.of(100000);
+
+        assertThat(id1).isSameAs(id2);
+    }
+
+    @Test
+    public void testOfNegativeIdReturnsSameInstance() {
+        Id<String> id1 = Id.of(-1);
+        Id<String> id2 = Id.of(-1);
+
+        assertThat(id1).isSameAs(id2);
+    }
+
+    @Test
+    public void testOfEqualsConstructedId() {
+        Id<String> interned = Id.of(1);
+        Id<String> constructed = new Id<>(1);
+
+        assertThat(interned).isEqualTo(constructed);
+        assertThat(constructed).isEqualTo(interned);
+        assertThat(interned.hashCode()).isEqualTo(constructed.hashCode());
+    }
+}
@@ -0,0 +1,61 @@
+package me.tatarka.typedbundle;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class KeyTest {
+    @Test
+    public void testKeyNullName() {
+        try {
+            Key<String> key = new Key<>(null);
+            fail("Key with null name should throw exception.");
+        } catch (NullPointerException e) {
+            // Success
+        }
+    }
+
+    @Test
+    public void testOfReturnsSameInstance() {
+        Key<String> key1 = Key.of("key");
+        Key<String> key2 = Key.of(new String("key"));
+
+        assertThat(key1).isSameAs(key2);
+    }
+
+    @Test
+    public void testOfEqualsConstructedKey() {
+        Key<String> interned = Key.of("key");
+        Key<String> constructed = new Key<>("key");
+
+        assertThat(interned).isEqualTo(constructed);
+        assertThat(constructed).isEqualTo(interned);
+        assertThat(interned.hashCode()).isEqualTo(constructed.hashCode());
+    }
+
+    @Test
+    public void testForNameReturnsInternedKey() {
+        Key<String> interned = Key.of("forNameInterned");
+
+        assertThat(Key.forName("forNameInterned")).isSameAs(interned);
+    }
+
+    @Test
+    public void testForNameDoesNotIntern() {
+        Key<String> key = Key.forName("forNameNotInterned");
+
+        assertThat(key).isEqualTo(new Key<String>("forNameNotInterned"));
+        assertThat(Key.of("forNameNotInterned")).isNotSameAs(key);
+    }
+
+    @Test
+    public void testOfNullName() {
+        try {
+            Key.of(null);
+            fail("Key with null name should throw exception.");
+        } catch (NullPointerException e) {
+            // Success
+        }
+    }
+}
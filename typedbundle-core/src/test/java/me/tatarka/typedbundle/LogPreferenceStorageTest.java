@@ -0,0 +1,219 @@
+package me.tatarka.typedbundle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class LogPreferenceStorageTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExecutorService executor;
+    private File file;
+
+    @Before
+    public void setup() throws IOException {
+        executor = Executors.newSingleThreadExecutor();
+        file = new File(folder.getRoot(), "prefs.log");
+    }
+
+    @After
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        Set<String> set = new HashSet<>(Arrays.asList("a", "b"));
+        LogPreferenceStorage storage = LogPreferenceStorage.open(file, executor);
+        storage.edit().putInt("int", 1).putString("string", "value").putStringSet("set", set).commit();
+        storage.edit().putInt("int", 2).remove("string").commit();
+        storage.close();
+        LogPreferenceStorage reopened = LogPreferenceStorage.open(file, executor);
+
+        assertThat(reopened.getInt("int", 0)).isEqualTo(2);
+        assertThat(reopened.contains("string")).isFalse();
+        assertThat(reopened.getStringSet("set", null)).isEqualTo(set);
+        reopened.close();
+    }
+
+    @Test
+    public void testClear() throws IOException {
+        LogPreferenceStorage storage = LogPreferenceStorage.open(file, executor);
+        storage.edit().putInt("old", 1).commit();
+        storage.edit().clear().putInt("new", 2).commit();
+        storage.close();
+        LogPreferenceStorage reopened = LogPreferenceStorage.open(file, executor);
+
+        assertThat(reopened.keySet()).containsOnly("new");
+        reopened.close();
+    }
+
+    @Test
+    public void testWriteAppends() throws IOException {
+        LogPreferenceStorage storage = LogPreferenceStorage.open(file, executor);
+        for (int i = 0; i < 100; i++) {
+            storage.edit().putString("filler" + i, "some value").commit();
+        }
+        long before = file.length();
+        storage.edit().putInt("int", 1).commit();
+
+        assertThat(file.length() - before).isLessThan(32);
+        storage.close();
+    }
+
+    @Test
+    public void testTornWriteDropped() throws IOException {
+        LogPreferenceStorage storage = LogPreferenceStorage.open(file, executor);
+        storage.edit().putInt("int", 1).commit();
+        storage.close();
+        long length = file.length();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(length);
+        raf.write(new byte[]{0, 0, 0, 50, 1, 2, 3});
+        raf.close();
+        LogPreferenceStorage reopened = LogPreferenceStorage.open(file, executor);
+
+        assertThat(reopened.getInt("int", 0)).isEqualTo(1);
+        assertThat(file.length()).isEqualTo(length);
+        reopened.edit().putInt("int", 2).commit();
+        reopened.close();
+        assertThat(LogPreferenceStorage.open(file, executor).getInt("int", 0)).isEqualTo(2);
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        LogPreferenceStorage storage = LogPreferenceStorage.open(file, executor);
+        for (int i = 0; i < 1000; i++) {
+            storage.edit().putInt("int", i).apply();
+        }
+        drainExecutor();
+        long before = file.length();
+        storage.compact();
+
+        assertThat(file.length()).isLessThan(before);
+        storage.edit().putInt("other", 1).commit();
+        storage.close();
+        LogPreferenceStorage reopened = LogPreferenceStorage.open(file, executor);
+        assertThat(reopened.getInt("int", 0)).isEqualTo(999);
+        assertThat(reopened.getInt("other", 0)).isEqualTo(1);
+        reopened.close();
+    }
+
+    @Test
+    public void testCompactsAutomatically() throws Exception {
+        LogPreferenceStorage storage = LogPreferenceStorage.open(file, executor);
+        for (int i = 0; i < 10000; i++) {
+            storage.edit().putInt("int", i).apply();
+        }
+        // Once for the applied changes to be written, then for the compaction that starts.
+        drainExecutor();
+        drainExecutor();
+
+        assertThat(file.length()).isLessThan(32 * 1024);
+        storage.close();
+    }
+
+    @Test
+    public void testApplyWritesInBackground() throws Exception {
+        LogPreferenceStorage storage = LogPreferenceStorage.open(file, executor);
+        long before = file.length();
+        storage.edit().putInt("int", 1).apply();
+
+        assertThat(storage.getInt("int", 0)).isEqualTo(1);
+        drainExecutor();
+        assertThat(file.length()).isGreaterThan(before);
+        storage.close();
+        assertThat(LogPreferenceStorage.open(file, executor).getInt("int", 0)).isEqualTo(1);
+    }
+
+    @Test
+    public void testCommitWritesAppliedChangesFirst() throws IOException {
+        // Never runs the write, so the applied changes are still waiting when committing.
+        LogPreferenceStorage storage = LogPreferenceStorage.open(file, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+            }
+        });
+        storage.edit().putInt("int", 1).putInt("other", 1).apply();
+        storage.edit().putInt("int", 2).commit();
+        storage.close();
+        LogPreferenceStorage reopened = LogPreferenceStorage.open(file, executor);
+
+        assertThat(reopened.getInt("int", 0)).isEqualTo(2);
+        assertThat(reopened.getInt("other", 0)).isEqualTo(1);
+        reopened.close();
+    }
+
+    @Test
+    public void testCorruptRecordSkipped() throws IOException {
+        LogPreferenceStorage storage = LogPreferenceStorage.open(file, executor);
+        storage.edit().putInt("int", 1).commit();
+        long start = file.length();
+        storage.edit().putInt("int", 2).putInt("other", 2).commit();
+        storage.edit().putInt("last", 3).commit();
+        storage.close();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        // Flip a byte in the payload of the middle record.
+        raf.seek(start + 12);
+        int b = raf.read();
+        raf.seek(start + 12);
+        raf.write(b ^ 0xff);
+        raf.close();
+        long length = file.length();
+        LogPreferenceStorage reopened = LogPreferenceStorage.open(file, executor);
+
+        assertThat(reopened.getInt("int", 0)).isEqualTo(1);
+        assertThat(reopened.contains("other")).isFalse();
+        assertThat(reopened.getInt("last", 0)).isEqualTo(3);
+        assertThat(file.length()).isEqualTo(length);
+        reopened.close();
+    }
+
+    private void drainExecutor() throws Exception {
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testNotALog() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.write(new byte[]{1, 2, 3, 4, 5, 6});
+        raf.close();
+
+        try {
+            LogPreferenceStorage.open(file, executor);
+            fail("Should throw for a file that isn't a log");
+        } catch (IOException e) {
+            // Success
+        }
+    }
+
+    @Test
+    public void testCommitAfterCloseFails() throws IOException {
+        LogPreferenceStorage storage = LogPreferenceStorage.open(file, executor);
+        storage.close();
+
+        assertThat(storage.edit().putInt("int", 1).commit()).isFalse();
+        assertThat(storage.contains("int")).isFalse();
+    }
+}
@@ -0,0 +1,57 @@
+package me.tatarka.typedbundle;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MapStorageTest {
+    @Test
+    public void testGetPrimitive() {
+        MapStorage storage = new MapStorage();
+        storage.put("int", 1);
+        storage.put("long", 2L);
+        storage.put("boolean", true);
+
+        assertThat(storage.getInt("int", 0)).isEqualTo(1);
+        assertThat(storage.getLong("long", 0L)).isEqualTo(2L);
+        assertThat(storage.getBoolean("boolean", false)).isTrue();
+    }
+
+    @Test
+    public void testGetPrimitiveDefaultValueAbsent() {
+        MapStorage storage = new MapStorage();
+
+        assertThat(storage.getInt("int", 42)).isEqualTo(42);
+    }
+
+    @Test
+    public void testGetPrimitiveDefaultValueWrongType() {
+        MapStorage storage = new MapStorage();
+        storage.put("key", "value");
+
+        assertThat(storage.getInt("key", 42)).isEqualTo(42);
+        assertThat(storage.getString("key", null)).isEqualTo("value");
+    }
+
+    @Test
+    public void testRemove() {
+        MapStorage storage = new MapStorage();
+        storage.put("key", "value");
+        storage.remove("key");
+
+        assertThat(storage.contains("key")).isFalse();
+        assertThat(storage.size()).isZero();
+    }
+
+    @Test
+    public void testKeySet() {
+        MapStorage storage = new MapStorage();
+        storage.put("stringKey", "value");
+        storage.put("intKey", 1);
+
+        assertThat(storage.keySet()).isEqualTo(new HashSet<>(Arrays.asList("stringKey", "intKey")));
+    }
+}
@@ -0,0 +1,171 @@
+package me.tatarka.typedbundle;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class MappedPreferenceStorageTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setup() {
+        file = new File(folder.getRoot(), "prefs.map");
+    }
+
+    @Test
+    public void testMissingFileIsEmpty() throws IOException {
+        MappedPreferenceStorage storage = MappedPreferenceStorage.open(file);
+
+        assertThat(storage.size()).isEqualTo(0);
+        assertThat(storage.getInt("int", 1)).isEqualTo(1);
+        assertThat(file.exists()).isFalse();
+    }
+
+    @Test
+    public void testReadTypes() throws IOException {
+        Set<String> set = new HashSet<>(Arrays.asList("a", "b"));
+        MappedPreferenceStorage storage = MappedPreferenceStorage.open(file);
+        storage.edit()
+                .putBoolean("boolean", true)
+                .putFloat("float", 1.5f)
+                .putInt("int", 1)
+                .putLong("long", 1L << 40)
+                .putString("string", "value")
+                .putStringSet("set", set)
+                .commit();
+
+        assertThat(storage.getBoolean("boolean", false)).isTrue();
+        assertThat(storage.getFloat("float", 0)).isEqualTo(1.5f);
+        assertThat(storage.getInt("int", 0)).isEqualTo(1);
+        assertThat(storage.getLong("long", 0)).isEqualTo(1L << 40);
+        assertThat(storage.getString("string", null)).isEqualTo("value");
+        assertThat(storage.getStringSet("set", null)).isEqualTo(set);
+        assertThat(storage.size()).isEqualTo(6);
+    }
+
+    @Test
+    public void testWrongTypeReturnsDefault() throws IOException {
+        MappedPreferenceStorage storage = MappedPreferenceStorage.open(file);
+        storage.edit().putString("string", "value").commit();
+
+        assertThat(storage.getInt("string", 2)).isEqualTo(2);
+        assertThat(storage.getBoolean("string", true)).isTrue();
+    }
+
+    @Test
+    public void testHashCollision() throws IOException {
+        // "Aa" and "BB" have the same hash code.
+        MappedPreferenceStorage storage = MappedPreferenceStorage.open(file);
+        storage.edit().putInt("Aa", 1).putInt("BB", 2).commit();
+
+        assertThat(storage.getInt("Aa", 0)).isEqualTo(1);
+        assertThat(storage.getInt("BB", 0)).isEqualTo(2);
+        assertThat(storage.contains("Ab")).isFalse();
+    }
+
+    @Test
+    public void testNonAsciiNames() throws IOException {
+        MappedPreferenceStorage storage = MappedPreferenceStorage.open(file);
+        storage.edit().putString("na\u00efve", "h\u00e9llo").commit();
+
+        assertThat(storage.getString("na\u00efve", null)).isEqualTo("h\u00e9llo");
+        assertThat(storage.contains("naive")).isFalse();
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        MappedPreferenceStorage storage = MappedPreferenceStorage.open(file);
+        storage.edit().putInt("int", 1).putString("string", "value").commit();
+        storage.edit().remove("string").putInt("int", 2).commit();
+        MappedPreferenceStorage reopened = MappedPreferenceStorage.open(file);
+
+        assertThat(reopened.getInt("int", 0)).isEqualTo(2);
+        assertThat(reopened.keySet()).containsOnly("int");
+    }
+
+    @Test
+    public void testClear() throws IOException {
+        MappedPreferenceStorage storage = MappedPreferenceStorage.open(file);
+        storage.edit().putInt("old", 1).commit();
+        storage.edit().clear().putInt("new", 2).commit();
+
+        assertThat(storage.keySet()).containsOnly("new");
+    }
+
+    @Test
+    public void testListenerGetsChangedNames() throws IOException {
+        MappedPreferenceStorage storage = MappedPreferenceStorage.open(file);
+        storage.edit().putInt("same", 1).putInt("changed", 1).putInt("removed", 1).commit();
+        final List<String> names = new ArrayList<>();
+        storage.registerListener(new PreferenceStorage.Listener() {
+            @Override
+            public void onChanged(PreferenceStorage storage, String name) {
+                names.add(name);
+            }
+        });
+        storage.edit().putInt("same", 1).putInt("changed", 2).remove("removed").commit();
+
+        assertThat(names).containsOnly("changed", "removed");
+    }
+
+    @Test
+    public void testNotAPreferenceFile() throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12});
+        out.close();
+        try {
+            MappedPreferenceStorage.open(file);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSlotPastEndOfFile() throws IOException {
+        Map<String, Object> values = new HashMap<>();
+        values.put("string", "value");
+        byte[] bytes = MappedPreferenceStorage.build(values);
+        // Point the only slot's value past the end of the file.
+        ByteBuffer.wrap(bytes).putInt(12 + 12, bytes.length);
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(bytes);
+        out.close();
+        try {
+            MappedPreferenceStorage.open(file);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testStringSetWithNullRejected() throws IOException {
+        MappedPreferenceStorage storage = MappedPreferenceStorage.open(file);
+        try {
+            storage.edit().putStringSet("set", new HashSet<>(Arrays.asList("one", null)));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessageContaining("set");
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package me.tatarka.typedbundle;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MemoryPreferenceStorageTest {
+    @Test
+    public void testCommit() {
+        MemoryPreferenceStorage storage = new MemoryPreferenceStorage();
+        storage.edit().putInt("int", 1).putString("string", "value").commit();
+
+        assertThat(storage.getInt("int", 0)).isEqualTo(1);
+        assertThat(storage.getString("string", null)).isEqualTo("value");
+        assertThat(storage.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testNotVisibleBeforeCommit() {
+        MemoryPreferenceStorage storage = new MemoryPreferenceStorage();
+        PreferenceStorage.Editor editor = storage.edit().putInt("int", 1);
+
+        assertThat(storage.contains("int")).isFalse();
+        editor.commit();
+        assertThat(storage.contains("int")).isTrue();
+    }
+
+    @Test
+    public void testClearBeforePuts() {
+        MemoryPreferenceStorage storage = new MemoryPreferenceStorage();
+        storage.edit().putInt("old", 1).commit();
+        storage.edit().putInt("new", 2).clear().commit();
+
+        assertThat(storage.contains("old")).isFalse();
+        assertThat(storage.getInt("new", 0)).isEqualTo(2);
+    }
+
+    @Test
+    public void testNullStringRemoves() {
+        MemoryPreferenceStorage storage = new MemoryPreferenceStorage();
+        storage.edit().putString("string", "value").commit();
+        storage.edit().putString("string", null).commit();
+
+        assertThat(storage.contains("string")).isFalse();
+    }
+
+    @Test
+    public void testListenerCalledForChangedValues() {
+        MemoryPreferenceStorage storage = new MemoryPreferenceStorage();
+        storage.edit().putInt("same", 1).putInt("removed", 2).commit();
+        final List<String> changed = new ArrayList<>();
+        storage.registerListener(new PreferenceStorage.Listener() {
+            @Override
+            public void onChanged(PreferenceStorage storage, String name) {
+                changed.add(name);
+            }
+        });
+        storage.edit().putInt("same", 1).remove("removed").putInt("added", 3).commit();
+
+        assertThat(changed).containsOnly("removed", "added");
+    }
+
+    @Test
+    public void testClearOnlyReportsValuesNotPutBack() {
+        MemoryPreferenceStorage storage = new MemoryPreferenceStorage();
+        storage.edit().putInt("same", 1).putInt("changed", 2).putInt("removed", 3).commit();
+        final List<String> changed = new ArrayList<>();
+        storage.registerListener(new PreferenceStorage.Listener() {
+            @Override
+            public void onChanged(PreferenceStorage storage, String name) {
+                changed.add(name);
+            }
+        });
+        storage.edit().clear().putInt("same", 1).putInt("changed", 4).commit();
+
+        assertThat(changed).containsOnly("changed", "removed");
+        assertThat(storage.getInt("same", 0)).isEqualTo(1);
+        assertThat(storage.contains("removed")).isFalse();
+    }
+
+    @Test
+    public void testGetAllIsSnapshot() {
+        MemoryPreferenceStorage storage = new MemoryPreferenceStorage();
+        storage.edit().putInt("int", 1).commit();
+        Map<String, ?> all = storage.getAll();
+
+        assertThat(storage.getAll()).isSameAs(all);
+        storage.edit().putInt("int", 2).commit();
+        assertThat(all.get("int")).isEqualTo(1);
+        assertThat(storage.getAll().get("int")).isEqualTo(2);
+    }
+}
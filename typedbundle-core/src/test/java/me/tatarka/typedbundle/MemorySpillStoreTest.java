@@ -0,0 +1,43 @@
+package me.tatarka.typedbundle;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class MemorySpillStoreTest {
+    @Test
+    public void testWriteCopiesData() throws IOException {
+        MemorySpillStore store = new MemorySpillStore("test");
+        byte[] data = {1, 2, 3};
+        String token = store.write(data);
+        data[0] = 9;
+
+        assertThat(store.read(token)).isEqualTo(new byte[]{1, 2, 3});
+    }
+
+    @Test
+    public void testReadCopiesData() throws IOException {
+        MemorySpillStore store = new MemorySpillStore("test");
+        String token = store.write(new byte[]{1, 2, 3});
+        store.read(token)[0] = 9;
+
+        assertThat(store.read(token)).isEqualTo(new byte[]{1, 2, 3});
+    }
+
+    @Test
+    public void testDelete() throws IOException {
+        MemorySpillStore store = new MemorySpillStore("test");
+        String token = store.write(new byte[]{1, 2, 3});
+        store.delete(token);
+
+        try {
+            store.read(token);
+            fail("Should throw for deleted data");
+        } catch (IOException e) {
+            // Success
+        }
+    }
+}
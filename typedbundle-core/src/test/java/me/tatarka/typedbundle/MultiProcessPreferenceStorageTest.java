@@ -0,0 +1,154 @@
+package me.tatarka.typedbundle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two instances on the same file stand in for two processes.
+ */
+public class MultiProcessPreferenceStorageTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private MultiProcessPreferenceStorage first;
+    private MultiProcessPreferenceStorage second;
+
+    @Before
+    public void setup() throws IOException {
+        file = new File(folder.getRoot(), "prefs.log");
+        first = MultiProcessPreferenceStorage.open(file);
+        second = MultiProcessPreferenceStorage.open(file);
+    }
+
+    @After
+    public void teardown() throws IOException {
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void testSeesOtherCommits() {
+        first.edit().putInt("int", 1).putString("string", "value").commit();
+
+        assertThat(second.getInt("int", 0)).isEqualTo(1);
+        assertThat(second.getString("string", null)).isEqualTo("value");
+    }
+
+    @Test
+    public void testCommitsOnTopOfOtherCommits() {
+        first.edit().putInt("first", 1).commit();
+        second.edit().putInt("second", 2).commit();
+        first.edit().remove("first").commit();
+
+        assertThat(first.getAll()).containsOnlyKeys("second");
+        assertThat(second.getAll()).containsOnlyKeys("second");
+    }
+
+    @Test
+    public void testListenerGetsOtherChangedNames() {
+        first.edit().putInt("same", 1).putInt("changed", 1).commit();
+        second.getAll();
+        final List<String> names = new ArrayList<>();
+        second.registerListener(new PreferenceStorage.Listener() {
+            @Override
+            public void onChanged(PreferenceStorage storage, String name) {
+                names.add(name);
+            }
+        });
+        first.edit().putInt("same", 1).putInt("changed", 2).commit();
+        second.getAll();
+
+        assertThat(names).containsExactly("changed");
+    }
+
+    @Test
+    public void testClear() {
+        first.edit().putInt("old", 1).commit();
+        second.edit().clear().putInt("new", 2).commit();
+
+        assertThat(first.keySet()).containsOnly("new");
+    }
+
+    @Test
+    public void testSeesCompaction() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            first.edit().putInt("int", i).commit();
+        }
+        second.getAll();
+        long before = file.length();
+        first.compact();
+        first.edit().putInt("after", 1).commit();
+
+        assertThat(file.length()).isLessThan(before);
+        assertThat(second.getInt("int", 0)).isEqualTo(99);
+        assertThat(second.getInt("after", 0)).isEqualTo(1);
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        first.edit().putInt("int", 1).commit();
+        second.edit().putInt("int", 2).commit();
+        MultiProcessPreferenceStorage reopened = MultiProcessPreferenceStorage.open(file);
+
+        assertThat(reopened.getInt("int", 0)).isEqualTo(2);
+        reopened.close();
+    }
+
+    @Test
+    public void testOpenDoesNotChangeVersion() throws IOException {
+        first.edit().putInt("int", 1).commit();
+        byte[] before = readVersion();
+        MultiProcessPreferenceStorage third = MultiProcessPreferenceStorage.open(file);
+
+        assertThat(third.getInt("int", 0)).isEqualTo(1);
+        assertThat(readVersion()).isEqualTo(before);
+        third.close();
+    }
+
+    @Test
+    public void testGetAllReturnsSameSnapshotUntilChanged() {
+        first.edit().putInt("int", 1).commit();
+        Object before = second.getAll();
+
+        assertThat(second.getAll()).isSameAs(before);
+        first.edit().putInt("int", 2).commit();
+        assertThat(second.getAll()).isNotSameAs(before);
+        assertThat(second.getAll().get("int")).isEqualTo(2);
+    }
+
+    @Test
+    public void testReadableAsLog() throws IOException {
+        first.edit().putInt("int", 1).commit();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        LogPreferenceStorage log = LogPreferenceStorage.open(file, executor);
+
+        assertThat(log.getInt("int", 0)).isEqualTo(1);
+        log.close();
+        executor.shutdown();
+    }
+
+    private byte[] readVersion() throws IOException {
+        RandomAccessFile versionFile = new RandomAccessFile(file.getPath() + ".version", "r");
+        try {
+            byte[] bytes = new byte[(int) versionFile.length()];
+            versionFile.readFully(bytes);
+            return bytes;
+        } finally {
+            versionFile.close();
+        }
+    }
+}
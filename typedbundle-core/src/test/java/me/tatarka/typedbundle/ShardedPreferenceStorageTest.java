@@ -0,0 +1,110 @@
+package me.tatarka.typedbundle;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class ShardedPreferenceStorageTest {
+    private static final Key<Integer> THEME = new Key<>("theme");
+    private static final Key<Integer> FONT_SIZE = new Key<>("font_size");
+    private static final Key<Long> LAST_SYNC = new Key<>("last_sync");
+
+    private final Map<String, MemoryPreferenceStorage> groups = new HashMap<>();
+    private final List<String> loaded = new ArrayList<>();
+    private ShardedPreferenceStorage.Builder builder;
+
+    @Before
+    public void setup() {
+        builder = new ShardedPreferenceStorage.Builder(new ShardedPreferenceStorage.Loader() {
+            @Override
+            public PreferenceStorage load(String group) {
+                loaded.add(group);
+                MemoryPreferenceStorage storage = groups.get(group);
+                if (storage == null) {
+                    storage = new MemoryPreferenceStorage(new HashMap<String, Object>());
+                    groups.put(group, storage);
+                }
+                return storage;
+            }
+        }).group("ui", THEME, FONT_SIZE).group("sync", LAST_SYNC);
+    }
+
+    @Test
+    public void testNothingLoadedUntilRead() {
+        ShardedPreferenceStorage storage = builder.build();
+
+        assertThat(storage.getGroups()).containsExactly("default", "ui", "sync");
+        assertThat(loaded).isEmpty();
+    }
+
+    @Test
+    public void testReadLoadsOnlyItsGroup() {
+        ShardedPreferenceStorage storage = builder.build();
+        storage.getInt(THEME.name, 0);
+        storage.getInt(FONT_SIZE.name, 0);
+
+        assertThat(loaded).containsExactly("ui");
+        assertThat(storage.isLoaded("sync")).isFalse();
+    }
+
+    @Test
+    public void testUnassignedNamesUseDefaultGroup() {
+        ShardedPreferenceStorage storage = builder.defaultGroup("misc").build();
+        storage.edit().putInt("other", 1).commit();
+
+        assertThat(loaded).containsExactly("misc");
+        assertThat(groups.get("misc").getInt("other", 0)).isEqualTo(1);
+    }
+
+    @Test
+    public void testEditWritesEachGroup() {
+        ShardedPreferenceStorage storage = builder.build();
+        boolean result = storage.edit().putInt(THEME.name, 1).putLong(LAST_SYNC.name, 2).commit();
+
+        assertThat(result).isTrue();
+        assertThat(groups.get("ui").getAll()).containsOnlyKeys(THEME.name);
+        assertThat(groups.get("sync").getAll()).containsOnlyKeys(LAST_SYNC.name);
+        assertThat(storage.getAll()).containsOnlyKeys(THEME.name, LAST_SYNC.name);
+    }
+
+    @Test
+    public void testClearClearsAllGroups() {
+        ShardedPreferenceStorage storage = builder.build();
+        storage.edit().putInt(THEME.name, 1).putLong(LAST_SYNC.name, 2).putInt("other", 3).commit();
+        storage.edit().clear().putInt(FONT_SIZE.name, 12).commit();
+
+        assertThat(storage.getAll()).containsOnlyKeys(FONT_SIZE.name);
+    }
+
+    @Test
+    public void testListenerGetsChangesFromGroups() {
+        ShardedPreferenceStorage storage = builder.build();
+        final List<String> names = new ArrayList<>();
+        storage.registerListener(new PreferenceStorage.Listener() {
+            @Override
+            public void onChanged(PreferenceStorage storage, String name) {
+                names.add(name);
+            }
+        });
+        storage.edit().putInt(THEME.name, 1).putLong(LAST_SYNC.name, 2).commit();
+
+        assertThat(names).containsOnly(THEME.name, LAST_SYNC.name);
+    }
+
+    @Test
+    public void testKeyInTwoGroupsFails() {
+        try {
+            builder.group("other", THEME);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package me.tatarka.typedbundle;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SizeEstimatorTest {
+    private final SizeEstimator estimator = new SizeEstimator();
+
+    @Test
+    public void testPrimitives() {
+        assertThat(estimator.estimateValue(1)).isEqualTo(8);
+        assertThat(estimator.estimateValue(true)).isEqualTo(8);
+        assertThat(estimator.estimateValue(1L)).isEqualTo(12);
+        assertThat(estimator.estimateValue(1d)).isEqualTo(12);
+    }
+
+    @Test
+    public void testString() {
+        // tag, length, then "abc" plus a null terminator as utf-16 padded to 4 bytes.
+        assertThat(estimator.estimateValue("abc")).isEqualTo(4 + 4 + 8);
+        assertThat(estimator.estimateValue("abcd")).isEqualTo(4 + 4 + 12);
+    }
+
+    @Test
+    public void testArrays() {
+        assertThat(estimator.estimateValue(new int[10])).isEqualTo(4 + 4 + 40);
+        assertThat(estimator.estimateValue(new byte[5])).isEqualTo(4 + 4 + 8);
+        assertThat(estimator.estimateValue(new long[2])).isEqualTo(4 + 4 + 16);
+    }
+
+    @Test
+    public void testList() {
+        assertThat(estimator.estimateValue(new ArrayList<>(Arrays.asList(1, 2)))).isEqualTo(4 + 4 + 8 + 8);
+    }
+
+    @Test
+    public void testSerializable() {
+        // char[] has no special case in a parcel, so it's serialized.
+        assertThat(estimator.estimateValue(new char[1000])).isGreaterThan(2000);
+    }
+
+    @Test
+    public void testEstimate() {
+        MapStorage storage = new MapStorage();
+        storage.put("a", 1);
+        // header, then the name "a" and the int
+        assertThat(estimator.estimate(storage)).isEqualTo(12 + 8 + 8);
+    }
+
+    @Test
+    public void testEstimateEntriesLargestFirst() {
+        MapStorage storage = new MapStorage();
+        storage.put("small", 1);
+        storage.put("large", new int[100]);
+        storage.put("medium", "some string value");
+        Map<String, Integer> sizes = estimator.estimateEntries(storage);
+
+        assertThat(sizes.keySet()).containsExactly("large", "medium", "small");
+        assertThat(sizes.get("small")).isEqualTo(estimator.estimateEntry("small", 1));
+    }
+}
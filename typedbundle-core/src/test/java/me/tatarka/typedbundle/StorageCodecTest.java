@@ -0,0 +1,167 @@
+package me.tatarka.typedbundle;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class StorageCodecTest {
+    private final StorageCodec codec = new StorageCodec();
+
+    @Test
+    public void testPrimitives() {
+        MapStorage storage = new MapStorage();
+        storage.put("boolean", true);
+        storage.put("byte", (byte) -1);
+        storage.put("char", 'a');
+        storage.put("short", (short) -300);
+        storage.put("int", Integer.MIN_VALUE);
+        storage.put("long", Long.MAX_VALUE);
+        storage.put("float", 1.5f);
+        storage.put("double", -2.5d);
+        MapStorage result = roundTrip(storage);
+
+        assertThat(result.getBoolean("boolean", false)).isTrue();
+        assertThat(result.getByte("byte", (byte) 0)).isEqualTo((byte) -1);
+        assertThat(result.getChar("char", 'z')).isEqualTo('a');
+        assertThat(result.getShort("short", (short) 0)).isEqualTo((short) -300);
+        assertThat(result.getInt("int", 0)).isEqualTo(Integer.MIN_VALUE);
+        assertThat(result.getLong("long", 0L)).isEqualTo(Long.MAX_VALUE);
+        assertThat(result.getFloat("float", 0f)).isEqualTo(1.5f);
+        assertThat(result.getDouble("double", 0d)).isEqualTo(-2.5d);
+    }
+
+    @Test
+    public void testArrays() {
+        MapStorage storage = new MapStorage();
+        storage.put("boolean", new boolean[]{true, false});
+        storage.put("byte", new byte[]{1, 2});
+        storage.put("char", new char[]{'a', 'b'});
+        storage.put("short", new short[]{1, 2});
+        storage.put("int", new int[]{1, -2});
+        storage.put("long", new long[]{1L, -2L});
+        storage.put("float", new float[]{1f, 2f});
+        storage.put("double", new double[]{1d, 2d});
+        storage.put("string", new String[]{"value", null});
+        MapStorage result = roundTrip(storage);
+
+        assertThat((boolean[]) result.get("boolean")).isEqualTo(new boolean[]{true, false});
+        assertThat((byte[]) result.get("byte")).isEqualTo(new byte[]{1, 2});
+        assertThat((char[]) result.get("char")).isEqualTo(new char[]{'a', 'b'});
+        assertThat((short[]) result.get("short")).isEqualTo(new short[]{1, 2});
+        assertThat((int[]) result.get("int")).isEqualTo(new int[]{1, -2});
+        assertThat((long[]) result.get("long")).isEqualTo(new long[]{1L, -2L});
+        assertThat((float[]) result.get("float")).isEqualTo(new float[]{1f, 2f});
+        assertThat((double[]) result.get("double")).isEqualTo(new double[]{1d, 2d});
+        assertThat((String[]) result.get("string")).isEqualTo(new String[]{"value", null});
+    }
+
+    @Test
+    public void testStringsAndCollections() {
+        MapStorage storage = new MapStorage();
+        storage.put("string", "värde");
+        storage.put("null", null);
+        storage.put("integerList", new ArrayList<>(Arrays.asList(1, null, 3)));
+        storage.put("stringList", new ArrayList<>(Arrays.asList("a", "b")));
+        storage.put("stringSet", new HashSet<>(Arrays.asList("a", "b")));
+        MapStorage result = roundTrip(storage);
+
+        assertThat(result.get("string")).isEqualTo("värde");
+        assertThat(result.contains("null")).isTrue();
+        assertThat(result.get("null")).isNull();
+        assertThat(result.get("integerList")).isEqualTo(Arrays.asList(1, null, 3));
+        assertThat(result.get("stringList")).isEqualTo(Arrays.asList("a", "b"));
+        assertThat(result.get("stringSet")).isEqualTo(new HashSet<>(Arrays.asList("a", "b")));
+    }
+
+    @Test
+    public void testNested() {
+        MapStorage nested = new MapStorage();
+        nested.put("key", "nested");
+        MapStorage storage = new MapStorage();
+        storage.put("key", "value");
+        storage.put("nested", nested);
+        MapStorage result = roundTrip(storage);
+
+        assertThat(((Storage) result.get("nested")).get("key")).isEqualTo("nested");
+    }
+
+    @Test
+    public void testRepeatedNamesAreWrittenOnce() {
+        MapStorage storage = new MapStorage();
+        for (int i = 0; i < 10; i++) {
+            MapStorage nested = new MapStorage();
+            nested.put("a_fairly_long_repeated_name", i);
+            storage.put("nested" + i, nested);
+        }
+        byte[] bytes = codec.encode(storage);
+
+        assertThat(BinaryWriter.decodeUtf8(bytes, 0, bytes.length).split("a_fairly_long_repeated_name", -1)).hasSize(2);
+    }
+
+    @Test
+    public void testSmallIntsAreCompact() {
+        MapStorage storage = new MapStorage();
+        storage.put("i", 1);
+        // version, size, name marker, name length, name, type, value
+        assertThat(codec.encode(storage)).hasSize(7);
+    }
+
+    @Test
+    public void testByteBufferAndStream() throws IOException {
+        MapStorage storage = new MapStorage();
+        storage.put("key", "value");
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        codec.encode(storage, buffer);
+        buffer.flip();
+        MapStorage fromBuffer = new MapStorage();
+        codec.decode(buffer, fromBuffer);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.encode(storage, out);
+        MapStorage fromStream = new MapStorage();
+        codec.decode(new ByteArrayInputStream(out.toByteArray()), fromStream);
+
+        assertThat(fromBuffer.get("key")).isEqualTo("value");
+        assertThat(buffer.hasRemaining()).isFalse();
+        assertThat(fromStream.get("key")).isEqualTo("value");
+    }
+
+    @Test
+    public void testUnsupportedValue() {
+        MapStorage storage = new MapStorage();
+        storage.put("key", new Object());
+        try {
+            codec.encode(storage);
+            fail("Should throw for unsupported value");
+        } catch (IllegalArgumentException e) {
+            // Success
+        }
+    }
+
+    @Test
+    public void testTruncatedInput() {
+        MapStorage storage = new MapStorage();
+        storage.put("key", "value");
+        byte[] bytes = codec.encode(storage);
+        try {
+            codec.decode(Arrays.copyOf(bytes, bytes.length - 2), new MapStorage());
+            fail("Should throw for truncated input");
+        } catch (IllegalArgumentException e) {
+            // Success
+        }
+    }
+
+    private MapStorage roundTrip(Storage storage) {
+        MapStorage result = new MapStorage();
+        codec.decode(codec.encode(storage), result);
+        return result;
+    }
+}
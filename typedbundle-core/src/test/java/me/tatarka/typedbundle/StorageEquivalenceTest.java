@@ -0,0 +1,85 @@
+package me.tatarka.typedbundle;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StorageEquivalenceTest {
+    private final StorageEquivalence equivalence = new StorageEquivalence();
+
+    @Test
+    public void testEqualStorages() {
+        MapStorage a = new MapStorage();
+        a.put("int", 1);
+        a.put("string", "value");
+        MapStorage b = new MapStorage();
+        b.put("string", "value");
+        b.put("int", 1);
+
+        assertThat(equivalence.equals(a, b)).isTrue();
+        assertThat(equivalence.hash(a)).isEqualTo(equivalence.hash(b));
+    }
+
+    @Test
+    public void testDifferentStorages() {
+        MapStorage a = new MapStorage();
+        a.put("int", 1);
+        MapStorage b = new MapStorage();
+        b.put("int", 2);
+        MapStorage c = new MapStorage();
+        c.put("other", 1);
+
+        assertThat(equivalence.equals(a, b)).isFalse();
+        assertThat(equivalence.equals(a, c)).isFalse();
+    }
+
+    @Test
+    public void testArraysCompareContents() {
+        assertThat(equivalence.equalsValue(new int[]{1, 2}, new int[]{1, 2})).isTrue();
+        assertThat(equivalence.hashValue(new int[]{1, 2})).isEqualTo(equivalence.hashValue(new int[]{1, 2}));
+        assertThat(equivalence.equalsValue(new int[]{1, 2}, new int[]{2, 1})).isFalse();
+        assertThat(equivalence.equalsValue(new int[]{1}, new long[]{1})).isFalse();
+        assertThat(equivalence.equalsValue(new String[]{"a"}, new String[]{"a"})).isTrue();
+        assertThat(equivalence.equalsValue(new String[]{"a"}, new String[]{"b"})).isFalse();
+    }
+
+    @Test
+    public void testArrayTypesDoNotMatter() {
+        assertThat(equivalence.equalsValue(new String[]{"a"}, new CharSequence[]{"a"})).isTrue();
+        assertThat(equivalence.equalsValue(new String[]{"a"}, new Object[]{"a"})).isTrue();
+        assertThat(equivalence.hashValue(new String[]{"a"})).isEqualTo(equivalence.hashValue(new Object[]{"a"}));
+    }
+
+    @Test
+    public void testListsCompareArrayElements() {
+        ArrayList<Object> a = new ArrayList<Object>(Arrays.asList(new byte[]{1}, "a"));
+        ArrayList<Object> b = new ArrayList<Object>(Arrays.asList(new byte[]{1}, "a"));
+
+        assertThat(equivalence.equalsValue(a, b)).isTrue();
+        assertThat(equivalence.hashValue(a)).isEqualTo(equivalence.hashValue(b));
+    }
+
+    @Test
+    public void testCharSequencesCompareText() {
+        assertThat(equivalence.equalsValue(new StringBuilder("a"), new StringBuilder("a"))).isTrue();
+        assertThat(equivalence.equalsValue(new StringBuilder("a"), "a")).isFalse();
+    }
+
+    @Test
+    public void testNestedStorages() {
+        MapStorage nestedA = new MapStorage();
+        nestedA.put("array", new double[]{1.0});
+        MapStorage nestedB = new MapStorage();
+        nestedB.put("array", new double[]{1.0});
+        MapStorage a = new MapStorage();
+        a.put("nested", nestedA);
+        MapStorage b = new MapStorage();
+        b.put("nested", nestedB);
+
+        assertThat(equivalence.equals(a, b)).isTrue();
+        assertThat(equivalence.hash(a)).isEqualTo(equivalence.hash(b));
+    }
+}
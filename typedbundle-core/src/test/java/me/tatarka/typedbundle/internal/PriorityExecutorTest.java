@@ -0,0 +1,107 @@
+package me.tatarka.typedbundle.internal;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class PriorityExecutorTest {
+    private PriorityExecutor executor;
+
+    @After
+    public void teardown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRunsHigherPriorityFirst() throws InterruptedException {
+        executor = new PriorityExecutor(1);
+        CountDownLatch blocked = block(executor);
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch done = new CountDownLatch(4);
+        executor.execute(record(order, "low", done), -1);
+        executor.execute(record(order, "default1", done));
+        executor.execute(record(order, "high", done), 1);
+        executor.execute(record(order, "default2", done));
+        blocked.countDown();
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(order).containsExactly("high", "default1", "default2", "low");
+    }
+
+    @Test
+    public void testRunsInParallel() throws InterruptedException {
+        executor = new PriorityExecutor(2);
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 2; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    await(release);
+                }
+            });
+        }
+
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        release.countDown();
+    }
+
+    @Test
+    public void testShared() {
+        assertThat(PriorityExecutor.shared()).isSameAs(PriorityExecutor.shared());
+        assertThat(PriorityExecutor.shared().getThreadCount()).isBetween(2, 4);
+    }
+
+    @Test
+    public void testInvalidThreads() {
+        try {
+            new PriorityExecutor(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static CountDownLatch block(PriorityExecutor executor) throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                await(release);
+            }
+        });
+        started.await();
+        return release;
+    }
+
+    private static Runnable record(final List<String> order, final String name, final CountDownLatch done) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+                done.countDown();
+            }
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package me.tatarka.typedbundle.internal;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class ResultCacheTest {
+    @Test
+    public void testGet() {
+        ResultCache<String, String> cache = new ResultCache<>(10, 1, TimeUnit.MINUTES);
+        cache.put("key", "value");
+
+        assertThat(cache.get("key")).isEqualTo("value");
+        assertThat(cache.get("other")).isNull();
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        ResultCache<String, String> cache = new ResultCache<>(2, 1, TimeUnit.MINUTES);
+        cache.put("first", "1");
+        cache.put("second", "2");
+        cache.get("first");
+        cache.put("third", "3");
+
+        assertThat(cache.get("first")).isEqualTo("1");
+        assertThat(cache.get("second")).isNull();
+        assertThat(cache.get("third")).isEqualTo("3");
+    }
+
+    @Test
+    public void testExpires() {
+        FakeTimeCache<String, String> cache = new FakeTimeCache<>(10, 1, TimeUnit.SECONDS);
+        cache.put("key", "value");
+        cache.time += TimeUnit.MILLISECONDS.toNanos(500);
+
+        assertThat(cache.get("key")).isEqualTo("value");
+
+        cache.time += TimeUnit.MILLISECONDS.toNanos(600);
+
+        assertThat(cache.get("key")).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testPutRestartsExpiry() {
+        FakeTimeCache<String, String> cache = new FakeTimeCache<>(10, 1, TimeUnit.SECONDS);
+        cache.put("key", "old");
+        cache.time += TimeUnit.MILLISECONDS.toNanos(800);
+        cache.put("key", "new");
+        cache.time += TimeUnit.MILLISECONDS.toNanos(800);
+
+        assertThat(cache.get("key")).isEqualTo("new");
+    }
+
+    @Test
+    public void testRemove() {
+        ResultCache<String, String> cache = new ResultCache<>(10, 1, TimeUnit.MINUTES);
+        cache.put("key", "value");
+
+        assertThat(cache.remove("key")).isEqualTo("value");
+        assertThat(cache.get("key")).isNull();
+    }
+
+    @Test
+    public void testInvalidMaxSize() {
+        try {
+            new ResultCache<String, String>(0, 1, TimeUnit.MINUTES);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static class FakeTimeCache<K, V> extends ResultCache<K, V> {
+        long time;
+
+        FakeTimeCache(int maxSize, long maxAge, TimeUnit unit) {
+            super(maxSize, maxAge, unit);
+        }
+
+        @Override
+        protected long now() {
+            return time;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package me.tatarka.typedbundle.support;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.Loader;
+import android.test.AndroidTestCase;
+import android.util.SparseArray;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import me.tatarka.typedbundle.Id;
+import me.tatarka.typedbundle.Key;
+import me.tatarka.typedbundle.TypedBundle;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TypedLoaderManagerTest extends AndroidTestCase {
+    private static final Id<Loader<String>> ID = Id.of(1);
+    private static final Key<String> QUERY = new Key<>("query");
+
+    private FakeLoaderManager loaderManager;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        loaderManager = new FakeLoaderManager();
+    }
+
+    public void testInitLoaderHandsBackSameArgs() {
+        TypedLoaderManager manager = new TypedLoaderManager(loaderManager);
+        RecordingCallbacks callbacks = new RecordingCallbacks();
+        TypedBundle args = args("a");
+        manager.initLoader(ID, args, callbacks);
+
+        assertThat(callbacks.createdArgs).hasSize(1);
+        assertThat(callbacks.createdArgs.get(0)).isSameAs(args);
+    }
+
+    public void testCopyOnWriteArgsNotCopied() {
+        TypedLoaderManager manager = new TypedLoaderManager(loaderManager);
+        TypedBundle args = args("a");
+        manager.initLoader(ID, args.copyOnWrite(), new RecordingCallbacks());
+
+        assertThat(loaderManager.args(ID.id)).isSameAs(args.peekBundle());
+    }
+
+    public void testRestartLoaderReusesCallbacksWrapper() {
+        TypedLoaderManager manager = new TypedLoaderManager(loaderManager);
+        RecordingCallbacks callbacks = new RecordingCallbacks();
+        manager.initLoader(ID, args("a"), callbacks);
+        LoaderManager.LoaderCallbacks<?> wrapper = loaderManager.callbacks(ID.id);
+        manager.restartLoader(ID, args("b"), callbacks);
+
+        assertThat(loaderManager.callbacks(ID.id)).isSameAs(wrapper);
+        assertThat(callbacks.createdArgs.get(1).get(QUERY)).isEqualTo("b");
+    }
+
+    public void testRecreatedAfterConfigChangeGetsKeptArgs() {
+        new TypedLoaderManager(loaderManager).initLoader(ID, args("a"), new RecordingCallbacks());
+        // A new manager after a configuration change, the loader manager keeps the old loader.
+        TypedLoaderManager manager = new TypedLoaderManager(loaderManager);
+        RecordingCallbacks callbacks = new RecordingCallbacks();
+        manager.initLoader(ID, args("b"), callbacks);
+        // The loader manager creates the loader again from the bundle it kept, not the new one.
+        loaderManager.recreate(ID.id);
+
+        assertThat(callbacks.createdArgs).hasSize(1);
+        assertThat(callbacks.createdArgs.get(0).get(QUERY)).isEqualTo("a");
+    }
+
+    public void testRestartWithUncachedArgsLoads() {
+        TypedLoaderManager manager = new TypedLoaderManager(loaderManager, 10, 1, TimeUnit.MINUTES);
+        RecordingCallbacks callbacks = new RecordingCallbacks();
+        manager.initLoader(ID, args("a"), callbacks);
+        loaderManager.finish(ID.id, "A");
+        manager.restartLoader(ID, args("b"), callbacks);
+
+        assertThat(callbacks.createdArgs).hasSize(2);
+        assertThat(callbacks.results).containsExactly("A");
+    }
+
+    public void testRestartWithCachedArgsDeliversCachedWithoutReload() {
+        TypedLoaderManager manager = new TypedLoaderManager(loaderManager, 10, 1, TimeUnit.MINUTES);
+        RecordingCallbacks callbacks = new RecordingCallbacks();
+        manager.initLoader(ID, args("a"), callbacks);
+        loaderManager.finish(ID.id, "A");
+        Loader<String> loaderB = manager.restartLoader(ID, args("b"), callbacks);
+        loaderManager.finish(ID.id, "B");
+        Loader<String> loader = manager.restartLoader(ID, args("a"), callbacks);
+
+        assertThat(callbacks.results).containsExactly("A", "B", "A");
+        assertThat(callbacks.createdArgs).hasSize(2);
+        assertThat(loader).isSameAs(loaderB);
+        assertThat(manager.getLoader(ID)).isSameAs(loader);
+    }
+
+    public void testCachedArgsSnapshotWhenRestarting() {
+        TypedLoaderManager manager = new TypedLoaderManager(loaderManager, 10, 1, TimeUnit.MINUTES);
+        RecordingCallbacks callbacks = new RecordingCallbacks();
+        TypedBundle args = args("a");
+        manager.initLoader(ID, args, callbacks);
+        // Changed after handing them in, the result is still for the args the loader was given.
+        args.put(QUERY, "b");
+        loaderManager.finish(ID.id, "A");
+        manager.restartLoader(ID, args("c"), callbacks);
+        loaderManager.finish(ID.id, "C");
+        manager.restartLoader(ID, args("b"), callbacks);
+
+        assertThat(callbacks.createdArgs).hasSize(3);
+        assertThat(callbacks.results).containsExactly("A", "C");
+    }
+
+    public void testReloadAfterCachedRestartUsesNewArgs() {
+        TypedLoaderManager manager = new TypedLoaderManager(loaderManager, 10, 1, TimeUnit.MINUTES);
+        RecordingCallbacks callbacks = new RecordingCallbacks();
+        manager.initLoader(ID, args("a"), callbacks);
+        loaderManager.finish(ID.id, "A");
+        manager.restartLoader(ID, args("b"), callbacks);
+        loaderManager.finish(ID.id, "B");
+        manager.restartLoader(ID, args("a"), callbacks);
+        // The content changed, the loader loads again with its old args, so it's restarted.
+        loaderManager.finish(ID.id, "B2");
+
+        assertThat(callbacks.createdArgs).hasSize(3);
+        assertThat(callbacks.createdArgs.get(2).get(QUERY)).isEqualTo("a");
+        loaderManager.finish(ID.id, "A2");
+        manager.restartLoader(ID, args("b"), callbacks);
+        manager.restartLoader(ID, args("a"), callbacks);
+        assertThat(callbacks.results).containsExactly("A", "B", "A", "A2", "B2", "A2");
+    }
+
+    public void testClearCachedResultsReloads() {
+        TypedLoaderManager manager = new TypedLoaderManager(loaderManager, 10, 1, TimeUnit.MINUTES);
+        RecordingCallbacks callbacks = new RecordingCallbacks();
+        manager.initLoader(ID, args("a"), callbacks);
+        loaderManager.finish(ID.id, "A");
+        manager.restartLoader(ID, args("b"), callbacks);
+        loaderManager.finish(ID.id, "B");
+        manager.clearCachedResults();
+        manager.restartLoader(ID, args("a"), callbacks);
+
+        assertThat(callbacks.createdArgs).hasSize(3);
+        assertThat(callbacks.results).containsExactly("A", "B");
+    }
+
+    public void testDebouncedRestartsOnceCallsStop() throws InterruptedException {
+        final TypedLoaderManager manager = new TypedLoaderManager(loaderManager);
+        final RecordingCallbacks callbacks = new RecordingCallbacks();
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                manager.initLoader(ID, args("a"), callbacks);
+                manager.restartLoaderDebounced(ID, args("b"), callbacks, 1000);
+            }
+        });
+        Thread.sleep(500);
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                manager.restartLoaderDebounced(ID, args("c"), callbacks, 1000);
+            }
+        });
+        // The first call's delay is up, but the second pushed the restart back.
+        Thread.sleep(750);
+        assertThat(callbacks.createdArgs).hasSize(1);
+
+        Thread.sleep(750);
+        assertThat(callbacks.createdArgs).hasSize(2);
+        assertThat(callbacks.createdArgs.get(1).get(QUERY)).isEqualTo("c");
+    }
+
+    public void testCoalescedRestartsOncePerDelay() throws InterruptedException {
+        final TypedLoaderManager manager = new TypedLoaderManager(loaderManager);
+        final RecordingCallbacks callbacks = new RecordingCallbacks();
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                manager.initLoader(ID, args("a"), callbacks);
+                manager.restartLoaderCoalesced(ID, args("b"), callbacks, 1000);
+            }
+        });
+        Thread.sleep(300);
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                manager.restartLoaderCoalesced(ID, args("c"), callbacks, 1000);
+            }
+        });
+        assertThat(callbacks.createdArgs).hasSize(1);
+
+        // Restarts when the first call's delay is up, with the latest args.
+        Thread.sleep(1200);
+        assertThat(callbacks.createdArgs).hasSize(2);
+        assertThat(callbacks.createdArgs.get(1).get(QUERY)).isEqualTo("c");
+    }
+
+    public void testCancelPendingRestarts() throws InterruptedException {
+        final TypedLoaderManager manager = new TypedLoaderManager(loaderManager);
+        final RecordingCallbacks callbacks = new RecordingCallbacks();
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                manager.initLoader(ID, args("a"), callbacks);
+                manager.restartLoaderDebounced(ID, args("b"), callbacks, 200);
+                manager.restartLoaderCoalesced(Id.<Loader<String>>of(2), args("c"), callbacks, 200);
+                manager.cancelPendingRestarts();
+            }
+        });
+        Thread.sleep(400);
+
+        assertThat(callbacks.createdArgs).hasSize(1);
+    }
+
+    private static void runOnMain(final Runnable runnable) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                runnable.run();
+                done.countDown();
+            }
+        });
+        assertThat(done.await(1, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static TypedBundle args(String query) {
+        TypedBundle args = new TypedBundle();
+        args.put(QUERY, query);
+        return args;
+    }
+
+    private class RecordingCallbacks implements TypedLoaderManager.LoaderCallbacks<String> {
+        // Restarts run on the main thread, checked from the test thread.
+        final List<TypedBundle> createdArgs = Collections.synchronizedList(new ArrayList<TypedBundle>());
+        final List<String> results = new ArrayList<>();
+
+        @Override
+        public Loader<String> onCreateLoader(Id<Loader<String>> id, TypedBundle args) {
+            createdArgs.add(args);
+            return new Loader<>(getContext());
+        }
+
+        @Override
+        public void onLoadFinished(Loader<String> loader, String data) {
+            results.add(data);
+        }
+
+        @Override
+        public void onLoaderReset(Loader<String> loader) {
+        }
+    }
+
+    /**
+     * Keeps loaders like the framework does across a configuration change, without starting them.
+     */
+    private static class FakeLoaderManager extends LoaderManager {
+        private final SparseArray<Info> infos = new SparseArray<>();
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <D> Loader<D> initLoader(int id, Bundle args, LoaderCallbacks<D> callback) {
+            Info info = infos.get(id);
+            if (info == null) {
+                return restartLoader(id, args, callback);
+            }
+            info.callbacks = callback;
+            return (Loader<D>) info.loader;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <D> Loader<D> restartLoader(int id, Bundle args, LoaderCallbacks<D> callback) {
+            Info info = infos.get(id);
+            if (info != null) {
+                ((Loader<Object>) info.loader).unregisterListener(info);
+            }
+            info = new Info();
+            info.args = args;
+            info.callbacks = callback;
+            Loader<D> loader = callback.onCreateLoader(id, args);
+            info.setLoader(loader);
+            infos.put(id, info);
+            return loader;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void destroyLoader(int id) {
+            Info info = infos.get(id);
+            if (info != null) {
+                infos.remove(id);
+                ((LoaderCallbacks<Object>) info.callbacks).onLoaderReset((Loader<Object>) info.loader);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <D> Loader<D> getLoader(int id) {
+            Info info = infos.get(id);
+            return info != null ? (Loader<D>) info.loader : null;
+        }
+
+        @Override
+        public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        }
+
+        Bundle args(int id) {
+            return infos.get(id).args;
+        }
+
+        LoaderCallbacks<?> callbacks(int id) {
+            return infos.get(id).callbacks;
+        }
+
+        @SuppressWarnings("unchecked")
+        void recreate(int id) {
+            Info info = infos.get(id);
+            ((Loader<Object>) info.loader).unregisterListener(info);
+            info.setLoader(info.callbacks.onCreateLoader(id, info.args));
+        }
+
+        @SuppressWarnings("unchecked")
+        <D> void finish(int id, D data) {
+            ((Loader<D>) infos.get(id).loader).deliverResult(data);
+        }
+
+        private static class Info implements Loader.OnLoadCompleteListener<Object> {
+            Bundle args;
+            LoaderCallbacks<?> callbacks;
+            Loader<?> loader;
+
+            @SuppressWarnings("unchecked")
+            void setLoader(Loader<?> loader) {
+                this.loader = loader;
+                ((Loader<Object>) loader).registerListener(0, this);
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public void onLoadComplete(Loader<Object> loader, Object data) {
+                ((LoaderCallbacks<Object>) callbacks).onLoadFinished(loader, data);
+            }
+        }
+    }
+}
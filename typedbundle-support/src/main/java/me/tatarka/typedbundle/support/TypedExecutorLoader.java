@@ -0,0 +1,294 @@
+package me.tatarka.typedbundle.support;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.v4.content.Loader;
+
+import java.util.concurrent.Executor;
+
+import me.tatarka.typedbundle.Id;
+import me.tatarka.typedbundle.TypedBundle;
+import me.tatarka.typedbundle.internal.PriorityExecutor;
+
+/**
+ * A loader that loads its data on an {@link Executor}, to return from
+ * {@link TypedLoaderManager.LoaderCallbacks#onCreateLoader(Id, TypedBundle)}. Unlike
+ * {@code AsyncTaskLoader}, which runs every loader on the same executor, each loader can be given
+ * its own, so independent loads don't queue up behind each other.
+ * <p/>
+ * By default loads run on {@link PriorityExecutor#shared()}, in order of the loader's priority
+ * when they have to wait for a thread. A load in progress is cancelled when the loader is
+ * stopped, restarted or reset, and loads again when a stopped loader is started. It isn't
+ * interrupted unless {@link #cancelLoadInBackground()} is overridden to do so, its result is just
+ * released with {@link #onReleaseResult(Object)}.
+ * <p/>
+ * An exception thrown by {@link #loadInBackground()} is rethrown on the main thread, unless the
+ * load was cancelled by then.
+ *
+ * @param <T> the type of data loaded
+ */
+public abstract class TypedExecutorLoader<T> extends Loader<T> {
+    private final Id<Loader<T>> id;
+    private final TypedBundle args;
+    private final int priority;
+    private final Executor executor;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    /**
+     * The load whose result will be delivered, read on the executor to skip loads that were
+     * replaced before they started.
+     */
+    private volatile LoadTask task;
+    /**
+     * Whether a load was cancelled by stopping the loader, so it loads again once started.
+     */
+    private boolean stoppedLoad;
+    private T data;
+
+    /**
+     * Constructs a loader that runs on the shared executor with the default priority.
+     *
+     * @param context the context
+     * @param id      the loader's id
+     * @param args    the loader's args
+     */
+    public TypedExecutorLoader(Context context, Id<Loader<T>> id, TypedBundle args) {
+        this(context, id, args, PriorityExecutor.DEFAULT_PRIORITY, PriorityExecutor.shared());
+    }
+
+    /**
+     * Constructs a loader that runs on the shared executor with the given priority.
+     *
+     * @param context  the context
+     * @param id       the loader's id
+     * @param args     the loader's args
+     * @param priority the priority of loads, higher runs first
+     */
+    public TypedExecutorLoader(Context context, Id<Loader<T>> id, TypedBundle args, int priority) {
+        this(context, id, args, priority, PriorityExecutor.shared());
+    }
+
+    /**
+     * Constructs a loader that runs on the given executor. The priority is only used if the
+     * executor is a {@link PriorityExecutor}.
+     *
+     * @param context  the context
+     * @param id       the loader's id
+     * @param args     the loader's args
+     * @param priority the priority of loads, higher runs first
+     * @param executor the executor to load on
+     */
+    public TypedExecutorLoader(Context context, Id<Loader<T>> id, TypedBundle args, int priority, Executor executor) {
+        super(context);
+        if (id == null) {
+            throw new NullPointerException("id cannot be null");
+        }
+        if (executor == null) {
+            throw new NullPointerException("executor cannot be null");
+        }
+        this.id = id;
+        this.args = args;
+        this.priority = priority;
+        this.executor = executor;
+    }
+
+    /**
+     * Loads the data. This is called on the executor.
+     *
+     * @return the data, may be null
+     */
+    public abstract T loadInBackground();
+
+    /**
+     * Called on the main thread when a load in progress is cancelled. Override to make
+     * {@link #loadInBackground()} return early, for example by cancelling a
+     * {@code CancellationSignal} it passes on. Its result is dropped either way.
+     */
+    public void cancelLoadInBackground() {
+    }
+
+    /**
+     * Called on the main thread with data that is no longer used, either because newer data
+     * replaced it or because it was loaded after the loader was restarted or reset. Override to
+     * release resources held by the data.
+     *
+     * @param data the data
+     */
+    protected void onReleaseResult(T data) {
+    }
+
+    /**
+     * Returns the loader's typed id.
+     *
+     * @return the id
+     */
+    public Id<Loader<T>> getTypedId() {
+        return id;
+    }
+
+    /**
+     * Returns the args the loader was created with.
+     *
+     * @return the args
+     */
+    public TypedBundle getArgs() {
+        return args;
+    }
+
+    /**
+     * Returns the priority of the loader's loads.
+     *
+     * @return the priority
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    @Override
+    public void deliverResult(T data) {
+        if (isReset()) {
+            if (data != null) {
+                onReleaseResult(data);
+            }
+            return;
+        }
+        T oldData = this.data;
+        this.data = data;
+        if (isStarted()) {
+            super.deliverResult(data);
+        }
+        if (oldData != null && oldData != data) {
+            onReleaseResult(oldData);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (data != null) {
+            deliverResult(data);
+        }
+        if (takeContentChanged() || data == null || stoppedLoad) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        super.onStopLoading();
+        if (cancelTask()) {
+            stoppedLoad = true;
+        }
+    }
+
+    @Override
+    protected boolean onCancelLoad() {
+        return cancelTask();
+    }
+
+    @Override
+    protected void onForceLoad() {
+        super.onForceLoad();
+        // Cancel the load in progress, if any, since this one is newer.
+        cancelTask();
+        stoppedLoad = false;
+        task = new LoadTask();
+        if (executor instanceof PriorityExecutor) {
+            ((PriorityExecutor) executor).execute(task, priority);
+        } else {
+            executor.execute(task);
+        }
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        cancelTask();
+        stoppedLoad = false;
+        if (data != null) {
+            onReleaseResult(data);
+            data = null;
+        }
+    }
+
+    /**
+     * Cancels the load in progress, if any, so its result is dropped.
+     *
+     * @return true if there was a load to cancel
+     */
+    private boolean cancelTask() {
+        LoadTask task = this.task;
+        if (task == null) {
+            return false;
+        }
+        this.task = null;
+        if (task.running) {
+            cancelLoadInBackground();
+        }
+        return true;
+    }
+
+    private void onLoadComplete(LoadTask task, T result) {
+        if (task != this.task || isAbandoned()) {
+            if (result != null) {
+                onReleaseResult(result);
+            }
+            return;
+        }
+        this.task = null;
+        deliverResult(result);
+    }
+
+    private void onLoadFailed(LoadTask task, Throwable error) {
+        if (task != this.task || isAbandoned()) {
+            // The load was cancelled, which may well be why it failed.
+            return;
+        }
+        this.task = null;
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        throw new RuntimeException(error);
+    }
+
+    private final class LoadTask implements Runnable {
+        /**
+         * Set once the load starts, before it checks whether it was cancelled, so cancelling it
+         * knows whether to call {@link #cancelLoadInBackground()}.
+         */
+        private volatile boolean running;
+
+        @Override
+        public void run() {
+            running = true;
+            if (task != this) {
+                return;
+            }
+            if (executor instanceof PriorityExecutor) {
+                // Leave the threads of a caller's executor as they are.
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            }
+            final T result;
+            try {
+                result = loadInBackground();
+            } catch (final Throwable e) {
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onLoadFailed(LoadTask.this, e);
+                    }
+                });
+                return;
+            }
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onLoadComplete(LoadTask.this, result);
+                }
+            });
+        }
+    }
+}
@@ -4,20 +4,67 @@ import android.annotation.TargetApi;
 import android.os.Bundle;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.content.Loader;
+import android.util.SparseArray;
+
+import java.util.concurrent.TimeUnit;
 
 import me.tatarka.typedbundle.Id;
+import me.tatarka.typedbundle.ImmutableTypedBundle;
 import me.tatarka.typedbundle.TypedBundle;
+import me.tatarka.typedbundle.internal.PendingRestarts;
+import me.tatarka.typedbundle.internal.ResultCache;
 
 @TargetApi(11)
 public class TypedLoaderManager {
     private LoaderManager loaderManager;
+    /**
+     * The callbacks wrapper for each loader id, reused so restarting a loader doesn't allocate.
+     */
+    private final SparseArray<WrapLoaderCallbacks<?>> callbacks = new SparseArray<>();
+    private final ResultCache<Object, Object> resultCache;
+    private final PendingRestarts<LoaderCallbacks<?>> pendingRestarts = new PendingRestarts<>(new PendingRestarts.Restarter<LoaderCallbacks<?>>() {
+        @Override
+        public void restart(int id, TypedBundle args, LoaderCallbacks<?> callback) {
+            restartPending(id, args, callback);
+        }
+    });
 
     public TypedLoaderManager(LoaderManager loaderManager) {
+        this(loaderManager, null);
+    }
+
+    /**
+     * Constructs a {@code TypedLoaderManager} that caches each loader's result by its id and args.
+     * Restarting a loader with args equal to ones it already loaded skips the reload, the current
+     * loader delivers the cached result through the loader manager instead, so it reaches
+     * {@link LoaderCallbacks#onLoadFinished(Loader, Object)} only while started like any other
+     * result. If that loader later loads again on its own, for example because its content
+     * changed, it is restarted with the latest args instead of delivering a result for its old
+     * ones.
+     * <p/>
+     * Only cache results that stay valid after the loader delivers a newer one, not for example a
+     * {@code Cursor} that the loader closes. The least recently used result is dropped to make
+     * room, and a result is dropped once it's older than maxAge.
+     *
+     * @param loaderManager the loader manager
+     * @param maxResults    the maximum number of results to cache
+     * @param maxAge        how long a result is cached after it was loaded
+     * @param unit          the unit of maxAge
+     * @throws IllegalArgumentException if maxResults isn't positive or maxAge is negative
+     */
+    public TypedLoaderManager(LoaderManager loaderManager, int maxResults, long maxAge, TimeUnit unit) {
+        this(loaderManager, new ResultCache<>(maxResults, maxAge, unit));
+    }
+
+    private TypedLoaderManager(LoaderManager loaderManager, ResultCache<Object, Object> resultCache) {
         this.loaderManager = loaderManager;
+        this.resultCache = resultCache;
     }
 
     public void destroyLoader(Id<Loader<?>> id) {
+        pendingRestarts.cancel(id.id);
         loaderManager.destroyLoader(id.id);
+        callbacks.remove(id.id);
     }
 
     @SuppressWarnings("unchecked")
@@ -27,18 +74,105 @@ public class TypedLoaderManager {
 
     @SuppressWarnings("unchecked")
     public <T, L extends Loader<T>> L initLoader(Id<L> id, TypedBundle args, LoaderCallbacks<T> callback) {
-        return (L) loaderManager.initLoader(id.id, args.getBundle(), new WrapLoaderCallbacks<>(callback));
+        WrapLoaderCallbacks<T> wrapper = wrap(id.id, args, callback);
+        return (L) loaderManager.initLoader(id.id, wrapper.bundle, wrapper);
     }
 
     @SuppressWarnings("unchecked")
     public <T, L extends Loader<T>> L restartLoader(Id<L> id, TypedBundle args, LoaderCallbacks<T> callback) {
-        return (L) loaderManager.restartLoader(id.id, args.getBundle(), new WrapLoaderCallbacks<>(callback));
+        pendingRestarts.cancel(id.id);
+        WrapLoaderCallbacks<T> wrapper = wrap(id.id, args, callback);
+        if (resultCache != null) {
+            Loader<T> loader = loaderManager.getLoader(id.id);
+            // Only a loader that delivered to this wrapper is known to deliver through it.
+            if (loader != null && loader == wrapper.loader) {
+                T cached = (T) resultCache.get(wrapper.key);
+                if (cached != null) {
+                    wrapper.deliverCached(loader, cached);
+                    return (L) loader;
+                }
+            }
+        }
+        return (L) loaderManager.restartLoader(id.id, wrapper.bundle, wrapper);
+    }
+
+    /**
+     * Restarts the loader once calls to this stop coming in for the given delay. Each call pushes
+     * the restart back and replaces the args and callback, so a burst of calls, like from a text
+     * watcher, only starts a single load with the latest args.
+     * <p/>
+     * Calling {@link #restartLoader(Id, TypedBundle, LoaderCallbacks)} or
+     * {@link #destroyLoader(Id)} for the id cancels a pending restart, as does
+     * {@link #cancelPendingRestarts()}. This must be called on the main thread.
+     *
+     * @param id          the loader id
+     * @param args        the args to restart the loader with
+     * @param callback    the callbacks
+     * @param delayMillis how long to wait after the last call before restarting
+     * @throws IllegalArgumentException if delayMillis is negative
+     * @see #restartLoaderCoalesced(Id, TypedBundle, LoaderCallbacks, long)
+     */
+    public <T, L extends Loader<T>> void restartLoaderDebounced(Id<L> id, TypedBundle args, LoaderCallbacks<T> callback, long delayMillis) {
+        pendingRestarts.debounce(id.id, args, callback, delayMillis);
+    }
+
+    /**
+     * Restarts the loader at most once per the given delay. The first call schedules a restart
+     * and later calls before it happens only replace the args and callback, so a steady stream of
+     * calls, like from a scroll listener, still starts a load every delay with the latest args.
+     * <p/>
+     * Calling {@link #restartLoader(Id, TypedBundle, LoaderCallbacks)} or
+     * {@link #destroyLoader(Id)} for the id cancels a pending restart, as does
+     * {@link #cancelPendingRestarts()}. This must be called on the main thread.
+     *
+     * @param id          the loader id
+     * @param args        the args to restart the loader with
+     * @param callback    the callbacks
+     * @param delayMillis how long after the first call to restart
+     * @throws IllegalArgumentException if delayMillis is negative
+     * @see #restartLoaderDebounced(Id, TypedBundle, LoaderCallbacks, long)
+     */
+    public <T, L extends Loader<T>> void restartLoaderCoalesced(Id<L> id, TypedBundle args, LoaderCallbacks<T> callback, long delayMillis) {
+        pendingRestarts.coalesce(id.id, args, callback, delayMillis);
+    }
+
+    /**
+     * Cancels every pending debounced or coalesced restart. A pending restart holds on to its
+     * callbacks, usually the activity or fragment, so call this from {@code onDestroy()}.
+     */
+    public void cancelPendingRestarts() {
+        pendingRestarts.cancelAll();
+    }
+
+    private <T> void restartPending(int id, TypedBundle args, LoaderCallbacks<T> callback) {
+        restartLoader(Id.<Loader<T>>of(id), args, callback);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> WrapLoaderCallbacks<T> wrap(int id, TypedBundle args, LoaderCallbacks<T> callback) {
+        WrapLoaderCallbacks<T> wrapper = (WrapLoaderCallbacks<T>) callbacks.get(id);
+        if (wrapper == null) {
+            wrapper = new WrapLoaderCallbacks<>(Id.<Loader<T>>of(id), loaderManager, resultCache);
+            callbacks.put(id, wrapper);
+        }
+        wrapper.set(args, callback);
+        return wrapper;
     }
 
     public LoaderManager getLoaderManager() {
         return loaderManager;
     }
 
+    /**
+     * Drops every cached loader result, for example when the data they were loaded from changed.
+     * Does nothing if results aren't cached.
+     */
+    public void clearCachedResults() {
+        if (resultCache != null) {
+            resultCache.clear();
+        }
+    }
+
     public interface LoaderCallbacks<T> {
         Loader<T> onCreateLoader(Id<Loader<T>> id, TypedBundle args);
 
@@ -48,25 +182,122 @@ public class TypedLoaderManager {
     }
     
     private static class WrapLoaderCallbacks<T> implements LoaderManager.LoaderCallbacks<T> {
+        private final Id<Loader<T>> id;
+        private final LoaderManager loaderManager;
+        private final ResultCache<Object, Object> resultCache;
         private LoaderCallbacks<T> callback;
+        private TypedBundle args;
+        private Bundle bundle;
+        /**
+         * The cache keys for the latest args and for the args the current loader was created
+         * with. Made when the args are handed in, since they may be changed afterwards. Null if
+         * results aren't cached, or for a loader kept from before a configuration change.
+         */
+        private CacheKey key;
+        private CacheKey loaderKey;
+        /**
+         * The last loader that delivered through this.
+         */
+        private Loader<T> loader;
+        /**
+         * The cached result the loader delivered in place of a reload, while it still has its old
+         * args.
+         */
+        private T cached;
 
-        private WrapLoaderCallbacks(LoaderCallbacks<T> callback) {
+        private WrapLoaderCallbacks(Id<Loader<T>> id, LoaderManager loaderManager, ResultCache<Object, Object> resultCache) {
+            this.id = id;
+            this.loaderManager = loaderManager;
+            this.resultCache = resultCache;
+        }
+
+        void set(TypedBundle args, LoaderCallbacks<T> callback) {
             this.callback = callback;
+            this.args = args;
+            // Only read by the loader manager, so don't force a copy of copy-on-write args.
+            this.bundle = args.peekBundle();
+            key = resultCache != null ? new CacheKey(id.id, args) : null;
+        }
+
+        /**
+         * Has the loader deliver a cached result for the latest args, without reloading.
+         */
+        void deliverCached(Loader<T> loader, T cached) {
+            this.cached = cached;
+            loader.deliverResult(cached);
         }
 
         @Override
         public Loader<T> onCreateLoader(int id, Bundle args) {
-            return callback.onCreateLoader(new Id<Loader<T>>(id), new TypedBundle(args));
+            cached = null;
+            // The loader manager hands back the bundle it was given, so hand back its TypedBundle.
+            TypedBundle loaderArgs;
+            if (args == bundle) {
+                loaderArgs = this.args;
+                loaderKey = key;
+            } else {
+                loaderArgs = new TypedBundle(args);
+                loaderKey = resultCache != null ? new CacheKey(id, loaderArgs) : null;
+            }
+            return callback.onCreateLoader(this.id, loaderArgs);
         }
 
         @Override
         public void onLoadFinished(Loader<T> loader, T data) {
+            this.loader = loader;
+            if (cached != null && data == cached) {
+                // Already cached, and not for the args the loader has.
+                callback.onLoadFinished(loader, data);
+                return;
+            }
+            if (resultCache != null && data != null && loaderKey != null) {
+                resultCache.put(loaderKey, data);
+            }
+            if (cached != null) {
+                // The loader loaded again with its old args, load the latest ones instead.
+                loaderManager.restartLoader(id.id, bundle, this);
+                return;
+            }
             callback.onLoadFinished(loader, data);
         }
 
         @Override
         public void onLoaderReset(Loader<T> loader) {
+            if (loader == this.loader) {
+                this.loader = null;
+                cached = null;
+            }
             callback.onLoaderReset(loader);
         }
     }
+
+    /**
+     * Identifies a loader result by the loader's id and the contents of its args.
+     */
+    private static final class CacheKey {
+        final int id;
+        final ImmutableTypedBundle args;
+
+        CacheKey(int id, TypedBundle args) {
+            this.id = id;
+            this.args = new ImmutableTypedBundle.Builder(args).build();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) o;
+            return id == other.id && args.equals(other.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * id + args.hashCode();
+        }
+    }
 }
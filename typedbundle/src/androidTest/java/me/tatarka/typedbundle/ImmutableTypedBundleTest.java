@@ -0,0 +1,130 @@
+package me.tatarka.typedbundle;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ImmutableTypedBundleTest extends AndroidTestCase {
+    public void testBuild() {
+        Key<String> key = new Key<>("key");
+        ImmutableTypedBundle bundle = new ImmutableTypedBundle.Builder()
+                .put(key, "value")
+                .build();
+
+        assertThat(bundle.get(key)).isEqualTo("value");
+        assertThat(bundle.size()).isEqualTo(1);
+    }
+
+    public void testBuilderChangesDoNotAffectBuilt() {
+        Key<String> key = new Key<>("key");
+        ImmutableTypedBundle.Builder builder = new ImmutableTypedBundle.Builder().put(key, "value");
+        ImmutableTypedBundle bundle = builder.build();
+        builder.put(key, "other");
+
+        assertThat(bundle.get(key)).isEqualTo("value");
+    }
+
+    public void testNestedChangesDoNotAffectBuilt() {
+        Key<Bundle> bundleKey = new Key<>("bundle");
+        Key<int[]> arrayKey = new Key<>("array");
+        Key<ArrayList<String>> listKey = new Key<>("list");
+        Bundle nested = new Bundle();
+        nested.putString("string", "value");
+        int[] array = {1, 2};
+        ArrayList<String> list = new ArrayList<>();
+        list.add("value");
+        TypedBundle typedBundle = new TypedBundle()
+                .put(bundleKey, nested)
+                .put(arrayKey, array)
+                .putStringArrayList(listKey, list);
+        ImmutableTypedBundle bundle = typedBundle.toImmutable();
+        int hash = bundle.hashCode();
+        nested.putString("string", "other");
+        array[0] = 3;
+        list.add("other");
+
+        assertThat(bundle.get(bundleKey).getString("string")).isEqualTo("value");
+        assertThat(bundle.get(arrayKey)).containsExactly(1, 2);
+        assertThat(bundle.get(listKey)).containsExactly("value");
+        assertThat(bundle.hashCode()).isEqualTo(hash);
+    }
+
+    public void testParcelableArrayEqualsParcelRoundTrip() {
+        Key<Bundle[]> key = new Key<>("array");
+        Bundle nested = new Bundle();
+        nested.putString("string", "value");
+        ImmutableTypedBundle bundle = new ImmutableTypedBundle.Builder()
+                .put(key, new Bundle[]{nested})
+                .build();
+        Parcel parcel = Parcel.obtain();
+        bundle.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        ImmutableTypedBundle result = ImmutableTypedBundle.CREATOR.createFromParcel(parcel);
+        parcel.recycle();
+
+        assertThat(result).isEqualTo(bundle);
+    }
+
+    public void testToImmutable() {
+        Key<Integer> key = new Key<>("key");
+        TypedBundle typedBundle = new TypedBundle().put(key, 1);
+        ImmutableTypedBundle bundle = typedBundle.toImmutable();
+        typedBundle.put(key, 2);
+
+        assertThat(bundle.getInt(key, 0)).isEqualTo(1);
+    }
+
+    public void testToTypedBundleIsCopy() {
+        Key<Integer> key = new Key<>("key");
+        ImmutableTypedBundle bundle = new ImmutableTypedBundle.Builder().put(key, 1).build();
+        TypedBundle typedBundle = bundle.toTypedBundle();
+        typedBundle.put(key, 2);
+
+        assertThat(bundle.getInt(key, 0)).isEqualTo(1);
+        assertThat(typedBundle.getInt(key, 0)).isEqualTo(2);
+    }
+
+    public void testEqualsComparesContents() {
+        Key<int[]> arrayKey = new Key<>("array");
+        Key<Bundle> bundleKey = new Key<>("bundle");
+        Bundle nested1 = new Bundle();
+        nested1.putString("string", "value");
+        Bundle nested2 = new Bundle();
+        nested2.putString("string", "value");
+        ImmutableTypedBundle bundle1 = new ImmutableTypedBundle.Builder()
+                .put(arrayKey, new int[]{1, 2})
+                .put(bundleKey, nested1)
+                .build();
+        ImmutableTypedBundle bundle2 = new ImmutableTypedBundle.Builder()
+                .put(bundleKey, nested2)
+                .put(arrayKey, new int[]{1, 2})
+                .build();
+
+        assertThat(bundle1).isEqualTo(bundle2);
+        assertThat(bundle1.hashCode()).isEqualTo(bundle2.hashCode());
+    }
+
+    public void testNotEqual() {
+        Key<int[]> key = new Key<>("key");
+        ImmutableTypedBundle bundle1 = new ImmutableTypedBundle.Builder().put(key, new int[]{1}).build();
+        ImmutableTypedBundle bundle2 = new ImmutableTypedBundle.Builder().put(key, new int[]{2}).build();
+
+        assertThat(bundle1).isNotEqualTo(bundle2);
+    }
+
+    public void testParcel() {
+        Key<String> key = new Key<>("key");
+        ImmutableTypedBundle bundle = new ImmutableTypedBundle.Builder().put(key, "value").build();
+        Parcel parcel = Parcel.obtain();
+        bundle.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        ImmutableTypedBundle result = ImmutableTypedBundle.CREATOR.createFromParcel(parcel);
+        parcel.recycle();
+
+        assertThat(result).isEqualTo(bundle);
+    }
+}
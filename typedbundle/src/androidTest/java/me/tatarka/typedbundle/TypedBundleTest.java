@@ -3,6 +3,7 @@ package me.tatarka.typedbundle;
 import android.annotation.TargetApi;
 import android.os.Binder;
 import android.os.Bundle;
+import android.os.Debug;
 import android.os.IBinder;
 import android.os.Parcel;
 import android.os.Parcelable;
@@ -15,6 +16,8 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import me.tatarka.typedbundle.util.SparseArrayAssert;
 
@@ -446,6 +449,117 @@ public class TypedBundleTest extends AndroidTestCase {
         assertThat(typedBundle.get(key)).isEqualTo(testTypedBundle);
     }
 
+    public void testGetBooleanPrimitive() {
+        Key<Boolean> key = new Key<>("key");
+        Bundle bundle = new Bundle();
+        bundle.putBoolean("key", true);
+        TypedBundle typedBundle = runThroughParcel(new TypedBundle(bundle));
+
+        assertThat(typedBundle.getBoolean(key, false)).isTrue();
+    }
+
+    public void testGetBytePrimitive() {
+        Key<Byte> key = new Key<>("key");
+        Bundle bundle = new Bundle();
+        bundle.putByte("key", (byte) 1);
+        TypedBundle typedBundle = runThroughParcel(new TypedBundle(bundle));
+
+        assertThat(typedBundle.getByte(key, (byte) 0)).isEqualTo((byte) 1);
+    }
+
+    public void testGetCharPrimitive() {
+        Key<Character> key = new Key<>("key");
+        Bundle bundle = new Bundle();
+        bundle.putChar("key", 'a');
+        TypedBundle typedBundle = runThroughParcel(new TypedBundle(bundle));
+
+        assertThat(typedBundle.getChar(key, 'z')).isEqualTo('a');
+    }
+
+    public void testGetShortPrimitive() {
+        Key<Short> key = new Key<>("key");
+        Bundle bundle = new Bundle();
+        bundle.putShort("key", (short) 1);
+        TypedBundle typedBundle = runThroughParcel(new TypedBundle(bundle));
+
+        assertThat(typedBundle.getShort(key, (short) 0)).isEqualTo((short) 1);
+    }
+
+    public void testGetIntPrimitive() {
+        Key<Integer> key = new Key<>("key");
+        Bundle bundle = new Bundle();
+        bundle.putInt("key", 1);
+        TypedBundle typedBundle = runThroughParcel(new TypedBundle(bundle));
+
+        assertThat(typedBundle.getInt(key, 0)).isEqualTo(1);
+    }
+
+    public void testGetLongPrimitive() {
+        Key<Long> key = new Key<>("key");
+        Bundle bundle = new Bundle();
+        bundle.putLong("key", 1L);
+        TypedBundle typedBundle = runThroughParcel(new TypedBundle(bundle));
+
+        assertThat(typedBundle.getLong(key, 0L)).isEqualTo(1L);
+    }
+
+    public void testGetFloatPrimitive() {
+        Key<Float> key = new Key<>("key");
+        Bundle bundle = new Bundle();
+        bundle.putFloat("key", 1f);
+        TypedBundle typedBundle = runThroughParcel(new TypedBundle(bundle));
+
+        assertThat(typedBundle.getFloat(key, 0f)).isEqualTo(1f);
+    }
+
+    public void testGetDoublePrimitive() {
+        Key<Double> key = new Key<>("key");
+        Bundle bundle = new Bundle();
+        bundle.putDouble("key", 1d);
+        TypedBundle typedBundle = runThroughParcel(new TypedBundle(bundle));
+
+        assertThat(typedBundle.getDouble(key, 0d)).isEqualTo(1d);
+    }
+
+    public void testGetPrimitiveDefaultValue() {
+        Key<Integer> key = new Key<>("key");
+        TypedBundle typedBundle = new TypedBundle();
+
+        assertThat(typedBundle.getInt(key, 42)).isEqualTo(42);
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testGetPrimitiveDoesNotAllocate() {
+        Key<Integer> intKey = new Key<>("intKey");
+        Key<Long> longKey = new Key<>("longKey");
+        Key<Boolean> booleanKey = new Key<>("booleanKey");
+        Key<Double> doubleKey = new Key<>("doubleKey");
+        Key<Integer> missingKey = new Key<>("missingKey");
+        TypedBundle typedBundle = new TypedBundle()
+                .put(intKey, 100000)
+                .put(longKey, 100000L)
+                .put(booleanKey, true)
+                .put(doubleKey, 1.5d);
+        long sum = 0;
+        // Warm up so that any lazy unparceling happens before we start counting.
+        sum += typedBundle.getInt(intKey, 0);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < 1000; i++) {
+            sum += typedBundle.getInt(intKey, -100000);
+            sum += typedBundle.getLong(longKey, -100000L);
+            sum += typedBundle.getBoolean(booleanKey, false) ? 1 : 0;
+            sum += (long) typedBundle.getDouble(doubleKey, -1.5d);
+            sum += typedBundle.getInt(missingKey, -100000);
+        }
+        Debug.stopAllocCounting();
+        int allocations = Debug.getThreadAllocCount();
+
+        assertThat(sum).isNotZero();
+        assertThat(allocations).isZero();
+    }
+
     public void testPutAllBundle() {
         Bundle bundle = new Bundle();
         bundle.putString("key", "value");
@@ -855,6 +969,50 @@ public class TypedBundleTest extends AndroidTestCase {
                 .isEqualTo(new HashSet<>(Arrays.asList(new Key<String>("stringKey"), new Key<Integer>("intKey"))));
     }
 
+    public void testKeySetReturnsInternedKeys() {
+        Key<String> interned = Key.of("key");
+        Bundle bundle = new Bundle();
+        bundle.putString("key", "value");
+        TypedBundle typedBundle = new TypedBundle(bundle);
+
+        assertThat(typedBundle.keySet().iterator().next()).isSameAs(interned);
+    }
+
+    public void testForEachKey() {
+        Bundle bundle = new Bundle();
+        bundle.putString("stringKey", "value");
+        bundle.putInt("intKey", 1);
+        TypedBundle typedBundle = new TypedBundle(bundle);
+        final Set<Key<Object>> keys = new HashSet<>();
+        typedBundle.forEachKey(new KeyVisitor() {
+            @Override
+            public boolean visit(Key<Object> key) {
+                keys.add(key);
+                return true;
+            }
+        });
+
+        assertThat(keys)
+                .isEqualTo(new HashSet<>(Arrays.asList(new Key<String>("stringKey"), new Key<Integer>("intKey"))));
+    }
+
+    public void testForEachKeyStopsEarly() {
+        Bundle bundle = new Bundle();
+        bundle.putString("stringKey", "value");
+        bundle.putInt("intKey", 1);
+        TypedBundle typedBundle = new TypedBundle(bundle);
+        final int[] count = new int[1];
+        typedBundle.forEachKey(new KeyVisitor() {
+            @Override
+            public boolean visit(Key<Object> key) {
+                count[0]++;
+                return false;
+            }
+        });
+
+        assertThat(count[0]).isEqualTo(1);
+    }
+
     public void testRemove() {
         Key<String> key = new Key<>("key");
         Bundle bundle = new Bundle();
@@ -873,6 +1031,237 @@ public class TypedBundleTest extends AndroidTestCase {
         assertThat(typedBundle.size()).isEqualTo(1);
     }
 
+    public void testEncodeDecode() {
+        Key<Integer> intKey = new Key<>("int");
+        Key<String> stringKey = new Key<>("string");
+        Key<int[]> intArrayKey = new Key<>("intArray");
+        Key<Bundle> bundleKey = new Key<>("bundle");
+        Bundle nested = new Bundle();
+        nested.putString("string", "nested");
+        TypedBundle typedBundle = new TypedBundle()
+                .put(intKey, 1)
+                .put(stringKey, "value")
+                .put(intArrayKey, new int[]{1, 2})
+                .put(bundleKey, nested);
+        TypedBundle result = TypedBundle.decode(typedBundle.encode());
+
+        assertThat(result.getInt(intKey, 0)).isEqualTo(1);
+        assertThat(result.get(stringKey)).isEqualTo("value");
+        assertThat(result.get(intArrayKey)).isEqualTo(new int[]{1, 2});
+        assertThat(result.get(bundleKey).getString("string")).isEqualTo("nested");
+    }
+
+    public void testEncodeParcelableThrows() {
+        Key<TestParcelable> key = new Key<>("key");
+        TypedBundle typedBundle = new TypedBundle().put(key, new TestParcelable(1));
+
+        try {
+            typedBundle.encode();
+            fail("Should throw for unsupported type");
+        } catch (IllegalArgumentException e) {
+            // Success
+        }
+    }
+
+    public void testCopyOnWrite() {
+        Key<String> key1 = new Key<>("key1");
+        Key<String> key2 = new Key<>("key2");
+        TypedBundle typedBundle = new TypedBundle().put(key1, "value1");
+        TypedBundle copy = typedBundle.copyOnWrite();
+        copy.put(key2, "value2");
+
+        assertThat(copy.get(key1)).isEqualTo("value1");
+        assertThat(copy.get(key2)).isEqualTo("value2");
+        assertThat(typedBundle.containsKey(key2)).isFalse();
+    }
+
+    public void testCopyOnWriteSourceWritten() {
+        Key<String> key = new Key<>("key");
+        TypedBundle typedBundle = new TypedBundle().put(key, "value");
+        TypedBundle copy = typedBundle.copyOnWrite();
+        typedBundle.remove(key);
+
+        assertThat(typedBundle.containsKey(key)).isFalse();
+        assertThat(copy.get(key)).isEqualTo("value");
+    }
+
+    public void testCopyOnWriteGetBundleIsPrivate() {
+        Key<String> key = new Key<>("key");
+        Bundle bundle = new Bundle();
+        TypedBundle typedBundle = new TypedBundle(bundle).put(key, "value");
+        TypedBundle copy = typedBundle.copyOnWrite();
+        copy.getBundle().putString("other", "value");
+
+        assertThat(copy.getBundle()).isNotSameAs(bundle);
+        assertThat(bundle.containsKey("other")).isFalse();
+    }
+
+    public void testCopyOnWriteEmpty() {
+        Key<String> key = new Key<>("key");
+        TypedBundle copy = TypedBundle.EMPTY.copyOnWrite();
+        copy.put(key, "value");
+
+        assertThat(copy.get(key)).isEqualTo("value");
+        assertThat(TypedBundle.EMPTY.isEmpty()).isTrue();
+    }
+
+    public void testEstimateSize() {
+        Key<Integer> intKey = new Key<>("int");
+        Key<String> stringKey = new Key<>("string");
+        Key<int[]> intArrayKey = new Key<>("intArray");
+        Key<TestParcelable> parcelableKey = new Key<>("parcelable");
+        TypedBundle typedBundle = new TypedBundle()
+                .put(intKey, 1)
+                .put(stringKey, "value")
+                .put(intArrayKey, new int[100])
+                .put(parcelableKey, new TestParcelable(1));
+        Parcel parcel = Parcel.obtain();
+        parcel.writeBundle(typedBundle.getBundle());
+        int actualSize = parcel.dataSize();
+        parcel.recycle();
+
+        assertThat(typedBundle.estimateSize()).isEqualTo(actualSize);
+    }
+
+    public void testEstimateSizeDoesNotCopyNestedCopyOnWrite() {
+        Key<TypedBundle> nestedKey = new Key<>("nested");
+        TypedBundle original = new TypedBundle().put(new Key<Integer>("int"), 1);
+        TypedBundle copy = original.copyOnWrite();
+        TypedBundle typedBundle = new TypedBundle().put(nestedKey, copy);
+        typedBundle.estimateSize();
+
+        assertThat(copy.storage()).isSameAs(original.storage());
+    }
+
+    public void testEstimateSizes() {
+        Key<Integer> intKey = new Key<>("int");
+        Key<int[]> intArrayKey = new Key<>("intArray");
+        TypedBundle typedBundle = new TypedBundle()
+                .put(intKey, 1)
+                .put(intArrayKey, new int[100]);
+        Map<Key<Object>, Integer> sizes = typedBundle.estimateSizes();
+
+        assertThat(sizes.keySet()).containsExactly(Key.of("intArray"), Key.of("int"));
+        assertThat(sizes.get(Key.of("intArray"))).isEqualTo(4 + 20 + 4 + 4 + 400);
+    }
+
+    public void testSpillLargeValues() {
+        Key<byte[]> byteArrayKey = new Key<>("byteArray");
+        Key<ArrayList<String>> listKey = new Key<>("list");
+        Key<Integer> intKey = new Key<>("int");
+        ArrayList<String> list = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            list.add("value" + i);
+        }
+        MemorySpillStore store = SpillStores.register(new MemorySpillStore("test"));
+        TypedBundle typedBundle = new TypedBundle()
+                .put(byteArrayKey, new byte[100 * 1024])
+                .putStringArrayList(listKey, list)
+                .put(intKey, 1)
+                .setSpillStore(store, 10 * 1024);
+        TypedBundle result = runThroughParcel(typedBundle);
+
+        assertThat(result.getBundle().get("byteArray")).isInstanceOf(SpillHandle.class);
+        assertThat(result.get(byteArrayKey)).hasSize(100 * 1024);
+        assertThat(result.get(listKey)).isEqualTo(list);
+        assertThat(result.getInt(intKey, 0)).isEqualTo(1);
+        SpillStores.unregister("test");
+    }
+
+    public void testSpillKeepsHandleAfterGet() {
+        Key<byte[]> key = new Key<>("key");
+        final int[] writes = new int[1];
+        MemorySpillStore store = SpillStores.register(new MemorySpillStore("test") {
+            @Override
+            public String write(byte[] data) {
+                writes[0]++;
+                return super.write(data);
+            }
+        });
+        TypedBundle typedBundle = new TypedBundle()
+                .put(key, new byte[100 * 1024])
+                .setSpillStore(store, 10 * 1024);
+
+        assertThat(typedBundle.spill()).isEqualTo(1);
+        assertThat(typedBundle.get(key)).hasSize(100 * 1024);
+        assertThat(typedBundle.getBundle().get("key")).isInstanceOf(SpillHandle.class);
+        assertThat(typedBundle.spill()).isZero();
+        assertThat(writes[0]).isEqualTo(1);
+        SpillStores.unregister("test");
+    }
+
+    public void testSpillBelowThreshold() {
+        Key<byte[]> key = new Key<>("key");
+        MemorySpillStore store = new MemorySpillStore("test");
+        TypedBundle typedBundle = new TypedBundle()
+                .put(key, new byte[2 * 1024])
+                .setSpillStore(store, 10 * 1024);
+
+        assertThat(typedBundle.spill()).isZero();
+        assertThat(typedBundle.getBundle().get("key")).isInstanceOf(byte[].class);
+    }
+
+    public void testSpillDeletedOnOverwrite() {
+        Key<byte[]> key = new Key<>("key");
+        DeletingSpillStore store = SpillStores.register(new DeletingSpillStore());
+        TypedBundle typedBundle = new TypedBundle()
+                .put(key, new byte[100 * 1024])
+                .setSpillStore(store, 10 * 1024);
+        typedBundle.spill();
+        typedBundle.put(key, new byte[1]);
+
+        assertThat(store.deletes).isEqualTo(1);
+        SpillStores.unregister("test");
+    }
+
+    public void testSpillDeletedOnRemoveAndClear() {
+        Key<byte[]> key1 = new Key<>("key1");
+        Key<byte[]> key2 = new Key<>("key2");
+        DeletingSpillStore store = SpillStores.register(new DeletingSpillStore());
+        TypedBundle typedBundle = new TypedBundle()
+                .put(key1, new byte[100 * 1024])
+                .put(key2, new byte[100 * 1024])
+                .setSpillStore(store, 1024);
+        typedBundle.spill();
+        typedBundle.remove(key1);
+
+        assertThat(store.deletes).isEqualTo(1);
+        typedBundle.clear();
+        assertThat(store.deletes).isEqualTo(2);
+        SpillStores.unregister("test");
+    }
+
+    public void testSpillKeptWhileCopyHoldsIt() {
+        Key<byte[]> key = new Key<>("key");
+        DeletingSpillStore store = SpillStores.register(new DeletingSpillStore());
+        TypedBundle typedBundle = new TypedBundle()
+                .put(key, new byte[100 * 1024])
+                .setSpillStore(store, 10 * 1024);
+        typedBundle.spill();
+        TypedBundle copy = new TypedBundle(typedBundle);
+        TypedBundle copyOnWrite = typedBundle.copyOnWrite();
+        typedBundle.remove(key);
+        copy.remove(key);
+
+        assertThat(store.deletes).isZero();
+        assertThat(copyOnWrite.get(key)).hasSize(100 * 1024);
+        SpillStores.unregister("test");
+    }
+
+    public void testSpillKeptAfterParcel() {
+        Key<byte[]> key = new Key<>("key");
+        DeletingSpillStore store = SpillStores.register(new DeletingSpillStore());
+        TypedBundle typedBundle = new TypedBundle()
+                .put(key, new byte[100 * 1024])
+                .setSpillStore(store, 10 * 1024);
+        TypedBundle result = runThroughParcel(typedBundle);
+        typedBundle.remove(key);
+
+        assertThat(store.deletes).isZero();
+        assertThat(result.get(key)).hasSize(100 * 1024);
+        SpillStores.unregister("test");
+    }
+
     private static TypedBundle runThroughParcel(TypedBundle bundle) {
         Parcel parcel = Parcel.obtain();
         bundle.writeToParcel(parcel, 0);
@@ -880,6 +1269,20 @@ public class TypedBundleTest extends AndroidTestCase {
         return TypedBundle.CREATOR.createFromParcel(parcel);
     }
 
+    private static class DeletingSpillStore extends MemorySpillStore {
+        int deletes;
+
+        DeletingSpillStore() {
+            super("test");
+        }
+
+        @Override
+        public void delete(String token) {
+            deletes++;
+            super.delete(token);
+        }
+    }
+
     private static class TestBinder extends Binder {
     }
 
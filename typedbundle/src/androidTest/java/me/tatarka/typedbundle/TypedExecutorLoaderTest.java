@@ -0,0 +1,206 @@
+package me.tatarka.typedbundle;
+
+import android.content.Context;
+import android.content.Loader;
+import android.os.Handler;
+import android.os.Looper;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TypedExecutorLoaderTest extends AndroidTestCase {
+    private static final Id<Loader<String>> ID = Id.of(1);
+    private static final Runnable NOTHING = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+
+    public void testDeliversResult() throws InterruptedException {
+        QueueExecutor executor = new QueueExecutor();
+        final TestLoader loader = new TestLoader(getContext(), executor);
+        start(loader);
+        executor.runAll();
+        runOnMain(NOTHING);
+
+        assertThat(results).containsExactly("result1");
+    }
+
+    public void testStopCancelsLoadAndStartLoadsAgain() throws InterruptedException {
+        QueueExecutor executor = new QueueExecutor();
+        final TestLoader loader = new TestLoader(getContext(), executor);
+        start(loader);
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                loader.stopLoading();
+            }
+        });
+        executor.runAll();
+        runOnMain(NOTHING);
+
+        assertThat(loader.loads.get()).isEqualTo(0);
+        assertThat(results).isEmpty();
+
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                loader.startLoading();
+            }
+        });
+        executor.runAll();
+        runOnMain(NOTHING);
+
+        assertThat(loader.loads.get()).isEqualTo(1);
+        assertThat(results).containsExactly("result1");
+    }
+
+    public void testStopCancelsLoadInBackground() throws InterruptedException {
+        ThreadExecutor executor = new ThreadExecutor();
+        final TestLoader loader = new TestLoader(getContext(), executor);
+        loader.proceed = new CountDownLatch(1);
+        start(loader);
+        assertThat(loader.started.await(1, TimeUnit.SECONDS)).isTrue();
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                loader.stopLoading();
+            }
+        });
+
+        assertThat(loader.cancelled).isTrue();
+
+        loader.proceed.countDown();
+        executor.thread.join(1000);
+        runOnMain(NOTHING);
+
+        assertThat(results).isEmpty();
+        assertThat(loader.released).containsExactly("result1");
+    }
+
+    public void testResetCancelsLoad() throws InterruptedException {
+        QueueExecutor executor = new QueueExecutor();
+        final TestLoader loader = new TestLoader(getContext(), executor);
+        start(loader);
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                loader.reset();
+            }
+        });
+        executor.runAll();
+        runOnMain(NOTHING);
+
+        assertThat(loader.loads.get()).isEqualTo(0);
+        assertThat(results).isEmpty();
+    }
+
+    private void start(final TestLoader loader) throws InterruptedException {
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                loader.registerListener(ID.id, new Loader.OnLoadCompleteListener<String>() {
+                    @Override
+                    public void onLoadComplete(Loader<String> loader, String data) {
+                        results.add(data);
+                    }
+                });
+                loader.startLoading();
+            }
+        });
+    }
+
+    private static void runOnMain(final Runnable runnable) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                runnable.run();
+                done.countDown();
+            }
+        });
+        assertThat(done.await(1, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static class TestLoader extends TypedExecutorLoader<String> {
+        final AtomicInteger loads = new AtomicInteger();
+        final List<String> released = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch started = new CountDownLatch(1);
+        volatile CountDownLatch proceed;
+        volatile boolean cancelled;
+
+        TestLoader(Context context, Executor executor) {
+            super(context, ID, new TypedBundle(), 0, executor);
+        }
+
+        @Override
+        public String loadInBackground() {
+            int load = loads.incrementAndGet();
+            started.countDown();
+            if (proceed != null) {
+                try {
+                    proceed.await(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return "result" + load;
+        }
+
+        @Override
+        public void cancelLoadInBackground() {
+            cancelled = true;
+        }
+
+        @Override
+        protected void onReleaseResult(String data) {
+            released.add(data);
+        }
+    }
+
+    /**
+     * Runs the loads on the test thread when asked to.
+     */
+    private static class QueueExecutor implements Executor {
+        private final List<Runnable> tasks = Collections.synchronizedList(new ArrayList<Runnable>());
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            List<Runnable> tasks;
+            synchronized (this.tasks) {
+                tasks = new ArrayList<>(this.tasks);
+                this.tasks.clear();
+            }
+            for (Runnable task : tasks) {
+                task.run();
+            }
+        }
+    }
+
+    /**
+     * Runs each load on a new thread.
+     */
+    private static class ThreadExecutor implements Executor {
+        volatile Thread thread;
+
+        @Override
+        public void execute(Runnable command) {
+            thread = new Thread(command);
+            thread.start();
+        }
+    }
+}
@@ -5,9 +5,18 @@ import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 import android.test.AndroidTestCase;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -132,4 +141,364 @@ public class TypedPreferencesTest extends AndroidTestCase {
 
         assertThat(preferences.getStringSet("key", null)).isEqualTo(values);
     }
+
+    public void testCachedGet() {
+        Key<Integer> key = new Key<>("cached");
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(getContext());
+        preferences.edit().putInt("cached", 1).commit();
+        TypedPreferences typedPreferences = TypedPreferences.cached(preferences);
+
+        assertThat(typedPreferences.get(key, 0)).isEqualTo(1);
+        assertThat(typedPreferences.contains(key)).isTrue();
+    }
+
+    public void testCachedSeesOwnWrites() {
+        Key<Integer> key = new Key<>("cached");
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(getContext());
+        preferences.edit().putInt("cached", 1).commit();
+        TypedPreferences typedPreferences = TypedPreferences.cached(preferences);
+        typedPreferences.get(key, 0);
+        typedPreferences.edit().put(key, 2).commit();
+
+        assertThat(typedPreferences.get(key, 0)).isEqualTo(2);
+    }
+
+    public void testCachedWrongTypeReturnsDefault() {
+        Key<Integer> key = new Key<>("cached");
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(getContext());
+        preferences.edit().putString("cached", "value").commit();
+        TypedPreferences typedPreferences = TypedPreferences.cached(preferences);
+
+        assertThat(typedPreferences.get(key, 3)).isEqualTo(3);
+    }
+
+    public void testCachedGetAllReturnsSameMapUntilChanged() {
+        Key<Integer> key = new Key<>("cached");
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(getContext());
+        TypedPreferences typedPreferences = TypedPreferences.cached(preferences);
+        typedPreferences.edit().put(key, 1).commit();
+        Map<Key<Object>, Object> all = typedPreferences.getAll();
+
+        assertThat(typedPreferences.getAll()).isSameAs(all);
+
+        typedPreferences.edit().put(key, 2).commit();
+        Map<Key<Object>, Object> changed = typedPreferences.getAll();
+
+        assertThat(changed).isNotSameAs(all);
+        assertThat(changed.get(Key.of("cached"))).isEqualTo(2);
+    }
+
+    public void testForEachEntry() {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(getContext());
+        preferences.edit().clear().putInt("key1", 1).putInt("key2", 2).commit();
+        TypedPreferences typedPreferences = new TypedPreferences(preferences);
+        final Map<Key<Object>, Object> visited = new HashMap<>();
+        typedPreferences.forEachEntry(new EntryVisitor() {
+            @Override
+            public boolean visit(Key<Object> key, Object value) {
+                visited.put(key, value);
+                return true;
+            }
+        });
+
+        assertThat(visited).isEqualTo(typedPreferences.getAll());
+    }
+
+    public void testCoalescingEditorFlush() throws Exception {
+        Key<Integer> key = new Key<>("coalesced");
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(getContext());
+        preferences.edit().remove("coalesced").commit();
+        TypedPreferences typedPreferences = new TypedPreferences(preferences);
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            CoalescingEditor editor = typedPreferences.coalescingEditor(executor, 1, TimeUnit.MINUTES, 100);
+            for (int i = 0; i < 10; i++) {
+                editor.put(key, i);
+            }
+
+            assertThat(preferences.contains("coalesced")).isFalse();
+            assertThat(editor.flush().get()).isTrue();
+            assertThat(preferences.getInt("coalesced", 0)).isEqualTo(9);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testCoalescingEditorCommitsAtMaxPending() throws Exception {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(getContext());
+        TypedPreferences typedPreferences = new TypedPreferences(preferences);
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            CoalescingEditor editor = typedPreferences.coalescingEditor(executor, 1, TimeUnit.MINUTES, 2);
+            editor.put(new Key<Integer>("coalesced1"), 1).put(new Key<Integer>("coalesced2"), 2);
+            // Runs after the commit triggered by the second put.
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+
+            assertThat(preferences.getInt("coalesced1", 0)).isEqualTo(1);
+            assertThat(preferences.getInt("coalesced2", 0)).isEqualTo(2);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testCoalescingEditorWindowIsPerBatch() throws Exception {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(getContext());
+        preferences.edit().remove("coalesced3").commit();
+        TypedPreferences typedPreferences = new TypedPreferences(preferences);
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            CoalescingEditor editor = typedPreferences.coalescingEditor(executor, 1, TimeUnit.SECONDS, 2);
+            editor.put(new Key<Integer>("coalesced1"), 1);
+            Thread.sleep(200);
+            // Fills the batch, which commits right away.
+            editor.put(new Key<Integer>("coalesced2"), 2);
+            editor.put(new Key<Integer>("coalesced3"), 3);
+            // The first batch's window ends here, the second one's hasn't yet.
+            Thread.sleep(1000);
+
+            assertThat(preferences.contains("coalesced3")).isFalse();
+            Thread.sleep(500);
+            assertThat(preferences.getInt("coalesced3", 0)).isEqualTo(3);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testCoalescingEditorAwait() throws Exception {
+        Key<String> key = new Key<>("coalesced");
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(getContext());
+        TypedPreferences typedPreferences = new TypedPreferences(preferences);
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            CoalescingEditor editor = typedPreferences.coalescingEditor(executor, 1, TimeUnit.MINUTES, 100);
+            editor.put(key, "value");
+
+            assertThat(editor.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(preferences.getString("coalesced", null)).isEqualTo("value");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testCustomStorage() {
+        Key<Integer> key = new Key<>("key");
+        MemoryPreferenceStorage storage = new MemoryPreferenceStorage();
+        TypedPreferences typedPreferences = new TypedPreferences(storage);
+        typedPreferences.edit().put(key, 1).commit();
+
+        assertThat(storage.getInt("key", 0)).isEqualTo(1);
+        assertThat(typedPreferences.get(key, 0)).isEqualTo(1);
+        assertThat(typedPreferences.getSharedPreferences()).isNull();
+    }
+
+    public void testObserve() {
+        Key<Integer> key = new Key<>("key");
+        TypedPreferences typedPreferences = new TypedPreferences(new MemoryPreferenceStorage());
+        RecordingListener<Integer> listener = new RecordingListener<>();
+        typedPreferences.observe(key, listener);
+        typedPreferences.edit().put(key, 1).commit();
+        typedPreferences.edit().remove(key).commit();
+
+        assertThat(listener.values).containsExactly(1, null);
+    }
+
+    public void testObserveIgnoresOtherKeys() {
+        Key<Integer> key = new Key<>("key");
+        Key<Integer> otherKey = new Key<>("other");
+        TypedPreferences typedPreferences = new TypedPreferences(new MemoryPreferenceStorage());
+        RecordingListener<Integer> listener = new RecordingListener<>();
+        typedPreferences.observe(key, listener);
+        typedPreferences.edit().put(otherKey, 1).commit();
+
+        assertThat(listener.values).isEmpty();
+    }
+
+    public void testObserveCoalescesPendingChanges() {
+        Key<Integer> key = new Key<>("key");
+        TypedPreferences typedPreferences = new TypedPreferences(new MemoryPreferenceStorage());
+        final List<Runnable> tasks = new ArrayList<>();
+        RecordingListener<Integer> listener = new RecordingListener<>();
+        typedPreferences.observe(key, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        }, listener);
+        for (int i = 0; i < 5; i++) {
+            typedPreferences.edit().put(key, i).apply();
+        }
+        for (Runnable task : tasks) {
+            task.run();
+        }
+
+        assertThat(tasks).hasSize(1);
+        assertThat(listener.values).containsExactly(4);
+    }
+
+    @TargetApi(11)
+    public void testStorageGetFindsEachType() {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(getContext());
+        Set<String> set = new HashSet<>(Arrays.asList("value1", "value2"));
+        preferences.edit().clear().putString("string", "value").putInt("int", 1).putBoolean("boolean", true)
+                .putLong("long", 2L).putFloat("float", 3f).putStringSet("set", set).commit();
+        SharedPreferencesStorage storage = new SharedPreferencesStorage(preferences);
+
+        assertThat(storage.get("string")).isEqualTo("value");
+        assertThat(storage.get("int")).isEqualTo(1);
+        assertThat(storage.get("boolean")).isEqualTo(true);
+        assertThat(storage.get("long")).isEqualTo(2L);
+        assertThat(storage.get("float")).isEqualTo(3f);
+        assertThat(storage.get("set")).isEqualTo(set);
+        assertThat(storage.get("missing")).isNull();
+
+        preferences.edit().putString("int", "changed").commit();
+        assertThat(storage.get("int")).isEqualTo("changed");
+    }
+
+    public void testObserveAfterRejectedExecution() {
+        Key<Integer> key = new Key<>("key");
+        TypedPreferences typedPreferences = new TypedPreferences(new MemoryPreferenceStorage());
+        final boolean[] reject = {true};
+        RecordingListener<Integer> listener = new RecordingListener<>();
+        typedPreferences.observe(key, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (reject[0]) {
+                    throw new RejectedExecutionException();
+                }
+                command.run();
+            }
+        }, listener);
+        try {
+            typedPreferences.edit().put(key, 1).commit();
+            fail();
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        reject[0] = false;
+        typedPreferences.edit().put(key, 2).commit();
+
+        assertThat(listener.values).containsExactly(2);
+    }
+
+    public void testUnobserve() {
+        Key<Integer> key = new Key<>("key");
+        TypedPreferences typedPreferences = new TypedPreferences(new MemoryPreferenceStorage());
+        RecordingListener<Integer> listener = new RecordingListener<>();
+        typedPreferences.observe(key, listener);
+        typedPreferences.unobserve(key, listener);
+        typedPreferences.edit().put(key, 1).commit();
+
+        assertThat(listener.values).isEmpty();
+    }
+
+    public void testStreamStartsWithCurrentValue() {
+        Key<Integer> key = new Key<>("key");
+        TypedPreferences typedPreferences = new TypedPreferences(new MemoryPreferenceStorage());
+        typedPreferences.edit().put(key, 1).commit();
+        QueueExecutor executor = new QueueExecutor();
+        RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>(Long.MAX_VALUE);
+        typedPreferences.stream(key, 0, executor).subscribe(subscriber);
+        executor.runAll();
+        typedPreferences.edit().put(key, 2).commit();
+        typedPreferences.edit().remove(key).commit();
+        executor.runAll();
+
+        assertThat(subscriber.values).containsExactly(1, 0);
+    }
+
+    public void testStreamWaitsForRequests() {
+        Key<Integer> key = new Key<>("key");
+        TypedPreferences typedPreferences = new TypedPreferences(new MemoryPreferenceStorage());
+        QueueExecutor executor = new QueueExecutor();
+        RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>(0);
+        typedPreferences.stream(key, 0, executor).subscribe(subscriber);
+        typedPreferences.edit().put(key, 1).commit();
+        typedPreferences.edit().put(key, 2).commit();
+        executor.runAll();
+
+        assertThat(subscriber.values).isEmpty();
+
+        subscriber.subscription.request(1);
+        executor.runAll();
+
+        assertThat(subscriber.values).containsExactly(2);
+    }
+
+    public void testStreamSkipsDuplicates() {
+        Key<Integer> key = new Key<>("key");
+        TypedPreferences typedPreferences = new TypedPreferences(new MemoryPreferenceStorage());
+        QueueExecutor executor = new QueueExecutor();
+        RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>(Long.MAX_VALUE);
+        typedPreferences.stream(key, 0, executor).subscribe(subscriber);
+        executor.runAll();
+        typedPreferences.edit().put(key, 1).commit();
+        typedPreferences.edit().put(key, 0).commit();
+        executor.runAll();
+
+        assertThat(subscriber.values).containsExactly(0);
+    }
+
+    public void testStreamCancel() {
+        Key<Integer> key = new Key<>("key");
+        TypedPreferences typedPreferences = new TypedPreferences(new MemoryPreferenceStorage());
+        QueueExecutor executor = new QueueExecutor();
+        RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>(Long.MAX_VALUE);
+        typedPreferences.stream(key, 0, executor).subscribe(subscriber).cancel();
+        typedPreferences.edit().put(key, 1).commit();
+        executor.runAll();
+
+        assertThat(subscriber.values).isEmpty();
+    }
+
+    private static class RecordingListener<T> implements TypedPreferences.Listener<T> {
+        final List<T> values = new ArrayList<>();
+
+        @Override
+        public void onChanged(Key<T> key, T value) {
+            values.add(value);
+        }
+    }
+
+    private static class RecordingSubscriber<T> implements PreferenceStream.Subscriber<T> {
+        final List<T> values = new ArrayList<>();
+        final long initialRequest;
+        PreferenceStream.Subscription subscription;
+
+        RecordingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(PreferenceStream.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(T value) {
+            values.add(value);
+        }
+    }
+
+    private static class QueueExecutor implements Executor {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
 }
@@ -0,0 +1,24 @@
+package me.tatarka.typedbundle;
+
+import android.os.Bundle;
+
+/**
+ * A {@link StorageCodec} that encodes nested {@link android.os.Bundle}s and decodes them back into
+ * bundles.
+ */
+final class BundleCodec extends StorageCodec {
+    @Override
+    protected Storage asNested(Object value) {
+        return value instanceof Bundle ? new BundleStorage((Bundle) value) : null;
+    }
+
+    @Override
+    protected MutableStorage newNested() {
+        return new BundleStorage(new Bundle());
+    }
+
+    @Override
+    protected Object fromNested(MutableStorage nested) {
+        return ((BundleStorage) nested).bundle;
+    }
+}
@@ -0,0 +1,58 @@
+package me.tatarka.typedbundle;
+
+import android.os.Bundle;
+import android.util.SparseArray;
+
+/**
+ * A {@link StorageEquivalence} that compares nested {@link android.os.Bundle}s and typed bundles
+ * by their contents, and {@link android.util.SparseArray}s element by element.
+ */
+final class BundleEquivalence extends StorageEquivalence {
+    @Override
+    protected Storage asNested(Object value) {
+        if (value instanceof Bundle) {
+            return new BundleStorage((Bundle) value);
+        } else if (value instanceof TypedBundle) {
+            return ((TypedBundle) value).storage();
+        } else if (value instanceof ImmutableTypedBundle) {
+            return ((ImmutableTypedBundle) value).storage;
+        }
+        return null;
+    }
+
+    @Override
+    protected int hashOther(Object value) {
+        if (value instanceof SparseArray) {
+            SparseArray<?> array = (SparseArray<?>) value;
+            int hash = 1;
+            for (int i = 0, size = array.size(); i < size; i++) {
+                hash = 31 * hash + array.keyAt(i);
+                hash = 31 * hash + hashValue(array.valueAt(i));
+            }
+            return hash;
+        }
+        return value.hashCode();
+    }
+
+    @Override
+    protected boolean equalsOther(Object a, Object b) {
+        if (a instanceof SparseArray) {
+            if (!(b instanceof SparseArray)) {
+                return false;
+            }
+            SparseArray<?> arrayA = (SparseArray<?>) a;
+            SparseArray<?> arrayB = (SparseArray<?>) b;
+            int size = arrayA.size();
+            if (size != arrayB.size()) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                if (arrayA.keyAt(i) != arrayB.keyAt(i) || !equalsValue(arrayA.valueAt(i), arrayB.valueAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return a.equals(b);
+    }
+}
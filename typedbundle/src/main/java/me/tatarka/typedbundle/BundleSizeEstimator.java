@@ -0,0 +1,66 @@
+package me.tatarka.typedbundle;
+
+import android.os.Build;
+import android.os.Bundle;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.Size;
+import android.util.SizeF;
+import android.util.SparseArray;
+
+/**
+ * A {@link SizeEstimator} that also handles the platform types a {@link android.os.Bundle} can
+ * hold. The size of a {@link android.os.Parcelable} can't be known without writing it, so each one
+ * is written to its own parcel and measured.
+ */
+final class BundleSizeEstimator extends SizeEstimator {
+    /**
+     * The size of a flattened binder object.
+     */
+    private static final int BINDER_SIZE = 24;
+
+    @Override
+    protected int estimateOther(Object value) {
+        if (value instanceof Bundle) {
+            return TAG_SIZE + estimate(new BundleStorage((Bundle) value));
+        } else if (value instanceof TypedBundle) {
+            // Written as a parcelable that holds a bundle, no need to actually write it. Read it
+            // through its storage, getBundle() would copy a copy-on-write bundle.
+            return TAG_SIZE + stringSize(TypedBundle.class.getName()) + estimate(((TypedBundle) value).storage());
+        } else if (value instanceof Parcelable) {
+            return TAG_SIZE + parcelableSize((Parcelable) value);
+        } else if (value instanceof Parcelable[]) {
+            int size = TAG_SIZE + 4;
+            for (Parcelable p : (Parcelable[]) value) {
+                size += parcelableSize(p);
+            }
+            return size;
+        } else if (value instanceof SparseArray) {
+            SparseArray<?> array = (SparseArray<?>) value;
+            int size = TAG_SIZE + 4;
+            for (int i = 0; i < array.size(); i++) {
+                size += 4 + estimateValue(array.valueAt(i));
+            }
+            return size;
+        } else if (value instanceof IBinder) {
+            return TAG_SIZE + BINDER_SIZE;
+        } else if (Build.VERSION.SDK_INT >= 21 && (value instanceof Size || value instanceof SizeF)) {
+            return TAG_SIZE + 8;
+        }
+        return -1;
+    }
+
+    private static int parcelableSize(Parcelable p) {
+        if (p == null) {
+            return stringSize(null);
+        }
+        Parcel parcel = Parcel.obtain();
+        try {
+            p.writeToParcel(parcel, 0);
+            return stringSize(p.getClass().getName()) + parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
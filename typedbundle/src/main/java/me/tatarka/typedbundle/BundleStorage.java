@@ -0,0 +1,202 @@
+package me.tatarka.typedbundle;
+
+import android.annotation.SuppressLint;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.IBinder;
+import android.os.Parcelable;
+import android.util.Size;
+import android.util.SizeF;
+import android.util.SparseArray;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Set;
+
+/**
+ * Adapts a {@link android.os.Bundle} to {@link MutableStorage}.
+ */
+final class BundleStorage implements MutableStorage {
+    final Bundle bundle;
+
+    BundleStorage(Bundle bundle) {
+        this.bundle = bundle;
+    }
+
+    @Override
+    public boolean contains(String name) {
+        return bundle.containsKey(name);
+    }
+
+    @Override
+    public Object get(String name) {
+        return bundle.get(name);
+    }
+
+    @Override
+    public String getString(String name, String defValue) {
+        // Bundle.getString(String, String) is only available on api 12+.
+        String value = bundle.getString(name);
+        return value != null ? value : defValue;
+    }
+
+    @Override
+    public boolean getBoolean(String name, boolean defValue) {
+        return bundle.getBoolean(name, defValue);
+    }
+
+    @Override
+    public byte getByte(String name, byte defValue) {
+        return bundle.getByte(name, defValue);
+    }
+
+    @Override
+    public char getChar(String name, char defValue) {
+        return bundle.getChar(name, defValue);
+    }
+
+    @Override
+    public short getShort(String name, short defValue) {
+        return bundle.getShort(name, defValue);
+    }
+
+    @Override
+    public int getInt(String name, int defValue) {
+        return bundle.getInt(name, defValue);
+    }
+
+    @Override
+    public long getLong(String name, long defValue) {
+        return bundle.getLong(name, defValue);
+    }
+
+    @Override
+    public float getFloat(String name, float defValue) {
+        return bundle.getFloat(name, defValue);
+    }
+
+    @Override
+    public double getDouble(String name, double defValue) {
+        return bundle.getDouble(name, defValue);
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return bundle.keySet();
+    }
+
+    @Override
+    public int size() {
+        return bundle.size();
+    }
+
+    /**
+     * Stores the value using the {@code Bundle.put<Type>()} method that matches its runtime type.
+     */
+    @Override
+    @SuppressLint("NewApi")
+    @SuppressWarnings("unchecked")
+    public void put(String name, Object value) {
+        if (value == null || value instanceof String) {
+            bundle.putString(name, (String) value);
+        } else if (value instanceof Integer) {
+            bundle.putInt(name, (Integer) value);
+        } else if (value instanceof Long) {
+            bundle.putLong(name, (Long) value);
+        } else if (value instanceof Boolean) {
+            bundle.putBoolean(name, (Boolean) value);
+        } else if (value instanceof Double) {
+            bundle.putDouble(name, (Double) value);
+        } else if (value instanceof Float) {
+            bundle.putFloat(name, (Float) value);
+        } else if (value instanceof Short) {
+            bundle.putShort(name, (Short) value);
+        } else if (value instanceof Byte) {
+            bundle.putByte(name, (Byte) value);
+        } else if (value instanceof Character) {
+            bundle.putChar(name, (Character) value);
+        } else if (value instanceof CharSequence) {
+            bundle.putCharSequence(name, (CharSequence) value);
+        } else if (value instanceof Bundle) {
+            bundle.putBundle(name, (Bundle) value);
+        } else if (Build.VERSION.SDK_INT >= 21 && value instanceof Size) {
+            bundle.putSize(name, (Size) value);
+        } else if (Build.VERSION.SDK_INT >= 21 && value instanceof SizeF) {
+            bundle.putSizeF(name, (SizeF) value);
+        } else if (value instanceof Parcelable) {
+            bundle.putParcelable(name, (Parcelable) value);
+        } else if (value instanceof Parcelable[]) {
+            bundle.putParcelableArray(name, (Parcelable[]) value);
+        } else if (value instanceof String[]) {
+            bundle.putStringArray(name, (String[]) value);
+        } else if (value instanceof CharSequence[]) {
+            bundle.putCharSequenceArray(name, (CharSequence[]) value);
+        } else if (value instanceof int[]) {
+            bundle.putIntArray(name, (int[]) value);
+        } else if (value instanceof long[]) {
+            bundle.putLongArray(name, (long[]) value);
+        } else if (value instanceof boolean[]) {
+            bundle.putBooleanArray(name, (boolean[]) value);
+        } else if (value instanceof byte[]) {
+            bundle.putByteArray(name, (byte[]) value);
+        } else if (value instanceof char[]) {
+            bundle.putCharArray(name, (char[]) value);
+        } else if (value instanceof short[]) {
+            bundle.putShortArray(name, (short[]) value);
+        } else if (value instanceof float[]) {
+            bundle.putFloatArray(name, (float[]) value);
+        } else if (value instanceof double[]) {
+            bundle.putDoubleArray(name, (double[]) value);
+        } else if (value instanceof ArrayList) {
+            putArrayList(name, (ArrayList<?>) value);
+        } else if (value instanceof SparseArray) {
+            bundle.putSparseParcelableArray(name, (SparseArray<? extends Parcelable>) value);
+        } else if (Build.VERSION.SDK_INT >= 18 && value instanceof IBinder) {
+            bundle.putBinder(name, (IBinder) value);
+        } else if (value instanceof Serializable) {
+            bundle.putSerializable(name, (Serializable) value);
+        } else {
+            throw new IllegalArgumentException("Invalid bundle type for " + name + ": " + value);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    void putArrayList(String name, ArrayList<?> value) {
+        Class<?> itemType = findArrayListType(value);
+        if (itemType == null) {
+            // This means the list has no items, it doesn't really matter what type it is since
+            // type info gets lost in the underlying bundle anyway.
+            // Therefore, we can just stick an empty ArrayList of an arbitrary type that bundle
+            // can handle and it will be able to get it out for whatever type it was.
+            bundle.putIntegerArrayList(name, new ArrayList<Integer>());
+        } else if (String.class.isAssignableFrom(itemType)) {
+            bundle.putStringArrayList(name, (ArrayList<String>) value);
+        } else if (CharSequence.class.isAssignableFrom(itemType)) {
+            bundle.putCharSequenceArrayList(name, (ArrayList<CharSequence>) value);
+        } else if (Integer.class.isAssignableFrom(itemType)) {
+            bundle.putIntegerArrayList(name, (ArrayList<Integer>) value);
+        } else if (Parcelable.class.isAssignableFrom(itemType)) {
+            bundle.putParcelableArrayList(name, (ArrayList<Parcelable>) value);
+        } else {
+            throw new IllegalArgumentException("Invalid bundle type for " + name + ": " + value);
+        }
+    }
+
+    private static Class<?> findArrayListType(ArrayList<?> list) {
+        if (list.isEmpty()) {
+            return null; // Can't figure out type.
+        } else {
+            return list.get(0).getClass();
+        }
+    }
+
+    @Override
+    public void remove(String name) {
+        bundle.remove(name);
+    }
+
+    @Override
+    public void clear() {
+        bundle.clear();
+    }
+}
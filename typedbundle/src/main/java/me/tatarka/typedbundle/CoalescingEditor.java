@@ -0,0 +1,274 @@
+package me.tatarka.typedbundle;
+
+import android.annotation.TargetApi;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * An editor for {@link TypedPreferences} that collects changes from any number of callers and
+ * commits them together on a background executor. The first change after a commit starts a
+ * window, when it ends or once enough changes are pending all of them are committed at once. Later
+ * changes to the same key replace earlier ones, so only the last value is written.
+ * <p/>
+ * Unlike {@link TypedPreferences.Editor}, changes don't need to be applied, but they also aren't
+ * visible to reads until they are committed. Use {@link #flush()} to commit right away and wait on
+ * the returned future, or {@link #await(long, TimeUnit)}, when a change must be on disk.
+ * <p/>
+ * This class is thread-safe. Create it with
+ * {@link TypedPreferences#coalescingEditor(ScheduledExecutorService, long, TimeUnit, int)}.
+ */
+public final class CoalescingEditor {
+    private static final Object REMOVED = new Object();
+
+    private final TypedPreferences prefs;
+    private final ScheduledExecutorService executor;
+    private final long windowMillis;
+    private final int maxPending;
+    /**
+     * Held while taking and committing a batch so batches are committed in order.
+     */
+    private final Object commitLock = new Object();
+
+    private Batch pending = new Batch();
+    /**
+     * The last batch taken for committing, so a flush with nothing pending can wait on it.
+     */
+    private Batch lastTaken = Batch.completed();
+
+    CoalescingEditor(TypedPreferences prefs, ScheduledExecutorService executor, long windowMillis, int maxPending) {
+        if (executor == null) {
+            throw new NullPointerException("executor cannot be null");
+        }
+        if (maxPending < 1) {
+            throw new IllegalArgumentException("maxPending must be at least 1");
+        }
+        this.prefs = prefs;
+        this.executor = executor;
+        this.windowMillis = windowMillis;
+        this.maxPending = maxPending;
+    }
+
+    public CoalescingEditor put(Key<Boolean> key, boolean value) {
+        return change(key.name, value);
+    }
+
+    public CoalescingEditor put(Key<Float> key, float value) {
+        return change(key.name, value);
+    }
+
+    public CoalescingEditor put(Key<Integer> key, int value) {
+        return change(key.name, value);
+    }
+
+    public CoalescingEditor put(Key<Long> key, long value) {
+        return change(key.name, value);
+    }
+
+    public CoalescingEditor put(Key<String> key, String value) {
+        return change(key.name, value != null ? value : REMOVED);
+    }
+
+    @TargetApi(11)
+    public CoalescingEditor put(Key<Set<String>> key, Set<String> value) {
+        return change(key.name, value != null ? value : REMOVED);
+    }
+
+    public CoalescingEditor remove(Key<?> key) {
+        return change(key.name, REMOVED);
+    }
+
+    /**
+     * Removes all values, including ones put earlier in the same batch. Changes made after this
+     * are kept.
+     *
+     * @return the editor for chaining
+     */
+    public CoalescingEditor clear() {
+        synchronized (this) {
+            pending.changes.clear();
+            pending.clear = true;
+            schedule();
+        }
+        return this;
+    }
+
+    private CoalescingEditor change(String name, Object value) {
+        synchronized (this) {
+            pending.changes.put(name, value);
+            schedule();
+        }
+        return this;
+    }
+
+    /**
+     * Starts the pending batch's window, or queues its commit once it's full. Each is only done
+     * once per batch. Must be called holding the lock.
+     */
+    private void schedule() {
+        Batch batch = pending;
+        if (batch.changes.size() >= maxPending) {
+            if (!batch.commitQueued) {
+                batch.commitQueued = true;
+                executor.execute(new CommitTask(batch));
+            }
+        } else if (!batch.windowStarted) {
+            batch.windowStarted = true;
+            executor.schedule(new CommitTask(batch), windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Commits all pending changes now instead of waiting for the window to end.
+     *
+     * @return a future that completes with the result of the commit once every change made before
+     * this call is on disk
+     */
+    public Future<Boolean> flush() {
+        Batch batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return lastTaken;
+            }
+            batch = pending;
+            if (batch.commitQueued) {
+                return batch;
+            }
+            batch.commitQueued = true;
+        }
+        executor.execute(new CommitTask(batch));
+        return batch;
+    }
+
+    /**
+     * Commits all pending changes and waits until every change made before this call is on disk.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of timeout
+     * @return true if the changes were committed successfully, false if the commit failed or the
+     * wait timed out
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            return flush().get(timeout, unit);
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Commits the given batch if it's still the pending one. A batch that was already committed,
+     * because it filled up or was flushed before its window ended, is skipped, so its window
+     * doesn't cut short the window of the batch after it.
+     */
+    private void commit(Batch batch) {
+        synchronized (commitLock) {
+            synchronized (this) {
+                if (batch != pending || batch.isEmpty()) {
+                    return;
+                }
+                pending = new Batch();
+                lastTaken = batch;
+            }
+            boolean result = false;
+            try {
+                TypedPreferences.Editor editor = prefs.edit();
+                if (batch.clear) {
+                    editor.clear();
+                }
+                for (Map.Entry<String, Object> change : batch.changes.entrySet()) {
+                    if (change.getValue() == REMOVED) {
+                        editor.removeValue(change.getKey());
+                    } else {
+                        editor.putValue(change.getKey(), change.getValue());
+                    }
+                }
+                result = editor.commit();
+            } finally {
+                batch.complete(result);
+            }
+        }
+    }
+
+    private final class CommitTask implements Runnable {
+        private final Batch batch;
+
+        CommitTask(Batch batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void run() {
+            commit(batch);
+        }
+    }
+
+    /**
+     * A set of changes committed together, completes once they are.
+     */
+    private static final class Batch implements Future<Boolean> {
+        final Map<String, Object> changes = new HashMap<>();
+        boolean clear;
+        /**
+         * Guarded by the editor's lock.
+         */
+        boolean windowStarted;
+        boolean commitQueued;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile boolean result;
+
+        static Batch completed() {
+            Batch batch = new Batch();
+            batch.complete(true);
+            return batch;
+        }
+
+        boolean isEmpty() {
+            return changes.isEmpty() && !clear;
+        }
+
+        void complete(boolean result) {
+            this.result = result;
+            done.countDown();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        @Override
+        public Boolean get() throws InterruptedException {
+            done.await();
+            return result;
+        }
+
+        @Override
+        public Boolean get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+            if (!done.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return result;
+        }
+    }
+}
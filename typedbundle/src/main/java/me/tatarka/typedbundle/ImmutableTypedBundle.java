@@ -0,0 +1,463 @@
+package me.tatarka.typedbundle;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.SparseArray;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An immutable {@link TypedBundle}. It can be shared between threads and components without
+ * making defensive copies, and since it has a structural {@link #equals(Object)} and a cached
+ * {@link #hashCode()} it can be used as a key to dedupe or memoize work on identical bundles.
+ * <p/>
+ * Equality compares arrays element by element and nested bundles by their contents. Any other
+ * value is compared with its own {@code equals()}, so a {@code Parcelable} that doesn't override it
+ * is only equal to itself.
+ * <p/>
+ * Building copies nested bundles, arrays, lists and {@code SparseArray}s all the way down, so
+ * changing them afterwards in the builder or the bundle they came from doesn't affect the built
+ * bundle. Other values, like a {@code Parcelable}, are shared and must not be modified. Values
+ * returned by {@link #get(Key)} are not copied either, so don't modify them.
+ */
+public final class ImmutableTypedBundle implements Parcelable {
+    public static final ImmutableTypedBundle EMPTY = new ImmutableTypedBundle(new Bundle());
+
+    static final BundleEquivalence EQUIVALENCE = new BundleEquivalence();
+
+    private final Bundle bundle;
+    final BundleStorage storage;
+    /**
+     * Lazily computed, 0 if it hasn't been yet. Racy but safe, like {@link String#hashCode()}.
+     */
+    private int hash;
+
+    /**
+     * The bundle must not be shared, see {@link #deepCopy(Bundle)}.
+     */
+    private ImmutableTypedBundle(Bundle bundle) {
+        this.bundle = bundle;
+        this.storage = new BundleStorage(bundle);
+    }
+
+    /**
+     * Copies the bundle and every container in it. This also unparcels all nested bundles, since
+     * reading a parceled bundle modifies it which isn't safe across threads.
+     */
+    private static Bundle deepCopy(Bundle bundle) {
+        Bundle copy = new Bundle(bundle);
+        BundleStorage storage = new BundleStorage(copy);
+        for (String name : new ArrayList<>(copy.keySet())) {
+            Object value = storage.get(name);
+            Object valueCopy = deepCopyValue(value);
+            if (valueCopy != value) {
+                storage.put(name, valueCopy);
+            }
+        }
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object deepCopyValue(Object value) {
+        if (value instanceof Bundle) {
+            return deepCopy((Bundle) value);
+        }
+        if (value instanceof TypedBundle) {
+            return new TypedBundle(deepCopy(((TypedBundle) value).storage().bundle));
+        }
+        if (value != null && value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+            System.arraycopy(value, 0, copy, 0, length);
+            if (copy instanceof Object[]) {
+                Object[] items = (Object[]) copy;
+                for (int i = 0; i < length; i++) {
+                    items[i] = deepCopyValue(items[i]);
+                }
+            }
+            return copy;
+        }
+        if (value instanceof ArrayList) {
+            ArrayList<?> list = (ArrayList<?>) value;
+            ArrayList<Object> copy = new ArrayList<>(list.size());
+            for (Object item : list) {
+                copy.add(deepCopyValue(item));
+            }
+            return copy;
+        }
+        if (value instanceof SparseArray) {
+            // SparseArray.clone() is api 14+.
+            SparseArray<Object> array = (SparseArray<Object>) value;
+            int size = array.size();
+            SparseArray<Object> copy = new SparseArray<>(size);
+            for (int i = 0; i < size; i++) {
+                copy.append(array.keyAt(i), deepCopyValue(array.valueAt(i)));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value associate with the given key, or null if no mapping of the desired type
+     * exists for the given key or a null value is explicitly associated with the key.
+     *
+     * @param key the key
+     * @param <T> the value's type
+     * @return the value for the key
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    public <T> T get(@NonNull Key<T> key) {
+        return (T) storage.get(key.name);
+    }
+
+    /**
+     * Returns the value associated with the given key, or defaultValue if no mapping of the desired
+     * type exists for the given key.
+     *
+     * @param key          the key
+     * @param defaultValue the default value
+     * @param <T>          the value's type
+     * @return the value for the key or defaultValue if it doesn't exist
+     */
+    @NonNull
+    public <T> T get(@NonNull Key<T> key, @NonNull T defaultValue) {
+        T value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Returns the value associated with the given key, or defaultValue if no mapping of the desired
+     * type exists for the given key, without boxing.
+     *
+     * @param key          the key
+     * @param defaultValue the default value
+     * @return the value for the key or defaultValue if it doesn't exist
+     */
+    public boolean getBoolean(@NonNull Key<Boolean> key, boolean defaultValue) {
+        return storage.getBoolean(key.name, defaultValue);
+    }
+
+    /**
+     * Returns the value associated with the given key, or defaultValue if no mapping of the desired
+     * type exists for the given key, without boxing.
+     *
+     * @param key          the key
+     * @param defaultValue the default value
+     * @return the value for the key or defaultValue if it doesn't exist
+     */
+    public byte getByte(@NonNull Key<Byte> key, byte defaultValue) {
+        return storage.getByte(key.name, defaultValue);
+    }
+
+    /**
+     * Returns the value associated with the given key, or defaultValue if no mapping of the desired
+     * type exists for the given key, without boxing.
+     *
+     * @param key          the key
+     * @param defaultValue the default value
+     * @return the value for the key or defaultValue if it doesn't exist
+     */
+    public char getChar(@NonNull Key<Character> key, char defaultValue) {
+        return storage.getChar(key.name, defaultValue);
+    }
+
+    /**
+     * Returns the value associated with the given key, or defaultValue if no mapping of the desired
+     * type exists for the given key, without boxing.
+     *
+     * @param key          the key
+     * @param defaultValue the default value
+     * @return the value for the key or defaultValue if it doesn't exist
+     */
+    public short getShort(@NonNull Key<Short> key, short defaultValue) {
+        return storage.getShort(key.name, defaultValue);
+    }
+
+    /**
+     * Returns the value associated with the given key, or defaultValue if no mapping of the desired
+     * type exists for the given key, without boxing.
+     *
+     * @param key          the key
+     * @param defaultValue the default value
+     * @return the value for the key or defaultValue if it doesn't exist
+     */
+    public int getInt(@NonNull Key<Integer> key, int defaultValue) {
+        return storage.getInt(key.name, defaultValue);
+    }
+
+    /**
+     * Returns the value associated with the given key, or defaultValue if no mapping of the desired
+     * type exists for the given key, without boxing.
+     *
+     * @param key          the key
+     * @param defaultValue the default value
+     * @return the value for the key or defaultValue if it doesn't exist
+     */
+    public long getLong(@NonNull Key<Long> key, long defaultValue) {
+        return storage.getLong(key.name, defaultValue);
+    }
+
+    /**
+     * Returns the value associated with the given key, or defaultValue if no mapping of the desired
+     * type exists for the given key, without boxing.
+     *
+     * @param key          the key
+     * @param defaultValue the default value
+     * @return the value for the key or defaultValue if it doesn't exist
+     */
+    public float getFloat(@NonNull Key<Float> key, float defaultValue) {
+        return storage.getFloat(key.name, defaultValue);
+    }
+
+    /**
+     * Returns the value associated with the given key, or defaultValue if no mapping of the desired
+     * type exists for the given key, without boxing.
+     *
+     * @param key          the key
+     * @param defaultValue the default value
+     * @return the value for the key or defaultValue if it doesn't exist
+     */
+    public double getDouble(@NonNull Key<Double> key, double defaultValue) {
+        return storage.getDouble(key.name, defaultValue);
+    }
+
+    /**
+     * Returns true if the given key is contained in the mapping of this Bundle.
+     *
+     * @param key the key to check
+     * @return true if the bundle contains the key, false otherwise
+     */
+    public boolean containsKey(@NonNull Key<?> key) {
+        return storage.contains(key.name);
+    }
+
+    /**
+     * Returns true if the mapping of this Bundle is empty, false otherwise
+     *
+     * @return true if the bundle is empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return storage.size() == 0;
+    }
+
+    /**
+     * Returns the number of mapping contained in this {@code ImmutableTypedBundle}.
+     *
+     * @return the size
+     */
+    public int size() {
+        return storage.size();
+    }
+
+    /**
+     * Returns the Set containing the keys used in this {@code ImmutableTypedBundle}. A key is the
+     * canonical instance returned by {@link Key#of(String)} if its name was interned.
+     *
+     * @return the keys
+     * @see TypedBundle#keySet()
+     */
+    public Set<Key<Object>> keySet() {
+        Set<String> names = storage.keySet();
+        Set<Key<Object>> keys = new HashSet<>(names.size());
+        for (String name : names) {
+            keys.add(Key.forName(name));
+        }
+        return keys;
+    }
+
+    /**
+     * Calls the visitor with each key in this {@code ImmutableTypedBundle} without allocating a
+     * set, stopping early if it returns false.
+     *
+     * @param visitor the visitor
+     */
+    public void forEachKey(@NonNull KeyVisitor visitor) {
+        for (String name : storage.keySet()) {
+            if (!visitor.visit(Key.forName(name))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns a mutable {@link TypedBundle} with the same mappings. It shares this bundle's
+     * mappings until it's first modified, so this is cheap. As with {@link #get(Key)}, values read
+     * from it must not be modified.
+     *
+     * @return the typed bundle
+     */
+    public TypedBundle toTypedBundle() {
+        return TypedBundle.sharing(bundle);
+    }
+
+    /**
+     * Returns a {@link Builder} starting with the mappings of this bundle, for making a modified
+     * copy.
+     *
+     * @return the builder
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ImmutableTypedBundle)) {
+            return false;
+        }
+        ImmutableTypedBundle other = (ImmutableTypedBundle) o;
+        return hashCode() == other.hashCode() && EQUIVALENCE.equals(storage, other.storage);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = EQUIVALENCE.hash(storage);
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "ImmutableTyped" + bundle;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeBundle(bundle);
+    }
+
+    public static final Creator<ImmutableTypedBundle> CREATOR = new Creator<ImmutableTypedBundle>() {
+        @Override
+        public ImmutableTypedBundle createFromParcel(Parcel source) {
+            return new ImmutableTypedBundle(deepCopy(source.readBundle(ImmutableTypedBundle.class.getClassLoader())));
+        }
+
+        @Override
+        public ImmutableTypedBundle[] newArray(int size) {
+            return new ImmutableTypedBundle[size];
+        }
+    };
+
+    /**
+     * Builds an {@link ImmutableTypedBundle}. A builder can be reused, building doesn't change
+     * what it holds.
+     */
+    public static final class Builder {
+        private Bundle bundle;
+        private BundleStorage storage;
+
+        /**
+         * Constructs a new, empty builder.
+         */
+        public Builder() {
+            setBundle(new Bundle());
+        }
+
+        /**
+         * Constructs a builder starting with the mappings of the given {@code TypedBundle}.
+         *
+         * @param bundle the bundle to copy
+         */
+        public Builder(@NonNull TypedBundle bundle) {
+            setBundle(new Bundle());
+            putAll(bundle);
+        }
+
+        /**
+         * Constructs a builder starting with the mappings of the given
+         * {@code ImmutableTypedBundle}.
+         *
+         * @param bundle the bundle to copy
+         */
+        public Builder(@NonNull ImmutableTypedBundle bundle) {
+            setBundle(new Bundle(bundle.bundle));
+        }
+
+        private void setBundle(Bundle bundle) {
+            this.bundle = bundle;
+            this.storage = new BundleStorage(bundle);
+        }
+
+        /**
+         * Inserts a value, replacing any existing value for the given key.
+         *
+         * @param key   the key
+         * @param value the value
+         * @param <T>   the value's type
+         * @return the builder for chaining
+         * @throws IllegalArgumentException if the value can't be stored in a bundle
+         */
+        public <T> Builder put(@NonNull Key<T> key, T value) {
+            storage.put(key.name, value);
+            return this;
+        }
+
+        /**
+         * Inserts all mappings from the given {@code TypedBundle}. Spilled values are read back.
+         *
+         * @param bundle the bundle to copy
+         * @return the builder for chaining
+         * @throws IllegalStateException if a value was spilled and can't be read back
+         */
+        public Builder putAll(@NonNull TypedBundle bundle) {
+            BundleStorage source = bundle.storage();
+            this.bundle.putAll(source.bundle);
+            for (String name : source.keySet()) {
+                Object value = source.get(name);
+                if (value instanceof SpillHandle) {
+                    storage.put(name, ((SpillHandle) value).resolve(TypedBundle.class.getClassLoader()));
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Removes any entry with the given key.
+         *
+         * @param key the key to remove
+         * @return the builder for chaining
+         */
+        public Builder remove(@NonNull Key<?> key) {
+            storage.remove(key.name);
+            return this;
+        }
+
+        /**
+         * Removes all entries.
+         *
+         * @return the builder for chaining
+         */
+        public Builder clear() {
+            storage.clear();
+            return this;
+        }
+
+        /**
+         * Returns a new {@code ImmutableTypedBundle} with the mappings in this builder.
+         *
+         * @return the bundle
+         */
+        public ImmutableTypedBundle build() {
+            return new ImmutableTypedBundle(deepCopy(bundle));
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package me.tatarka.typedbundle;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dispatches changes in a {@link PreferenceStorage} to the {@link TypedPreferences.Listener}s
+ * observing each key. A single listener is registered on the storage while there are any
+ * observers, and a change only runs the observers of the key that changed.
+ */
+class KeyObservers implements PreferenceStorage.Listener {
+    private final PreferenceStorage storage;
+    private final Map<String, List<Observer<?>>> observers = new ConcurrentHashMap<>();
+
+    KeyObservers(PreferenceStorage storage) {
+        this.storage = storage;
+    }
+
+    synchronized <T> void add(Key<T> key, Executor executor, TypedPreferences.Listener<T> listener) {
+        if (key == null) {
+            throw new NullPointerException("key cannot be null");
+        }
+        if (executor == null) {
+            throw new NullPointerException("executor cannot be null");
+        }
+        if (listener == null) {
+            throw new NullPointerException("listener cannot be null");
+        }
+        if (observers.isEmpty()) {
+            storage.registerListener(this);
+        }
+        List<Observer<?>> list = observers.get(key.name);
+        if (list == null) {
+            list = new CopyOnWriteArrayList<>();
+            observers.put(key.name, list);
+        }
+        list.add(new Observer<>(key, executor, listener));
+    }
+
+    synchronized <T> void remove(Key<T> key, TypedPreferences.Listener<T> listener) {
+        List<Observer<?>> list = observers.get(key.name);
+        if (list == null) {
+            return;
+        }
+        for (Observer<?> observer : list) {
+            if (observer.listener == listener) {
+                observer.active = false;
+                list.remove(observer);
+                break;
+            }
+        }
+        if (list.isEmpty()) {
+            observers.remove(key.name);
+            if (observers.isEmpty()) {
+                storage.unregisterListener(this);
+            }
+        }
+    }
+
+    @Override
+    public void onChanged(PreferenceStorage storage, String name) {
+        if (name == null) {
+            // Some storages report a clear without naming the keys.
+            for (List<Observer<?>> list : observers.values()) {
+                changed(list);
+            }
+            return;
+        }
+        List<Observer<?>> list = observers.get(name);
+        if (list != null) {
+            changed(list);
+        }
+    }
+
+    private static void changed(List<Observer<?>> list) {
+        for (Observer<?> observer : list) {
+            observer.changed();
+        }
+    }
+
+    /**
+     * A listener observing one key. Changes that come in before it runs, or while it's running,
+     * are coalesced into a single call with the latest value.
+     */
+    private final class Observer<T> implements Runnable {
+        private static final int IDLE = 0;
+        private static final int SCHEDULED = 1;
+        private static final int RUNNING = 2;
+        private static final int RUNNING_DIRTY = 3;
+
+        final Key<T> key;
+        final Executor executor;
+        final TypedPreferences.Listener<T> listener;
+        volatile boolean active = true;
+        private final AtomicInteger state = new AtomicInteger(IDLE);
+
+        Observer(Key<T> key, Executor executor, TypedPreferences.Listener<T> listener) {
+            this.key = key;
+            this.executor = executor;
+            this.listener = listener;
+        }
+
+        void changed() {
+            while (true) {
+                int current = state.get();
+                if (current == IDLE) {
+                    if (state.compareAndSet(IDLE, SCHEDULED)) {
+                        try {
+                            executor.execute(this);
+                        } catch (RejectedExecutionException e) {
+                            // Let a later change schedule it again.
+                            state.set(IDLE);
+                            throw e;
+                        }
+                        return;
+                    }
+                } else if (current == RUNNING) {
+                    if (state.compareAndSet(RUNNING, RUNNING_DIRTY)) {
+                        return;
+                    }
+                } else {
+                    // Already going to see this change.
+                    return;
+                }
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            state.set(RUNNING);
+            try {
+                while (true) {
+                    if (active) {
+                        listener.onChanged(key, (T) storage.get(key.name));
+                    }
+                    if (state.compareAndSet(RUNNING, IDLE)) {
+                        return;
+                    }
+                    // Changed while running, go again with the latest value.
+                    state.set(RUNNING);
+                }
+            } catch (RuntimeException | Error e) {
+                state.set(IDLE);
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package me.tatarka.typedbundle;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A stream of the values of a key in {@link TypedPreferences}. Each subscriber first gets the
+ * current value, then every later change, so it can react to changes instead of polling.
+ * <p/>
+ * Values are delivered on the executor given to
+ * {@link TypedPreferences#stream(Key, Object, Executor)}, one at a time, and only as many as the
+ * subscriber has {@link Subscription#request(long) requested}. While a subscriber isn't ready for
+ * more, only the latest value is kept, older ones are dropped. A value equal to the one delivered
+ * right before it is skipped.
+ *
+ * @param <T> the value type
+ */
+public final class PreferenceStream<T> {
+    private final TypedPreferences prefs;
+    private final Key<T> key;
+    private final T defValue;
+    private final Executor executor;
+
+    PreferenceStream(TypedPreferences prefs, Key<T> key, T defValue, Executor executor) {
+        if (key == null) {
+            throw new NullPointerException("key cannot be null");
+        }
+        if (executor == null) {
+            throw new NullPointerException("executor cannot be null");
+        }
+        this.prefs = prefs;
+        this.key = key;
+        this.defValue = defValue;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the key this streams the values of.
+     *
+     * @return the key
+     */
+    public Key<T> getKey() {
+        return key;
+    }
+
+    /**
+     * Subscribes to the values. {@link Subscriber#onSubscribe(Subscription)} is called before this
+     * returns, no values are delivered until they are requested.
+     *
+     * @param subscriber the subscriber
+     * @return the subscription, which is also passed to the subscriber
+     */
+    public Subscription subscribe(Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber cannot be null");
+        }
+        StreamSubscription<T> subscription = new StreamSubscription<>(this, subscriber);
+        prefs.observe(key, subscription);
+        subscription.start();
+        subscriber.onSubscribe(subscription);
+        return subscription;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T current() {
+        Object value = prefs.getStorage().get(key.name);
+        return value != null ? (T) value : defValue;
+    }
+
+    /**
+     * Receives the values of a {@link PreferenceStream}.
+     *
+     * @param <T> the value type
+     */
+    public interface Subscriber<T> {
+        /**
+         * Called once when subscribing. Call {@link Subscription#request(long)} to start
+         * receiving values.
+         *
+         * @param subscription the subscription
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Called with the current value and then each change, on the stream's executor.
+         *
+         * @param value the value, or the stream's default value if there isn't one
+         */
+        void onNext(T value);
+    }
+
+    /**
+     * Controls the flow of values to a {@link Subscriber}.
+     */
+    public interface Subscription {
+        /**
+         * Allows n more values to be delivered. Requests add up, use {@link Long#MAX_VALUE} to
+         * receive every value without requesting more.
+         *
+         * @param n the number of values, must be positive
+         * @throws IllegalArgumentException if n isn't positive
+         */
+        void request(long n);
+
+        /**
+         * Stops delivering values. A value already being delivered may still arrive.
+         */
+        void cancel();
+    }
+
+    private static final class StreamSubscription<T> implements Subscription, TypedPreferences.Listener<T>, Runnable {
+        private final PreferenceStream<T> stream;
+        private final Subscriber<? super T> subscriber;
+
+        // All guarded by this.
+        private long requested;
+        private T latest;
+        private boolean pending;
+        private T lastDelivered;
+        private boolean delivered;
+        private boolean scheduled;
+        private boolean cancelled;
+
+        StreamSubscription(PreferenceStream<T> stream, Subscriber<? super T> subscriber) {
+            this.stream = stream;
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * Queues the current value, unless a change already came in, which is newer.
+         */
+        void start() {
+            T current = stream.current();
+            synchronized (this) {
+                if (!pending) {
+                    latest = current;
+                    pending = true;
+                }
+            }
+        }
+
+        @Override
+        public void onChanged(Key<T> key, T value) {
+            synchronized (this) {
+                latest = value != null ? value : stream.defValue;
+                pending = true;
+            }
+            schedule();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                throw new IllegalArgumentException("n must be positive");
+            }
+            synchronized (this) {
+                requested += n;
+                if (requested < 0) {
+                    // Overflowed, treat it as unbounded.
+                    requested = Long.MAX_VALUE;
+                }
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+            }
+            stream.prefs.unobserve(stream.key, this);
+        }
+
+        private void schedule() {
+            synchronized (this) {
+                if (scheduled || cancelled || !pending || requested == 0) {
+                    return;
+                }
+                scheduled = true;
+            }
+            stream.executor.execute(this);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                T value;
+                synchronized (this) {
+                    if (cancelled || !pending || requested == 0) {
+                        scheduled = false;
+                        return;
+                    }
+                    value = latest;
+                    pending = false;
+                    if (delivered && equal(value, lastDelivered)) {
+                        continue;
+                    }
+                    delivered = true;
+                    lastDelivered = value;
+                    if (requested != Long.MAX_VALUE) {
+                        requested--;
+                    }
+                }
+                try {
+                    subscriber.onNext(value);
+                } catch (RuntimeException | Error e) {
+                    synchronized (this) {
+                        scheduled = false;
+                    }
+                    throw e;
+                }
+            }
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
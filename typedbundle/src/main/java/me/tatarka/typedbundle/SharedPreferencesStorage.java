@@ -0,0 +1,255 @@
+package me.tatarka.typedbundle;
+
+import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Adapts {@link android.content.SharedPreferences} to {@link PreferenceStorage}.
+ */
+final class SharedPreferencesStorage implements PreferenceStorage {
+    // The types get() tries, in order.
+    private static final int TYPE_STRING = 0;
+    private static final int TYPE_INT = 1;
+    private static final int TYPE_BOOLEAN = 2;
+    private static final int TYPE_LONG = 3;
+    private static final int TYPE_FLOAT = 4;
+    private static final int TYPE_STRING_SET = 5;
+
+    final SharedPreferences prefs;
+    /**
+     * The type each name was last found to have by {@link #get(String)}, tried first next time.
+     */
+    private final Map<String, Integer> types = new ConcurrentHashMap<>();
+    /**
+     * SharedPreferences only holds its listeners weakly, this keeps them alive until unregistered.
+     */
+    private final Map<Listener, SharedPreferences.OnSharedPreferenceChangeListener> listeners = new HashMap<>();
+
+    SharedPreferencesStorage(SharedPreferences prefs) {
+        this.prefs = prefs;
+    }
+
+    @Override
+    public boolean contains(String name) {
+        return prefs.contains(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * SharedPreferences has no untyped single value lookup, and {@link SharedPreferences#getAll()}
+     * copies every value, so this tries each typed getter until one doesn't throw a
+     * {@link ClassCastException}. The type that worked is remembered, so usually only the first
+     * lookup of a name has to try more than one.
+     */
+    @Override
+    public Object get(String name) {
+        if (!prefs.contains(name)) {
+            return null;
+        }
+        Integer known = types.get(name);
+        if (known != null) {
+            try {
+                return get(name, known);
+            } catch (ClassCastException e) {
+                // The value was replaced with one of another type.
+            }
+        }
+        int typeCount = Build.VERSION.SDK_INT >= 11 ? TYPE_STRING_SET + 1 : TYPE_STRING_SET;
+        for (int type = 0; type < typeCount; type++) {
+            try {
+                Object value = get(name, type);
+                types.put(name, type);
+                return value;
+            } catch (ClassCastException e) {
+                // Not this type, try the next.
+            }
+        }
+        return null;
+    }
+
+    @TargetApi(11)
+    private Object get(String name, int type) {
+        Object value;
+        switch (type) {
+            case TYPE_STRING:
+                value = prefs.getString(name, null);
+                break;
+            case TYPE_INT:
+                value = prefs.getInt(name, 0);
+                break;
+            case TYPE_BOOLEAN:
+                value = prefs.getBoolean(name, false);
+                break;
+            case TYPE_LONG:
+                value = prefs.getLong(name, 0);
+                break;
+            case TYPE_FLOAT:
+                value = prefs.getFloat(name, 0);
+                break;
+            default:
+                value = prefs.getStringSet(name, null);
+                break;
+        }
+        // The default is returned if it was removed since checking.
+        return prefs.contains(name) ? value : null;
+    }
+
+    @Override
+    public String getString(String name, String defValue) {
+        return prefs.getString(name, defValue);
+    }
+
+    @Override
+    @TargetApi(11)
+    public Set<String> getStringSet(String name, Set<String> defValue) {
+        return prefs.getStringSet(name, defValue);
+    }
+
+    @Override
+    public boolean getBoolean(String name, boolean defValue) {
+        return prefs.getBoolean(name, defValue);
+    }
+
+    @Override
+    public int getInt(String name, int defValue) {
+        return prefs.getInt(name, defValue);
+    }
+
+    @Override
+    public long getLong(String name, long defValue) {
+        return prefs.getLong(name, defValue);
+    }
+
+    @Override
+    public float getFloat(String name, float defValue) {
+        return prefs.getFloat(name, defValue);
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        return prefs.getAll();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return prefs.getAll().keySet();
+    }
+
+    @Override
+    public int size() {
+        return prefs.getAll().size();
+    }
+
+    @Override
+    @SuppressLint("CommitPrefEdits")
+    public Editor edit() {
+        return new SharedPreferencesEditor(prefs.edit());
+    }
+
+    @Override
+    public void registerListener(final Listener listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener cannot be null");
+        }
+        SharedPreferences.OnSharedPreferenceChangeListener prefsListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+            @Override
+            public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                listener.onChanged(SharedPreferencesStorage.this, key);
+            }
+        };
+        synchronized (listeners) {
+            if (listeners.containsKey(listener)) {
+                return;
+            }
+            listeners.put(listener, prefsListener);
+        }
+        prefs.registerOnSharedPreferenceChangeListener(prefsListener);
+    }
+
+    @Override
+    public void unregisterListener(Listener listener) {
+        SharedPreferences.OnSharedPreferenceChangeListener prefsListener;
+        synchronized (listeners) {
+            prefsListener = listeners.remove(listener);
+        }
+        if (prefsListener != null) {
+            prefs.unregisterOnSharedPreferenceChangeListener(prefsListener);
+        }
+    }
+
+    private static final class SharedPreferencesEditor implements Editor {
+        private final SharedPreferences.Editor editor;
+
+        SharedPreferencesEditor(SharedPreferences.Editor editor) {
+            this.editor = editor;
+        }
+
+        @Override
+        public Editor putBoolean(String name, boolean value) {
+            editor.putBoolean(name, value);
+            return this;
+        }
+
+        @Override
+        public Editor putFloat(String name, float value) {
+            editor.putFloat(name, value);
+            return this;
+        }
+
+        @Override
+        public Editor putInt(String name, int value) {
+            editor.putInt(name, value);
+            return this;
+        }
+
+        @Override
+        public Editor putLong(String name, long value) {
+            editor.putLong(name, value);
+            return this;
+        }
+
+        @Override
+        public Editor putString(String name, String value) {
+            editor.putString(name, value);
+            return this;
+        }
+
+        @Override
+        @TargetApi(11)
+        public Editor putStringSet(String name, Set<String> value) {
+            editor.putStringSet(name, value);
+            return this;
+        }
+
+        @Override
+        public Editor remove(String name) {
+            editor.remove(name);
+            return this;
+        }
+
+        @Override
+        public Editor clear() {
+            editor.clear();
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            return editor.commit();
+        }
+
+        @Override
+        @TargetApi(9)
+        public void apply() {
+            editor.apply();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package me.tatarka.typedbundle;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Stands in for a value that {@link TypedBundle#spill()} moved into a {@link SpillStore}. This is
+ * what you will see if you read a spilled value from the underlying {@link android.os.Bundle}
+ * directly, reading it through {@link TypedBundle#get(Key)} resolves it.
+ * <p/>
+ * The stored data is deleted once the value is replaced or removed from every
+ * {@link TypedBundle} holding the handle, unless the handle was written to a parcel or handed out
+ * through {@link TypedBundle#getBundle()}. It may still be read back from there, so it's left for
+ * the store to clean up, see {@link FileSpillStore#deleteOlderThan(long)}.
+ */
+public final class SpillHandle implements Parcelable {
+    private final String storeId;
+    private final String token;
+    private final boolean raw;
+    /**
+     * The value once it was read back, so repeated reads don't go to the store.
+     */
+    private Object resolved;
+    /**
+     * The number of {@link TypedBundle}s holding this handle.
+     */
+    private int holders = 1;
+    /**
+     * Set once the handle may be held somewhere that isn't counted, so its data is never deleted.
+     */
+    private boolean escaped;
+
+    private SpillHandle(String storeId, String token, boolean raw) {
+        this.storeId = storeId;
+        this.token = token;
+        this.raw = raw;
+    }
+
+    static boolean canSpill(Object value) {
+        return value instanceof byte[] || value instanceof Parcelable[] || value instanceof ArrayList;
+    }
+
+    /**
+     * Writes the value to the store, returning a handle to it or null if the value can't be
+     * spilled.
+     */
+    static SpillHandle spill(SpillStore store, Object value) {
+        byte[] data;
+        boolean raw = value instanceof byte[];
+        if (raw) {
+            data = (byte[]) value;
+        } else {
+            Parcel parcel = Parcel.obtain();
+            try {
+                parcel.writeValue(value);
+                data = parcel.marshall();
+            } catch (RuntimeException e) {
+                // Parcels holding binders or file descriptors can't be marshalled.
+                return null;
+            } finally {
+                parcel.recycle();
+            }
+        }
+        try {
+            return new SpillHandle(store.getId(), store.write(data), raw);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    synchronized void retain() {
+        holders++;
+    }
+
+    synchronized void escape() {
+        escaped = true;
+    }
+
+    /**
+     * Lets go of the handle, deleting its data if this was the last holder and it never escaped.
+     */
+    void release() {
+        synchronized (this) {
+            if (--holders > 0 || escaped) {
+                return;
+            }
+        }
+        SpillStore store = SpillStores.get(storeId);
+        if (store != null) {
+            store.delete(token);
+        }
+    }
+
+    /**
+     * Reads the value back from its store the first time, and returns the same value after that.
+     *
+     * @throws IllegalStateException if the store isn't registered or the value can't be read
+     */
+    Object resolve(ClassLoader loader) {
+        if (resolved == null) {
+            resolved = read(loader);
+        }
+        return resolved;
+    }
+
+    private Object read(ClassLoader loader) {
+        SpillStore store = SpillStores.get(storeId);
+        if (store == null) {
+            throw new IllegalStateException("No spill store registered with id " + storeId);
+        }
+        byte[] data;
+        try {
+            data = store.read(token);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read spilled value " + token + " from " + storeId, e);
+        }
+        if (raw) {
+            return data;
+        }
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(data, 0, data.length);
+            parcel.setDataPosition(0);
+            return parcel.readValue(loader);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        escape();
+        dest.writeString(storeId);
+        dest.writeString(token);
+        dest.writeInt(raw ? 1 : 0);
+    }
+
+    public static final Creator<SpillHandle> CREATOR = new Creator<SpillHandle>() {
+        @Override
+        public SpillHandle createFromParcel(Parcel source) {
+            SpillHandle handle = new SpillHandle(source.readString(), source.readString(), source.readInt() != 0);
+            handle.escaped = true;
+            return handle;
+        }
+
+        @Override
+        public SpillHandle[] newArray(int size) {
+            return new SpillHandle[size];
+        }
+    };
+
+    @Override
+    public String toString() {
+        return "SpillHandle[" + storeId + ":" + token + "]";
+    }
+}
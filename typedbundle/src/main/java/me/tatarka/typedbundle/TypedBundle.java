@@ -11,9 +11,17 @@ import android.util.Size;
 import android.util.SizeF;
 import android.util.SparseArray;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -23,13 +31,33 @@ import java.util.Set;
 public final class TypedBundle implements Parcelable {
     public static final TypedBundle EMPTY = new TypedBundle(Bundle.EMPTY);
 
+    private static final BundleCodec CODEC = new BundleCodec();
+    private static final BundleSizeEstimator ESTIMATOR = new BundleSizeEstimator();
+    /**
+     * Values smaller than this aren't worth replacing with a {@link SpillHandle}.
+     */
+    private static final int MIN_SPILL_SIZE = 1024;
+
     private Bundle bundle;
+    private BundleStorage storage;
+    /**
+     * Set when the bundle is shared with a copy made by {@link #copyOnWrite()}, the first write
+     * makes a private copy.
+     */
+    private boolean shared;
+    private SpillStore spillStore;
+    private int spillThreshold;
+    /**
+     * Set once {@link #spill()} put a {@link SpillHandle} in the bundle, so writes and copies
+     * know to track it. Bundles that never spill don't pay for it.
+     */
+    private boolean hasSpilled;
 
     /**
      * Constructs a new, empty {@code TypedBundle}.
      */
     public TypedBundle() {
-        this.bundle = new Bundle();
+        setBundle(new Bundle());
     }
 
     /**
@@ -39,7 +67,7 @@ public final class TypedBundle implements Parcelable {
      * @param loader the ClassLoader
      */
     public TypedBundle(ClassLoader loader) {
-        this.bundle = new Bundle(loader);
+        setBundle(new Bundle(loader));
     }
 
     /**
@@ -48,7 +76,7 @@ public final class TypedBundle implements Parcelable {
      * @param capacity the capacity
      */
     public TypedBundle(int capacity) {
-        this.bundle = new Bundle(capacity);
+        setBundle(new Bundle(capacity));
     }
 
     /**
@@ -64,7 +92,7 @@ public final class TypedBundle implements Parcelable {
         if (bundle == null) {
             throw new NullPointerException("bundle cannot be null");
         }
-        this.bundle = bundle;
+        setBundle(bundle);
     }
 
     /**
@@ -74,21 +102,72 @@ public final class TypedBundle implements Parcelable {
      * @param bundle the bundle to copy
      */
     public TypedBundle(@NonNull TypedBundle bundle) {
-        this.bundle = new Bundle(bundle.bundle);
+        setBundle(new Bundle(bundle.bundle));
+        spillStore = bundle.spillStore;
+        spillThreshold = bundle.spillThreshold;
+        hasSpilled = bundle.hasSpilled;
+        if (hasSpilled) {
+            retainSpilled(storage);
+        }
+    }
+
+    private void setBundle(Bundle bundle) {
+        this.bundle = bundle;
+        this.storage = new BundleStorage(bundle);
+    }
+
+    /**
+     * Makes a private copy of the bundle if it's shared, must be called before any write.
+     */
+    private void ensureOwned() {
+        if (shared) {
+            setBundle(new Bundle(bundle));
+            shared = false;
+            if (hasSpilled) {
+                retainSpilled(storage);
+            }
+        }
+    }
+
+    /**
+     * Like {@link #ensureOwned()}, and releases the spilled value about to be replaced or removed
+     * for the given name.
+     */
+    private void ensureOwned(String name) {
+        ensureOwned();
+        if (hasSpilled) {
+            releaseSpilled(name);
+        }
+    }
+
+    private static void retainSpilled(BundleStorage storage) {
+        for (String name : storage.keySet()) {
+            Object value = storage.get(name);
+            if (value instanceof SpillHandle) {
+                ((SpillHandle) value).retain();
+            }
+        }
     }
 
     /**
      * Returns the value associate with the given key, or null if no mapping of the desired type
-     * exists for the given key or a null value is explicitly associated with the key.
+     * exists for the given key or a null value is explicitly associated with the key. If the value
+     * was moved to a {@link SpillStore} by {@link #spill()}, it is read back, but the handle stays
+     * in the bundle so the value isn't spilled again. Changes to a value read back this way aren't
+     * stored, put it again instead.
      *
      * @param key the key
      * @param <T> the value's type
      * @return the value for the key
+     * @throws IllegalStateException if the value was spilled and can't be read back
      */
     @SuppressWarnings("unchecked")
     @Nullable
     public <T> T get(@NonNull Key<T> key) {
-        Object value = bundle.get(key.name);
+        Object value = storage.get(key.name);
+        if (value instanceof SpillHandle) {
+            value = ((SpillHandle) value).resolve(TypedBundle.class.getClassLoader());
+        }
         return (T) value;
     }
 
@@ -107,6 +186,110 @@ public final class TypedBundle implements Parcelable {
         return value != null ? value : defaultValue;
     }
 
+    /**
+     * Returns the value associated with the given key, or defaultValue if no mapping of the desired
+     * type exists for the given key. Unlike {@link #get(Key, Object)}, neither the value nor the
+     * default is boxed.
+     *
+     * @param key          the key
+     * @param defaultValue the default value
+     * @return the value for the key or defaultValue if it doesn't exist
+     */
+    public boolean getBoolean(@NonNull Key<Boolean> key, boolean defaultValue) {
+        return storage.getBoolean(key.name, defaultValue);
+    }
+
+    /**
+     * Returns the value associated with the given key, or defaultValue if no mapping of the desired
+     * type exists for the given key. Unlike {@link #get(Key, Object)}, neither the value nor the
+     * default is boxed.
+     *
+     * @param key          the key
+     * @param defaultValue the default value
+     * @return the value for the key or defaultValue if it doesn't exist
+     */
+    public byte getByte(@NonNull Key<Byte> key, byte defaultValue) {
+        return storage.getByte(key.name, defaultValue);
+    }
+
+    /**
+     * Returns the value associated with the given key, or defaultValue if no mapping of the desired
+     * type exists for the given key. Unlike {@link #get(Key, Object)}, neither the value nor the
+     * default is boxed.
+     *
+     * @param key          the key
+     * @param defaultValue the default value
+     * @return the value for the key or defaultValue if it doesn't exist
+     */
+    public char getChar(@NonNull Key<Character> key, char defaultValue) {
+        return storage.getChar(key.name, defaultValue);
+    }
+
+    /**
+     * Returns the value associated with the given key, or defaultValue if no mapping of the desired
+     * type exists for the given key. Unlike {@link #get(Key, Object)}, neither the value nor the
+     * default is boxed.
+     *
+     * @param key          the key
+     * @param defaultValue the default value
+     * @return the value for the key or defaultValue if it doesn't exist
+     */
+    public short getShort(@NonNull Key<Short> key, short defaultValue) {
+        return storage.getShort(key.name, defaultValue);
+    }
+
+    /**
+     * Returns the value associated with the given key, or defaultValue if no mapping of the desired
+     * type exists for the given key. Unlike {@link #get(Key, Object)}, neither the value nor the
+     * default is boxed.
+     *
+     * @param key          the key
+     * @param defaultValue the default value
+     * @return the value for the key or defaultValue if it doesn't exist
+     */
+    public int getInt(@NonNull Key<Integer> key, int defaultValue) {
+        return storage.getInt(key.name, defaultValue);
+    }
+
+    /**
+     * Returns the value associated with the given key, or defaultValue if no mapping of the desired
+     * type exists for the given key. Unlike {@link #get(Key, Object)}, neither the value nor the
+     * default is boxed.
+     *
+     * @param key          the key
+     * @param defaultValue the default value
+     * @return the value for the key or defaultValue if it doesn't exist
+     */
+    public long getLong(@NonNull Key<Long> key, long defaultValue) {
+        return storage.getLong(key.name, defaultValue);
+    }
+
+    /**
+     * Returns the value associated with the given key, or defaultValue if no mapping of the desired
+     * type exists for the given key. Unlike {@link #get(Key, Object)}, neither the value nor the
+     * default is boxed.
+     *
+     * @param key          the key
+     * @param defaultValue the default value
+     * @return the value for the key or defaultValue if it doesn't exist
+     */
+    public float getFloat(@NonNull Key<Float> key, float defaultValue) {
+        return storage.getFloat(key.name, defaultValue);
+    }
+
+    /**
+     * Returns the value associated with the given key, or defaultValue if no mapping of the desired
+     * type exists for the given key. Unlike {@link #get(Key, Object)}, neither the value nor the
+     * default is boxed.
+     *
+     * @param key          the key
+     * @param defaultValue the default value
+     * @return the value for the key or defaultValue if it doesn't exist
+     */
+    public double getDouble(@NonNull Key<Double> key, double defaultValue) {
+        return storage.getDouble(key.name, defaultValue);
+    }
+
     /**
      * Inserts a value into the mapping of this {@code TypedBundle}, replacing any existing value
      * for the given key.
@@ -118,6 +301,7 @@ public final class TypedBundle implements Parcelable {
      */
     @TargetApi(18)
     public <T extends IBinder> TypedBundle put(@NonNull Key<T> key, T value) {
+        ensureOwned(key.name);
         bundle.putBinder(key.name, value);
         return this;
     }
@@ -131,6 +315,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle put(@NonNull Key<Boolean> key, boolean value) {
+        ensureOwned(key.name);
         bundle.putBoolean(key.name, value);
         return this;
     }
@@ -144,6 +329,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle put(@NonNull Key<boolean[]> key, boolean[] value) {
+        ensureOwned(key.name);
         bundle.putBooleanArray(key.name, value);
         return this;
     }
@@ -157,6 +343,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle put(@NonNull Key<Bundle> key, Bundle value) {
+        ensureOwned(key.name);
         bundle.putBundle(key.name, value);
         return this;
     }
@@ -170,6 +357,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle put(@NonNull Key<Byte> key, byte value) {
+        ensureOwned(key.name);
         bundle.putByte(key.name, value);
         return this;
     }
@@ -183,6 +371,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle put(@NonNull Key<byte[]> key, byte[] value) {
+        ensureOwned(key.name);
         bundle.putByteArray(key.name, value);
         return this;
     }
@@ -196,6 +385,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle put(@NonNull Key<Character> key, char value) {
+        ensureOwned(key.name);
         bundle.putChar(key.name, value);
         return this;
     }
@@ -209,6 +399,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle put(@NonNull Key<char[]> key, char[] value) {
+        ensureOwned(key.name);
         bundle.putCharArray(key.name, value);
         return this;
     }
@@ -222,6 +413,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle put(@NonNull Key<String> key, String value) {
+        ensureOwned(key.name);
         bundle.putString(key.name, value);
         return this;
     }
@@ -235,6 +427,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle put(@NonNull Key<String[]> key, String[] value) {
+        ensureOwned(key.name);
         bundle.putStringArray(key.name, value);
         return this;
     }
@@ -248,6 +441,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle put(@NonNull Key<CharSequence> key, CharSequence value) {
+        ensureOwned(key.name);
         bundle.putCharSequence(key.name, value);
         return this;
     }
@@ -261,6 +455,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle put(@NonNull Key<CharSequence[]> key, CharSequence[] value) {
+        ensureOwned(key.name);
         bundle.putCharSequenceArray(key.name, value);
         return this;
     }
@@ -274,6 +469,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle put(@NonNull Key<Double> key, double value) {
+        ensureOwned(key.name);
         bundle.putDouble(key.name, value);
         return this;
     }
@@ -287,6 +483,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle put(@NonNull Key<double[]> key, double[] value) {
+        ensureOwned(key.name);
         bundle.putDoubleArray(key.name, value);
         return this;
     }
@@ -300,6 +497,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle put(@NonNull Key<Float> key, float value) {
+        ensureOwned(key.name);
         bundle.putFloat(key.name, value);
         return this;
     }
@@ -313,6 +511,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle put(@NonNull Key<float[]> key, float[] value) {
+        ensureOwned(key.name);
         bundle.putFloatArray(key.name, value);
         return this;
     }
@@ -326,6 +525,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle put(@NonNull Key<Integer> key, int value) {
+        ensureOwned(key.name);
         bundle.putInt(key.name, value);
         return this;
     }
@@ -339,6 +539,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle put(@NonNull Key<int[]> key, int[] value) {
+        ensureOwned(key.name);
         bundle.putIntArray(key.name, value);
         return this;
     }
@@ -352,6 +553,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle put(@NonNull Key<Long> key, long value) {
+        ensureOwned(key.name);
         bundle.putLong(key.name, value);
         return this;
     }
@@ -365,6 +567,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle put(@NonNull Key<long[]> key, long[] value) {
+        ensureOwned(key.name);
         bundle.putLongArray(key.name, value);
         return this;
     }
@@ -378,6 +581,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public <T extends Parcelable> TypedBundle put(@NonNull Key<T> key, T value) {
+        ensureOwned(key.name);
         bundle.putParcelable(key.name, value);
         return this;
     }
@@ -391,6 +595,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public <T extends Parcelable> TypedBundle put(@NonNull Key<T[]> key, T[] value) {
+        ensureOwned(key.name);
         bundle.putParcelableArray(key.name, value);
         return this;
     }
@@ -404,6 +609,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle put(@NonNull Key<Short> key, short value) {
+        ensureOwned(key.name);
         bundle.putShort(key.name, value);
         return this;
     }
@@ -417,6 +623,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle put(@NonNull Key<short[]> key, short[] value) {
+        ensureOwned(key.name);
         bundle.putShortArray(key.name, value);
         return this;
     }
@@ -431,6 +638,7 @@ public final class TypedBundle implements Parcelable {
      */
     @TargetApi(21)
     public TypedBundle put(@NonNull Key<Size> key, Size value) {
+        ensureOwned(key.name);
         bundle.putSize(key.name, value);
         return this;
     }
@@ -445,6 +653,7 @@ public final class TypedBundle implements Parcelable {
      */
     @TargetApi(21)
     public TypedBundle put(@NonNull Key<SizeF> key, SizeF value) {
+        ensureOwned(key.name);
         bundle.putSizeF(key.name, value);
         return this;
     }
@@ -458,6 +667,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public <T extends Parcelable> TypedBundle put(@NonNull Key<SparseArray<T>> key, SparseArray<T> value) {
+        ensureOwned(key.name);
         bundle.putSparseParcelableArray(key.name, value);
         return this;
     }
@@ -471,6 +681,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public <T extends Serializable> TypedBundle put(@NonNull Key<T> key, T value) {
+        ensureOwned(key.name);
         bundle.putSerializable(key.name, value);
         return this;
     }
@@ -490,26 +701,9 @@ public final class TypedBundle implements Parcelable {
      * @see #putParcelableArrayList(Key, java.util.ArrayList)
      */
     @Deprecated
-    @SuppressWarnings("unchecked")
     public <T> TypedBundle put(@NonNull Key<ArrayList<T>> key, ArrayList<T> value) {
-        Class<?> itemType = findArrayListType((ArrayList) value);
-        if (itemType == null) {
-            // This means the list has no items, it doesn't really matter what type it is since
-            // type info gets lost in the underlying bundle anyway.
-            // Therefore, we can just stick an empty ArrayList of an arbitrary type that bundle
-            // can handle and it will be able to get it out for whatever type it was.
-            bundle.putIntegerArrayList(key.name, new ArrayList<Integer>());
-        } else if (String.class.isAssignableFrom(itemType)) {
-            bundle.putStringArrayList(key.name, (ArrayList<String>) value);
-        } else if (CharSequence.class.isAssignableFrom(itemType)) {
-            bundle.putCharSequenceArrayList(key.name, (ArrayList<CharSequence>) value);
-        } else if (Integer.class.isAssignableFrom(itemType)) {
-            bundle.putIntegerArrayList(key.name, (ArrayList<Integer>) value);
-        } else if (Parcelable.class.isAssignableFrom(itemType)) {
-            bundle.putParcelableArrayList(key.name, (ArrayList<Parcelable>) value);
-        } else {
-            throw new IllegalArgumentException("Invalid bundle type for " + key + ": " + value);
-        }
+        ensureOwned(key.name);
+        storage.putArrayList(key.name, value);
         return this;
     }
 
@@ -522,6 +716,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle putIntegerArrayList(@NonNull Key<ArrayList<Integer>> key, ArrayList<Integer> value) {
+        ensureOwned(key.name);
         bundle.putIntegerArrayList(key.name, value);
         return this;
     }
@@ -535,6 +730,7 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle putStringArrayList(@NonNull Key<ArrayList<String>> key, ArrayList<String> value) {
+        ensureOwned(key.name);
         bundle.putStringArrayList(key.name, value);
         return this;
     }
@@ -548,23 +744,17 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle putCharSequenceArrayList(@NonNull Key<ArrayList<CharSequence>> key, ArrayList<CharSequence> value) {
+        ensureOwned(key.name);
         bundle.putCharSequenceArrayList(key.name, value);
         return this;
     }
 
     public <T extends Parcelable> TypedBundle putParcelableArrayList(@NonNull Key<ArrayList<T>> key, ArrayList<T> value) {
+        ensureOwned(key.name);
         bundle.putParcelableArrayList(key.name, value);
         return this;
     }
 
-    private static Class<?> findArrayListType(ArrayList list) {
-        if (list.isEmpty()) {
-            return null; // Can't figure out type.
-        } else {
-            return list.get(0).getClass();
-        }
-    }
-
     /**
      * Inserts all mappings from the given {@link android.os.Bundle} into this {@code TypedBundle}.
      *
@@ -572,6 +762,8 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle putAll(@NonNull Bundle bundle) {
+        ensureOwned();
+        releaseSpilled(bundle.keySet());
         this.bundle.putAll(bundle);
         return this;
     }
@@ -583,17 +775,48 @@ public final class TypedBundle implements Parcelable {
      * @return the {@code TypedBundle} for chaining
      */
     public TypedBundle putAll(@NonNull TypedBundle bundle) {
+        ensureOwned();
+        if (bundle.hasSpilled) {
+            // Retain first, the other bundle may hold the same handles as this one.
+            retainSpilled(bundle.storage);
+            hasSpilled = true;
+        }
+        releaseSpilled(bundle.storage.keySet());
         this.bundle.putAll(bundle.bundle);
         return this;
     }
 
     /**
      * Returns the underlying {@link android.os.Bundle}. If {@link #TypedBundle(android.os.Bundle)}
-     * was used, this will be the same instance passed into that constructor.
+     * was used, this will be the same instance passed into that constructor, unless the bundle has
+     * since been shared by {@link #copyOnWrite()}.
      *
      * @return the bundle
      */
     public Bundle getBundle() {
+        // The caller may modify the bundle directly, so it can't stay shared.
+        ensureOwned();
+        if (hasSpilled) {
+            // Nor can spilled values be tracked once the caller may copy them elsewhere.
+            for (String name : storage.keySet()) {
+                Object value = storage.get(name);
+                if (value instanceof SpillHandle) {
+                    ((SpillHandle) value).escape();
+                }
+            }
+        }
+        return bundle;
+    }
+
+    /**
+     * Returns the underlying {@link android.os.Bundle} for reading only. Unlike
+     * {@link #getBundle()}, this doesn't copy a bundle shared by {@link #copyOnWrite()}, so it's
+     * cheap to hand to something that only reads it, like a {@code LoaderManager}. Don't modify
+     * it, other {@code TypedBundle}s may share it.
+     *
+     * @return the bundle
+     */
+    public Bundle peekBundle() {
         return bundle;
     }
 
@@ -601,7 +824,26 @@ public final class TypedBundle implements Parcelable {
      * Removes all elements from teh mapping of this Bundle.
      */
     public void clear() {
-        bundle.clear();
+        ensureOwned();
+        releaseSpilled(storage.keySet());
+        storage.clear();
+        hasSpilled = false;
+    }
+
+    private void releaseSpilled(Set<String> names) {
+        if (!hasSpilled) {
+            return;
+        }
+        for (String name : names) {
+            releaseSpilled(name);
+        }
+    }
+
+    private void releaseSpilled(String name) {
+        Object value = storage.get(name);
+        if (value instanceof SpillHandle) {
+            ((SpillHandle) value).release();
+        }
     }
 
     /**
@@ -611,7 +853,7 @@ public final class TypedBundle implements Parcelable {
      * @return true if the bundle contains the key, false otherwise
      */
     public boolean containsKey(@NonNull Key<?> key) {
-        return bundle.containsKey(key.name);
+        return storage.contains(key.name);
     }
 
     /**
@@ -629,7 +871,67 @@ public final class TypedBundle implements Parcelable {
      * @param key the key to remove
      */
     public void remove(@NonNull Key<?> key) {
-        bundle.remove(key.name);
+        ensureOwned(key.name);
+        storage.remove(key.name);
+    }
+
+    /**
+     * Returns a copy of this {@code TypedBundle} that shares its mappings until either one is
+     * modified, so copying is constant time no matter how large the bundle is. Whichever bundle is
+     * written to first, including through {@link #getBundle()}, makes a private copy at that
+     * point. Because of this, after calling this method {@link #getBundle()} on this bundle may no
+     * longer return the instance passed into {@link #TypedBundle(android.os.Bundle)}.
+     * <p/>
+     * Changes made directly to a wrapped {@link android.os.Bundle} behind this
+     * {@code TypedBundle}'s back are not detected and will show up in the copy. Use
+     * {@link #TypedBundle(TypedBundle)} if that matters.
+     *
+     * @return the copy
+     */
+    public TypedBundle copyOnWrite() {
+        // Force a parceled bundle to unparcel now so that reads don't modify the shared instance.
+        storage.size();
+        TypedBundle copy = new TypedBundle(bundle, storage);
+        copy.spillStore = spillStore;
+        copy.spillThreshold = spillThreshold;
+        copy.hasSpilled = hasSpilled;
+        // EMPTY can't be written to anyway, don't let a copy make it writable.
+        if (this != EMPTY) {
+            shared = true;
+        }
+        copy.shared = true;
+        return copy;
+    }
+
+    private TypedBundle(Bundle bundle, BundleStorage storage) {
+        this.bundle = bundle;
+        this.storage = storage;
+    }
+
+    /**
+     * Returns a {@code TypedBundle} that reads from the given bundle and copies it on the first
+     * write, for handing out a bundle that must not be modified.
+     */
+    static TypedBundle sharing(Bundle bundle) {
+        TypedBundle typedBundle = new TypedBundle(bundle, new BundleStorage(bundle));
+        typedBundle.shared = true;
+        return typedBundle;
+    }
+
+    BundleStorage storage() {
+        return storage;
+    }
+
+    /**
+     * Returns an immutable snapshot of this {@code TypedBundle}. Spilled values are read back so
+     * the snapshot doesn't depend on the spill store.
+     *
+     * @return the snapshot
+     * @throws IllegalStateException if a value was spilled and can't be read back
+     * @see ImmutableTypedBundle.Builder
+     */
+    public ImmutableTypedBundle toImmutable() {
+        return new ImmutableTypedBundle.Builder(this).build();
     }
 
     @SuppressWarnings("CloneDoesntCallSuperClone")
@@ -645,25 +947,233 @@ public final class TypedBundle implements Parcelable {
 
     /**
      * Returns the Set containing the keys used in this {@code TypedBundle}. Note that due to type
-     * erasure, the type is lost, so you will only get back keys of type {@code Key<Object>}.
+     * erasure, the type is lost, so you will only get back keys of type {@code Key<Object>}. A key
+     * is the canonical instance returned by {@link Key#of(String)} if its name was interned.
      *
      * @return the key set
      */
     public Set<Key<Object>> keySet() {
         Set<Key<Object>> set = new HashSet<>();
-        for (String key : bundle.keySet()) {
-            set.add(new Key<>(key));
+        for (String key : storage.keySet()) {
+            set.add(Key.forName(key));
         }
         return set;
     }
 
+    /**
+     * Calls the visitor for each key used in this {@code TypedBundle}, stopping early if it
+     * returns false. Unlike {@link #keySet()}, this does not allocate a set, and only allocates
+     * keys for names that weren't interned with {@link Key#of(String)}, so it is suitable for hot
+     * paths. The bundle must not be modified while visiting.
+     *
+     * @param visitor the visitor
+     */
+    public void forEachKey(@NonNull KeyVisitor visitor) {
+        for (String key : storage.keySet()) {
+            if (!visitor.visit(Key.forName(key))) {
+                return;
+            }
+        }
+    }
+
     /**
      * Returns the number of mapping contained in this {@code TypedBundle}.
      *
      * @return the size
      */
     public int size() {
-        return bundle.size();
+        return storage.size();
+    }
+
+    /**
+     * Returns the estimated number of bytes this {@code TypedBundle} takes up when written to a
+     * parcel. This is computed from the value types without writing the bundle, so it is cheap
+     * enough to check in debug builds before handing a bundle to another component. Only
+     * {@code Parcelable} values are written out to measure them.
+     *
+     * @return the estimated size in bytes
+     * @see #estimateSizes()
+     */
+    public int estimateSize() {
+        return ESTIMATOR.estimate(storage);
+    }
+
+    /**
+     * Returns the estimated number of bytes each entry, the key and its value, takes up when
+     * written to a parcel, ordered from largest to smallest. Use this to find which keys make a
+     * bundle heavy.
+     *
+     * @return the estimated size in bytes of each entry
+     * @see #estimateSize()
+     */
+    public Map<Key<Object>, Integer> estimateSizes() {
+        Map<String, Integer> sizes = ESTIMATOR.estimateEntries(storage);
+        Map<Key<Object>, Integer> result = new LinkedHashMap<>(sizes.size() * 2);
+        for (Map.Entry<String, Integer> entry : sizes.entrySet()) {
+            result.put(Key.forName(entry.getKey()), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Guards this {@code TypedBundle} against exceeding the binder transaction limit. Once set,
+     * whenever this bundle is written to a parcel, or {@link #spill()} is called, large values are
+     * moved into the given store until the estimated size is below maxSize, leaving a small
+     * {@link SpillHandle} in their place. Spilled values are read back lazily by
+     * {@link #get(Key)}.
+     * <p/>
+     * The store must be registered with {@link SpillStores#register(SpillStore)} wherever the
+     * bundle is read, so only use this for bundles that stay within your app.
+     *
+     * @param store   the store to spill to, or null to turn spilling off
+     * @param maxSize the estimated size in bytes above which values are spilled
+     * @return the {@code TypedBundle} for chaining
+     */
+    public TypedBundle setSpillStore(@Nullable SpillStore store, int maxSize) {
+        spillStore = store;
+        spillThreshold = maxSize;
+        return this;
+    }
+
+    /**
+     * Moves large values ({@code byte[]}, {@code Parcelable[]} and {@code ArrayList}s) into the
+     * store set with {@link #setSpillStore(SpillStore, int)}, largest first, until the estimated
+     * size of this bundle is below the limit. Call this before handing off {@link #getBundle()},
+     * writing this {@code TypedBundle} to a parcel does it automatically. Values that can't be
+     * written to the store are left in place.
+     *
+     * @return the number of values spilled
+     * @throws IllegalStateException if no spill store is set
+     */
+    public int spill() {
+        if (spillStore == null) {
+            throw new IllegalStateException("No spill store set, call setSpillStore() first");
+        }
+        int size = ESTIMATOR.estimate(storage);
+        if (size <= spillThreshold) {
+            return 0;
+        }
+        List<SpillCandidate> candidates = new ArrayList<>();
+        for (String name : storage.keySet()) {
+            Object value = storage.get(name);
+            if (SpillHandle.canSpill(value)) {
+                int valueSize = ESTIMATOR.estimateValue(value);
+                if (valueSize >= MIN_SPILL_SIZE) {
+                    candidates.add(new SpillCandidate(name, valueSize));
+                }
+            }
+        }
+        Collections.sort(candidates);
+        int spilled = 0;
+        for (SpillCandidate candidate : candidates) {
+            if (size <= spillThreshold) {
+                break;
+            }
+            SpillHandle handle = SpillHandle.spill(spillStore, storage.get(candidate.name));
+            if (handle != null) {
+                ensureOwned();
+                bundle.putParcelable(candidate.name, handle);
+                hasSpilled = true;
+                size += ESTIMATOR.estimateValue(handle) - candidate.size;
+                spilled++;
+            }
+        }
+        return spilled;
+    }
+
+    private static class SpillCandidate implements Comparable<SpillCandidate> {
+        final String name;
+        final int size;
+
+        SpillCandidate(String name, int size) {
+            this.name = name;
+            this.size = size;
+        }
+
+        @Override
+        public int compareTo(@NonNull SpillCandidate other) {
+            // Largest first.
+            return size < other.size ? 1 : (size == other.size ? 0 : -1);
+        }
+    }
+
+    /**
+     * Encodes this {@code TypedBundle} into a compact binary form that, unlike parceling, is stable
+     * across platform versions and so can be persisted. Only primitives, primitive arrays, strings,
+     * char sequences, integer and string lists and nested bundles are supported.
+     *
+     * @return the encoded bytes
+     * @throws IllegalArgumentException if the bundle contains a value that can't be encoded, such
+     *                                  as a {@code Parcelable}
+     * @see StorageCodec
+     */
+    public byte[] encode() {
+        return CODEC.encode(storage);
+    }
+
+    /**
+     * Encodes this {@code TypedBundle} into the given buffer, starting at its current position.
+     *
+     * @param out the buffer to write to
+     * @throws IllegalArgumentException if the bundle contains a value that can't be encoded
+     * @see #encode()
+     */
+    public void encode(@NonNull ByteBuffer out) {
+        CODEC.encode(storage, out);
+    }
+
+    /**
+     * Encodes this {@code TypedBundle} into the given stream. The stream is not closed.
+     *
+     * @param out the stream to write to
+     * @throws IOException              if the stream throws
+     * @throws IllegalArgumentException if the bundle contains a value that can't be encoded
+     * @see #encode()
+     */
+    public void encode(@NonNull OutputStream out) throws IOException {
+        CODEC.encode(storage, out);
+    }
+
+    /**
+     * Decodes a {@code TypedBundle} written by {@link #encode()}.
+     *
+     * @param in the encoded bytes
+     * @return the decoded bundle
+     * @throws IllegalArgumentException if the input is malformed
+     */
+    public static TypedBundle decode(@NonNull byte[] in) {
+        TypedBundle bundle = new TypedBundle();
+        CODEC.decode(in, bundle.storage);
+        return bundle;
+    }
+
+    /**
+     * Decodes a {@code TypedBundle} written by {@link #encode(ByteBuffer)}. On return the buffer
+     * is positioned after the encoded bundle.
+     *
+     * @param in the buffer to read from
+     * @return the decoded bundle
+     * @throws IllegalArgumentException if the input is malformed
+     */
+    public static TypedBundle decode(@NonNull ByteBuffer in) {
+        TypedBundle bundle = new TypedBundle();
+        CODEC.decode(in, bundle.storage);
+        return bundle;
+    }
+
+    /**
+     * Decodes a {@code TypedBundle} written by {@link #encode(OutputStream)}, reading the stream to
+     * its end. The stream is not closed.
+     *
+     * @param in the stream to read from
+     * @return the decoded bundle
+     * @throws IOException              if the stream throws
+     * @throws IllegalArgumentException if the input is malformed
+     */
+    public static TypedBundle decode(@NonNull InputStream in) throws IOException {
+        TypedBundle bundle = new TypedBundle();
+        CODEC.decode(in, bundle.storage);
+        return bundle;
     }
 
     @Override
@@ -673,11 +1183,14 @@ public final class TypedBundle implements Parcelable {
 
     @Override
     public void writeToParcel(Parcel dest, int flags) {
+        if (spillStore != null) {
+            spill();
+        }
         dest.writeBundle(bundle);
     }
 
     private TypedBundle(Parcel in) {
-        this.bundle = in.readBundle(TypedBundle.class.getClassLoader());
+        setBundle(in.readBundle(TypedBundle.class.getClassLoader()));
     }
 
     public static final Creator<TypedBundle> CREATOR = new Creator<TypedBundle>() {
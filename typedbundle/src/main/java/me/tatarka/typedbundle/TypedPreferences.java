@@ -1,79 +1,350 @@
 package me.tatarka.typedbundle;
 
-import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
+import android.content.Context;
 import android.content.SharedPreferences;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Created by evan on 4/11/15.
+ * Typesafe access to preferences. By default this wraps {@link SharedPreferences}, but any
+ * {@link PreferenceStorage} can be used to keep the values somewhere else without changing the code
+ * that reads and writes them.
  */
 public class TypedPreferences {
     private SharedPreferences prefs;
+    private PreferenceStorage storage;
+    private volatile AllSnapshot allSnapshot;
+    private final KeyObservers observers;
 
     public TypedPreferences(SharedPreferences prefs) {
         this.prefs = prefs;
+        this.storage = new SharedPreferencesStorage(prefs);
+        this.observers = new KeyObservers(storage);
+    }
+
+    /**
+     * Constructs a {@code TypedPreferences} that reads and writes the given storage.
+     *
+     * @param storage the storage
+     */
+    public TypedPreferences(PreferenceStorage storage) {
+        if (storage == null) {
+            throw new NullPointerException("storage cannot be null");
+        }
+        this.storage = storage;
+        this.observers = new KeyObservers(storage);
+        PreferenceStorage wrapped = storage instanceof CachingPreferenceStorage
+                ? ((CachingPreferenceStorage) storage).getStorage()
+                : storage;
+        if (wrapped instanceof SharedPreferencesStorage) {
+            this.prefs = ((SharedPreferencesStorage) wrapped).prefs;
+        }
+    }
+
+    /**
+     * Returns a {@code TypedPreferences} that keeps an in-memory snapshot of the values and serves
+     * reads from it without taking any lock, for preferences that are read far more often than
+     * they are written. The snapshot is rebuilt on the next read after any change, whether it's
+     * made through this or any other editor.
+     * <p/>
+     * The change listener used to track changes is only kept alive by the returned instance, so
+     * hold on to it rather than calling this for every read.
+     *
+     * @param prefs the preferences
+     * @return the caching {@code TypedPreferences}
+     */
+    public static TypedPreferences cached(SharedPreferences prefs) {
+        return cached(new SharedPreferencesStorage(prefs));
+    }
+
+    /**
+     * Returns a {@code TypedPreferences} that serves reads from an in-memory snapshot of the given
+     * storage.
+     *
+     * @param storage the storage
+     * @return the caching {@code TypedPreferences}
+     * @see #cached(SharedPreferences)
+     * @see CachingPreferenceStorage
+     */
+    public static TypedPreferences cached(PreferenceStorage storage) {
+        return new TypedPreferences(new CachingPreferenceStorage(storage));
+    }
+
+    /**
+     * Returns a builder for preferences split into groups, each kept in its own
+     * {@link SharedPreferences} file named {@code prefix + group}. A file is only loaded the first
+     * time one of its keys is read or written, so reading the few values needed at startup doesn't
+     * load all the others.
+     * <pre>{@code
+     * TypedPreferences prefs = new TypedPreferences(TypedPreferences.sharded(context, "settings_")
+     *         .group("ui", THEME, FONT_SIZE)
+     *         .group("sync", LAST_SYNC, SYNC_INTERVAL)
+     *         .build());
+     * }</pre>
+     *
+     * @param context the context to get the preferences from
+     * @param prefix  the prefix of the file names
+     * @return the builder
+     * @see ShardedPreferenceStorage
+     */
+    public static ShardedPreferenceStorage.Builder sharded(Context context, final String prefix) {
+        final Context appContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        return new ShardedPreferenceStorage.Builder(new ShardedPreferenceStorage.Loader() {
+            @Override
+            public PreferenceStorage load(String group) {
+                return new SharedPreferencesStorage(appContext.getSharedPreferences(prefix + group, Context.MODE_PRIVATE));
+            }
+        });
+    }
+
+    /**
+     * Returns preferences that can be used from several processes of the app at once, each seeing
+     * the others' changes. Unlike {@link SharedPreferences} in {@code MODE_MULTI_PROCESS}, reads
+     * stay in memory and a change in another process only updates the keys it changed.
+     *
+     * @param context the context
+     * @param name    the name of the preferences file, kept in {@link Context#getFilesDir()}
+     * @return the preferences
+     * @throws IOException if the file can't be read
+     * @see MultiProcessPreferenceStorage
+     */
+    public static TypedPreferences multiProcess(Context context, String name) throws IOException {
+        return new TypedPreferences(MultiProcessPreferenceStorage.open(new File(context.getFilesDir(), name)));
     }
 
     public boolean contains(Key<?> key) {
-        return prefs.contains(key.name);
+        return storage.contains(key.name);
     }
 
     public Editor edit() {
-        return new Editor(prefs);
+        return new Editor(storage.edit());
     }
 
+    /**
+     * Returns all values as an unmodifiable map. If this is {@link #cached(SharedPreferences)
+     * cached}, the map is built once and returned again until the preferences change, otherwise
+     * it's a new copy every time.
+     *
+     * @return the values
+     * @see #forEachEntry(EntryVisitor)
+     */
     public Map<Key<Object>, Object> getAll() {
-        Map<String, ?> map = prefs.getAll();
+        Map<String, ?> map = storage.getAll();
+        AllSnapshot snapshot = allSnapshot;
+        // A cached storage hands out the same map until the values change.
+        if (snapshot != null && snapshot.source == map) {
+            return snapshot.result;
+        }
         Map<Key<Object>, Object> result = new HashMap<>(map.size());
         for (Map.Entry<String, ?> entry : map.entrySet()) {
-            result.put(new Key<>(entry.getKey()), entry.getValue());
+            result.put(Key.forName(entry.getKey()), entry.getValue());
+        }
+        result = Collections.unmodifiableMap(result);
+        if (storage instanceof CachingPreferenceStorage) {
+            allSnapshot = new AllSnapshot(map, result);
+        }
+        return result;
+    }
+
+    /**
+     * Calls the visitor with each key and value, stopping early if it returns false. Unlike
+     * {@link #getAll()} this doesn't build a {@link Key}-keyed map. The storage still hands over
+     * its values as a map, which for the default {@code SharedPreferences} storage is a full copy.
+     * Only if this is {@link #cached(SharedPreferences) cached} does it not copy anything at all.
+     *
+     * @param visitor the visitor
+     */
+    public void forEachEntry(EntryVisitor visitor) {
+        for (Map.Entry<String, ?> entry : storage.getAll().entrySet()) {
+            if (!visitor.visit(Key.forName(entry.getKey()), entry.getValue())) {
+                return;
+            }
         }
-        return Collections.unmodifiableMap(result);
     }
 
     public boolean get(Key<Boolean> key, boolean defValue) {
-        return prefs.getBoolean(key.name, defValue);
+        return storage.getBoolean(key.name, defValue);
     }
 
     public float get(Key<Float> key, float defValue) {
-        return prefs.getFloat(key.name, defValue);
+        return storage.getFloat(key.name, defValue);
     }
 
     public int get(Key<Integer> key, int defValue) {
-        return prefs.getInt(key.name, defValue);
+        return storage.getInt(key.name, defValue);
     }
 
     public long get(Key<Long> key, long defValue) {
-        return prefs.getLong(key.name, defValue);
+        return storage.getLong(key.name, defValue);
     }
 
     public String get(Key<String> key, String defValue) {
-        return prefs.getString(key.name, defValue);
+        return storage.getString(key.name, defValue);
     }
 
     @TargetApi(11)
     public Set<String> get(Key<Set<String>> key, Set<String> defValue) {
-        return prefs.getStringSet(key.name, defValue);
+        return storage.getStringSet(key.name, defValue);
+    }
+
+    /**
+     * Returns an editor that merges changes made over a short window into a single commit, made
+     * on the given executor. Use it for values that are written in bursts, where committing or
+     * applying each change would rewrite the preferences file every time.
+     *
+     * @param executor   the executor to commit on
+     * @param window     how long to collect changes after the first one before committing
+     * @param unit       the unit of window
+     * @param maxPending the number of pending changes that triggers a commit right away
+     * @return the editor
+     * @see CoalescingEditor
+     */
+    public CoalescingEditor coalescingEditor(ScheduledExecutorService executor, long window, TimeUnit unit, int maxPending) {
+        return new CoalescingEditor(this, executor, unit.toMillis(window), maxPending);
+    }
+
+    /**
+     * Calls the listener with the new value whenever the given key changes. It's called on
+     * whichever thread the change is reported on, for {@link SharedPreferences} that's the main
+     * thread. Changes to other keys don't call it.
+     * <p/>
+     * Changes to the key made while the listener is running are coalesced into a single call
+     * afterwards with the latest value. The listener is only kept by these preferences, so hold on
+     * to them while observing.
+     *
+     * @param key      the key to observe
+     * @param listener the listener
+     * @param <T>      the value type
+     * @see #unobserve(Key, Listener)
+     */
+    public <T> void observe(Key<T> key, Listener<T> listener) {
+        observe(key, DirectExecutor.INSTANCE, listener);
+    }
+
+    /**
+     * Calls the listener on the given executor with the new value whenever the given key changes.
+     * Changes made before the executor runs the listener, or while it's running, are coalesced
+     * into a single call with the latest value, so a burst of writes to the key results in only one
+     * or two calls.
+     *
+     * @param key      the key to observe
+     * @param executor the executor to call the listener on
+     * @param listener the listener
+     * @param <T>      the value type
+     * @see #unobserve(Key, Listener)
+     */
+    public <T> void observe(Key<T> key, Executor executor, Listener<T> listener) {
+        observers.add(key, executor, listener);
     }
 
+    /**
+     * Stops calling a listener passed to {@link #observe(Key, Listener)}. A call already in
+     * progress may still finish.
+     *
+     * @param key      the observed key
+     * @param listener the listener
+     * @param <T>      the value type
+     */
+    public <T> void unobserve(Key<T> key, Listener<T> listener) {
+        observers.remove(key, listener);
+    }
+
+    /**
+     * Returns a stream of the values of the given key, starting with the current one, delivered on
+     * the given executor. Use it instead of polling for changes.
+     * <pre>{@code
+     * prefs.stream(SYNC_INTERVAL, 60, executor).subscribe(new PreferenceStream.Subscriber<Integer>() {
+     *     public void onSubscribe(PreferenceStream.Subscription subscription) {
+     *         subscription.request(Long.MAX_VALUE);
+     *     }
+     *
+     *     public void onNext(Integer interval) {
+     *         reschedule(interval);
+     *     }
+     * });
+     * }</pre>
+     *
+     * @param key      the key
+     * @param defValue the value to deliver while there isn't one
+     * @param executor the executor to deliver values on
+     * @param <T>      the value type
+     * @return the stream
+     * @see PreferenceStream
+     */
+    public <T> PreferenceStream<T> stream(Key<T> key, T defValue, Executor executor) {
+        return new PreferenceStream<>(this, key, defValue, executor);
+    }
+
+    /**
+     * Returns the {@link SharedPreferences} these preferences are stored in, or null if they are
+     * kept in some other {@link PreferenceStorage}.
+     *
+     * @return the shared preferences or null
+     */
     public SharedPreferences getSharedPreferences() {
         return prefs;
     }
 
+    /**
+     * Returns the storage these preferences are read from and written to.
+     *
+     * @return the storage
+     */
+    public PreferenceStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Called when an observed key changes.
+     *
+     * @param <T> the value type
+     * @see #observe(Key, Listener)
+     */
+    public interface Listener<T> {
+        /**
+         * Called after the value of the key was added, changed or removed.
+         *
+         * @param key   the key that changed
+         * @param value the new value, or null if it was removed
+         */
+        void onChanged(Key<T> key, T value);
+    }
+
+    private enum DirectExecutor implements Executor {
+        INSTANCE;
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    }
+
+    private static final class AllSnapshot {
+        final Map<String, ?> source;
+        final Map<Key<Object>, Object> result;
+
+        AllSnapshot(Map<String, ?> source, Map<Key<Object>, Object> result) {
+            this.source = source;
+            this.result = result;
+        }
+    }
+
     public static class Editor {
-        private SharedPreferences.Editor editor;
+        private PreferenceStorage.Editor editor;
         
-        @SuppressLint("CommitPrefEdits")
-        private Editor(SharedPreferences prefs) {
-            editor = prefs.edit();
+        private Editor(PreferenceStorage.Editor editor) {
+            this.editor = editor;
         }
         
-        @TargetApi(9)
         public void apply() {
             editor.apply();
         }
@@ -122,5 +393,35 @@ public class TypedPreferences {
             editor.remove(key.name);
             return this;
         }
+
+        /**
+         * Puts an untyped value, for replaying changes that were collected elsewhere.
+         *
+         * @throws IllegalArgumentException if the value can't be stored in preferences
+         */
+        @SuppressWarnings("unchecked")
+        Editor putValue(String name, Object value) {
+            if (value instanceof Boolean) {
+                editor.putBoolean(name, (Boolean) value);
+            } else if (value instanceof Float) {
+                editor.putFloat(name, (Float) value);
+            } else if (value instanceof Integer) {
+                editor.putInt(name, (Integer) value);
+            } else if (value instanceof Long) {
+                editor.putLong(name, (Long) value);
+            } else if (value instanceof String) {
+                editor.putString(name, (String) value);
+            } else if (value instanceof Set) {
+                editor.putStringSet(name, (Set<String>) value);
+            } else {
+                throw new IllegalArgumentException("Unsupported preference type: " + value);
+            }
+            return this;
+        }
+
+        Editor removeValue(String name) {
+            editor.remove(name);
+            return this;
+        }
     }
 }
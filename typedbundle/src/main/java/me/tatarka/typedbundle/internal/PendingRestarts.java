@@ -0,0 +1,161 @@
+package me.tatarka.typedbundle.internal;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseArray;
+
+import me.tatarka.typedbundle.TypedBundle;
+
+/**
+ * The debounced and coalesced loader restarts waiting on the main thread, by loader id. This is
+ * shared by the framework and support {@code TypedLoaderManager}s and isn't part of the public
+ * API, it may change at any time.
+ * <p/>
+ * A pending restart holds on to its args and callbacks until it runs or is cancelled. This must
+ * only be used on the main thread.
+ *
+ * @param <C> the loader callbacks type
+ */
+public final class PendingRestarts<C> {
+    private final Restarter<C> restarter;
+    /**
+     * The restart for each loader id, reused so scheduling one again doesn't allocate.
+     */
+    private final SparseArray<Restart> restarts = new SparseArray<>();
+    private Handler handler;
+
+    /**
+     * Constructs a new {@code PendingRestarts}.
+     *
+     * @param restarter restarts the loader once a restart is due
+     */
+    public PendingRestarts(Restarter<C> restarter) {
+        if (restarter == null) {
+            throw new NullPointerException("restarter cannot be null");
+        }
+        this.restarter = restarter;
+    }
+
+    /**
+     * Schedules a restart after the given delay, pushing back one already pending for the id.
+     *
+     * @param id          the loader id
+     * @param args        the args to restart the loader with
+     * @param callback    the callbacks
+     * @param delayMillis the delay
+     * @throws IllegalArgumentException if delayMillis is negative
+     */
+    public void debounce(int id, TypedBundle args, C callback, long delayMillis) {
+        Restart restart = set(id, args, callback, delayMillis);
+        if (restart.scheduled) {
+            handler.removeCallbacks(restart);
+        }
+        restart.scheduled = true;
+        handler.postDelayed(restart, delayMillis);
+    }
+
+    /**
+     * Schedules a restart after the given delay, unless one is already pending for the id, in
+     * which case that one will use the given args and callbacks instead.
+     *
+     * @param id          the loader id
+     * @param args        the args to restart the loader with
+     * @param callback    the callbacks
+     * @param delayMillis the delay
+     * @throws IllegalArgumentException if delayMillis is negative
+     */
+    public void coalesce(int id, TypedBundle args, C callback, long delayMillis) {
+        Restart restart = set(id, args, callback, delayMillis);
+        if (!restart.scheduled) {
+            restart.scheduled = true;
+            handler.postDelayed(restart, delayMillis);
+        }
+    }
+
+    /**
+     * Cancels the pending restart for the given id, if any.
+     *
+     * @param id the loader id
+     */
+    public void cancel(int id) {
+        Restart restart = restarts.get(id);
+        if (restart != null && restart.scheduled) {
+            handler.removeCallbacks(restart);
+            restart.clear();
+        }
+    }
+
+    /**
+     * Cancels every pending restart, releasing their args and callbacks.
+     */
+    public void cancelAll() {
+        for (int i = 0; i < restarts.size(); i++) {
+            Restart restart = restarts.valueAt(i);
+            if (restart.scheduled) {
+                handler.removeCallbacks(restart);
+                restart.clear();
+            }
+        }
+    }
+
+    private Restart set(int id, TypedBundle args, C callback, long delayMillis) {
+        if (delayMillis < 0) {
+            throw new IllegalArgumentException("delayMillis cannot be negative");
+        }
+        if (handler == null) {
+            handler = new Handler(Looper.getMainLooper());
+        }
+        Restart restart = restarts.get(id);
+        if (restart == null) {
+            restart = new Restart(id);
+            restarts.put(id, restart);
+        }
+        restart.args = args;
+        restart.callback = callback;
+        return restart;
+    }
+
+    /**
+     * Restarts a loader once its pending restart is due.
+     *
+     * @param <C> the loader callbacks type
+     */
+    public interface Restarter<C> {
+        /**
+         * Called on the main thread to restart the loader.
+         *
+         * @param id       the loader id
+         * @param args     the latest args the restart was scheduled with
+         * @param callback the latest callbacks the restart was scheduled with
+         */
+        void restart(int id, TypedBundle args, C callback);
+    }
+
+    /**
+     * A restart waiting on the handler, holding the latest args and callback it was asked for.
+     */
+    private final class Restart implements Runnable {
+        private final int id;
+        private TypedBundle args;
+        private C callback;
+        private boolean scheduled;
+
+        private Restart(int id) {
+            this.id = id;
+        }
+
+        void clear() {
+            scheduled = false;
+            args = null;
+            callback = null;
+        }
+
+        @Override
+        public void run() {
+            TypedBundle args = this.args;
+            C callback = this.callback;
+            clear();
+            restarter.restart(id, args, callback);
+        }
+    }
+}